@@ -0,0 +1,87 @@
+package com.example.kitapp.encode;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * <p>Keeps the most recently built FFmpeg argument arrays, keyed by the parameters they were
+ * built from.
+ */
+public class CommandCache {
+
+    public interface Builder {
+        String[] build();
+    }
+
+    public static final int DEFAULT_CAPACITY = 32;
+
+    private final Map<List<Object>, String[]> commands;
+    private int hitCount;
+    private int missCount;
+
+    public CommandCache(final int capacity) {
+        this.commands = new LinkedHashMap<List<Object>, String[]>(16, 0.75f, true) {
+
+            @Override
+            protected boolean removeEldestEntry(final Map.Entry<List<Object>, String[]> eldest) {
+                return size() > capacity;
+            }
+        };
+    }
+
+    /**
+     * <p>Returns the arguments built for <code>parameters</code>, building them with
+     * <code>builder</code> the first time.
+     *
+     * @param parameters values the arguments depend on, arrays are compared by content
+     * @return a copy the caller may modify
+     */
+    public String[] get(final Builder builder, final Object... parameters) {
+        final List<Object> key = createKey(parameters);
+        String[] arguments;
+        synchronized (commands) {
+            arguments = commands.get(key);
+            if (arguments != null) {
+                hitCount++;
+                return arguments.clone();
+            }
+            missCount++;
+        }
+
+        // BUILDING OUTSIDE THE LOCK, A CONCURRENT BUILD OF THE SAME KEY IS HARMLESS
+        arguments = builder.build();
+        synchronized (commands) {
+            commands.put(key, arguments);
+        }
+        return arguments.clone();
+    }
+
+    public int getHitCount() {
+        synchronized (commands) {
+            return hitCount;
+        }
+    }
+
+    public int getMissCount() {
+        synchronized (commands) {
+            return missCount;
+        }
+    }
+
+    public int size() {
+        synchronized (commands) {
+            return commands.size();
+        }
+    }
+
+    private static List<Object> createKey(final Object[] parameters) {
+        final Object[] key = new Object[parameters.length];
+        for (int i = 0; i < parameters.length; i++) {
+            key[i] = (parameters[i] instanceof Object[]) ? Arrays.asList((Object[]) parameters[i]) : parameters[i];
+        }
+        return Arrays.asList(key);
+    }
+
+}
@@ -0,0 +1,236 @@
+package com.example.kitapp.encode;
+
+import static android.content.ContentValues.TAG;
+
+import android.util.Log;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * <p>Small on-disk record of a segmented encode: the input, the segment plan and every segment
+ * finished so far, so an encode interrupted by a crash or a kill resumes with the segments that
+ * are still missing.
+ *
+ * <p>The plan is written once through a temporary file. Finished segments are appended one line
+ * at a time and synced, so a kill loses at most the segment being encoded. A line cut short by a
+ * crash is ignored when the journal is read back. A journal written for another input, output or
+ * set of options does not match the fingerprint it is opened with and is discarded.
+ */
+public class EncodeJournal {
+
+    private static final String HEADER = "encode-journal 1";
+
+    private final File file;
+    private final String fingerprint;
+    private String inputPath;
+    private List<SegmentPlanner.Segment> segments;
+    private final Map<Integer, Long> completedSegments = new TreeMap<>();
+
+    private EncodeJournal(final File file, final String fingerprint) {
+        this.file = file;
+        this.fingerprint = fingerprint;
+    }
+
+    /**
+     * <p>Reads the journal at <code>file</code>. If it does not exist, can not be read or was
+     * written with another fingerprint, an empty journal is returned and the file is deleted.
+     */
+    public static EncodeJournal open(final File file, final String fingerprint) {
+        final EncodeJournal journal = new EncodeJournal(file, fingerprint);
+        if (file.exists() && !journal.read(true)) {
+            Log.d(TAG, String.format("Discarding encode journal %s written for another encode.", file));
+            journal.clear();
+            file.delete();
+        }
+        return journal;
+    }
+
+    /**
+     * @return input path recorded in the journal at <code>file</code>, null if there is no
+     * readable journal
+     */
+    public static String readInputPath(final File file) {
+        final EncodeJournal journal = new EncodeJournal(file, null);
+        return (file.exists() && journal.read(false)) ? journal.inputPath : null;
+    }
+
+    /**
+     * @return fingerprint of an encode; changes when the input file, the output path or any
+     * option changes
+     */
+    public static String createFingerprint(final String inputPath, final String outputPath, final String[]... options) {
+        final StringBuilder builder = new StringBuilder();
+        final File inputFile = new File(inputPath);
+        builder.append(inputPath).append('\n').append(inputFile.length()).append('\n').append(inputFile.lastModified()).append('\n').append(outputPath);
+        for (String[] optionGroup : options) {
+            builder.append('\n');
+            for (String option : optionGroup) {
+                builder.append(option).append('\u0000');
+            }
+        }
+        return hash(builder.toString());
+    }
+
+    /**
+     * @return planned segments, null if no plan was written yet
+     */
+    public synchronized List<SegmentPlanner.Segment> getSegments() {
+        return segments;
+    }
+
+    /**
+     * <p>Starts the journal with the plan of an encode, forgetting finished segments of a
+     * previous plan.
+     */
+    public synchronized void writePlan(final String inputPath, final List<SegmentPlanner.Segment> segments) throws IOException {
+        final StringBuilder content = new StringBuilder();
+        content.append(HEADER).append('\n');
+        content.append("fingerprint ").append(fingerprint).append('\n');
+        content.append("input ").append(inputPath).append('\n');
+        for (SegmentPlanner.Segment segment : segments) {
+            content.append(String.format(Locale.ROOT, "segment %d %s %s\n", segment.getIndex(), SegmentPlanner.formatTime(segment.getStartTime()), SegmentPlanner.formatTime(segment.getEndTime())));
+        }
+
+        final File temporaryFile = new File(file.getParentFile(), "." + file.getName() + ".tmp");
+        try {
+            try (FileOutputStream outputStream = new FileOutputStream(temporaryFile)) {
+                outputStream.write(content.toString().getBytes(StandardCharsets.UTF_8));
+                outputStream.getFD().sync();
+            }
+            if (!temporaryFile.renameTo(file)) {
+                throw new IOException(String.format("Renaming %s to %s failed.", temporaryFile.getName(), file.getName()));
+            }
+        } finally {
+            temporaryFile.delete();
+        }
+
+        this.inputPath = inputPath;
+        this.segments = Collections.unmodifiableList(new ArrayList<>(segments));
+        completedSegments.clear();
+    }
+
+    /**
+     * <p>Records that <code>segment</code> was written completely into <code>segmentFile</code>.
+     * The segment file is synced before the record, so a recorded segment survives a power loss.
+     */
+    public synchronized void markCompleted(final SegmentPlanner.Segment segment, final File segmentFile) throws IOException {
+        if (segments == null) {
+            throw new IllegalStateException("Segments are recorded before the plan is written");
+        }
+
+        try (FileOutputStream outputStream = new FileOutputStream(segmentFile, true)) {
+            outputStream.getFD().sync();
+        }
+
+        final long size = segmentFile.length();
+        try (FileOutputStream outputStream = new FileOutputStream(file, true)) {
+            outputStream.write(String.format(Locale.ROOT, "done %d %d\n", segment.getIndex(), size).getBytes(StandardCharsets.UTF_8));
+            outputStream.getFD().sync();
+        }
+        completedSegments.put(segment.getIndex(), size);
+    }
+
+    /**
+     * @return true if <code>segment</code> was recorded and <code>segmentFile</code> still has
+     * the recorded size
+     */
+    public synchronized boolean isCompleted(final SegmentPlanner.Segment segment, final File segmentFile) {
+        final Long size = completedSegments.get(segment.getIndex());
+        return size != null && segmentFile.isFile() && segmentFile.length() == size;
+    }
+
+    public synchronized int getCompletedCount() {
+        return completedSegments.size();
+    }
+
+    /**
+     * <p>Deletes the journal, once the encode it records has finished.
+     */
+    public synchronized void delete() {
+        clear();
+        file.delete();
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    private void clear() {
+        inputPath = null;
+        segments = null;
+        completedSegments.clear();
+    }
+
+    /**
+     * @return false if the journal can not be read or, when <code>checkFingerprint</code> is set,
+     * was written with another fingerprint
+     */
+    private boolean read(final boolean checkFingerprint) {
+        final List<SegmentPlanner.Segment> plannedSegments = new ArrayList<>();
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8))) {
+            if (!HEADER.equals(reader.readLine())) {
+                return false;
+            }
+            final String fingerprintLine = reader.readLine();
+            if (fingerprintLine == null || (checkFingerprint && !fingerprintLine.equals("fingerprint " + fingerprint))) {
+                return false;
+            }
+            final String inputLine = reader.readLine();
+            if (inputLine == null || !inputLine.startsWith("input ")) {
+                return false;
+            }
+
+            String line;
+            while ((line = reader.readLine()) != null) {
+                final String[] fields = line.split(" ");
+                if (fields.length == 4 && "segment".equals(fields[0])) {
+                    plannedSegments.add(new SegmentPlanner.Segment(Integer.parseInt(fields[1]), Double.parseDouble(fields[2]), Double.parseDouble(fields[3])));
+                } else if (fields.length == 3 && "done".equals(fields[0])) {
+                    completedSegments.put(Integer.parseInt(fields[1]), Long.parseLong(fields[2]));
+                }
+
+                // A LINE CUT SHORT BY A CRASH HAS FEWER FIELDS AND IS SKIPPED
+            }
+            inputPath = inputLine.substring("input ".length());
+        } catch (final IOException | NumberFormatException e) {
+            Log.w(TAG, String.format("Reading encode journal %s failed.", file), e);
+            completedSegments.clear();
+            return false;
+        }
+
+        if (plannedSegments.isEmpty()) {
+            completedSegments.clear();
+            return false;
+        }
+        segments = Collections.unmodifiableList(plannedSegments);
+        return true;
+    }
+
+    private static String hash(final String value) {
+        try {
+            final byte[] digest = MessageDigest.getInstance("SHA-1").digest(value.getBytes(StandardCharsets.UTF_8));
+            final StringBuilder builder = new StringBuilder(digest.length * 2);
+            for (byte b : digest) {
+                builder.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+            }
+            return builder.toString();
+        } catch (final NoSuchAlgorithmException e) {
+            return Integer.toHexString(value.hashCode());
+        }
+    }
+
+}
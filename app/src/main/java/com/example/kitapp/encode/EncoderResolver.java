@@ -0,0 +1,219 @@
+package com.example.kitapp.encode;
+
+import static android.content.ContentValues.TAG;
+
+import android.content.Context;
+import android.util.Log;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Properties;
+
+/**
+ * <p>Chooses between the MediaCodec and the software encoder of a video format.
+ *
+ * <p>The MediaCodec encoder is tried first when the device advertises a hardware encoder for the
+ * format and the output size, with a bitrate giving about the quality of the software encoder's
+ * default CRF. If it fails, the software encoder is next. Which of them worked is remembered per
+ * format and output size, so later encodes go straight to the encoder that works.
+ */
+public class EncoderResolver {
+
+    public static final String FORMAT_H264 = "h264";
+    public static final String FORMAT_HEVC = "hevc";
+
+    private static final String HARDWARE = "hardware";
+    private static final String SOFTWARE = "software";
+
+    /**
+     * Frame rate assumed for the hardware bitrate.
+     */
+    private static final int FRAME_RATE = 30;
+
+    /**
+     * <p>Tells which hardware encoders the device has.
+     */
+    public interface CapabilityProvider {
+
+        /**
+         * @param mimeType MIME type of the format, e.g. <code>video/avc</code>
+         * @param width    output width, 0 if not known
+         * @param height   output height, 0 if not known
+         * @return true if a hardware encoder accepts this format and size
+         */
+        boolean isHardwareEncoderAvailable(final String mimeType, final int width, final int height);
+
+    }
+
+    /**
+     * <p>One encoder to try: its name and the options selecting it.
+     */
+    public static class Encoder {
+        private final String codecName;
+        private final boolean hardware;
+        private final String[] options;
+
+        Encoder(final String codecName, final boolean hardware, final String[] options) {
+            this.codecName = codecName;
+            this.hardware = hardware;
+            this.options = options;
+        }
+
+        public String getCodecName() {
+            return codecName;
+        }
+
+        public boolean isHardware() {
+            return hardware;
+        }
+
+        /**
+         * @return <code>-c:v</code> followed by the quality and threading options of the encoder
+         */
+        public String[] getOptions() {
+            return options.clone();
+        }
+
+        @Override
+        public String toString() {
+            return codecName + " " + Arrays.toString(options);
+        }
+    }
+
+    private final CapabilityProvider capabilityProvider;
+    private final File storeFile;
+    private Properties store;
+
+    public EncoderResolver(final CapabilityProvider capabilityProvider, final File storeFile) {
+        this.capabilityProvider = capabilityProvider;
+        this.storeFile = storeFile;
+    }
+
+    public static EncoderResolver create(final Context context) {
+        return new EncoderResolver(new MediaCodecCapabilityProvider(), new File(context.getFilesDir(), "encoder_paths.properties"));
+    }
+
+    /**
+     * @return true if <code>format</code> is resolved by this class instead of naming an encoder
+     */
+    public static boolean isFormat(final String format) {
+        return FORMAT_H264.equals(format) || FORMAT_HEVC.equals(format);
+    }
+
+    /**
+     * @param format   {@link #FORMAT_H264} or {@link #FORMAT_HEVC}
+     * @param width    output width, 0 if not known
+     * @param height   output height, 0 if not known
+     * @param cpuCount cores a software encoder may use
+     * @return encoders to try in order, the last one is always the software encoder
+     */
+    public synchronized List<Encoder> resolve(final String format, final int width, final int height, final int cpuCount) {
+        final Encoder software = createSoftwareEncoder(format, width, height, cpuCount);
+        final String path = load().getProperty(getKey(format, width, height));
+        if (SOFTWARE.equals(path)) {
+            return Collections.singletonList(software);
+        }
+        if (HARDWARE.equals(path) || capabilityProvider.isHardwareEncoderAvailable(getMimeType(format), width, height)) {
+            return Arrays.asList(createHardwareEncoder(format, width, height), software);
+        }
+        return Collections.singletonList(software);
+    }
+
+    /**
+     * <p>Remembers that <code>encoder</code> encoded <code>format</code> at this size.
+     */
+    public synchronized void reportSuccess(final String format, final int width, final int height, final Encoder encoder) {
+        save(getKey(format, width, height), encoder.isHardware() ? HARDWARE : SOFTWARE);
+    }
+
+    /**
+     * <p>Remembers that the hardware encoder failed, so the software encoder is used for
+     * <code>format</code> at this size from now on. Failures of the software encoder are not
+     * remembered, there is nothing to fall back to.
+     */
+    public synchronized void reportFailure(final String format, final int width, final int height, final Encoder encoder) {
+        if (encoder.isHardware()) {
+            save(getKey(format, width, height), SOFTWARE);
+        }
+    }
+
+    /**
+     * <p>Forgets every remembered encoder, e.g. after a system update changed the codecs.
+     */
+    public synchronized void clear() {
+        load().clear();
+        storeFile.delete();
+    }
+
+    static String getMimeType(final String format) {
+        return FORMAT_HEVC.equals(format) ? "video/hevc" : "video/avc";
+    }
+
+    /**
+     * <p>Bitrate giving about the quality of CRF 23 with libx264 or CRF 28 with libx265, from the
+     * bits per pixel these settings use on typical camera footage.
+     *
+     * @return bitrate in kbps
+     */
+    static int getEquivalentBitrate(final String format, final int width, final int height) {
+        final double bitsPerPixel = FORMAT_HEVC.equals(format) ? 0.06 : 0.1;
+        final long pixels = (long) ((width > 0) ? width : 1920) * ((height > 0) ? height : 1080);
+        return (int) Math.max(500, Math.round(pixels * FRAME_RATE * bitsPerPixel / 1000));
+    }
+
+    private static Encoder createHardwareEncoder(final String format, final int width, final int height) {
+        final String codecName = FORMAT_HEVC.equals(format) ? "hevc_mediacodec" : "h264_mediacodec";
+        final int bitrate = getEquivalentBitrate(format, width, height);
+        return new Encoder(codecName, true, new String[]{"-c:v", codecName, "-b:v", bitrate + "k", "-g", String.valueOf(FRAME_RATE * 2)});
+    }
+
+    private static Encoder createSoftwareEncoder(final String format, final int width, final int height, final int cpuCount) {
+        final String codecName = FORMAT_HEVC.equals(format) ? "libx265" : "libx264";
+        final String[] qualityOptions = {"-crf", FORMAT_HEVC.equals(format) ? "28" : "23", "-preset", "medium"};
+        final List<String> options = new ArrayList<>(Arrays.asList("-c:v", codecName));
+        options.addAll(Arrays.asList(ParallelismProfile.create(codecName, cpuCount, width, height).appendTo(qualityOptions)));
+        return new Encoder(codecName, false, options.toArray(new String[0]));
+    }
+
+    private static String getKey(final String format, final int width, final int height) {
+        return (width > 0 && height > 0) ? String.format(Locale.ROOT, "%s.%dx%d", format, width, height) : format + ".unknown";
+    }
+
+    private Properties load() {
+        if (store == null) {
+            store = new Properties();
+            if (storeFile.exists()) {
+                try (InputStream inputStream = new FileInputStream(storeFile)) {
+                    store.load(inputStream);
+                } catch (final IOException e) {
+                    Log.w(TAG, String.format("Reading encoder paths from %s failed.", storeFile), e);
+                }
+            }
+        }
+        return store;
+    }
+
+    private void save(final String key, final String path) {
+        final Properties properties = load();
+        if (path.equals(properties.getProperty(key))) {
+            return;
+        }
+        properties.setProperty(key, path);
+
+        try (OutputStream outputStream = new FileOutputStream(storeFile)) {
+            properties.store(outputStream, "Encoders that worked per format and output size");
+        } catch (final IOException e) {
+            Log.w(TAG, String.format("Saving encoder paths to %s failed.", storeFile), e);
+        }
+    }
+
+}
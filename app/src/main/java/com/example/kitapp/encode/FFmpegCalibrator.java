@@ -0,0 +1,141 @@
+package com.example.kitapp.encode;
+
+import com.arthenica.ffmpegkit.FFmpegSession;
+import com.arthenica.ffmpegkit.ReturnCode;
+import com.arthenica.ffmpegkit.Statistics;
+import com.example.kitapp.encode.FilterGraph.Filter;
+import com.example.kitapp.scheduler.FFmpegJob;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * <p>{@link PresetTuner.Calibrator} that encodes the first seconds of a video with FFmpeg, then
+ * compares the output with the same seconds of the video using the <code>ssim</code> filter.
+ *
+ * <p>Sessions run synchronously on the calling thread, which is expected to be the worker of
+ * the tuning job. Audio is dropped, so only the video encoder is measured.
+ */
+public class FFmpegCalibrator implements PresetTuner.Calibrator {
+
+    private static final Pattern SSIM_PATTERN = Pattern.compile("SSIM .*All:([0-9.]+)");
+
+    private final String inputPath;
+    private final File outputFile;
+    private final long sampleDuration;
+    private volatile FFmpegJob currentJob;
+    private volatile boolean cancelled;
+
+    /**
+     * @param inputPath      video the sample is taken from
+     * @param workDirectory  directory the sample encodes are written into
+     * @param sampleDuration milliseconds encoded by each calibration
+     */
+    public FFmpegCalibrator(final String inputPath, final File workDirectory, final long sampleDuration) {
+        this.inputPath = inputPath;
+        this.outputFile = new File(workDirectory, "calibration.mkv");
+        this.sampleDuration = sampleDuration;
+    }
+
+    @Override
+    public PresetTuner.Result calibrate(final String codecName, final PresetTuner.Candidate candidate) throws Exception {
+        try {
+            final FFmpegSession encodeSession = execute(createEncodeArguments(inputPath, outputFile.getAbsolutePath(), sampleDuration, codecName, candidate.getOptions()));
+            final Statistics statistics = encodeSession.getLastReceivedStatistics();
+            if (statistics == null || statistics.getVideoFrameNumber() <= 0) {
+                throw new IOException(String.format("Calibration encode with %s did not report frames", candidate));
+            }
+            final double fps = statistics.getVideoFrameNumber() * 1000.0 / Math.max(1, encodeSession.getDuration());
+
+            final FFmpegSession ssimSession = execute(createSsimArguments(outputFile.getAbsolutePath(), inputPath, sampleDuration));
+            final double ssim = parseSsim(ssimSession.getAllLogsAsString());
+            if (ssim < 0) {
+                throw new IOException(String.format("SSIM of calibration encode with %s not found", candidate));
+            }
+
+            return new PresetTuner.Result(candidate, fps, outputFile.length(), Math.min(sampleDuration, Math.round(statistics.getTime())), ssim);
+        } finally {
+            outputFile.delete();
+        }
+    }
+
+    @Override
+    public void cancel() {
+        cancelled = true;
+        final FFmpegJob job = currentJob;
+        if (job != null) {
+            job.cancel();
+        }
+    }
+
+    private FFmpegSession execute(final String[] arguments) throws Exception {
+        if (cancelled) {
+            throw new InterruptedException("Calibration cancelled");
+        }
+
+        final FFmpegJob job = FFmpegJob.createWithArguments(arguments, null);
+        currentJob = job;
+        try {
+            job.run();
+        } finally {
+            currentJob = null;
+        }
+
+        final FFmpegSession session = job.getSession();
+        if (cancelled || ReturnCode.isCancel(session.getReturnCode())) {
+            throw new InterruptedException("Calibration cancelled");
+        }
+        if (!ReturnCode.isSuccess(session.getReturnCode())) {
+            throw new IOException(String.format("Calibration session failed with rc %s", session.getReturnCode()));
+        }
+        return session;
+    }
+
+    static String[] createEncodeArguments(final String inputPath, final String outputPath, final long sampleDuration, final String codecName, final String[] options) {
+        final List<String> arguments = new ArrayList<>(Arrays.asList("-hide_banner", "-y", "-t", formatSeconds(sampleDuration), "-i", inputPath, "-an", "-c:v", codecName));
+        arguments.addAll(Arrays.asList(options));
+        arguments.addAll(Arrays.asList("-f", "matroska", outputPath));
+        return arguments.toArray(new String[0]);
+    }
+
+    static String[] createSsimArguments(final String encodedPath, final String inputPath, final long sampleDuration) {
+
+        // BOTH SIDES ARE CONVERTED, ENCODERS MAY CHANGE THE PIXEL FORMAT
+        final FilterGraph graph = new FilterGraph();
+        final Filter format = Filter.of("format", "yuv420p");
+        final int output = graph.output(graph.apply(Arrays.asList(graph.apply(graph.input(0), format), graph.apply(graph.input(1), format)), Filter.of("ssim")));
+
+        return new String[]{"-hide_banner", "-i", encodedPath, "-t", formatSeconds(sampleDuration), "-i", inputPath,
+                "-filter_complex", graph.build(), "-map", graph.getOutputLabel(output), "-f", "null", "-"};
+    }
+
+    /**
+     * @return SSIM of all planes printed by the <code>ssim</code> filter, -1 if not found
+     */
+    static double parseSsim(final String logs) {
+        if (logs == null) {
+            return -1;
+        }
+        final Matcher matcher = SSIM_PATTERN.matcher(logs);
+        double ssim = -1;
+        while (matcher.find()) {
+            try {
+                ssim = Double.parseDouble(matcher.group(1));
+            } catch (final NumberFormatException e) {
+                ssim = -1;
+            }
+        }
+        return ssim;
+    }
+
+    private static String formatSeconds(final long milliseconds) {
+        return String.format(Locale.ROOT, "%d.%03d", milliseconds / 1000, milliseconds % 1000);
+    }
+
+}
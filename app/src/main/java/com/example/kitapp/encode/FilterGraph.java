@@ -0,0 +1,312 @@
+package com.example.kitapp.encode;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * <p>Builds an FFmpeg <code>-filter_complex</code> graph from typed filters.
+ *
+ * <p>Link labels are generated, so callers only connect {@link Stream}s. Applying the same
+ * filters to the same streams twice returns the first result, and a stream read more than once
+ * gets a <code>split</code> automatically. Linear runs of filters are written as a single chain.
+ */
+public class FilterGraph {
+
+    /**
+     * <p>A single filter with its options, immutable so common filters can be shared as
+     * constants.
+     */
+    public static final class Filter {
+        private final String text;
+
+        private Filter(final String text) {
+            this.text = text;
+        }
+
+        /**
+         * @param name    filter name
+         * @param options options joined with <code>:</code>, may be empty
+         */
+        public static Filter of(final String name, final String... options) {
+            if (options.length == 0) {
+                return new Filter(name);
+            }
+            final StringBuilder builder = new StringBuilder(name).append('=');
+            for (int i = 0; i < options.length; i++) {
+                if (i > 0) {
+                    builder.append(':');
+                }
+                builder.append(options[i]);
+            }
+            return new Filter(builder.toString());
+        }
+
+        @Override
+        public boolean equals(final Object other) {
+            return other instanceof Filter && ((Filter) other).text.equals(text);
+        }
+
+        @Override
+        public int hashCode() {
+            return text.hashCode();
+        }
+
+        @Override
+        public String toString() {
+            return text;
+        }
+    }
+
+    /**
+     * <p>Output of an input file or of a filter chain.
+     */
+    public static final class Stream {
+        private final int id;
+        private final String inputLabel;
+        private final List<Stream> sources;
+        private final Filter[] filters;
+        private int consumerCount;
+        private Stream firstReader;
+        private boolean output;
+
+        // BUILD STATE
+        private StringBuilder chain;
+        private int nextLabel;
+
+        private Stream(final int id, final String inputLabel, final List<Stream> sources, final Filter[] filters) {
+            this.id = id;
+            this.inputLabel = inputLabel;
+            this.sources = sources;
+            this.filters = filters;
+        }
+
+        private boolean isInput() {
+            return inputLabel != null;
+        }
+    }
+
+    private final List<Stream> streams;
+    private final Map<String, Stream> streamsByKey;
+    private final List<Stream> outputs;
+    private final List<String> outputLabels;
+
+    public FilterGraph() {
+        this.streams = new ArrayList<>();
+        this.streamsByKey = new HashMap<>();
+        this.outputs = new ArrayList<>();
+        this.outputLabels = new ArrayList<>();
+    }
+
+    /**
+     * <p>Returns the video stream of input <code>index</code>. Input streams can be read any
+     * number of times without a split.
+     */
+    public Stream input(final int index) {
+        return input(index + ":v");
+    }
+
+    /**
+     * @param specifier stream specifier, like <code>0:v:0</code>
+     */
+    public Stream input(final String specifier) {
+        final String key = "[" + specifier + "]";
+        Stream stream = streamsByKey.get(key);
+        if (stream == null) {
+            stream = new Stream(streams.size(), key, Collections.<Stream>emptyList(), new Filter[0]);
+            streams.add(stream);
+            streamsByKey.put(key, stream);
+        }
+        return stream;
+    }
+
+    /**
+     * <p>Applies <code>filters</code> to <code>source</code>.
+     *
+     * @return the new stream, or the existing one if these filters were applied to
+     * <code>source</code> before
+     */
+    public Stream apply(final Stream source, final Filter... filters) {
+        return apply(Collections.singletonList(source), filters);
+    }
+
+    /**
+     * <p>Applies <code>filters</code> to several sources, the first filter receives them in
+     * order.
+     */
+    public Stream apply(final List<Stream> sources, final Filter... filters) {
+        if (filters.length == 0) {
+            throw new IllegalArgumentException("At least one filter is required.");
+        }
+        final String key = createKey(sources, filters);
+        final Stream existing = streamsByKey.get(key);
+        if (existing != null) {
+            return existing;
+        }
+
+        final Stream stream = new Stream(streams.size(), null, new ArrayList<>(sources), filters.clone());
+        for (Stream source : sources) {
+            requireOwned(source);
+            source.consumerCount++;
+            if (source.firstReader == null) {
+                source.firstReader = stream;
+            }
+        }
+        streams.add(stream);
+        streamsByKey.put(key, stream);
+        return stream;
+    }
+
+    /**
+     * <p>Ends <code>source</code> in filters that have no output, like <code>nullsink</code>.
+     */
+    public void sink(final Stream source, final Filter... filters) {
+        final Stream sink = apply(source, filters);
+        sink.consumerCount = -1;
+    }
+
+    /**
+     * <p>Marks <code>stream</code> as a graph output.
+     *
+     * @return index to pass to {@link #getOutputLabel(int)} after {@link #build()}
+     */
+    public int output(final Stream stream) {
+        requireOwned(stream);
+        if (stream.isInput()) {
+            throw new IllegalArgumentException("Inputs can be mapped directly.");
+        }
+        stream.consumerCount++;
+        stream.output = true;
+        outputs.add(stream);
+        return outputs.size() - 1;
+    }
+
+    /**
+     * <p>Writes the graph. Streams are written in the order they were created, so every chain
+     * comes after the chains it reads.
+     *
+     * @return value of the <code>-filter_complex</code> option
+     */
+    public String build() {
+        for (Stream stream : streams) {
+            stream.chain = null;
+            stream.nextLabel = 0;
+        }
+        outputLabels.clear();
+
+        final List<StringBuilder> chains = new ArrayList<>();
+        for (Stream stream : streams) {
+            if (stream.isInput()) {
+                continue;
+            }
+
+            final Stream source = stream.sources.size() == 1 ? stream.sources.get(0) : null;
+            if (source != null && !source.isInput() && source.consumerCount == 1 && isContinued(source)) {
+
+                // THE ONLY READER OF A CHAIN CONTINUES IT
+                stream.chain = source.chain;
+                source.chain = null;
+                stream.chain.append(',');
+            } else {
+                stream.chain = new StringBuilder();
+                chains.add(stream.chain);
+                for (Stream input : stream.sources) {
+                    stream.chain.append(nextLabel(input));
+                }
+            }
+            appendFilters(stream.chain, stream.filters);
+
+            if (stream.consumerCount > 1) {
+                stream.chain.append(",split=").append(stream.consumerCount);
+            }
+            if (stream.consumerCount > 1 || (stream.consumerCount == 1 && !isContinued(stream))) {
+                appendLabels(stream);
+            }
+        }
+
+        for (Stream output : outputs) {
+            outputLabels.add(nextLabel(output));
+        }
+
+        final StringBuilder graph = new StringBuilder();
+        for (StringBuilder chain : chains) {
+            if (graph.length() > 0) {
+                graph.append(';');
+            }
+            graph.append(chain);
+        }
+        return graph.toString();
+    }
+
+    /**
+     * @return label to pass to <code>-map</code> for output <code>index</code>
+     */
+    public String getOutputLabel(final int index) {
+        return outputLabels.get(index);
+    }
+
+    /**
+     * @return number of filter chains created, shared chains counted once
+     */
+    public int getChainCount() {
+        int count = 0;
+        for (Stream stream : streams) {
+            if (!stream.isInput()) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * @return true if the only reader of <code>stream</code> continues its chain
+     */
+    private static boolean isContinued(final Stream stream) {
+        return !stream.output && stream.firstReader != null && stream.firstReader.sources.size() == 1;
+    }
+
+    private static void appendLabels(final Stream stream) {
+        if (stream.consumerCount == 1) {
+            stream.chain.append("[s").append(stream.id).append(']');
+        } else {
+            for (int i = 0; i < stream.consumerCount; i++) {
+                stream.chain.append("[s").append(stream.id).append('_').append(i).append(']');
+            }
+        }
+    }
+
+    private static String nextLabel(final Stream stream) {
+        if (stream.isInput()) {
+            return stream.inputLabel;
+        }
+        final int index = stream.nextLabel++;
+        return (stream.consumerCount == 1) ? "[s" + stream.id + "]" : "[s" + stream.id + "_" + index + "]";
+    }
+
+    private static void appendFilters(final StringBuilder builder, final Filter[] filters) {
+        for (int i = 0; i < filters.length; i++) {
+            if (i > 0) {
+                builder.append(',');
+            }
+            builder.append(filters[i].text);
+        }
+    }
+
+    private static String createKey(final List<Stream> sources, final Filter[] filters) {
+        final StringBuilder key = new StringBuilder();
+        for (Stream source : sources) {
+            key.append(source.id).append(' ');
+        }
+        appendFilters(key, filters);
+        return key.toString();
+    }
+
+    private void requireOwned(final Stream stream) {
+        if (stream.id >= streams.size() || streams.get(stream.id) != stream) {
+            throw new IllegalArgumentException("Stream belongs to another filter graph.");
+        }
+    }
+
+}
@@ -0,0 +1,67 @@
+package com.example.kitapp.encode;
+
+import static android.content.ContentValues.TAG;
+
+import android.media.MediaCodecInfo;
+import android.media.MediaCodecList;
+import android.os.Build;
+import android.util.Log;
+
+import java.util.Locale;
+
+/**
+ * <p>{@link EncoderResolver.CapabilityProvider} reading the encoders advertised by
+ * {@link MediaCodecList}.
+ *
+ * <p>Before Android 10 codecs do not say whether they are hardware accelerated, so the software
+ * codecs shipped with Android are recognised by their name prefixes.
+ */
+public class MediaCodecCapabilityProvider implements EncoderResolver.CapabilityProvider {
+
+    private MediaCodecInfo[] codecInfos;
+
+    @Override
+    public synchronized boolean isHardwareEncoderAvailable(final String mimeType, final int width, final int height) {
+        if (codecInfos == null) {
+            try {
+                codecInfos = new MediaCodecList(MediaCodecList.REGULAR_CODECS).getCodecInfos();
+            } catch (final RuntimeException e) {
+                Log.w(TAG, "Listing media codecs failed.", e);
+                codecInfos = new MediaCodecInfo[0];
+            }
+        }
+
+        for (MediaCodecInfo codecInfo : codecInfos) {
+            if (!codecInfo.isEncoder() || !isHardware(codecInfo)) {
+                continue;
+            }
+            for (String supportedType : codecInfo.getSupportedTypes()) {
+                if (supportedType.equalsIgnoreCase(mimeType) && isSizeSupported(codecInfo, mimeType, width, height)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private static boolean isHardware(final MediaCodecInfo codecInfo) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q) {
+            return codecInfo.isHardwareAccelerated() && !codecInfo.isSoftwareOnly();
+        }
+        final String name = codecInfo.getName().toLowerCase(Locale.ROOT);
+        return !name.startsWith("omx.google.") && !name.startsWith("c2.android.") && !name.contains(".sw.");
+    }
+
+    private static boolean isSizeSupported(final MediaCodecInfo codecInfo, final String mimeType, final int width, final int height) {
+        if (width <= 0 || height <= 0) {
+            return true;
+        }
+        try {
+            final MediaCodecInfo.VideoCapabilities videoCapabilities = codecInfo.getCapabilitiesForType(mimeType).getVideoCapabilities();
+            return videoCapabilities == null || videoCapabilities.isSizeSupported(width, height);
+        } catch (final IllegalArgumentException e) {
+            return false;
+        }
+    }
+
+}
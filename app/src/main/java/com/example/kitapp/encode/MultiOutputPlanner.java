@@ -0,0 +1,186 @@
+package com.example.kitapp.encode;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * <p>Builds a single FFmpeg command writing several renditions of one input.
+ *
+ * <p>The input is decoded once. Video is fanned out with a <code>split</code> filter, and each
+ * branch is scaled on its own if its output asks for a smaller height. Audio is decoded once
+ * too and mapped into every output, which applies its own encode options.
+ */
+public class MultiOutputPlanner {
+
+    public static class Output {
+        private final String path;
+        private final int height;
+        private final String[] videoOptions;
+        private final String[] audioOptions;
+
+        /**
+         * @param path         output file path
+         * @param height       output height, 0 to keep the input size
+         * @param videoOptions video encode options, null for an audio only output
+         * @param audioOptions audio encode options, null for an output without audio
+         */
+        public Output(final String path, final int height, final String[] videoOptions, final String[] audioOptions) {
+            this.path = path;
+            this.height = height;
+            this.videoOptions = videoOptions;
+            this.audioOptions = audioOptions;
+        }
+
+        /**
+         * <p>Creates an audio only output.
+         */
+        public static Output audio(final String path, final String[] audioOptions) {
+            return new Output(path, 0, null, audioOptions);
+        }
+
+        public String getPath() {
+            return path;
+        }
+
+        public int getHeight() {
+            return height;
+        }
+
+        public String[] getVideoOptions() {
+            return videoOptions;
+        }
+
+        public String[] getAudioOptions() {
+            return audioOptions;
+        }
+
+        public boolean hasVideo() {
+            return videoOptions != null;
+        }
+
+        public boolean hasAudio() {
+            return audioOptions != null;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.ROOT, "Output{path=%s, height=%d, video=%s, audio=%s}", path, height, Arrays.toString(videoOptions), Arrays.toString(audioOptions));
+        }
+    }
+
+    /**
+     * @param inputPath input file path
+     * @param outputs   outputs to write, at least one
+     * @return FFmpeg arguments encoding all outputs in one session
+     */
+    public static String[] createArguments(final String inputPath, final List<Output> outputs) {
+        if (outputs.isEmpty()) {
+            throw new IllegalArgumentException("At least one output is required.");
+        }
+
+        final List<String> arguments = new ArrayList<>(Arrays.asList("-hide_banner", "-y", "-i", inputPath));
+
+        final String filterGraph = createFilterGraph(outputs);
+        if (filterGraph != null) {
+            arguments.add("-filter_complex");
+            arguments.add(filterGraph);
+        }
+
+        int videoIndex = 0;
+        for (Output output : outputs) {
+            if (output.hasVideo()) {
+                arguments.add("-map");
+                arguments.add((filterGraph != null) ? "[v" + videoIndex + "]" : "0:v:0");
+                arguments.addAll(Arrays.asList(output.getVideoOptions()));
+                videoIndex++;
+            } else {
+                arguments.add("-vn");
+            }
+
+            if (output.hasAudio()) {
+                arguments.add("-map");
+
+                // VIDEO OUTPUTS MUST NOT FAIL FOR INPUTS WITHOUT AUDIO
+                arguments.add(output.hasVideo() ? "0:a:0?" : "0:a:0");
+                arguments.addAll(Arrays.asList(output.getAudioOptions()));
+            } else {
+                arguments.add("-an");
+            }
+
+            arguments.add(output.getPath());
+        }
+
+        return arguments.toArray(new String[0]);
+    }
+
+    /**
+     * @return a graph splitting the first video stream into one labelled branch per video output,
+     * <code>[v0]</code> to <code>[vN-1]</code>, or null if a plain stream mapping is enough
+     */
+    static String createFilterGraph(final List<Output> outputs) {
+        int videoOutputs = 0;
+        boolean scaled = false;
+        for (Output output : outputs) {
+            if (output.hasVideo()) {
+                videoOutputs++;
+                scaled |= output.getHeight() > 0;
+            }
+        }
+
+        // A SINGLE UNSCALED OUTPUT CAN READ THE DECODED STREAM DIRECTLY
+        if (videoOutputs == 0 || (videoOutputs == 1 && !scaled)) {
+            return null;
+        }
+
+        final StringBuilder graph = new StringBuilder();
+        if (videoOutputs > 1) {
+            graph.append("[0:v:0]split=").append(videoOutputs);
+            for (int i = 0; i < videoOutputs; i++) {
+                graph.append("[s").append(i).append(']');
+            }
+        }
+
+        int videoIndex = 0;
+        for (Output output : outputs) {
+            if (!output.hasVideo()) {
+                continue;
+            }
+            if (videoOutputs > 1) {
+                graph.append(";[s").append(videoIndex).append(']');
+            } else {
+                graph.append("[0:v:0]");
+            }
+            if (output.getHeight() > 0) {
+
+                // -2 KEEPS THE ASPECT RATIO WITH AN EVEN WIDTH, WHICH MOST ENCODERS REQUIRE
+                graph.append("scale=-2:").append(output.getHeight());
+            } else {
+                graph.append("null");
+            }
+            graph.append("[v").append(videoIndex).append(']');
+            videoIndex++;
+        }
+
+        return graph.toString();
+    }
+
+    /**
+     * <p>Turns a codec name like <code>mp3 (liblame)</code> into a part of a file name like
+     * <code>mp3_liblame</code>, so outputs of codecs sharing an extension do not collide.
+     */
+    public static String toFileNamePart(final String name) {
+        final String part = name.replaceAll("[^A-Za-z0-9]+", "_");
+        int start = 0;
+        int end = part.length();
+        while (start < end && part.charAt(start) == '_') {
+            start++;
+        }
+        while (end > start && part.charAt(end - 1) == '_') {
+            end--;
+        }
+        return part.substring(start, end);
+    }
+
+}
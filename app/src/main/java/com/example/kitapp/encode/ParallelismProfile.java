@@ -0,0 +1,225 @@
+package com.example.kitapp.encode;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * <p>Threading and tiling options of a video encoder, computed from the number of cores and the
+ * output resolution.
+ *
+ * <p>Without these options libvpx-vp9 and libaom-av1 encode a single tile column on one or two
+ * threads. Tiles narrower than {@link #MIN_TILE_WIDTH} pixels are not allowed by either encoder,
+ * so small videos get fewer tiles and rely on row based multi-threading instead. x264 and x265
+ * threads are limited by the number of macroblock and CTU rows, since frame threads waiting on
+ * the rows above them do not add speed.
+ */
+public class ParallelismProfile {
+
+    /**
+     * Threads beyond this count slow down every supported encoder.
+     */
+    public static final int MAX_THREADS = 16;
+
+    /**
+     * Smallest tile width accepted by libvpx and libaom, in pixels.
+     */
+    public static final int MIN_TILE_WIDTH = 256;
+
+    /**
+     * Options set by profiles, calibrated presets or the hardware encoder that only change how
+     * fast an encode runs, each followed by its value.
+     */
+    private static final List<String> PARALLELISM_OPTIONS = Arrays.asList("-threads", "-row-mt", "-tile-columns", "-tile-rows", "-cpu-used", "-x265-params", "-kvazaar-params");
+
+    /**
+     * Size assumed when the output size is not known.
+     */
+    private static final int DEFAULT_WIDTH = 1920;
+    private static final int DEFAULT_HEIGHT = 1080;
+
+    private final String codecName;
+    private final int cpuCount;
+    private final int width;
+    private final int height;
+    private final int threadCount;
+    private final int tileColumns;
+    private final int tileRows;
+    private final int frameThreads;
+    private final int cpuUsed;
+    private final String[] options;
+
+    private ParallelismProfile(final String codecName, final int cpuCount, final int width, final int height) {
+        this.codecName = codecName;
+        this.cpuCount = Math.max(1, cpuCount);
+        this.width = (width > 0) ? width : DEFAULT_WIDTH;
+        this.height = (height > 0) ? height : DEFAULT_HEIGHT;
+
+        final List<String> options = new ArrayList<>();
+        int threadCount = Math.min(this.cpuCount, MAX_THREADS);
+        int tileColumns = 0;
+        int tileRows = 0;
+        int frameThreads = 0;
+        int cpuUsed = -1;
+
+        switch (codecName) {
+            case "libx264":
+                threadCount = Math.min(threadCount, Math.max(1, ceilDiv(this.height, 16) / 2));
+                options.addAll(Arrays.asList("-threads", String.valueOf(threadCount)));
+                break;
+            case "libx265":
+                frameThreads = (this.cpuCount >= 16) ? 4 : (this.cpuCount >= 8) ? 3 : (this.cpuCount >= 4) ? 2 : 1;
+                frameThreads = Math.min(frameThreads, Math.max(1, ceilDiv(this.height, 64) / 2));
+                options.addAll(Arrays.asList("-x265-params", String.format(Locale.ROOT, "pools=%d:frame-threads=%d", threadCount, frameThreads)));
+                break;
+            case "libvpx":
+                threadCount = Math.min(threadCount, Math.max(1, ceilDiv(this.height, 16) / 2));
+                options.addAll(Arrays.asList("-threads", String.valueOf(threadCount)));
+                break;
+            case "libvpx-vp9":
+                tileColumns = Math.min(log2(threadCount), log2(this.width / MIN_TILE_WIDTH));
+                options.addAll(Arrays.asList("-threads", String.valueOf(threadCount), "-row-mt", "1", "-tile-columns", String.valueOf(tileColumns)));
+                break;
+            case "libaom-av1":
+                tileColumns = Math.min(log2(threadCount), log2(this.width / MIN_TILE_WIDTH));
+                tileRows = Math.min(log2(threadCount) - tileColumns, log2(this.height / MIN_TILE_WIDTH));
+
+                // FEWER CORES NEED A FASTER SPEED SETTING TO STAY USABLE ON A PHONE
+                cpuUsed = (this.cpuCount >= 8) ? 6 : (this.cpuCount >= 4) ? 7 : 8;
+                options.addAll(Arrays.asList("-threads", String.valueOf(threadCount), "-row-mt", "1", "-tile-columns", String.valueOf(tileColumns),
+                        "-tile-rows", String.valueOf(tileRows), "-cpu-used", String.valueOf(cpuUsed)));
+                break;
+            case "libkvazaar":
+                options.addAll(Arrays.asList("-kvazaar-params", "threads=" + threadCount));
+                break;
+            default:
+
+                // OTHER ENCODERS KEEP THEIR OWN DEFAULTS
+                threadCount = 0;
+                break;
+        }
+
+        this.threadCount = threadCount;
+        this.tileColumns = tileColumns;
+        this.tileRows = tileRows;
+        this.frameThreads = frameThreads;
+        this.cpuUsed = cpuUsed;
+        this.options = options.toArray(new String[0]);
+    }
+
+    /**
+     * @param codecName FFmpeg encoder name, e.g. <code>libvpx-vp9</code>
+     * @param width     output width, 0 if not known
+     * @param height    output height, 0 if not known
+     */
+    public static ParallelismProfile create(final String codecName, final int width, final int height) {
+        return create(codecName, Runtime.getRuntime().availableProcessors(), width, height);
+    }
+
+    public static ParallelismProfile create(final String codecName, final int cpuCount, final int width, final int height) {
+        return new ParallelismProfile(codecName, cpuCount, width, height);
+    }
+
+    public String getCodecName() {
+        return codecName;
+    }
+
+    public int getCpuCount() {
+        return cpuCount;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * @return threads given to the encoder, 0 if the encoder chooses
+     */
+    public int getThreadCount() {
+        return threadCount;
+    }
+
+    /**
+     * @return log2 of the tile column count
+     */
+    public int getTileColumns() {
+        return tileColumns;
+    }
+
+    /**
+     * @return log2 of the tile row count
+     */
+    public int getTileRows() {
+        return tileRows;
+    }
+
+    /**
+     * @return x265 frame threads, 0 for other encoders
+     */
+    public int getFrameThreads() {
+        return frameThreads;
+    }
+
+    /**
+     * @return libaom speed setting, -1 for other encoders
+     */
+    public int getCpuUsed() {
+        return cpuUsed;
+    }
+
+    /**
+     * @return encoder options, empty if the encoder is not supported
+     */
+    public String[] getOptions() {
+        return options.clone();
+    }
+
+    /**
+     * @return <code>encodeOptions</code> followed by the options of this profile
+     */
+    public String[] appendTo(final String[] encodeOptions) {
+        final List<String> arguments = new ArrayList<>(Arrays.asList(encodeOptions));
+        arguments.addAll(Arrays.asList(options));
+        return arguments.toArray(new String[0]);
+    }
+
+    /**
+     * <p>Removes threading, tiling and speed options, e.g. to tell whether two encodes differ in
+     * anything but the cores they were given.
+     *
+     * @return <code>encodeOptions</code> without the options a profile sets
+     */
+    public static String[] removeFrom(final String[] encodeOptions) {
+        final List<String> arguments = new ArrayList<>();
+        for (int i = 0; i < encodeOptions.length; i++) {
+            if (PARALLELISM_OPTIONS.contains(encodeOptions[i])) {
+                i++;
+            } else {
+                arguments.add(encodeOptions[i]);
+            }
+        }
+        return arguments.toArray(new String[0]);
+    }
+
+    @Override
+    public String toString() {
+        return String.format(Locale.ROOT, "ParallelismProfile{codec=%s, cpus=%d, size=%dx%d, options=%s}", codecName, cpuCount, width, height, Arrays.toString(options));
+    }
+
+    private static int ceilDiv(final int value, final int divisor) {
+        return (value + divisor - 1) / divisor;
+    }
+
+    /**
+     * @return floor of log2 of <code>value</code>, 0 for values below 2
+     */
+    private static int log2(final int value) {
+        return (value < 2) ? 0 : 31 - Integer.numberOfLeadingZeros(value);
+    }
+
+}
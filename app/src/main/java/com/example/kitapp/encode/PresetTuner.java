@@ -0,0 +1,446 @@
+package com.example.kitapp.encode;
+
+import static android.content.ContentValues.TAG;
+
+import android.content.Context;
+import android.util.Log;
+
+import com.example.kitapp.scheduler.Job;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Properties;
+import java.util.Set;
+
+/**
+ * <p>Finds the encoder settings that suit this device best, by encoding a short sample with
+ * every candidate preset, thread count and tile layout of a codec.
+ *
+ * <p>Each calibration measures the encoding speed, the output bitrate and the SSIM of the
+ * output against the sample. The candidate chosen for a {@link Budget} is persisted in a
+ * properties file, so later encodes use it without calibrating again. Codecs without candidates
+ * are not tuned and keep their default options.
+ */
+public class PresetTuner {
+
+    public enum Goal {
+
+        /**
+         * Fastest candidate that meets the quality budget.
+         */
+        SPEED,
+
+        /**
+         * Best quality candidate that is at least as fast as the target speed.
+         */
+        QUALITY
+    }
+
+    public static class Budget {
+        public static final Budget DEFAULT = new Budget(Goal.SPEED, 0.95, 0, 30);
+
+        private final Goal goal;
+        private final double minSsim;
+        private final int maxBitrate;
+        private final double targetFps;
+
+        /**
+         * @param goal       what the choice optimizes
+         * @param minSsim    lowest acceptable SSIM, between 0 and 1
+         * @param maxBitrate highest acceptable bitrate in kbps, 0 for no limit
+         * @param targetFps  encoding speed the {@link Goal#QUALITY} goal must reach
+         */
+        public Budget(final Goal goal, final double minSsim, final int maxBitrate, final double targetFps) {
+            this.goal = goal;
+            this.minSsim = minSsim;
+            this.maxBitrate = maxBitrate;
+            this.targetFps = targetFps;
+        }
+
+        public Goal getGoal() {
+            return goal;
+        }
+
+        public double getMinSsim() {
+            return minSsim;
+        }
+
+        public int getMaxBitrate() {
+            return maxBitrate;
+        }
+
+        public double getTargetFps() {
+            return targetFps;
+        }
+
+        boolean accepts(final Result result) {
+            return result.ssim >= minSsim && (maxBitrate <= 0 || result.getBitrate() <= maxBitrate);
+        }
+
+        /**
+         * @return key of the choices made for this budget in the store
+         */
+        String getKey() {
+            return String.format(Locale.ROOT, "%s_%.3f_%d_%.1f", goal.name().toLowerCase(Locale.ROOT), minSsim, maxBitrate, targetFps);
+        }
+    }
+
+    public static class Candidate {
+        private final String name;
+        private final String[] options;
+
+        /**
+         * @param name    short description, e.g. <code>preset=fast threads=4</code>
+         * @param options encoder options without the <code>-c:v</code> option
+         */
+        public Candidate(final String name, final String[] options) {
+            this.name = name;
+            this.options = options;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public String[] getOptions() {
+            return options.clone();
+        }
+
+        @Override
+        public String toString() {
+            return name;
+        }
+    }
+
+    public static class Result {
+        private final Candidate candidate;
+        private final double fps;
+        private final long size;
+        private final long duration;
+        private final double ssim;
+
+        /**
+         * @param fps      frames encoded per second
+         * @param size     output size in bytes
+         * @param duration sample duration in milliseconds
+         * @param ssim     SSIM of the output against the sample
+         */
+        public Result(final Candidate candidate, final double fps, final long size, final long duration, final double ssim) {
+            this.candidate = candidate;
+            this.fps = fps;
+            this.size = size;
+            this.duration = duration;
+            this.ssim = ssim;
+        }
+
+        public Candidate getCandidate() {
+            return candidate;
+        }
+
+        public double getFps() {
+            return fps;
+        }
+
+        public long getSize() {
+            return size;
+        }
+
+        public double getSsim() {
+            return ssim;
+        }
+
+        /**
+         * @return output bitrate in kbps
+         */
+        public double getBitrate() {
+            return (duration > 0) ? size * 8.0 / duration : 0;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.ROOT, "%s: %.1f fps, %.0f kbps, ssim %.4f", candidate, fps, getBitrate(), ssim);
+        }
+    }
+
+    public interface Calibrator {
+
+        /**
+         * <p>Encodes the sample with <code>candidate</code> and measures the output. Blocks until
+         * the encode and the measurement are finished.
+         *
+         * @throws Exception if the sample can not be encoded with this candidate
+         */
+        Result calibrate(final String codecName, final Candidate candidate) throws Exception;
+
+        /**
+         * <p>Stops the running calibration.
+         */
+        void cancel();
+
+    }
+
+    public interface TuningCallback {
+
+        /**
+         * @param chosen result of the chosen candidate, null if no candidate could be encoded
+         */
+        void apply(final String codecName, final Result chosen, final List<Result> results);
+
+    }
+
+    private final File storeFile;
+    private Properties store;
+
+    public PresetTuner(final File storeFile) {
+        this.storeFile = storeFile;
+    }
+
+    public static PresetTuner create(final Context context) {
+        return new PresetTuner(new File(context.getFilesDir(), "preset_tuner.properties"));
+    }
+
+    /**
+     * @return true if <code>codecName</code> has candidates to choose from
+     */
+    public static boolean isTunable(final String codecName) {
+        return !getCandidates(codecName, 1).isEmpty();
+    }
+
+    /**
+     * @return options chosen for <code>codecName</code> and <code>budget</code>, null if the
+     * codec has not been tuned for this budget
+     */
+    public synchronized String[] getTunedOptions(final String codecName, final Budget budget) {
+        final String options = load().getProperty(getKey(codecName, budget));
+        if (options == null) {
+            return null;
+        }
+        return options.isEmpty() ? new String[0] : options.split(" ");
+    }
+
+    /**
+     * @return tuned options of <code>codecName</code>, or <code>defaultOptions</code> if it has not
+     * been tuned for <code>budget</code>
+     */
+    public String[] getOptions(final String codecName, final Budget budget, final String[] defaultOptions) {
+        final String[] tunedOptions = getTunedOptions(codecName, budget);
+        return (tunedOptions != null) ? tunedOptions : defaultOptions;
+    }
+
+    /**
+     * <p>Calibrates every candidate of <code>codecName</code> one after the other, then persists
+     * and returns the one chosen for <code>budget</code>.
+     *
+     * @param results receives the result of each candidate that could be encoded, may be null
+     * @return chosen result, null if no candidate could be encoded
+     */
+    public Result tune(final String codecName, final Budget budget, final Calibrator calibrator, final List<Result> results) throws InterruptedException {
+        final List<Result> calibrated = (results != null) ? results : new ArrayList<Result>();
+        for (Candidate candidate : getCandidates(codecName, Runtime.getRuntime().availableProcessors())) {
+            if (Thread.currentThread().isInterrupted()) {
+                throw new InterruptedException("Tuning " + codecName + " interrupted");
+            }
+            final Result result;
+            try {
+                result = calibrator.calibrate(codecName, candidate);
+            } catch (final InterruptedException e) {
+                throw e;
+            } catch (final Exception e) {
+                Log.w(TAG, String.format("Calibrating %s with %s failed.", codecName, candidate), e);
+                continue;
+            }
+            Log.d(TAG, String.format("Calibrated %s %s", codecName, result));
+            calibrated.add(result);
+        }
+
+        final Result chosen = select(calibrated, budget);
+        if (chosen != null) {
+            save(getKey(codecName, budget), chosen);
+        }
+        return chosen;
+    }
+
+    /**
+     * @return job running {@link #tune(String, Budget, Calibrator, List)}, for a
+     * {@link com.example.kitapp.scheduler.JobScheduler}; <code>callback</code> is invoked when it
+     * finishes without being cancelled
+     */
+    public Job createTuningJob(final String codecName, final Budget budget, final Calibrator calibrator, final TuningCallback callback) {
+        return new Job() {
+            private volatile Thread thread;
+
+            @Override
+            public void run() throws Exception {
+                thread = Thread.currentThread();
+                try {
+                    final List<Result> results = new ArrayList<>();
+                    final Result chosen = tune(codecName, budget, calibrator, results);
+                    if (callback != null) {
+                        callback.apply(codecName, chosen, results);
+                    }
+                } finally {
+                    thread = null;
+                }
+            }
+
+            @Override
+            public void cancel() {
+                calibrator.cancel();
+                final Thread currentThread = thread;
+                if (currentThread != null) {
+                    currentThread.interrupt();
+                }
+            }
+        };
+    }
+
+    /**
+     * <p>Forgets every tuned choice.
+     */
+    public synchronized void clear() {
+        load().clear();
+        storeFile.delete();
+    }
+
+    /**
+     * @return result chosen for <code>budget</code>; the candidate with the best SSIM if none
+     * meets the quality budget, null if <code>results</code> is empty
+     */
+    static Result select(final List<Result> results, final Budget budget) {
+        Result best = null;
+        for (Result result : results) {
+            if (!budget.accepts(result)) {
+                continue;
+            }
+            if (best == null) {
+                best = result;
+            } else if (budget.goal == Goal.SPEED) {
+                if (result.fps > best.fps || (result.fps == best.fps && result.size < best.size)) {
+                    best = result;
+                }
+            } else {
+                final boolean resultFastEnough = result.fps >= budget.targetFps;
+                final boolean bestFastEnough = best.fps >= budget.targetFps;
+
+                // BELOW THE TARGET SPEED ONLY SPEED COUNTS
+                if (resultFastEnough != bestFastEnough) {
+                    if (resultFastEnough) {
+                        best = result;
+                    }
+                } else if (!resultFastEnough) {
+                    if (result.fps > best.fps) {
+                        best = result;
+                    }
+                } else if (result.ssim > best.ssim || (result.ssim == best.ssim && result.size < best.size)) {
+                    best = result;
+                }
+            }
+        }
+
+        if (best == null) {
+            for (Result result : results) {
+                if (best == null || result.ssim > best.ssim) {
+                    best = result;
+                }
+            }
+        }
+        return best;
+    }
+
+    /**
+     * @return candidates of <code>codecName</code> for a device with <code>cpuCount</code> cores,
+     * empty if the codec is not tuned
+     */
+    static List<Candidate> getCandidates(final String codecName, final int cpuCount) {
+        final Set<Integer> threadCounts = new LinkedHashSet<>(Arrays.asList(cpuCount, Math.max(1, cpuCount / 2)));
+        final List<Candidate> candidates = new ArrayList<>();
+
+        switch (codecName) {
+            case "libx264":
+                addPresets(candidates, threadCounts, new String[]{"-crf", "23"}, "ultrafast", "superfast", "veryfast", "faster", "fast", "medium");
+                break;
+            case "libx265":
+                addPresets(candidates, threadCounts, new String[]{"-crf", "28"}, "ultrafast", "superfast", "veryfast", "faster", "fast");
+                break;
+            case "libvpx-vp9":
+                for (int cpuUsed = 5; cpuUsed <= 8; cpuUsed++) {
+                    for (int tileColumns : new int[]{0, 2}) {
+                        candidates.add(new Candidate(String.format(Locale.ROOT, "cpu-used=%d tile-columns=%d", cpuUsed, tileColumns),
+                                new String[]{"-b:v", "2M", "-deadline", "realtime", "-cpu-used", String.valueOf(cpuUsed),
+                                        "-row-mt", "1", "-tile-columns", String.valueOf(tileColumns), "-threads", String.valueOf(cpuCount)}));
+                    }
+                }
+                break;
+            case "libaom-av1":
+                for (int cpuUsed = 6; cpuUsed <= 8; cpuUsed++) {
+                    for (int tileColumns : new int[]{0, 1}) {
+                        candidates.add(new Candidate(String.format(Locale.ROOT, "cpu-used=%d tile-columns=%d", cpuUsed, tileColumns),
+                                new String[]{"-crf", "30", "-b:v", "0", "-cpu-used", String.valueOf(cpuUsed), "-usage", "realtime",
+                                        "-row-mt", "1", "-tile-columns", String.valueOf(tileColumns), "-threads", String.valueOf(cpuCount), "-strict", "experimental"}));
+                    }
+                }
+                break;
+        }
+
+        return Collections.unmodifiableList(candidates);
+    }
+
+    private static void addPresets(final List<Candidate> candidates, final Set<Integer> threadCounts, final String[] rateOptions, final String... presets) {
+        for (String preset : presets) {
+            for (int threads : threadCounts) {
+                final List<String> options = new ArrayList<>(Arrays.asList(rateOptions));
+                options.addAll(Arrays.asList("-preset", preset, "-threads", String.valueOf(threads)));
+                candidates.add(new Candidate(String.format(Locale.ROOT, "preset=%s threads=%d", preset, threads), options.toArray(new String[0])));
+            }
+        }
+    }
+
+    private static String getKey(final String codecName, final Budget budget) {
+        return codecName + "." + budget.getKey();
+    }
+
+    private Properties load() {
+        if (store == null) {
+            store = new Properties();
+            if (storeFile.exists()) {
+                try (InputStream inputStream = new FileInputStream(storeFile)) {
+                    store.load(inputStream);
+                } catch (final IOException e) {
+                    Log.w(TAG, String.format("Reading tuned presets from %s failed.", storeFile), e);
+                }
+            }
+        }
+        return store;
+    }
+
+    private synchronized void save(final String key, final Result chosen) {
+        final StringBuilder options = new StringBuilder();
+        for (String option : chosen.candidate.options) {
+            if (options.length() > 0) {
+                options.append(' ');
+            }
+            options.append(option);
+        }
+
+        final Properties properties = load();
+        properties.setProperty(key, options.toString());
+        properties.setProperty(key + ".result", chosen.toString());
+
+        try (OutputStream outputStream = new FileOutputStream(storeFile)) {
+            properties.store(outputStream, "Encoder settings chosen by calibration");
+        } catch (final IOException e) {
+            Log.w(TAG, String.format("Saving tuned presets to %s failed.", storeFile), e);
+        }
+    }
+
+}
@@ -0,0 +1,204 @@
+package com.example.kitapp.encode;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * <p>Splits a video into GOP aligned segments that can be encoded independently.
+ *
+ * <p>Keyframe positions come from an ffprobe packet listing, see
+ * {@link #parseKeyframes(String)}. Every segment except the first starts on a keyframe, so
+ * segments can be cut without decoding frames of their neighbours.
+ */
+public class SegmentPlanner {
+
+    /**
+     * Segments shorter than this are not worth a separate FFmpeg session.
+     */
+    public static final double MIN_SEGMENT_DURATION = 5.0;
+
+    public static class Segment {
+        private final int index;
+        private final double startTime;
+        private final double endTime;
+
+        public Segment(final int index, final double startTime, final double endTime) {
+            this.index = index;
+            this.startTime = startTime;
+            this.endTime = endTime;
+        }
+
+        public int getIndex() {
+            return index;
+        }
+
+        /**
+         * @return start time in seconds
+         */
+        public double getStartTime() {
+            return startTime;
+        }
+
+        /**
+         * @return end time in seconds
+         */
+        public double getEndTime() {
+            return endTime;
+        }
+
+        public double getDuration() {
+            return endTime - startTime;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.ROOT, "Segment{index=%d, start=%.3f, end=%.3f}", index, startTime, endTime);
+        }
+    }
+
+    public static class KeyframeIndex {
+        private final double duration;
+        private final double[] keyframeTimes;
+
+        public KeyframeIndex(final double duration, final double[] keyframeTimes) {
+            this.duration = duration;
+            this.keyframeTimes = keyframeTimes;
+        }
+
+        /**
+         * @return media duration in seconds, 0 if unknown
+         */
+        public double getDuration() {
+            return duration;
+        }
+
+        /**
+         * @return sorted keyframe presentation times in seconds
+         */
+        public double[] getKeyframeTimes() {
+            return keyframeTimes;
+        }
+    }
+
+    /**
+     * @param inputPath media file path
+     * @return ffprobe arguments listing video packet times and flags followed by the format
+     * duration, in csv form
+     */
+    public static String[] createKeyframeProbeArguments(final String inputPath) {
+        return new String[]{
+                "-v", "error",
+                "-select_streams", "v:0",
+                "-show_entries", "packet=pts_time,flags:format=duration",
+                "-of", "csv=p=0",
+                inputPath
+        };
+    }
+
+    /**
+     * <p>Parses the output of {@link #createKeyframeProbeArguments(String)}. Packet lines look like
+     * <code>12.345000,K_</code>, the format line only holds the duration.
+     *
+     * @param probeOutput ffprobe output
+     * @return keyframe index
+     */
+    public static KeyframeIndex parseKeyframes(final String probeOutput) {
+        double duration = 0;
+        double lastPacketTime = 0;
+        double[] keyframes = new double[64];
+        int keyframeCount = 0;
+
+        if (probeOutput != null) {
+            for (String line : probeOutput.split("\n")) {
+                line = line.trim();
+                if (line.isEmpty()) {
+                    continue;
+                }
+
+                final int comma = line.indexOf(',');
+                if (comma < 0) {
+                    duration = parseTime(line, duration);
+                    continue;
+                }
+
+                final double time = parseTime(line.substring(0, comma), -1);
+                if (time < 0) {
+                    continue;
+                }
+                lastPacketTime = Math.max(lastPacketTime, time);
+
+                if (line.indexOf('K', comma) > 0) {
+                    if (keyframeCount == keyframes.length) {
+                        keyframes = Arrays.copyOf(keyframes, keyframeCount * 2);
+                    }
+                    keyframes[keyframeCount++] = time;
+                }
+            }
+        }
+
+        final double[] keyframeTimes = Arrays.copyOf(keyframes, keyframeCount);
+        Arrays.sort(keyframeTimes);
+
+        return new KeyframeIndex(duration > 0 ? duration : lastPacketTime, keyframeTimes);
+    }
+
+    /**
+     * <p>Plans at most <code>maxSegments</code> segments of roughly equal length. Each cut is moved
+     * forward to the next keyframe, cuts falling on the same keyframe are merged and no segment is
+     * shorter than {@link #MIN_SEGMENT_DURATION} unless the whole input is.
+     *
+     * @param index       keyframe index of the input
+     * @param maxSegments upper bound of segments, usually the number of workers
+     * @return segments covering the whole input, a single segment if the input can not be split
+     */
+    public static List<Segment> plan(final KeyframeIndex index, final int maxSegments) {
+        final double duration = index.getDuration();
+        final double[] keyframes = index.getKeyframeTimes();
+
+        final int segmentCount = (int) Math.max(1, Math.min(maxSegments, Math.floor(duration / MIN_SEGMENT_DURATION)));
+
+        final List<Double> cuts = new ArrayList<>();
+        cuts.add(0.0);
+
+        int keyframePosition = 0;
+        for (int i = 1; i < segmentCount; i++) {
+            final double target = duration * i / segmentCount;
+
+            while (keyframePosition < keyframes.length && keyframes[keyframePosition] < target) {
+                keyframePosition++;
+            }
+            if (keyframePosition == keyframes.length) {
+                break;
+            }
+
+            final double cut = keyframes[keyframePosition];
+            final double previousCut = cuts.get(cuts.size() - 1);
+            if (cut - previousCut >= MIN_SEGMENT_DURATION && duration - cut >= MIN_SEGMENT_DURATION) {
+                cuts.add(cut);
+            }
+        }
+
+        final List<Segment> segments = new ArrayList<>(cuts.size());
+        for (int i = 0; i < cuts.size(); i++) {
+            final double end = (i + 1 < cuts.size()) ? cuts.get(i + 1) : duration;
+            segments.add(new Segment(i, cuts.get(i), end));
+        }
+
+        return segments;
+    }
+
+    static String formatTime(final double seconds) {
+        return String.format(Locale.ROOT, "%.6f", seconds);
+    }
+
+    private static double parseTime(final String value, final double defaultValue) {
+        try {
+            return Double.parseDouble(value);
+        } catch (final NumberFormatException e) {
+            return defaultValue;
+        }
+    }
+
+}
@@ -0,0 +1,478 @@
+package com.example.kitapp.encode;
+
+import static android.content.ContentValues.TAG;
+
+import android.util.Log;
+
+import com.arthenica.ffmpegkit.FFmpegSession;
+import com.arthenica.ffmpegkit.FFmpegSessionCompleteCallback;
+import com.arthenica.ffmpegkit.FFprobeKit;
+import com.arthenica.ffmpegkit.FFprobeSession;
+import com.arthenica.ffmpegkit.ReturnCode;
+import com.arthenica.ffmpegkit.Statistics;
+import com.arthenica.ffmpegkit.StatisticsCallback;
+import com.example.kitapp.scheduler.FFmpegJob;
+import com.example.kitapp.scheduler.Job;
+import com.example.kitapp.scheduler.JobHandle;
+import com.example.kitapp.scheduler.JobPriority;
+import com.example.kitapp.scheduler.JobScheduler;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * <p>Encodes a video by splitting it into GOP aligned segments, encoding the segments on parallel
+ * FFmpeg sessions and joining them with the concat demuxer.
+ *
+ * <p>Segments are encoded without audio. The final concat session copies the encoded video
+ * stream and encodes the audio of the original input once, so no audio gaps appear at segment
+ * boundaries.
+ *
+ * <p>With {@link #enableCheckpoints(double)} the input is cut into many short segments and each
+ * finished segment is recorded in an {@link EncodeJournal} in the work directory. Segment files
+ * are kept when the encode fails or is cancelled, and starting the same encode again only
+ * encodes the segments that are missing.
+ */
+public class SegmentedEncoder {
+
+    public interface CompleteCallback {
+
+        void apply(final SegmentedEncoder encoder);
+
+    }
+
+    private final JobScheduler scheduler;
+    private final File workDirectory;
+    private final String inputPath;
+    private final String outputPath;
+    private final String[] videoOptions;
+    private final String[] audioOptions;
+    private double checkpointDuration;
+    private volatile EncodeJournal journal;
+
+    private final Object lock = new Object();
+    private final List<JobHandle> jobHandles = new ArrayList<>();
+    private CompleteCallback completeCallback;
+    private StatisticsCallback statisticsCallback;
+    private List<SegmentPlanner.Segment> segments;
+    private double[] segmentTimes;
+    private int remainingSegments;
+    private int resumedSegments;
+    private double totalDuration;
+    private long startTime;
+    private long endTime;
+    private boolean finished;
+    private volatile boolean cancelled;
+    private volatile boolean success;
+    private volatile String failReason;
+
+    /**
+     * @param scheduler     scheduler running segment sessions, its concurrency limit when the
+     *                      encode starts is the maximum number of segments
+     * @param workDirectory directory for segment files, emptied of them when encoding ends
+     * @param inputPath     input video path
+     * @param outputPath    output video path
+     * @param videoOptions  video encoder options, e.g. <code>-c:v libx264 -crf 23</code>
+     * @param audioOptions  audio encoder options, e.g. <code>-c:a aac -b:a 192k</code>
+     */
+    public SegmentedEncoder(final JobScheduler scheduler, final File workDirectory, final String inputPath, final String outputPath, final String[] videoOptions, final String[] audioOptions) {
+        this.scheduler = scheduler;
+        this.workDirectory = workDirectory;
+        this.inputPath = inputPath;
+        this.outputPath = outputPath;
+        this.videoOptions = videoOptions;
+        this.audioOptions = audioOptions;
+    }
+
+    /**
+     * <p>Makes the encode resumable. Must be called before {@link #start}.
+     *
+     * @param segmentDuration target segment length in seconds; shorter segments lose less work
+     *                        when the encode is interrupted
+     */
+    public SegmentedEncoder enableCheckpoints(final double segmentDuration) {
+        this.checkpointDuration = Math.max(SegmentPlanner.MIN_SEGMENT_DURATION, segmentDuration);
+        return this;
+    }
+
+    /**
+     * @return journal file of a checkpointed encode writing into <code>workDirectory</code>
+     */
+    public static File getJournalFile(final File workDirectory) {
+        return new File(workDirectory, "journal.txt");
+    }
+
+    /**
+     * <p>Starts probing the input. Segment and concat sessions are submitted to the scheduler as
+     * soon as their inputs are ready.
+     *
+     * @param completeCallback   invoked on a worker thread when encoding ends
+     * @param statisticsCallback invoked with the statistics of every segment session, may be null
+     */
+    public void start(final CompleteCallback completeCallback, final StatisticsCallback statisticsCallback) {
+        synchronized (lock) {
+            this.completeCallback = completeCallback;
+            this.statisticsCallback = statisticsCallback;
+            this.startTime = System.currentTimeMillis();
+        }
+
+        submit(new Job() {
+
+            @Override
+            public void run() {
+                probeAndSplit();
+            }
+
+            @Override
+            public void cancel() {
+                // PROBING IS SHORT, SEGMENTS ARE NOT SUBMITTED AFTER CANCEL
+            }
+        }, JobPriority.HIGH);
+    }
+
+    public void cancel() {
+        abort(true, "Cancelled");
+    }
+
+    public boolean isSuccess() {
+        return success;
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    public String getFailReason() {
+        return failReason;
+    }
+
+    public String getOutputPath() {
+        return outputPath;
+    }
+
+    /**
+     * @return number of segments finished by an earlier run and not encoded again
+     */
+    public int getResumedSegmentCount() {
+        synchronized (lock) {
+            return resumedSegments;
+        }
+    }
+
+    /**
+     * @return number of segments encoded in parallel, 0 before probing completes
+     */
+    public int getSegmentCount() {
+        synchronized (lock) {
+            return (segments == null) ? 0 : segments.size();
+        }
+    }
+
+    /**
+     * @return input duration in milliseconds, 0 before probing completes
+     */
+    public double getTotalDuration() {
+        synchronized (lock) {
+            return totalDuration * 1000;
+        }
+    }
+
+    /**
+     * @return sum of encoded media time over all segments in milliseconds
+     */
+    public double getEncodedTime() {
+        synchronized (lock) {
+            if (segmentTimes == null) {
+                return 0;
+            }
+            double encodedTime = 0;
+            for (double segmentTime : segmentTimes) {
+                encodedTime += segmentTime;
+            }
+            return encodedTime;
+        }
+    }
+
+    /**
+     * @return wall clock time from {@link #start} to completion in milliseconds
+     */
+    public long getWallClockTime() {
+        synchronized (lock) {
+            return ((endTime > 0) ? endTime : System.currentTimeMillis()) - startTime;
+        }
+    }
+
+    /**
+     * <p>Fingerprint of a checkpointed encode. Threading options follow the cores available when
+     * an encode starts, so they are left out and an encode resumed on a hotter or busier device
+     * keeps its finished segments.
+     */
+    static String createFingerprint(final String inputPath, final String outputPath, final String[] videoOptions, final String[] audioOptions, final double checkpointDuration) {
+        return EncodeJournal.createFingerprint(inputPath, outputPath, ParallelismProfile.removeFrom(videoOptions), audioOptions,
+                new String[]{SegmentPlanner.formatTime(checkpointDuration)});
+    }
+
+    private void probeAndSplit() {
+        if (checkpointDuration > 0) {
+            journal = EncodeJournal.open(getJournalFile(workDirectory), createFingerprint(inputPath, outputPath, videoOptions, audioOptions, checkpointDuration));
+            final List<SegmentPlanner.Segment> journalSegments = journal.getSegments();
+            if (journalSegments != null) {
+                Log.d(TAG, String.format(Locale.ROOT, "Resuming encode of %s, %d of %d segments are already encoded.", inputPath, journal.getCompletedCount(), journalSegments.size()));
+                submitSegments(journalSegments, journalSegments.get(journalSegments.size() - 1).getEndTime());
+                return;
+            }
+        }
+
+        final FFprobeSession probeSession = FFprobeKit.executeWithArguments(SegmentPlanner.createKeyframeProbeArguments(inputPath));
+        if (!ReturnCode.isSuccess(probeSession.getReturnCode())) {
+            finish(false, String.format("Keyframe probe failed with rc %s.", probeSession.getReturnCode()));
+            return;
+        }
+
+        final SegmentPlanner.KeyframeIndex keyframeIndex = SegmentPlanner.parseKeyframes(probeSession.getOutput());
+
+        // CHECKPOINTED ENCODES USE SHORT SEGMENTS, THE SCHEDULER STILL LIMITS HOW MANY RUN AT ONCE
+        final int maxSegments = (journal != null) ? (int) Math.ceil(keyframeIndex.getDuration() / checkpointDuration) : scheduler.getConcurrencyLimit();
+        final List<SegmentPlanner.Segment> plannedSegments = SegmentPlanner.plan(keyframeIndex, maxSegments);
+
+        Log.d(TAG, String.format(Locale.ROOT, "Found %d keyframes in %.3f seconds, encoding %d segments of %s.", keyframeIndex.getKeyframeTimes().length, keyframeIndex.getDuration(), plannedSegments.size(), inputPath));
+
+        if (journal != null) {
+            try {
+                journal.writePlan(inputPath, plannedSegments);
+            } catch (final IOException e) {
+                finish(false, "Writing encode journal failed: " + e.getMessage());
+                return;
+            }
+        }
+
+        submitSegments(plannedSegments, keyframeIndex.getDuration());
+    }
+
+    private void submitSegments(final List<SegmentPlanner.Segment> plannedSegments, final double duration) {
+        final List<SegmentPlanner.Segment> pendingSegments = new ArrayList<>();
+        synchronized (lock) {
+            if (finished) {
+                return;
+            }
+            totalDuration = duration;
+            segments = plannedSegments;
+            segmentTimes = new double[plannedSegments.size()];
+            for (SegmentPlanner.Segment segment : plannedSegments) {
+                if (journal != null && journal.isCompleted(segment, getSegmentFile(segment))) {
+                    segmentTimes[segment.getIndex()] = segment.getDuration() * 1000;
+                    resumedSegments++;
+                } else {
+                    pendingSegments.add(segment);
+                }
+            }
+            remainingSegments = pendingSegments.size();
+        }
+
+        if (pendingSegments.isEmpty()) {
+            concatSegments();
+            return;
+        }
+
+        for (final SegmentPlanner.Segment segment : pendingSegments) {
+            final boolean lastSegment = segment.getIndex() == plannedSegments.size() - 1;
+
+            submit(FFmpegJob.createWithArguments(createSegmentArguments(segment, lastSegment), new FFmpegSessionCompleteCallback() {
+
+                @Override
+                public void apply(final FFmpegSession session) {
+                    onSegmentComplete(segment, session);
+                }
+            }, null, new StatisticsCallback() {
+
+                @Override
+                public void apply(final Statistics statistics) {
+                    onSegmentStatistics(segment, statistics);
+                }
+            }), JobPriority.NORMAL);
+        }
+    }
+
+    private String[] createSegmentArguments(final SegmentPlanner.Segment segment, final boolean lastSegment) {
+        final List<String> arguments = new ArrayList<>();
+        arguments.addAll(Arrays.asList("-hide_banner", "-y"));
+        if (segment.getStartTime() > 0) {
+            arguments.addAll(Arrays.asList("-ss", SegmentPlanner.formatTime(segment.getStartTime())));
+        }
+        arguments.addAll(Arrays.asList("-i", inputPath));
+        if (!lastSegment) {
+            arguments.addAll(Arrays.asList("-t", SegmentPlanner.formatTime(segment.getDuration())));
+        }
+        arguments.addAll(Arrays.asList("-map", "0:v:0", "-an"));
+        arguments.addAll(Arrays.asList(videoOptions));
+        arguments.add(getSegmentFile(segment).getAbsolutePath());
+        return arguments.toArray(new String[0]);
+    }
+
+    private void onSegmentStatistics(final SegmentPlanner.Segment segment, final Statistics statistics) {
+        synchronized (lock) {
+            if (statistics.getTime() >= 0) {
+                segmentTimes[segment.getIndex()] = statistics.getTime();
+            }
+        }
+
+        final StatisticsCallback callback = statisticsCallback;
+        if (callback != null) {
+            callback.apply(statistics);
+        }
+    }
+
+    private void onSegmentComplete(final SegmentPlanner.Segment segment, final FFmpegSession session) {
+
+        // A SEGMENT CANCELLED FROM OUTSIDE, E.G. BY CANCELLING ALL JOBS, CANCELS THE ENCODE
+        if (session.getReturnCode() == null || ReturnCode.isCancel(session.getReturnCode())) {
+            abort(true, String.format(Locale.ROOT, "Segment %d was cancelled.", segment.getIndex()));
+            return;
+        }
+        if (!ReturnCode.isSuccess(session.getReturnCode())) {
+            abort(false, String.format(Locale.ROOT, "Segment %d failed with state %s and rc %s.", segment.getIndex(), session.getState(), session.getReturnCode()));
+            return;
+        }
+
+        if (journal != null) {
+            try {
+                journal.markCompleted(segment, getSegmentFile(segment));
+            } catch (final IOException e) {
+                abort(false, String.format(Locale.ROOT, "Recording segment %d in the encode journal failed: %s", segment.getIndex(), e.getMessage()));
+                return;
+            }
+        }
+
+        final boolean allSegmentsDone;
+        synchronized (lock) {
+            segmentTimes[segment.getIndex()] = segment.getDuration() * 1000;
+            allSegmentsDone = --remainingSegments == 0;
+        }
+
+        Log.d(TAG, String.format(Locale.ROOT, "Segment %d encoded in %d milliseconds.", segment.getIndex(), session.getDuration()));
+
+        if (allSegmentsDone) {
+            concatSegments();
+        }
+    }
+
+    private void concatSegments() {
+        final File listFile = new File(workDirectory, "segments.txt");
+        try {
+            writeConcatList(listFile);
+        } catch (final IOException e) {
+            finish(false, "Writing concat list failed: " + e.getMessage());
+            return;
+        }
+
+        final List<String> arguments = new ArrayList<>(Arrays.asList(
+                "-hide_banner", "-y",
+                "-f", "concat", "-safe", "0", "-i", listFile.getAbsolutePath(),
+                "-i", inputPath,
+                "-map", "0:v", "-map", "1:a?",
+                "-c:v", "copy"));
+        arguments.addAll(Arrays.asList(audioOptions));
+        arguments.add(outputPath);
+
+        submit(FFmpegJob.createWithArguments(arguments.toArray(new String[0]), new FFmpegSessionCompleteCallback() {
+
+            @Override
+            public void apply(final FFmpegSession session) {
+                if (ReturnCode.isSuccess(session.getReturnCode())) {
+                    finish(true, null);
+                } else {
+                    finish(false, String.format("Concat failed with state %s and rc %s.", session.getState(), session.getReturnCode()));
+                }
+            }
+        }, null, null), JobPriority.HIGH);
+    }
+
+    private void writeConcatList(final File listFile) throws IOException {
+        try (Writer writer = new OutputStreamWriter(new FileOutputStream(listFile), StandardCharsets.UTF_8)) {
+            for (SegmentPlanner.Segment segment : segments) {
+                writer.write("file '" + getSegmentFile(segment).getAbsolutePath().replace("'", "'\\''") + "'\n");
+            }
+        }
+    }
+
+    private File getSegmentFile(final SegmentPlanner.Segment segment) {
+        return new File(workDirectory, String.format(Locale.ROOT, "segment-%03d.mkv", segment.getIndex()));
+    }
+
+    private void submit(final Job job, final JobPriority priority) {
+        synchronized (lock) {
+            if (finished) {
+                return;
+            }
+            jobHandles.add(scheduler.submit(job, priority));
+        }
+    }
+
+    private void abort(final boolean cancelled, final String failReason) {
+        final List<JobHandle> activeHandles;
+        synchronized (lock) {
+            if (finished) {
+                return;
+            }
+            this.cancelled = cancelled;
+            activeHandles = new ArrayList<>(jobHandles);
+        }
+
+        for (JobHandle handle : activeHandles) {
+            handle.cancel();
+        }
+        finish(false, failReason);
+    }
+
+    private void finish(final boolean success, final String failReason) {
+        final CompleteCallback callback;
+        synchronized (lock) {
+            if (finished) {
+                return;
+            }
+            finished = true;
+            endTime = System.currentTimeMillis();
+            this.success = success;
+            this.failReason = failReason;
+            callback = completeCallback;
+        }
+
+        if (!success) {
+            Log.w(TAG, String.format("Segmented encode of %s failed. %s", inputPath, failReason));
+        }
+
+        // SEGMENTS OF A CHECKPOINTED ENCODE ARE KEPT UNTIL IT SUCCEEDS
+        if (journal == null || success) {
+            deleteSegmentFiles();
+            if (journal != null) {
+                journal.delete();
+            }
+        }
+
+        if (callback != null) {
+            callback.apply(this);
+        }
+    }
+
+    private void deleteSegmentFiles() {
+        final List<SegmentPlanner.Segment> plannedSegments;
+        synchronized (lock) {
+            plannedSegments = segments;
+        }
+        if (plannedSegments != null) {
+            for (SegmentPlanner.Segment segment : plannedSegments) {
+                getSegmentFile(segment).delete();
+            }
+        }
+        new File(workDirectory, "segments.txt").delete();
+    }
+
+}
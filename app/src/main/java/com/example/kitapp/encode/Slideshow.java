@@ -0,0 +1,204 @@
+package com.example.kitapp.encode;
+
+import com.example.kitapp.encode.FilterGraph.Filter;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * <p>Describes a slideshow of any number of images, each shown for its own duration.
+ *
+ * <p>A slideshow can be encoded in two ways that both keep a single image decoded at a time, so
+ * memory does not grow with the number of images:
+ * <ul>
+ *     <li>{@link SlideshowRenderer} writes frames with transitions into a pipe, see
+ *     {@link #createPipeArguments(String[], String, String[])}</li>
+ *     <li>FFmpeg reads the images one after the other through the concat demuxer, see
+ *     {@link #writeConcatList(File)}; images are cut without transitions</li>
+ * </ul>
+ */
+public class Slideshow {
+
+    public static class Slide {
+        private final String path;
+        private final long duration;
+
+        /**
+         * @param path     image path
+         * @param duration milliseconds the image is shown fully, transitions not included
+         */
+        public Slide(final String path, final long duration) {
+            if (duration <= 0) {
+                throw new IllegalArgumentException("Slide duration must be positive: " + duration);
+            }
+            this.path = path;
+            this.duration = duration;
+        }
+
+        public String getPath() {
+            return path;
+        }
+
+        public long getDuration() {
+            return duration;
+        }
+    }
+
+    private final List<Slide> slides;
+    private final int width;
+    private final int height;
+    private final int frameRate;
+    private final long transitionDuration;
+
+    /**
+     * @param slides             images in order, at least one
+     * @param width              video width, even
+     * @param height             video height, even
+     * @param frameRate          frames per second
+     * @param transitionDuration milliseconds each transition takes, 0 to cut
+     */
+    public Slideshow(final List<Slide> slides, final int width, final int height, final int frameRate, final long transitionDuration) {
+        if (slides.isEmpty()) {
+            throw new IllegalArgumentException("At least one slide is required.");
+        }
+        if (width < 2 || height < 2 || width % 2 != 0 || height % 2 != 0) {
+            throw new IllegalArgumentException(String.format(Locale.ROOT, "Invalid video size %dx%d", width, height));
+        }
+        this.slides = Collections.unmodifiableList(new ArrayList<>(slides));
+        this.width = width;
+        this.height = height;
+        this.frameRate = frameRate;
+        this.transitionDuration = Math.max(0, transitionDuration);
+    }
+
+    /**
+     * <p>Creates the slideshow the tabs use: the first image is shown for 3 seconds, each next
+     * one blends in for 1 second and stays for 2, at 640x424 and 30 fps.
+     */
+    public static Slideshow create(final String... imagePaths) {
+        final List<Slide> slides = new ArrayList<>(imagePaths.length);
+        for (int i = 0; i < imagePaths.length; i++) {
+            slides.add(new Slide(imagePaths[i], (i == 0) ? 3000 : 2000));
+        }
+        return new Slideshow(slides, 640, 424, 30, 1000);
+    }
+
+    public List<Slide> getSlides() {
+        return slides;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public int getFrameRate() {
+        return frameRate;
+    }
+
+    public long getTransitionDuration() {
+        return transitionDuration;
+    }
+
+    /**
+     * @return slideshow length in milliseconds, transitions included
+     */
+    public long getDuration() {
+        long duration = transitionDuration * (slides.size() - 1);
+        for (Slide slide : slides) {
+            duration += slide.duration;
+        }
+        return duration;
+    }
+
+    /**
+     * @return number of frames the slideshow has
+     */
+    public long getFrameCount() {
+        return toFrame(getDuration());
+    }
+
+    /**
+     * @return index of the frame shown at <code>time</code> milliseconds; rounding cumulative
+     * times keeps durations from drifting over many slides
+     */
+    long toFrame(final long time) {
+        return (time * frameRate + 500) / 1000;
+    }
+
+    /**
+     * @param inputArguments arguments of the raw frame input, see
+     *                       {@link com.example.kitapp.util.RawFrameProducer#getInputArguments(double)}
+     * @param encodeOptions  encoder options placed before the output path
+     * @return FFmpeg arguments encoding the frames written by a {@link SlideshowRenderer}
+     */
+    public String[] createPipeArguments(final String[] inputArguments, final String videoFilePath, final String[] encodeOptions) {
+        final List<String> arguments = new ArrayList<>(Arrays.asList("-hide_banner", "-y"));
+        arguments.addAll(Arrays.asList(inputArguments));
+        arguments.addAll(Arrays.asList("-vf", "format=yuv420p", "-fps_mode", "cfr"));
+        arguments.addAll(Arrays.asList(encodeOptions));
+        arguments.addAll(Arrays.asList("-r", String.valueOf(frameRate), videoFilePath));
+        return arguments.toArray(new String[0]);
+    }
+
+    /**
+     * <p>Writes an <code>ffconcat</code> list showing each image for its duration. Transitions
+     * are added to the duration of the image before them, so both encodings have the same
+     * length.
+     */
+    public void writeConcatList(final File listFile) throws IOException {
+        try (Writer writer = new OutputStreamWriter(Files.newOutputStream(listFile.toPath()), StandardCharsets.UTF_8)) {
+            writer.write("ffconcat version 1.0\n");
+            for (int i = 0; i < slides.size(); i++) {
+                final Slide slide = slides.get(i);
+                final long duration = slide.duration + ((i < slides.size() - 1) ? transitionDuration : 0);
+                writer.write("file " + quote(slide.path) + "\n");
+                writer.write(String.format(Locale.ROOT, "duration %d.%03d\n", duration / 1000, duration % 1000));
+            }
+
+            // THE DURATION OF THE LAST ENTRY IS ONLY USED IF ANOTHER ENTRY FOLLOWS IT
+            writer.write("file " + quote(slides.get(slides.size() - 1).path) + "\n");
+        }
+    }
+
+    /**
+     * @param encodeOptions encoder options placed before the output path
+     * @return FFmpeg arguments encoding the list written by {@link #writeConcatList(File)}
+     */
+    public String[] createConcatArguments(final String listFilePath, final String videoFilePath, final String[] encodeOptions) {
+        final String size = width + ":" + height;
+        final FilterGraph graph = new FilterGraph();
+        final int output = graph.output(graph.apply(graph.input(0),
+                Filter.of("scale", size, "force_original_aspect_ratio=decrease"),
+                Filter.of("pad", size, "(ow-iw)/2", "(oh-ih)/2", "color=black"),
+                Filter.of("setsar", "1"),
+                Filter.of("fps", String.valueOf(frameRate)),
+                Filter.of("format", "yuv420p")));
+
+        final List<String> arguments = new ArrayList<>(Arrays.asList("-hide_banner", "-y", "-f", "concat", "-safe", "0", "-i", listFilePath,
+                "-filter_complex", graph.build(), "-map", graph.getOutputLabel(output), "-fps_mode", "cfr"));
+        arguments.addAll(Arrays.asList(encodeOptions));
+        arguments.addAll(Arrays.asList("-r", String.valueOf(frameRate), videoFilePath));
+        return arguments.toArray(new String[0]);
+    }
+
+    /**
+     * @return <code>path</code> quoted for an ffconcat list
+     */
+    static String quote(final String path) {
+        return "'" + path.replace("'", "'\\''") + "'";
+    }
+
+}
@@ -0,0 +1,175 @@
+package com.example.kitapp.encode;
+
+import com.example.kitapp.util.RawFrameProducer;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * <p>Renders a {@link Slideshow} into RGBA frames of a {@link RawFrameProducer}.
+ *
+ * <p>Only the image shown and the one coming next are kept decoded, in two buffers allocated
+ * once, so memory stays the same for ten or a thousand images. Transitions reveal the next image
+ * from the left and right edges towards the center, like the <code>blend</code> transition of
+ * the filter graph slideshow.
+ */
+public class SlideshowRenderer {
+
+    public interface ImageDecoder {
+
+        /**
+         * <p>Decodes the image at <code>path</code> into <code>target</code> as RGBA pixels,
+         * scaled to fit <code>width</code>x<code>height</code>, centered and padded with black.
+         */
+        void decode(final String path, final ByteBuffer target, final int width, final int height) throws IOException;
+    }
+
+    private final Slideshow slideshow;
+    private final ImageDecoder decoder;
+    private final int rowSize;
+    private volatile boolean cancelled;
+    private volatile long framesRendered;
+    private volatile int imagesDecoded;
+    private volatile long decodeTime;
+
+    public SlideshowRenderer(final Slideshow slideshow, final ImageDecoder decoder) {
+        this.slideshow = slideshow;
+        this.decoder = decoder;
+        this.rowSize = slideshow.getWidth() * 4;
+    }
+
+    /**
+     * <p>Renders every frame into <code>producer</code> and ends its stream. Runs on the calling
+     * thread, which blocks while FFmpeg is behind.
+     *
+     * @throws IOException          if an image can not be decoded, or writing failed or was
+     *                              cancelled
+     * @throws InterruptedException if interrupted while waiting for a free frame
+     */
+    public void render(final RawFrameProducer producer) throws IOException, InterruptedException {
+        if (producer.getPixelFormat() != RawFrameProducer.PixelFormat.RGBA || producer.getWidth() != slideshow.getWidth() || producer.getHeight() != slideshow.getHeight()) {
+            throw new IllegalArgumentException(String.format(Locale.ROOT, "Producer must write %dx%d rgba frames.", slideshow.getWidth(), slideshow.getHeight()));
+        }
+
+        final List<Slideshow.Slide> slides = slideshow.getSlides();
+        final int imageSize = producer.getFrameSize();
+        ByteBuffer current = ByteBuffer.allocateDirect(imageSize);
+        ByteBuffer next = ByteBuffer.allocateDirect(imageSize);
+
+        decode(slides.get(0), current);
+
+        long time = 0;
+        long frame = 0;
+        for (int i = 0; i < slides.size(); i++) {
+            time += slides.get(i).getDuration();
+            final long holdEnd = slideshow.toFrame(time);
+            for (; frame < holdEnd; frame++) {
+                queueCopy(producer, current);
+            }
+
+            if (i < slides.size() - 1) {
+                decode(slides.get(i + 1), next);
+
+                final long transitionStart = frame;
+                time += slideshow.getTransitionDuration();
+                final long transitionEnd = slideshow.toFrame(time);
+                final long transitionFrames = transitionEnd - transitionStart;
+                for (; frame < transitionEnd; frame++) {
+                    queueTransition(producer, current, next, (double) (frame - transitionStart) / transitionFrames);
+                }
+
+                final ByteBuffer previous = current;
+                current = next;
+                next = previous;
+            }
+        }
+
+        producer.endOfStream();
+    }
+
+    /**
+     * <p>Stops rendering before the next frame.
+     */
+    public void cancel() {
+        cancelled = true;
+    }
+
+    public long getFramesRendered() {
+        return framesRendered;
+    }
+
+    public int getImagesDecoded() {
+        return imagesDecoded;
+    }
+
+    /**
+     * @return milliseconds spent decoding images
+     */
+    public long getDecodeTime() {
+        return decodeTime;
+    }
+
+    @Override
+    public String toString() {
+        return String.format(Locale.ROOT, "SlideshowRenderer{images=%d/%d, frames=%d/%d, decode=%dms}",
+                imagesDecoded, slideshow.getSlides().size(), framesRendered, slideshow.getFrameCount(), decodeTime);
+    }
+
+    private void decode(final Slideshow.Slide slide, final ByteBuffer target) throws IOException {
+        checkCancelled();
+        final long startTime = System.nanoTime();
+        target.clear();
+        decoder.decode(slide.getPath(), target, slideshow.getWidth(), slideshow.getHeight());
+        target.clear();
+        decodeTime += (System.nanoTime() - startTime) / 1000000;
+        imagesDecoded++;
+    }
+
+    private void queueCopy(final RawFrameProducer producer, final ByteBuffer image) throws IOException, InterruptedException {
+        checkCancelled();
+        final ByteBuffer frame = producer.obtainFrame();
+        image.clear();
+        frame.put(image);
+        producer.queueFrame(frame);
+        framesRendered++;
+    }
+
+    /**
+     * @param progress 0 when the transition starts, approaching 1 at its end
+     */
+    private void queueTransition(final RawFrameProducer producer, final ByteBuffer from, final ByteBuffer to, final double progress) throws IOException, InterruptedException {
+        checkCancelled();
+        final int width = slideshow.getWidth();
+
+        // COLUMNS IN [left, right) STILL SHOW THE PREVIOUS IMAGE
+        final int left = (int) Math.ceil(width / 2.0 * progress);
+        final int right = width - left;
+
+        final ByteBuffer frame = producer.obtainFrame();
+        for (int row = 0; row < slideshow.getHeight(); row++) {
+            final int rowStart = row * rowSize;
+            copy(to, frame, rowStart, left * 4);
+            copy(from, frame, rowStart + left * 4, (right - left) * 4);
+            copy(to, frame, rowStart + right * 4, (width - right) * 4);
+        }
+        producer.queueFrame(frame);
+        framesRendered++;
+    }
+
+    private static void copy(final ByteBuffer source, final ByteBuffer target, final int offset, final int length) {
+        if (length > 0) {
+            source.limit(offset + length).position(offset);
+            target.put(source);
+            source.clear();
+        }
+    }
+
+    private void checkCancelled() throws IOException {
+        if (cancelled) {
+            throw new IOException("Slideshow rendering cancelled");
+        }
+    }
+
+}
@@ -0,0 +1,115 @@
+package com.example.kitapp.encode;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * <p>Muxer options for writing a video to a destination that can not be seeked, like a pipe or a
+ * document stream of a content provider.
+ *
+ * <p>The default mp4 and mov muxers go back to the start of the file to write the index once the
+ * encode is done, and <code>-movflags faststart</code> even reads the whole file back to move it.
+ * Both are replaced by fragmented output, which writes an empty index up front and a self
+ * contained fragment at each keyframe. Matroska, WebM and Ogg are written in order already, so
+ * only their format is named, since a pipe path has no extension FFmpeg could guess it from.
+ */
+public class StreamingMuxer {
+
+    /**
+     * Muxer flags of fragmented mp4 and mov output.
+     */
+    public static final String FRAGMENTED_MOVFLAGS = "frag_keyframe+empty_moov+default_base_moof";
+
+    private final String extension;
+    private final String format;
+    private final boolean fragmented;
+
+    private StreamingMuxer(final String extension, final String format, final boolean fragmented) {
+        this.extension = extension;
+        this.format = format;
+        this.fragmented = fragmented;
+    }
+
+    /**
+     * @param fileName name of the output document, files without a known extension are written as
+     *                 fragmented mp4
+     */
+    public static StreamingMuxer create(final String fileName) {
+        final String extension = getExtension(fileName);
+        switch (extension) {
+            case "mov":
+                return new StreamingMuxer(extension, "mov", true);
+            case "mkv":
+                return new StreamingMuxer(extension, "matroska", false);
+            case "webm":
+                return new StreamingMuxer(extension, "webm", false);
+            case "ogv":
+            case "ogg":
+                return new StreamingMuxer(extension, "ogg", false);
+            case "m4v":
+                return new StreamingMuxer(extension, "mp4", true);
+            case "mp4":
+            default:
+                return new StreamingMuxer("mp4", "mp4", true);
+        }
+    }
+
+    /**
+     * @return lower case extension of <code>fileName</code>, an empty string if it has none
+     */
+    static String getExtension(final String fileName) {
+        if (fileName == null) {
+            return "";
+        }
+        final int pos = fileName.lastIndexOf('.');
+        return (pos >= 0) ? fileName.substring(pos + 1).toLowerCase(Locale.ROOT) : "";
+    }
+
+    public String getExtension() {
+        return extension;
+    }
+
+    /**
+     * @return FFmpeg muxer name
+     */
+    public String getFormat() {
+        return format;
+    }
+
+    /**
+     * @return true if the index is written in fragments instead of at the end
+     */
+    public boolean isFragmented() {
+        return fragmented;
+    }
+
+    /**
+     * <p>Returns <code>customOptions</code> with the muxer options added. <code>-movflags</code>
+     * given in <code>customOptions</code> need seeking, so they are dropped.
+     *
+     * @param customOptions encoder and muxer options of the output
+     * @return output options for a destination that can not be seeked
+     */
+    public String[] getOptions(final String[] customOptions) {
+        final List<String> options = new ArrayList<>(Arrays.asList("-f", format));
+        if (fragmented) {
+            options.addAll(Arrays.asList("-movflags", FRAGMENTED_MOVFLAGS));
+        }
+        for (int i = 0; i < customOptions.length; i++) {
+            if ("-movflags".equals(customOptions[i]) || "-f".equals(customOptions[i])) {
+                i++;
+            } else {
+                options.add(customOptions[i]);
+            }
+        }
+        return options.toArray(new String[0]);
+    }
+
+    @Override
+    public String toString() {
+        return String.format(Locale.ROOT, "StreamingMuxer{format=%s, fragmented=%s}", format, fragmented);
+    }
+
+}
@@ -0,0 +1,703 @@
+package com.example.kitapp.probe;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * <p>Reads duration, bitrate and streams of MP4, Matroska/WebM, WAV and Ogg files from their
+ * headers without starting an FFprobe session.
+ *
+ * <p>Only the byte ranges holding the headers are mapped: the <code>moov</code> box of MP4
+ * files, the <code>Info</code> and <code>Tracks</code> elements of Matroska files, the chunk
+ * headers of WAV files and the first and last pages of Ogg files. Files the parser does not
+ * understand are reported as null, callers fall back to FFprobe for them.
+ */
+public class ContainerHeaderParser {
+
+    public static final String FORMAT_MP4 = "mov,mp4,m4a,3gp,3g2,mj2";
+    public static final String FORMAT_MATROSKA = "matroska,webm";
+    public static final String FORMAT_WAV = "wav";
+    public static final String FORMAT_OGG = "ogg";
+
+    /**
+     * <p>Headers larger than this are left to FFprobe.
+     */
+    static final int MAX_HEADER_SIZE = 16 * 1024 * 1024;
+
+    static final int OGG_MAX_PAGE_SIZE = 65307;
+
+    private static final int MKV_EBML = 0x1A45DFA3;
+    private static final int MKV_DOC_TYPE = 0x4282;
+    private static final int MKV_SEGMENT = 0x18538067;
+    private static final int MKV_INFO = 0x1549A966;
+    private static final int MKV_TIMECODE_SCALE = 0x2AD7B1;
+    private static final int MKV_DURATION = 0x4489;
+    private static final int MKV_TRACKS = 0x1654AE6B;
+    private static final int MKV_TRACK_ENTRY = 0xAE;
+    private static final int MKV_TRACK_TYPE = 0x83;
+    private static final int MKV_CODEC_ID = 0x86;
+    private static final int MKV_VIDEO = 0xE0;
+    private static final int MKV_PIXEL_WIDTH = 0xB0;
+    private static final int MKV_PIXEL_HEIGHT = 0xBA;
+    private static final int MKV_CHAPTERS = 0x1043A770;
+    private static final int MKV_EDITION_ENTRY = 0x45B9;
+    private static final int MKV_CHAPTER_ATOM = 0xB6;
+    private static final int MKV_CLUSTER = 0x1F43B675;
+
+    private static final Map<String, String> MP4_CODECS = new LinkedHashMap<>();
+    private static final Map<String, String> MKV_CODECS = new LinkedHashMap<>();
+
+    static {
+        MP4_CODECS.put("avc1", "h264");
+        MP4_CODECS.put("avc3", "h264");
+        MP4_CODECS.put("hvc1", "hevc");
+        MP4_CODECS.put("hev1", "hevc");
+        MP4_CODECS.put("vp08", "vp8");
+        MP4_CODECS.put("vp09", "vp9");
+        MP4_CODECS.put("av01", "av1");
+        MP4_CODECS.put("mp4v", "mpeg4");
+        MP4_CODECS.put("mp4a", "aac");
+        MP4_CODECS.put("Opus", "opus");
+        MP4_CODECS.put("fLaC", "flac");
+        MP4_CODECS.put("ac-3", "ac3");
+        MP4_CODECS.put("samr", "amr_nb");
+        MP4_CODECS.put("sawb", "amr_wb");
+        MP4_CODECS.put("tx3g", "mov_text");
+
+        MKV_CODECS.put("V_VP8", "vp8");
+        MKV_CODECS.put("V_VP9", "vp9");
+        MKV_CODECS.put("V_AV1", "av1");
+        MKV_CODECS.put("V_MPEG4/ISO/AVC", "h264");
+        MKV_CODECS.put("V_MPEGH/ISO/HEVC", "hevc");
+        MKV_CODECS.put("V_THEORA", "theora");
+        MKV_CODECS.put("A_OPUS", "opus");
+        MKV_CODECS.put("A_VORBIS", "vorbis");
+        MKV_CODECS.put("A_AAC", "aac");
+        MKV_CODECS.put("A_MPEG/L3", "mp3");
+        MKV_CODECS.put("A_FLAC", "flac");
+        MKV_CODECS.put("A_AC3", "ac3");
+        MKV_CODECS.put("S_TEXT/UTF8", "subrip");
+        MKV_CODECS.put("S_TEXT/ASS", "ass");
+        MKV_CODECS.put("S_TEXT/WEBVTT", "webvtt");
+    }
+
+    /**
+     * @param file media file
+     * @return summary read from the headers of <code>file</code>, null if the format is not
+     * supported or the headers are incomplete
+     * @throws IOException if <code>file</code> can not be read
+     */
+    public static MediaSummary parse(final File file) throws IOException {
+        try (RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r")) {
+            return parse(randomAccessFile.getChannel());
+        }
+    }
+
+    static MediaSummary parse(final FileChannel channel) throws IOException {
+        final long size = channel.size();
+        if (size < 12) {
+            return null;
+        }
+        final ByteBuffer magic = map(channel, 0, 12);
+        try {
+            if (magic.getInt(4) == fourCC("ftyp")) {
+                return parseMp4(channel, size);
+            } else if (magic.getInt(0) == MKV_EBML) {
+                return parseMatroska(channel, size);
+            } else if (magic.getInt(0) == fourCC("RIFF") && magic.getInt(8) == fourCC("WAVE")) {
+                return parseWav(channel, size);
+            } else if (magic.getInt(0) == fourCC("OggS")) {
+                return parseOgg(channel, size);
+            }
+        } catch (final RuntimeException e) {
+
+            // TRUNCATED OR CORRUPT HEADERS RUN OUT OF BOUNDS, FFPROBE DECIDES ABOUT THEM
+            return null;
+        }
+        return null;
+    }
+
+    static MediaSummary parseMp4(final FileChannel channel, final long size) throws IOException {
+        long position = 0;
+        while (position + 8 <= size) {
+            final ByteBuffer header = map(channel, position, (int) Math.min(16, size - position));
+            long boxSize = header.getInt(0) & 0xFFFFFFFFL;
+            final int type = header.getInt(4);
+            int headerSize = 8;
+            if (boxSize == 1) {
+                boxSize = header.getLong(8);
+                headerSize = 16;
+            } else if (boxSize == 0) {
+                boxSize = size - position;
+            }
+            if (boxSize < headerSize || position + boxSize > size) {
+                return null;
+            }
+            if (type == fourCC("moov")) {
+                if (boxSize > MAX_HEADER_SIZE) {
+                    return null;
+                }
+                return parseMoov(map(channel, position + headerSize, (int) (boxSize - headerSize)), size);
+            }
+            position += boxSize;
+        }
+        return null;
+    }
+
+    private static MediaSummary parseMoov(final ByteBuffer moov, final long fileSize) {
+        double duration = 0;
+        final List<MediaSummary.StreamSummary> streams = new ArrayList<>();
+        int position = 0;
+        while (position + 8 <= moov.limit()) {
+            final int boxSize = moov.getInt(position);
+            final int type = moov.getInt(position + 4);
+            if (boxSize < 8 || position + boxSize > moov.limit()) {
+                return null;
+            }
+            if (type == fourCC("mvhd")) {
+                final int body = position + 8;
+                if (moov.get(body) == 1) {
+                    duration = (double) moov.getLong(body + 24) / (moov.getInt(body + 20) & 0xFFFFFFFFL);
+                } else {
+                    duration = (double) (moov.getInt(body + 16) & 0xFFFFFFFFL) / (moov.getInt(body + 12) & 0xFFFFFFFFL);
+                }
+            } else if (type == fourCC("trak")) {
+                final MediaSummary.StreamSummary stream = parseTrak(slice(moov, position + 8, boxSize - 8), streams.size());
+                if (stream != null) {
+                    streams.add(stream);
+                }
+            }
+            position += boxSize;
+        }
+        if (duration <= 0 || Double.isNaN(duration) || Double.isInfinite(duration)) {
+            return null;
+        }
+        return new MediaSummary(FORMAT_MP4, duration, toBitrate(fileSize, duration), streams, 0);
+    }
+
+    private static MediaSummary.StreamSummary parseTrak(final ByteBuffer trak, final int index) {
+        long width = 0;
+        long height = 0;
+        String handler = null;
+        String codec = null;
+
+        final ByteBuffer tkhd = findBox(trak, "tkhd");
+        if (tkhd != null) {
+            final int offset = (tkhd.get(0) == 1) ? 88 : 76;
+            width = (tkhd.getInt(offset) & 0xFFFFFFFFL) >> 16;
+            height = (tkhd.getInt(offset + 4) & 0xFFFFFFFFL) >> 16;
+        }
+        final ByteBuffer mdia = findBox(trak, "mdia");
+        if (mdia != null) {
+            final ByteBuffer hdlr = findBox(mdia, "hdlr");
+            if (hdlr != null) {
+                handler = fourCCToString(hdlr.getInt(8));
+            }
+            final ByteBuffer stsd = findBox(findBox(findBox(mdia, "minf"), "stbl"), "stsd");
+            if (stsd != null && stsd.getInt(4) > 0) {
+                final String sampleEntry = fourCCToString(stsd.getInt(12));
+                codec = MP4_CODECS.containsKey(sampleEntry) ? MP4_CODECS.get(sampleEntry) : sampleEntry;
+            }
+        }
+        if (handler == null) {
+            return null;
+        }
+
+        final String type;
+        switch (handler) {
+            case "vide":
+                type = "video";
+                break;
+            case "soun":
+                type = "audio";
+                width = 0;
+                height = 0;
+                break;
+            case "sbtl":
+            case "subt":
+            case "text":
+                type = "subtitle";
+                width = 0;
+                height = 0;
+                break;
+            default:
+                type = "data";
+                width = 0;
+                height = 0;
+        }
+        return new MediaSummary.StreamSummary(index, type, codec, width, height);
+    }
+
+    /**
+     * @return body of the first child box of <code>parent</code> with type <code>type</code>,
+     * null if there is none
+     */
+    private static ByteBuffer findBox(final ByteBuffer parent, final String type) {
+        if (parent == null) {
+            return null;
+        }
+        final int wanted = fourCC(type);
+        int position = 0;
+        while (position + 8 <= parent.limit()) {
+            final int boxSize = parent.getInt(position);
+            if (boxSize < 8 || position + boxSize > parent.limit()) {
+                return null;
+            }
+            if (parent.getInt(position + 4) == wanted) {
+                return slice(parent, position + 8, boxSize - 8);
+            }
+            position += boxSize;
+        }
+        return null;
+    }
+
+    static MediaSummary parseMatroska(final FileChannel channel, final long size) throws IOException {
+        final ElementReader reader = new ElementReader(channel, size);
+
+        // EBML HEADER
+        if (!reader.next(0) || reader.id != MKV_EBML || reader.dataSize > 4096) {
+            return null;
+        }
+        final ByteBuffer ebml = map(channel, reader.dataPosition, (int) reader.dataSize);
+        final ByteBuffer docType = findElement(ebml, MKV_DOC_TYPE);
+        if (docType == null) {
+            return null;
+        }
+        final String docTypeName = readString(docType);
+        if (!"webm".equals(docTypeName) && !"matroska".equals(docTypeName)) {
+            return null;
+        }
+
+        if (!reader.next(reader.dataPosition + reader.dataSize) || reader.id != MKV_SEGMENT) {
+            return null;
+        }
+        final long segmentEnd = (reader.dataSize < 0) ? size : Math.min(size, reader.dataPosition + reader.dataSize);
+
+        long timecodeScale = 1000000;
+        double duration = -1;
+        List<MediaSummary.StreamSummary> streams = null;
+        int chapterCount = 0;
+
+        long position = reader.dataPosition;
+        while (position < segmentEnd && reader.next(position)) {
+
+            // CLUSTERS HOLD THE MEDIA DATA, THE HEADERS WE NEED COME BEFORE THEM IN OUR OUTPUTS
+            if (reader.id == MKV_CLUSTER || reader.dataSize < 0) {
+                break;
+            }
+            if (reader.id == MKV_INFO || reader.id == MKV_TRACKS || reader.id == MKV_CHAPTERS) {
+                if (reader.dataSize > MAX_HEADER_SIZE) {
+                    return null;
+                }
+                final ByteBuffer element = map(channel, reader.dataPosition, (int) reader.dataSize);
+                if (reader.id == MKV_INFO) {
+                    final ByteBuffer scale = findElement(element, MKV_TIMECODE_SCALE);
+                    if (scale != null) {
+                        timecodeScale = readUnsigned(scale);
+                    }
+                    final ByteBuffer durationElement = findElement(element, MKV_DURATION);
+                    if (durationElement != null) {
+                        duration = readFloat(durationElement);
+                    }
+                } else if (reader.id == MKV_TRACKS) {
+                    streams = parseTracks(element);
+                } else {
+                    final ByteBuffer edition = findElement(element, MKV_EDITION_ENTRY);
+                    if (edition != null) {
+                        chapterCount = countElements(edition, MKV_CHAPTER_ATOM);
+                    }
+                }
+            }
+            position = reader.dataPosition + reader.dataSize;
+        }
+
+        // LIVE OR UNFINISHED RECORDINGS HAVE NO DURATION
+        if (duration <= 0 || streams == null) {
+            return null;
+        }
+        final double seconds = duration * timecodeScale / 1000000000.0;
+        return new MediaSummary(FORMAT_MATROSKA, seconds, toBitrate(size, seconds), streams, chapterCount);
+    }
+
+    private static List<MediaSummary.StreamSummary> parseTracks(final ByteBuffer tracks) {
+        final List<MediaSummary.StreamSummary> streams = new ArrayList<>();
+        int position = 0;
+        while (position < tracks.limit()) {
+            final int idLength = vintLength(tracks.get(position));
+            final int id = readId(tracks, position, idLength);
+            final int sizeLength = vintLength(tracks.get(position + idLength));
+            final long dataSize = readVint(tracks, position + idLength, sizeLength);
+            final int dataPosition = position + idLength + sizeLength;
+            if (dataSize < 0 || dataPosition + dataSize > tracks.limit()) {
+                return null;
+            }
+            if (id == MKV_TRACK_ENTRY) {
+                final ByteBuffer entry = slice(tracks, dataPosition, (int) dataSize);
+                final ByteBuffer trackType = findElement(entry, MKV_TRACK_TYPE);
+                final ByteBuffer codecId = findElement(entry, MKV_CODEC_ID);
+                final String codecName = (codecId != null) ? readString(codecId) : null;
+                final String codec = MKV_CODECS.containsKey(codecName) ? MKV_CODECS.get(codecName) : codecName;
+
+                long width = 0;
+                long height = 0;
+                final ByteBuffer video = findElement(entry, MKV_VIDEO);
+                if (video != null) {
+                    final ByteBuffer pixelWidth = findElement(video, MKV_PIXEL_WIDTH);
+                    final ByteBuffer pixelHeight = findElement(video, MKV_PIXEL_HEIGHT);
+                    width = (pixelWidth != null) ? readUnsigned(pixelWidth) : 0;
+                    height = (pixelHeight != null) ? readUnsigned(pixelHeight) : 0;
+                }
+
+                final String type;
+                switch ((trackType != null) ? (int) readUnsigned(trackType) : 0) {
+                    case 1:
+                        type = "video";
+                        break;
+                    case 2:
+                        type = "audio";
+                        break;
+                    case 17:
+                        type = "subtitle";
+                        break;
+                    default:
+                        type = "data";
+                }
+                streams.add(new MediaSummary.StreamSummary(streams.size(), type, codec, width, height));
+            }
+            position = (int) (dataPosition + dataSize);
+        }
+        return streams;
+    }
+
+    /**
+     * <p>Reads element headers straight from the file, so elements that are skipped are never
+     * mapped.
+     */
+    private static class ElementReader {
+        private final FileChannel channel;
+        private final long size;
+
+        int id;
+        long dataPosition;
+
+        /**
+         * <p>-1 if the size is unknown.
+         */
+        long dataSize;
+
+        ElementReader(final FileChannel channel, final long size) {
+            this.channel = channel;
+            this.size = size;
+        }
+
+        boolean next(final long position) throws IOException {
+            if (position + 2 > size) {
+                return false;
+            }
+            final ByteBuffer header = map(channel, position, (int) Math.min(12, size - position));
+            final int idLength = vintLength(header.get(0));
+            if (idLength > 4 || idLength >= header.limit()) {
+                return false;
+            }
+            final int sizeLength = vintLength(header.get(idLength));
+            if (sizeLength > 8 || idLength + sizeLength > header.limit()) {
+                return false;
+            }
+            id = readId(header, 0, idLength);
+            dataSize = readVint(header, idLength, sizeLength);
+            dataPosition = position + idLength + sizeLength;
+            return true;
+        }
+    }
+
+    /**
+     * @return data of the first child element of <code>parent</code> with id <code>id</code>,
+     * null if there is none
+     */
+    private static ByteBuffer findElement(final ByteBuffer parent, final int id) {
+        int position = 0;
+        while (position < parent.limit()) {
+            final int idLength = vintLength(parent.get(position));
+            if (idLength > 4 || position + idLength >= parent.limit()) {
+                return null;
+            }
+            final int sizeLength = vintLength(parent.get(position + idLength));
+            final long dataSize = readVint(parent, position + idLength, sizeLength);
+            final int dataPosition = position + idLength + sizeLength;
+            if (dataSize < 0 || dataPosition + dataSize > parent.limit()) {
+                return null;
+            }
+            if (readId(parent, position, idLength) == id) {
+                return slice(parent, dataPosition, (int) dataSize);
+            }
+            position = (int) (dataPosition + dataSize);
+        }
+        return null;
+    }
+
+    private static int countElements(final ByteBuffer parent, final int id) {
+        int count = 0;
+        int position = 0;
+        while (position < parent.limit()) {
+            final int idLength = vintLength(parent.get(position));
+            final int sizeLength = vintLength(parent.get(position + idLength));
+            final long dataSize = readVint(parent, position + idLength, sizeLength);
+            if (dataSize < 0) {
+                break;
+            }
+            if (readId(parent, position, idLength) == id) {
+                count++;
+            }
+            position = (int) (position + idLength + sizeLength + dataSize);
+        }
+        return count;
+    }
+
+    /**
+     * @return length of the variable length integer starting with <code>first</code>, 9 if
+     * <code>first</code> is not a valid first byte
+     */
+    static int vintLength(final byte first) {
+        final int leadingZeros = Integer.numberOfLeadingZeros(first & 0xFF) - 24;
+        return leadingZeros + 1;
+    }
+
+    /**
+     * <p>Element ids keep their length marker.
+     */
+    private static int readId(final ByteBuffer buffer, final int position, final int length) {
+        int id = 0;
+        for (int i = 0; i < length; i++) {
+            id = (id << 8) | (buffer.get(position + i) & 0xFF);
+        }
+        return id;
+    }
+
+    /**
+     * @return value of the variable length integer, -1 if all value bits are set which marks an
+     * unknown size
+     */
+    static long readVint(final ByteBuffer buffer, final int position, final int length) {
+        if (length > 8) {
+            return -1;
+        }
+        long value = buffer.get(position) & (0xFF >> length);
+        long allOnes = 0xFF >> length;
+        for (int i = 1; i < length; i++) {
+            value = (value << 8) | (buffer.get(position + i) & 0xFF);
+            allOnes = (allOnes << 8) | 0xFF;
+        }
+        return (value == allOnes) ? -1 : value;
+    }
+
+    private static long readUnsigned(final ByteBuffer data) {
+        long value = 0;
+        for (int i = 0; i < data.limit(); i++) {
+            value = (value << 8) | (data.get(i) & 0xFF);
+        }
+        return value;
+    }
+
+    private static double readFloat(final ByteBuffer data) {
+        if (data.limit() == 4) {
+            return data.getFloat(0);
+        } else if (data.limit() == 8) {
+            return data.getDouble(0);
+        }
+        return -1;
+    }
+
+    private static String readString(final ByteBuffer data) {
+        final byte[] bytes = new byte[data.limit()];
+        data.get(bytes);
+        int length = bytes.length;
+        while (length > 0 && bytes[length - 1] == 0) {
+            length--;
+        }
+        return new String(bytes, 0, length, StandardCharsets.US_ASCII);
+    }
+
+    static MediaSummary parseWav(final FileChannel channel, final long size) throws IOException {
+        int format = -1;
+        int channels = 0;
+        long byteRate = 0;
+        int bitsPerSample = 0;
+
+        long position = 12;
+        while (position + 8 <= size) {
+            final ByteBuffer header = map(channel, position, 8).order(ByteOrder.LITTLE_ENDIAN);
+            final int chunkId = header.getInt(0);
+            final long chunkSize = header.getInt(4) & 0xFFFFFFFFL;
+            if (chunkId == Integer.reverseBytes(fourCC("fmt "))) {
+                if (chunkSize < 16) {
+                    return null;
+                }
+                final ByteBuffer fmt = map(channel, position + 8, 16).order(ByteOrder.LITTLE_ENDIAN);
+                format = fmt.getShort(0) & 0xFFFF;
+                channels = fmt.getShort(2) & 0xFFFF;
+                byteRate = fmt.getInt(8) & 0xFFFFFFFFL;
+                bitsPerSample = fmt.getShort(14) & 0xFFFF;
+            } else if (chunkId == Integer.reverseBytes(fourCC("data"))) {
+                if (format < 0 || byteRate == 0 || channels == 0) {
+                    return null;
+                }
+
+                // STREAMED WAV FILES MAY CARRY A PLACEHOLDER SIZE, THE FILE ENDS THE DATA THEN
+                final long dataSize = Math.min(chunkSize, size - position - 8);
+                final double duration = (double) dataSize / byteRate;
+                final List<MediaSummary.StreamSummary> streams = new ArrayList<>();
+                streams.add(new MediaSummary.StreamSummary(0, "audio", wavCodec(format, bitsPerSample), 0, 0));
+                return new MediaSummary(FORMAT_WAV, duration, toBitrate(size, duration), streams, 0);
+            }
+
+            // CHUNKS ARE PADDED TO AN EVEN SIZE
+            position += 8 + chunkSize + (chunkSize & 1);
+        }
+        return null;
+    }
+
+    private static String wavCodec(final int format, final int bitsPerSample) {
+        switch (format) {
+            case 1:
+            case 0xFFFE:
+                return (bitsPerSample == 8) ? "pcm_u8" : "pcm_s" + bitsPerSample + "le";
+            case 3:
+                return "pcm_f" + bitsPerSample + "le";
+            case 6:
+                return "pcm_alaw";
+            case 7:
+                return "pcm_mulaw";
+            default:
+                return "0x" + Integer.toHexString(format);
+        }
+    }
+
+    static MediaSummary parseOgg(final FileChannel channel, final long size) throws IOException {
+        final List<MediaSummary.StreamSummary> streams = new ArrayList<>();
+        int audioSerial = 0;
+        long sampleRate = 0;
+        long preSkip = 0;
+        boolean audioFound = false;
+
+        // EVERY LOGICAL STREAM STARTS WITH A BEGINNING OF STREAM PAGE BEFORE ANY DATA PAGE
+        long position = 0;
+        while (position + 27 <= size) {
+            final ByteBuffer page = map(channel, position, (int) Math.min(OGG_MAX_PAGE_SIZE, size - position)).order(ByteOrder.LITTLE_ENDIAN);
+            if (page.getInt(0) != Integer.reverseBytes(fourCC("OggS")) || (page.get(5) & 0x02) == 0) {
+                break;
+            }
+            final int serial = page.getInt(14);
+            final int segments = page.get(26) & 0xFF;
+            int pageSize = 27 + segments;
+            for (int i = 0; i < segments; i++) {
+                pageSize += page.get(27 + i) & 0xFF;
+            }
+            final ByteBuffer packet = slice(page, 27 + segments, pageSize - 27 - segments).order(ByteOrder.LITTLE_ENDIAN);
+
+            if (startsWith(packet, "\u0001vorbis")) {
+                streams.add(new MediaSummary.StreamSummary(streams.size(), "audio", "vorbis", 0, 0));
+                if (!audioFound) {
+                    audioFound = true;
+                    audioSerial = serial;
+                    sampleRate = packet.getInt(12) & 0xFFFFFFFFL;
+                }
+            } else if (startsWith(packet, "OpusHead")) {
+                streams.add(new MediaSummary.StreamSummary(streams.size(), "audio", "opus", 0, 0));
+                if (!audioFound) {
+                    audioFound = true;
+                    audioSerial = serial;
+
+                    // OPUS GRANULE POSITIONS ALWAYS COUNT 48 KHZ SAMPLES
+                    sampleRate = 48000;
+                    preSkip = packet.getShort(10) & 0xFFFF;
+                }
+            } else if (startsWith(packet, "\u0080theora")) {
+                final long width = ((packet.get(14) & 0xFF) << 16) | ((packet.get(15) & 0xFF) << 8) | (packet.get(16) & 0xFF);
+                final long height = ((packet.get(17) & 0xFF) << 16) | ((packet.get(18) & 0xFF) << 8) | (packet.get(19) & 0xFF);
+                streams.add(new MediaSummary.StreamSummary(streams.size(), "video", "theora", width, height));
+            } else {
+                streams.add(new MediaSummary.StreamSummary(streams.size(), "data", null, 0, 0));
+            }
+            position += pageSize;
+        }
+
+        // THE DURATION IS THE GRANULE POSITION OF THE LAST AUDIO PAGE, THEORA GRANULES ARE NOT TIMES
+        if (!audioFound || sampleRate == 0) {
+            return null;
+        }
+        final long granule = findLastGranule(channel, size, audioSerial);
+        if (granule <= 0) {
+            return null;
+        }
+        final double duration = (double) Math.max(0, granule - preSkip) / sampleRate;
+        return new MediaSummary(FORMAT_OGG, duration, toBitrate(size, duration), streams, 0);
+    }
+
+    private static long findLastGranule(final FileChannel channel, final long size, final int serial) throws IOException {
+        final long tailStart = Math.max(0, size - OGG_MAX_PAGE_SIZE);
+        final ByteBuffer tail = map(channel, tailStart, (int) (size - tailStart)).order(ByteOrder.LITTLE_ENDIAN);
+        final int capture = Integer.reverseBytes(fourCC("OggS"));
+        for (int position = tail.limit() - 27; position >= 0; position--) {
+            if (tail.getInt(position) == capture && tail.getInt(position + 14) == serial) {
+                final long granule = tail.getLong(position + 6);
+
+                // -1 MARKS PAGES WHERE NO PACKET ENDS
+                if (granule != -1) {
+                    return granule;
+                }
+            }
+        }
+        return -1;
+    }
+
+    private static boolean startsWith(final ByteBuffer buffer, final String prefix) {
+        if (buffer.limit() < prefix.length()) {
+            return false;
+        }
+        for (int i = 0; i < prefix.length(); i++) {
+            if ((buffer.get(i) & 0xFF) != prefix.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static ByteBuffer map(final FileChannel channel, final long position, final int length) throws IOException {
+
+        // READ ONLY MAPPINGS CAN NOT GROW THE FILE, SIZES READ FROM TRUNCATED HEADERS END HERE
+        if (position + length > channel.size()) {
+            throw new BufferUnderflowException();
+        }
+        return channel.map(FileChannel.MapMode.READ_ONLY, position, length);
+    }
+
+    private static ByteBuffer slice(final ByteBuffer buffer, final int position, final int length) {
+        final ByteBuffer duplicate = buffer.duplicate();
+        duplicate.position(position);
+        duplicate.limit(position + length);
+        return duplicate.slice().order(buffer.order());
+    }
+
+    static int fourCC(final String code) {
+        return ((code.charAt(0) & 0xFF) << 24) | ((code.charAt(1) & 0xFF) << 16) | ((code.charAt(2) & 0xFF) << 8) | (code.charAt(3) & 0xFF);
+    }
+
+    private static String fourCCToString(final int code) {
+        return new String(new char[]{(char) ((code >>> 24) & 0xFF), (char) ((code >>> 16) & 0xFF), (char) ((code >>> 8) & 0xFF), (char) (code & 0xFF)});
+    }
+
+    private static long toBitrate(final long size, final double duration) {
+        return (duration > 0) ? (long) (size * 8 / duration) : 0;
+    }
+
+}
@@ -0,0 +1,638 @@
+package com.example.kitapp.probe;
+
+import static android.content.ContentValues.TAG;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.net.Uri;
+import android.provider.DocumentsContract;
+import android.provider.OpenableColumns;
+import android.util.Log;
+
+import com.arthenica.ffmpegkit.FFmpegKitConfig;
+import com.arthenica.ffmpegkit.FFprobeKit;
+import com.arthenica.ffmpegkit.MediaInformation;
+import com.arthenica.ffmpegkit.MediaInformationJsonParser;
+import com.arthenica.ffmpegkit.MediaInformationSession;
+
+import org.json.JSONException;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * <p>Caches ffprobe media information by URI, so probing the same input again does not open and
+ * parse it again.
+ *
+ * <p>Entries are kept in an in-memory LRU tier and in a directory that survives restarts. Every
+ * entry stores a validator of the input it was probed from: size and modification time for
+ * files and documents, the ETag or Last-Modified header for http inputs. An entry is only used
+ * while the input still has the same validator. Remote inputs are not validated again for
+ * {@link #REMOTE_FRESHNESS} milliseconds, so repeated lookups of a URL do not pay for a request.
+ * Concurrent lookups of the same URI wait for a single probe.
+ */
+public class MediaInformationCache {
+
+    public interface Prober {
+
+        /**
+         * @return media information of <code>uri</code> as ffprobe JSON
+         */
+        String probe(final String uri) throws IOException;
+
+    }
+
+    public interface Validator {
+
+        /**
+         * @return a value that changes whenever the media at <code>uri</code> changes, null if
+         * it can not be determined
+         */
+        String validate(final String uri) throws IOException;
+
+        /**
+         * @return how long an entry can be used without validating it again, in milliseconds
+         */
+        long getFreshness(final String uri);
+
+    }
+
+    public interface Callback {
+
+        /**
+         * @param information media information, null if the lookup failed
+         * @param failure     failure, null if the lookup succeeded
+         */
+        void apply(final String uri, final MediaInformation information, final IOException failure);
+
+    }
+
+    public static final int DEFAULT_MEMORY_CAPACITY = 64;
+    public static final int DEFAULT_DISK_CAPACITY = 512;
+
+    /**
+     * Time in milliseconds remote entries are used without sending a request to validate them.
+     */
+    public static final long REMOTE_FRESHNESS = 60000;
+
+    /**
+     * Entries of inputs without a validator are used for this many milliseconds after probing.
+     */
+    public static final long UNVALIDATED_MAX_AGE = 10 * 60000;
+
+    static final String ENTRY_SUFFIX = ".probe";
+
+    private static final int CONNECT_TIMEOUT = 5000;
+
+    private static MediaInformationCache instance;
+    private static ExecutorService executor;
+
+    private final File directory;
+    private final int diskCapacity;
+    private final Prober prober;
+    private final Validator validator;
+    private final LinkedHashMap<String, Entry> memoryEntries;
+    private final ConcurrentHashMap<String, FutureTask<Entry>> lookups;
+    private final AtomicLong memoryHits;
+    private final AtomicLong diskHits;
+    private final AtomicLong probes;
+
+    static class Entry {
+        final String uri;
+        final String validator;
+        final String properties;
+        final long probeTime;
+        volatile long validationTime;
+        volatile MediaInformation information;
+
+        Entry(final String uri, final String validator, final String properties, final long probeTime, final long validationTime) {
+            this.uri = uri;
+            this.validator = validator;
+            this.properties = properties;
+            this.probeTime = probeTime;
+            this.validationTime = validationTime;
+        }
+
+        boolean isValid(final String currentValidator, final long now) {
+            if (currentValidator != null) {
+                return currentValidator.equals(validator);
+            }
+            return now - probeTime < UNVALIDATED_MAX_AGE;
+        }
+    }
+
+    MediaInformationCache(final File directory, final int memoryCapacity, final int diskCapacity, final Prober prober, final Validator validator) {
+        this.directory = directory;
+        this.diskCapacity = diskCapacity;
+        this.prober = prober;
+        this.validator = validator;
+        this.memoryEntries = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+
+            @Override
+            protected boolean removeEldestEntry(final Map.Entry<String, Entry> eldest) {
+                return size() > memoryCapacity;
+            }
+        };
+        this.lookups = new ConcurrentHashMap<>();
+        this.memoryHits = new AtomicLong();
+        this.diskHits = new AtomicLong();
+        this.probes = new AtomicLong();
+
+        directory.mkdirs();
+    }
+
+    /**
+     * @param context any context, only the application context is kept
+     * @return application wide cache storing entries under the cache directory
+     */
+    public static synchronized MediaInformationCache getInstance(final Context context) {
+        if (instance == null) {
+            final Context applicationContext = context.getApplicationContext();
+            instance = new MediaInformationCache(new File(applicationContext.getCacheDir(), "media-information"), DEFAULT_MEMORY_CAPACITY, DEFAULT_DISK_CAPACITY, createProber(applicationContext), createValidator(applicationContext));
+        }
+        return instance;
+    }
+
+    /**
+     * @return executor running asynchronous lookups, separate from the job scheduler so
+     * lookups waiting for each other never hold encode workers
+     */
+    static synchronized ExecutorService getExecutor() {
+        if (executor == null) {
+            executor = Executors.newCachedThreadPool(new ThreadFactory() {
+                private final AtomicInteger threadNumber = new AtomicInteger(1);
+
+                @Override
+                public Thread newThread(final Runnable runnable) {
+                    final Thread thread = new Thread(runnable, "media-probe-" + threadNumber.getAndIncrement());
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+        return executor;
+    }
+
+    /**
+     * <p>Returns media information of <code>uri</code>, probing it only if no valid entry is
+     * cached. Blocks while probing, do not call on the main thread for remote inputs.
+     *
+     * @param uri file path, file, content or http(s) URI
+     * @return media information
+     * @throws IOException if probing fails
+     */
+    public MediaInformation getMediaInformation(final String uri) throws IOException {
+        final Entry entry = getEntry(uri);
+        MediaInformation information = entry.information;
+        if (information == null) {
+            try {
+                information = MediaInformationJsonParser.fromWithError(entry.properties);
+            } catch (final JSONException e) {
+                invalidate(uri);
+                throw new IOException(String.format("Cached media information of %s is not valid.", uri), e);
+            }
+
+            // PARSED ONCE, LATER MEMORY HITS RETURN THE SAME OBJECT
+            entry.information = information;
+        }
+        return information;
+    }
+
+    /**
+     * <p>Returns a summary of <code>uri</code>. Local MP4, Matroska, WAV and Ogg files are read
+     * by {@link ContainerHeaderParser} without probing, other inputs are probed through this
+     * cache.
+     *
+     * @param uri file path, file, content or http(s) URI
+     * @return summary of <code>uri</code>
+     * @throws IOException if probing fails
+     */
+    public MediaSummary getSummary(final String uri) throws IOException {
+        final File file = toFile(uri);
+        if (file != null && file.isFile()) {
+            try {
+                final MediaSummary summary = ContainerHeaderParser.parse(file);
+                if (summary != null) {
+                    return summary;
+                }
+            } catch (final IOException e) {
+                Log.d(TAG, String.format("Reading headers of %s failed, probing it.", uri), e);
+            }
+        }
+        return MediaSummary.from(getMediaInformation(uri));
+    }
+
+    /**
+     * <p>Runs {@link #getMediaInformation(String)} on a background thread.
+     *
+     * @param uri      file path, file, content or http(s) URI
+     * @param callback callback receiving the result on the background thread
+     */
+    public void getMediaInformationAsync(final String uri, final Callback callback) {
+        getExecutor().execute(new Runnable() {
+
+            @Override
+            public void run() {
+                MediaInformation information = null;
+                IOException failure = null;
+                try {
+                    information = getMediaInformation(uri);
+                } catch (final IOException e) {
+                    failure = e;
+                }
+                callback.apply(uri, information, failure);
+            }
+        });
+    }
+
+    /**
+     * @param uri file path, file, content or http(s) URI
+     * @return media information of <code>uri</code> as ffprobe JSON
+     * @throws IOException if probing fails
+     */
+    public String getProperties(final String uri) throws IOException {
+        return getEntry(uri).properties;
+    }
+
+    /**
+     * <p>Forgets the entry of <code>uri</code> in both tiers.
+     */
+    public void invalidate(final String uri) {
+        synchronized (memoryEntries) {
+            memoryEntries.remove(uri);
+        }
+        getEntryFile(uri).delete();
+    }
+
+    /**
+     * <p>Forgets all entries in both tiers.
+     */
+    public void clear() {
+        synchronized (memoryEntries) {
+            memoryEntries.clear();
+        }
+        for (File file : listEntryFiles()) {
+            file.delete();
+        }
+    }
+
+    public long getMemoryHitCount() {
+        return memoryHits.get();
+    }
+
+    public long getDiskHitCount() {
+        return diskHits.get();
+    }
+
+    public long getProbeCount() {
+        return probes.get();
+    }
+
+    Entry getEntry(final String uri) throws IOException {
+        final Entry memoryEntry = getMemoryEntry(uri);
+        if (memoryEntry != null && System.currentTimeMillis() - memoryEntry.validationTime < validator.getFreshness(uri)) {
+            memoryHits.incrementAndGet();
+            return memoryEntry;
+        }
+
+        final FutureTask<Entry> task = new FutureTask<>(new Callable<Entry>() {
+
+            @Override
+            public Entry call() throws IOException {
+                return lookup(uri, memoryEntry);
+            }
+        });
+
+        // A LOOKUP OF THE SAME URI MAY ALREADY BE RUNNING, ITS RESULT OR FAILURE IS SHARED
+        final FutureTask<Entry> runningTask = lookups.putIfAbsent(uri, task);
+        if (runningTask != null) {
+            return await(runningTask);
+        }
+
+        try {
+            task.run();
+        } finally {
+            lookups.remove(uri, task);
+        }
+        return await(task);
+    }
+
+    private Entry lookup(final String uri, final Entry memoryEntry) throws IOException {
+        final long now = System.currentTimeMillis();
+
+        String currentValidator;
+        try {
+            currentValidator = validator.validate(uri);
+        } catch (final IOException e) {
+            Log.w(TAG, String.format("Validating %s failed, using cached media information while it is recent. %s", uri, e.getMessage()));
+            currentValidator = null;
+        }
+
+        if (memoryEntry != null && memoryEntry.isValid(currentValidator, now)) {
+            memoryEntry.validationTime = now;
+            memoryHits.incrementAndGet();
+            return memoryEntry;
+        }
+
+        final Entry diskEntry = readEntry(uri);
+        if (diskEntry != null && diskEntry.isValid(currentValidator, now)) {
+            diskEntry.validationTime = now;
+            putMemoryEntry(diskEntry);
+            diskHits.incrementAndGet();
+            return diskEntry;
+        }
+
+        final String properties = prober.probe(uri);
+        probes.incrementAndGet();
+
+        final Entry entry = new Entry(uri, currentValidator, properties, now, now);
+        putMemoryEntry(entry);
+        try {
+            writeEntry(entry);
+        } catch (final IOException e) {
+            Log.w(TAG, String.format("Storing media information of %s failed. %s", uri, e.getMessage()));
+        }
+
+        return entry;
+    }
+
+    private Entry getMemoryEntry(final String uri) {
+        synchronized (memoryEntries) {
+            return memoryEntries.get(uri);
+        }
+    }
+
+    private void putMemoryEntry(final Entry entry) {
+        synchronized (memoryEntries) {
+            memoryEntries.put(entry.uri, entry);
+        }
+    }
+
+    private static Entry await(final FutureTask<Entry> task) throws IOException {
+        boolean interrupted = false;
+        try {
+            while (true) {
+                try {
+                    return task.get();
+                } catch (final InterruptedException e) {
+                    interrupted = true;
+                } catch (final ExecutionException e) {
+                    final Throwable cause = e.getCause();
+                    if (cause instanceof IOException) {
+                        throw (IOException) cause;
+                    }
+                    if (cause instanceof RuntimeException) {
+                        throw (RuntimeException) cause;
+                    }
+                    throw new IOException("Probing media failed", cause);
+                }
+            }
+        } finally {
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    File getEntryFile(final String uri) {
+        return new File(directory, hash(uri) + ENTRY_SUFFIX);
+    }
+
+    private Entry readEntry(final String uri) {
+        final File file = getEntryFile(uri);
+        if (!file.exists()) {
+            return null;
+        }
+
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8))) {
+            final String storedUri = reader.readLine();
+            final String storedValidator = reader.readLine();
+            final String probeTime = reader.readLine();
+            final String properties = reader.readLine();
+
+            // FILE NAMES ARE HASHES, THE URI LINE TELLS COLLISIONS APART
+            if (!uri.equals(storedUri) || storedValidator == null || probeTime == null || properties == null) {
+                return null;
+            }
+            return new Entry(uri, storedValidator.isEmpty() ? null : storedValidator, properties, Long.parseLong(probeTime), 0);
+        } catch (final IOException | NumberFormatException e) {
+            Log.w(TAG, String.format("Ignoring unreadable media information cache file %s.", file.getName()));
+            return null;
+        }
+    }
+
+    private void writeEntry(final Entry entry) throws IOException {
+        final File file = getEntryFile(entry.uri);
+        final File temporaryFile = new File(directory, "." + file.getName() + "-" + Thread.currentThread().getId() + ".tmp");
+        try {
+            try (Writer writer = new OutputStreamWriter(new FileOutputStream(temporaryFile), StandardCharsets.UTF_8)) {
+
+                // JSON FROM FFPROBE IS WRITTEN ON A SINGLE LINE, NEW LINES IN VALUES ARE ESCAPED
+                writer.write(entry.uri + "\n" + ((entry.validator != null) ? entry.validator : "") + "\n" + entry.probeTime + "\n" + entry.properties.replace("\n", " ") + "\n");
+            }
+            if (!temporaryFile.renameTo(file)) {
+                throw new IOException(String.format("Renaming %s to %s failed.", temporaryFile.getName(), file.getName()));
+            }
+        } finally {
+            temporaryFile.delete();
+        }
+
+        trimDisk();
+    }
+
+    private void trimDisk() {
+        final File[] files = listEntryFiles();
+        if (files.length <= diskCapacity) {
+            return;
+        }
+
+        Arrays.sort(files, new Comparator<File>() {
+
+            @Override
+            public int compare(final File first, final File second) {
+                return Long.compare(first.lastModified(), second.lastModified());
+            }
+        });
+        for (int i = 0; i < files.length - diskCapacity; i++) {
+            files[i].delete();
+        }
+    }
+
+    private File[] listEntryFiles() {
+        final File[] files = directory.listFiles();
+        if (files == null) {
+            return new File[0];
+        }
+        int count = 0;
+        for (File file : files) {
+            if (file.getName().endsWith(ENTRY_SUFFIX)) {
+                files[count++] = file;
+            }
+        }
+        return Arrays.copyOf(files, count);
+    }
+
+    static String hash(final String uri) {
+        try {
+            final byte[] digest = MessageDigest.getInstance("SHA-1").digest(uri.getBytes(StandardCharsets.UTF_8));
+            final StringBuilder builder = new StringBuilder(digest.length * 2);
+            for (byte value : digest) {
+                builder.append(Character.forDigit((value >> 4) & 0xF, 16)).append(Character.forDigit(value & 0xF, 16));
+            }
+            return builder.toString();
+        } catch (final NoSuchAlgorithmException e) {
+            return Integer.toHexString(uri.hashCode());
+        }
+    }
+
+    static boolean isRemote(final String uri) {
+        final String lowerCaseUri = uri.toLowerCase(Locale.ROOT);
+        return lowerCaseUri.startsWith("http://") || lowerCaseUri.startsWith("https://");
+    }
+
+    static boolean isContent(final String uri) {
+        return uri.toLowerCase(Locale.ROOT).startsWith("content://");
+    }
+
+    static File toFile(final String uri) {
+        if (uri.toLowerCase(Locale.ROOT).startsWith("file://")) {
+            return new File(uri.substring("file://".length()));
+        }
+        if (uri.startsWith("/")) {
+            return new File(uri);
+        }
+        return null;
+    }
+
+    /**
+     * @return prober running {@link FFprobeKit#getMediaInformation(String)}, content URIs are
+     * opened through the storage access framework
+     */
+    static Prober createProber(final Context context) {
+        return new Prober() {
+
+            @Override
+            public String probe(final String uri) throws IOException {
+                final File file = toFile(uri);
+                final String input;
+                if (isContent(uri)) {
+                    input = FFmpegKitConfig.getSafParameterForRead(context, Uri.parse(uri));
+                } else if (file != null) {
+                    input = file.getAbsolutePath();
+                } else {
+                    input = uri;
+                }
+
+                final MediaInformationSession session = FFprobeKit.getMediaInformation(input);
+                final MediaInformation information = session.getMediaInformation();
+                if (information == null || information.getAllProperties() == null) {
+                    throw new IOException(String.format("Probing %s failed with state %s and rc %s.\n%s", uri, session.getState(), session.getReturnCode(), session.getOutput()));
+                }
+                Log.d(TAG, String.format(Locale.ROOT, "Probed %s in %d milliseconds.", uri, session.getDuration()));
+                return information.getAllProperties().toString();
+            }
+        };
+    }
+
+    /**
+     * @return validator using size and modification time of files and documents, and the ETag
+     * or Last-Modified header of http inputs
+     */
+    static Validator createValidator(final Context context) {
+        return new Validator() {
+
+            @Override
+            public String validate(final String uri) throws IOException {
+                if (isRemote(uri)) {
+                    return validateRemote(uri);
+                }
+                if (isContent(uri)) {
+                    return validateContent(context, uri);
+                }
+                final File file = toFile(uri);
+                if (file != null && file.exists()) {
+                    return "file:" + file.length() + ":" + file.lastModified();
+                }
+                return null;
+            }
+
+            @Override
+            public long getFreshness(final String uri) {
+                return isRemote(uri) ? REMOTE_FRESHNESS : 0;
+            }
+        };
+    }
+
+    private static String validateRemote(final String uri) throws IOException {
+        final HttpURLConnection connection = (HttpURLConnection) new URL(uri).openConnection();
+        try {
+            connection.setRequestMethod("HEAD");
+            connection.setConnectTimeout(CONNECT_TIMEOUT);
+            connection.setReadTimeout(CONNECT_TIMEOUT);
+            if (connection.getResponseCode() >= 400) {
+                throw new IOException(String.format(Locale.ROOT, "HEAD %s returned %d.", uri, connection.getResponseCode()));
+            }
+
+            final String etag = connection.getHeaderField("ETag");
+            if (etag != null) {
+                return "etag:" + etag;
+            }
+            final String lastModified = connection.getHeaderField("Last-Modified");
+            if (lastModified != null) {
+                return "modified:" + lastModified + ":" + connection.getHeaderField("Content-Length");
+            }
+            return null;
+        } finally {
+            connection.disconnect();
+        }
+    }
+
+    private static String validateContent(final Context context, final String uri) {
+        final Cursor cursor = context.getContentResolver().query(Uri.parse(uri), null, null, null, null);
+        if (cursor == null) {
+            return null;
+        }
+        try {
+            if (!cursor.moveToFirst()) {
+                return null;
+            }
+            final int sizeIndex = cursor.getColumnIndex(OpenableColumns.SIZE);
+            final int lastModifiedIndex = cursor.getColumnIndex(DocumentsContract.Document.COLUMN_LAST_MODIFIED);
+            if (sizeIndex < 0 || cursor.isNull(sizeIndex)) {
+                return null;
+            }
+
+            // PROVIDERS WITHOUT A MODIFICATION TIME ARE ONLY VALIDATED BY SIZE
+            final String lastModified = (lastModifiedIndex >= 0 && !cursor.isNull(lastModifiedIndex)) ? String.valueOf(cursor.getLong(lastModifiedIndex)) : "";
+            return "content:" + cursor.getLong(sizeIndex) + ":" + lastModified;
+        } finally {
+            cursor.close();
+        }
+    }
+
+}
@@ -0,0 +1,419 @@
+package com.example.kitapp.probe;
+
+import static android.content.ContentValues.TAG;
+
+import android.content.Context;
+import android.util.Log;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * <p>Probes a batch of inputs with a bounded number of probes in flight.
+ *
+ * <p>Directories are expanded to the files below them and local <code>.m3u</code> or
+ * <code>.m3u8</code> playlists to their entries before probing starts. Each result is delivered
+ * as soon as its probe completes, in completion order, on the probing thread.
+ */
+public class MediaScanner {
+
+    public interface Prober {
+        MediaSummary probe(final String uri) throws IOException;
+    }
+
+    public interface ResultCallback {
+        void apply(final Result result);
+    }
+
+    public interface CompleteCallback {
+        void apply(final MediaScanner scanner);
+    }
+
+    public static class Result {
+        private final int index;
+        private final String uri;
+        private final MediaSummary summary;
+        private final IOException failure;
+        private final long probeTime;
+
+        Result(final int index, final String uri, final MediaSummary summary, final IOException failure, final long probeTime) {
+            this.index = index;
+            this.uri = uri;
+            this.summary = summary;
+            this.failure = failure;
+            this.probeTime = probeTime;
+        }
+
+        /**
+         * @return position of the input in the expanded input list
+         */
+        public int getIndex() {
+            return index;
+        }
+
+        public String getUri() {
+            return uri;
+        }
+
+        /**
+         * @return summary of the input, null if probing failed
+         */
+        public MediaSummary getSummary() {
+            return summary;
+        }
+
+        public IOException getFailure() {
+            return failure;
+        }
+
+        /**
+         * @return time spent probing in milliseconds
+         */
+        public long getProbeTime() {
+            return probeTime;
+        }
+
+        public boolean isSuccess() {
+            return summary != null;
+        }
+
+        @Override
+        public String toString() {
+            if (summary != null) {
+                return String.format(Locale.ROOT, "#%d %s (%d ms): %s", index, uri, probeTime, summary);
+            }
+            return String.format(Locale.ROOT, "#%d %s (%d ms) failed: %s", index, uri, probeTime, (failure != null) ? failure.getMessage() : null);
+        }
+    }
+
+    public static final int DEFAULT_CONCURRENCY = 4;
+
+    static final List<String> PLAYLIST_EXTENSIONS = Arrays.asList(".m3u", ".m3u8");
+
+    private final List<String> inputs;
+    private final int concurrency;
+    private final Prober prober;
+    private final Executor executor;
+    private final ResultCallback resultCallback;
+    private final CompleteCallback completeCallback;
+
+    private final AtomicInteger nextIndex;
+    private final AtomicInteger activeWorkers;
+    private final AtomicInteger succeededCount;
+    private final AtomicInteger failedCount;
+    private final AtomicLong totalProbeTime;
+    private final CountDownLatch completeLatch;
+
+    private volatile List<String> uris;
+    private volatile boolean cancelled;
+    private volatile long startTime;
+    private volatile long endTime;
+
+    MediaScanner(final List<String> inputs, final int concurrency, final Prober prober, final Executor executor, final ResultCallback resultCallback, final CompleteCallback completeCallback) {
+        if (concurrency < 1) {
+            throw new IllegalArgumentException("Concurrency must be at least 1.");
+        }
+        this.inputs = new ArrayList<>(inputs);
+        this.concurrency = concurrency;
+        this.prober = prober;
+        this.executor = executor;
+        this.resultCallback = resultCallback;
+        this.completeCallback = completeCallback;
+        this.nextIndex = new AtomicInteger();
+        this.activeWorkers = new AtomicInteger();
+        this.succeededCount = new AtomicInteger();
+        this.failedCount = new AtomicInteger();
+        this.totalProbeTime = new AtomicLong();
+        this.completeLatch = new CountDownLatch(1);
+        this.uris = Collections.emptyList();
+    }
+
+    /**
+     * <p>Creates a scanner reading inputs through {@link MediaInformationCache#getSummary(String)},
+     * so local files with known containers are not probed and inputs scanned before are answered
+     * from the cache.
+     *
+     * @param context          context
+     * @param inputs           file paths, directories, playlists, content or http(s) URIs
+     * @param concurrency      maximum number of probes in flight
+     * @param resultCallback   callback receiving each result, may be null
+     * @param completeCallback callback invoked once all inputs are probed, may be null
+     * @return a scanner, call {@link #start()} to run it
+     */
+    public static MediaScanner create(final Context context, final List<String> inputs, final int concurrency, final ResultCallback resultCallback, final CompleteCallback completeCallback) {
+        final MediaInformationCache cache = MediaInformationCache.getInstance(context);
+        return new MediaScanner(inputs, concurrency, new Prober() {
+
+            @Override
+            public MediaSummary probe(final String uri) throws IOException {
+                return cache.getSummary(uri);
+            }
+        }, MediaInformationCache.getExecutor(), resultCallback, completeCallback);
+    }
+
+    /**
+     * <p>Expands the inputs and starts probing them on background threads.
+     */
+    public MediaScanner start() {
+        startTime = System.nanoTime();
+        executor.execute(new Runnable() {
+
+            @Override
+            public void run() {
+                uris = expandInputs(inputs);
+
+                final int workers = Math.min(concurrency, uris.size());
+                if (workers == 0) {
+                    complete();
+                    return;
+                }
+
+                // EACH WORKER PULLS THE NEXT INPUT, SO NO MORE THAN workers PROBES EVER RUN AT ONCE
+                activeWorkers.set(workers);
+                for (int i = 0; i < workers; i++) {
+                    executor.execute(new Runnable() {
+
+                        @Override
+                        public void run() {
+                            scanNext();
+                        }
+                    });
+                }
+            }
+        });
+        return this;
+    }
+
+    /**
+     * <p>Stops handing out inputs. Probes already running finish and are reported.
+     */
+    public void cancel() {
+        cancelled = true;
+    }
+
+    /**
+     * @return true if the scan completed within <code>timeout</code>
+     */
+    public boolean await(final long timeout, final TimeUnit unit) throws InterruptedException {
+        return completeLatch.await(timeout, unit);
+    }
+
+    public boolean isComplete() {
+        return completeLatch.getCount() == 0;
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    /**
+     * @return expanded inputs, empty until the scan has started
+     */
+    public List<String> getUris() {
+        return uris;
+    }
+
+    public int getSucceededCount() {
+        return succeededCount.get();
+    }
+
+    public int getFailedCount() {
+        return failedCount.get();
+    }
+
+    public int getScannedCount() {
+        return succeededCount.get() + failedCount.get();
+    }
+
+    /**
+     * @return milliseconds since the scan started, up to its completion
+     */
+    public long getWallClockTime() {
+        final long end = isComplete() ? endTime : System.nanoTime();
+        return (startTime == 0) ? 0 : TimeUnit.NANOSECONDS.toMillis(end - startTime);
+    }
+
+    /**
+     * @return sum of the probe times of all results in milliseconds
+     */
+    public long getTotalProbeTime() {
+        return totalProbeTime.get();
+    }
+
+    /**
+     * @return inputs scanned per second
+     */
+    public double getThroughput() {
+        final long wallClockTime = getWallClockTime();
+        return (wallClockTime > 0) ? getScannedCount() * 1000.0 / wallClockTime : 0;
+    }
+
+    @Override
+    public String toString() {
+        return String.format(Locale.ROOT, "Scanned %d of %d inputs, %d failed, in %d ms, %.2f inputs/s, %d ms probing with concurrency %d%s",
+                getScannedCount(), uris.size(), getFailedCount(), getWallClockTime(), getThroughput(), getTotalProbeTime(), concurrency, cancelled ? ", cancelled" : "");
+    }
+
+    private void scanNext() {
+        final List<String> uris = this.uris;
+        while (!cancelled) {
+            final int index = nextIndex.getAndIncrement();
+            if (index >= uris.size()) {
+                break;
+            }
+            report(probe(index, uris.get(index)));
+        }
+
+        if (activeWorkers.decrementAndGet() == 0) {
+            complete();
+        }
+    }
+
+    private Result probe(final int index, final String uri) {
+        final long probeStart = System.nanoTime();
+        MediaSummary summary = null;
+        IOException failure = null;
+        try {
+            summary = prober.probe(uri);
+            if (summary == null) {
+                failure = new IOException(String.format("No media information found for %s.", uri));
+            }
+        } catch (final IOException e) {
+            failure = e;
+        } catch (final RuntimeException e) {
+            failure = new IOException(String.format("Probing %s failed.", uri), e);
+        }
+        final long probeTime = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - probeStart);
+        totalProbeTime.addAndGet(probeTime);
+        return new Result(index, uri, summary, failure, probeTime);
+    }
+
+    private void report(final Result result) {
+        if (result.isSuccess()) {
+            succeededCount.incrementAndGet();
+        } else {
+            failedCount.incrementAndGet();
+        }
+        if (resultCallback != null) {
+            try {
+                resultCallback.apply(result);
+            } catch (final RuntimeException e) {
+                Log.w(TAG, String.format("Scan result callback failed for %s.", result.getUri()), e);
+            }
+        }
+    }
+
+    private void complete() {
+        endTime = System.nanoTime();
+        completeLatch.countDown();
+        if (completeCallback != null) {
+            completeCallback.apply(this);
+        }
+    }
+
+    /**
+     * <p>Replaces directories with the files below them and local playlists with their entries.
+     * Other inputs are kept as they are. Unreadable playlists are kept too, so probing reports
+     * them as failed.
+     */
+    static List<String> expandInputs(final List<String> inputs) {
+        final List<String> uris = new ArrayList<>();
+        for (String input : inputs) {
+            final File file = MediaInformationCache.toFile(input);
+            if (file != null && file.isDirectory()) {
+                collectFiles(file, uris);
+            } else if (file != null && isPlaylist(file.getName()) && file.isFile()) {
+                try {
+                    uris.addAll(readPlaylist(file));
+                } catch (final IOException e) {
+                    Log.w(TAG, String.format("Reading playlist %s failed.", file), e);
+                    uris.add(input);
+                }
+            } else {
+                uris.add(input);
+            }
+        }
+        return uris;
+    }
+
+    /**
+     * <p>Adds the paths of all files below <code>directory</code> to <code>paths</code>, sorted
+     * by name within each directory so results are reproducible.
+     */
+    static void collectFiles(final File directory, final List<String> paths) {
+        final File[] files = directory.listFiles();
+        if (files == null) {
+            return;
+        }
+        Arrays.sort(files);
+        for (File file : files) {
+            if (file.isDirectory()) {
+                collectFiles(file, paths);
+            } else if (!file.isHidden()) {
+                paths.add(file.getAbsolutePath());
+            }
+        }
+    }
+
+    static boolean isPlaylist(final String name) {
+        final String lowerCaseName = name.toLowerCase(Locale.ROOT);
+        for (String extension : PLAYLIST_EXTENSIONS) {
+            if (lowerCaseName.endsWith(extension)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    static List<String> readPlaylist(final File playlist) throws IOException {
+        final List<String> lines = new ArrayList<>();
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(playlist), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                lines.add(line);
+            }
+        }
+        return parsePlaylist(lines, playlist.getParentFile());
+    }
+
+    /**
+     * @param lines     playlist lines
+     * @param directory directory relative entries are resolved against, may be null
+     * @return playlist entries, comments and directives starting with # are skipped
+     */
+    static List<String> parsePlaylist(final List<String> lines, final File directory) {
+        final List<String> entries = new ArrayList<>();
+        for (String line : lines) {
+            String entry = line.trim();
+
+            // A UTF-8 BOM MAY PRECEDE THE FIRST LINE
+            if (entry.startsWith("\uFEFF")) {
+                entry = entry.substring(1).trim();
+            }
+            if (entry.isEmpty() || entry.startsWith("#")) {
+                continue;
+            }
+            if (entry.contains("://") || entry.startsWith("/") || directory == null) {
+                entries.add(entry);
+            } else {
+                entries.add(new File(directory, entry).getAbsolutePath());
+            }
+        }
+        return entries;
+    }
+
+}
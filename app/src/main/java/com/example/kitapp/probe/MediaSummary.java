@@ -0,0 +1,151 @@
+package com.example.kitapp.probe;
+
+import com.arthenica.ffmpegkit.MediaInformation;
+import com.arthenica.ffmpegkit.StreamInformation;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * <p>Compact, immutable view of the media information fields a scan reports: container format,
+ * duration, bitrate, streams and number of chapters.
+ */
+public class MediaSummary {
+
+    public static class StreamSummary {
+        private final long index;
+        private final String type;
+        private final String codec;
+        private final long width;
+        private final long height;
+
+        public StreamSummary(final long index, final String type, final String codec, final long width, final long height) {
+            this.index = index;
+            this.type = type;
+            this.codec = codec;
+            this.width = width;
+            this.height = height;
+        }
+
+        public long getIndex() {
+            return index;
+        }
+
+        public String getType() {
+            return type;
+        }
+
+        public String getCodec() {
+            return codec;
+        }
+
+        /**
+         * @return width in pixels, 0 for streams without pictures
+         */
+        public long getWidth() {
+            return width;
+        }
+
+        /**
+         * @return height in pixels, 0 for streams without pictures
+         */
+        public long getHeight() {
+            return height;
+        }
+
+        @Override
+        public String toString() {
+            if (width > 0 && height > 0) {
+                return String.format(Locale.ROOT, "%s:%s %dx%d", type, codec, width, height);
+            }
+            return type + ":" + codec;
+        }
+    }
+
+    private final String format;
+    private final double duration;
+    private final long bitrate;
+    private final List<StreamSummary> streams;
+    private final int chapterCount;
+
+    public MediaSummary(final String format, final double duration, final long bitrate, final List<StreamSummary> streams, final int chapterCount) {
+        this.format = format;
+        this.duration = duration;
+        this.bitrate = bitrate;
+        this.streams = Collections.unmodifiableList(new ArrayList<>(streams));
+        this.chapterCount = chapterCount;
+    }
+
+    /**
+     * @param information ffprobe media information
+     * @return summary of <code>information</code>, fields ffprobe did not report are 0 or null
+     */
+    public static MediaSummary from(final MediaInformation information) {
+        final List<StreamSummary> streams = new ArrayList<>();
+        if (information.getStreams() != null) {
+            for (StreamInformation stream : information.getStreams()) {
+                streams.add(new StreamSummary(toLong(stream.getIndex()), stream.getType(), stream.getCodec(), toLong(stream.getWidth()), toLong(stream.getHeight())));
+            }
+        }
+        final int chapterCount = (information.getChapters() != null) ? information.getChapters().size() : 0;
+
+        return new MediaSummary(information.getFormat(), parseDouble(information.getDuration()), (long) parseDouble(information.getBitrate()), streams, chapterCount);
+    }
+
+    public String getFormat() {
+        return format;
+    }
+
+    /**
+     * @return duration in seconds, 0 if unknown
+     */
+    public double getDuration() {
+        return duration;
+    }
+
+    /**
+     * @return bitrate in bits per second, 0 if unknown
+     */
+    public long getBitrate() {
+        return bitrate;
+    }
+
+    public List<StreamSummary> getStreams() {
+        return streams;
+    }
+
+    public int getChapterCount() {
+        return chapterCount;
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder builder = new StringBuilder();
+        builder.append(format).append(String.format(Locale.ROOT, ", %.3f s, %d kb/s", duration, bitrate / 1000));
+        for (StreamSummary stream : streams) {
+            builder.append(", ").append(stream);
+        }
+        if (chapterCount > 0) {
+            builder.append(", ").append(chapterCount).append(" chapters");
+        }
+        return builder.toString();
+    }
+
+    private static long toLong(final Long value) {
+        return (value != null) ? value : 0;
+    }
+
+    static double parseDouble(final String value) {
+        if (value == null) {
+            return 0;
+        }
+        try {
+            return Double.parseDouble(value);
+        } catch (final NumberFormatException e) {
+            return 0;
+        }
+    }
+
+}
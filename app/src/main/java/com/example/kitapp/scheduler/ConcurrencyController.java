@@ -0,0 +1,252 @@
+package com.example.kitapp.scheduler;
+
+import java.util.Locale;
+
+/**
+ * <p>Decides how many encodes run at the same time and how many threads each of them gets, from
+ * periodic samples of encode throughput, thermal status and battery state.
+ *
+ * <p>The controller starts at the largest limit and only backs off when the device asks for it.
+ * A moderate thermal status or a low battery halves the limit, a severe thermal status or a
+ * critical battery drops it to the minimum. After a decrease the limit is held for a few steps,
+ * so the device can cool down, then it grows back by one per step while the device stays cool.
+ * An increase that does not raise the total encode speed ends the recovery for a while, since
+ * the device is already saturated; it is kept though, as a lower speed alone is no reason to
+ * back off.
+ *
+ * <p>The controller has no Android dependencies and keeps no clock, one call to
+ * {@link #update(Signals)} is one step. {@link ConcurrencyGovernor} feeds it from the device.
+ */
+public class ConcurrencyController {
+
+    /**
+     * Thermal status values, same as the <code>THERMAL_STATUS_*</code> constants of
+     * <code>android.os.PowerManager</code>.
+     */
+    public static final int THERMAL_STATUS_NONE = 0;
+    public static final int THERMAL_STATUS_LIGHT = 1;
+    public static final int THERMAL_STATUS_MODERATE = 2;
+    public static final int THERMAL_STATUS_SEVERE = 3;
+
+    public static final int LOW_BATTERY_LEVEL = 20;
+    public static final int CRITICAL_BATTERY_LEVEL = 10;
+
+    /**
+     * Steps without an increase after a decrease.
+     */
+    static final int RECOVERY_STEPS = 6;
+
+    /**
+     * Steps before a limit that did not raise the total speed is raised again.
+     */
+    static final int PROBE_HOLD_STEPS = 12;
+
+    /**
+     * Smallest relative gain of the total speed that justifies one more concurrent encode.
+     */
+    static final double MIN_GAIN = 0.05;
+
+    /**
+     * <p>State of the device and the scheduler at one step.
+     */
+    public static class Signals {
+        private final int runningCount;
+        private final int queuedCount;
+        private final double throughput;
+        private final int thermalStatus;
+        private final int batteryLevel;
+        private final boolean charging;
+
+        /**
+         * @param runningCount  jobs running
+         * @param queuedCount   jobs waiting for a worker
+         * @param throughput    sum of the speeds of the running encodes, 0 if none was reported
+         * @param thermalStatus one of the <code>THERMAL_STATUS_*</code> values
+         * @param batteryLevel  battery level in percent, negative if not known
+         * @param charging      true if the device is plugged in
+         */
+        public Signals(final int runningCount, final int queuedCount, final double throughput, final int thermalStatus, final int batteryLevel, final boolean charging) {
+            this.runningCount = runningCount;
+            this.queuedCount = queuedCount;
+            this.throughput = throughput;
+            this.thermalStatus = thermalStatus;
+            this.batteryLevel = batteryLevel;
+            this.charging = charging;
+        }
+
+        public int getRunningCount() {
+            return runningCount;
+        }
+
+        public int getQueuedCount() {
+            return queuedCount;
+        }
+
+        public double getThroughput() {
+            return throughput;
+        }
+
+        public int getThermalStatus() {
+            return thermalStatus;
+        }
+
+        public int getBatteryLevel() {
+            return batteryLevel;
+        }
+
+        public boolean isCharging() {
+            return charging;
+        }
+
+        boolean isBatteryBelow(final int level) {
+            return !charging && batteryLevel >= 0 && batteryLevel <= level;
+        }
+    }
+
+    private final int minConcurrency;
+    private final int maxConcurrency;
+    private final int cpuCount;
+    private int concurrency;
+    private int encodeCount;
+    private int thermalStatus;
+    private boolean batteryLow;
+    private int holdSteps;
+    private int probeCeiling;
+    private double probeBaseline = -1;
+    private String reason = "initial";
+
+    /**
+     * @param maxConcurrency largest number of concurrent encodes, usually the scheduler's worker
+     *                       count
+     * @param cpuCount       cores shared by the concurrent encodes
+     */
+    public ConcurrencyController(final int maxConcurrency, final int cpuCount) {
+        if (maxConcurrency < 1) {
+            throw new IllegalArgumentException("Maximum concurrency must be positive: " + maxConcurrency);
+        }
+        this.minConcurrency = 1;
+        this.maxConcurrency = maxConcurrency;
+        this.cpuCount = Math.max(1, cpuCount);
+        this.concurrency = maxConcurrency;
+        this.probeCeiling = maxConcurrency;
+    }
+
+    /**
+     * <p>Takes one control step.
+     *
+     * @return true if the concurrency limit changed
+     */
+    public synchronized boolean update(final Signals signals) {
+        final int previous = concurrency;
+        encodeCount = signals.getRunningCount() + signals.getQueuedCount();
+        thermalStatus = signals.getThermalStatus();
+        batteryLow = signals.isBatteryBelow(LOW_BATTERY_LEVEL);
+
+        if (signals.getThermalStatus() >= THERMAL_STATUS_SEVERE || signals.isBatteryBelow(CRITICAL_BATTERY_LEVEL)) {
+            decrease(minConcurrency, (signals.getThermalStatus() >= THERMAL_STATUS_SEVERE) ? "severe thermal status" : "critical battery");
+        } else if (signals.getThermalStatus() >= THERMAL_STATUS_MODERATE || batteryLow) {
+
+            // ONE HALVING PER EVENT, THE LIMIT IS HELD WHILE THE DEVICE RECOVERS
+            if (holdSteps == 0) {
+                decrease(concurrency / 2, (signals.getThermalStatus() >= THERMAL_STATUS_MODERATE) ? "moderate thermal status" : "low battery");
+            }
+        } else if (probeBaseline >= 0) {
+
+            // A LIMIT THAT IS NOT FULLY USED TELLS NOTHING ABOUT THE SPEED IT GIVES
+            if (isSaturated(signals)) {
+                if (signals.getThroughput() < probeBaseline * (1 + MIN_GAIN)) {
+                    probeCeiling = concurrency;
+                    holdSteps = PROBE_HOLD_STEPS;
+                    reason = "no gain from the last increase";
+                } else {
+                    reason = "increase raised the speed";
+                }
+            }
+            probeBaseline = -1;
+        }
+
+        if (concurrency == previous) {
+            if (holdSteps > 0) {
+                holdSteps--;
+            } else if (concurrency < maxConcurrency && signals.getThermalStatus() < THERMAL_STATUS_LIGHT && !batteryLow) {
+                if (concurrency < probeCeiling) {
+                    probeBaseline = isSaturated(signals) ? signals.getThroughput() : -1;
+                    setConcurrency(concurrency + 1, "device recovered");
+                } else {
+
+                    // THE CEILING FOUND BY THE LAST INCREASE EXPIRES, THE WORKLOAD MAY HAVE CHANGED
+                    probeCeiling = maxConcurrency;
+                }
+            }
+        }
+
+        return concurrency != previous;
+    }
+
+    /**
+     * @return number of encodes allowed to run at the same time
+     */
+    public synchronized int getConcurrency() {
+        return concurrency;
+    }
+
+    /**
+     * @return threads each encode should use, for the encodes running or waiting at the last step
+     */
+    public synchronized int getThreadCount() {
+        return getThreadCount(encodeCount);
+    }
+
+    /**
+     * <p>Splits the cores between the encodes that run at the same time, which are never more
+     * than the limit. A lone encode gets every core. A warm device gets half of the threads, a hot
+     * one a quarter, which lowers the power drawn by each encode.
+     *
+     * @param encodeCount encodes running or waiting, including the ones about to start
+     * @return threads each encode should use
+     */
+    public synchronized int getThreadCount(final int encodeCount) {
+        int threadCount = Math.max(1, cpuCount / Math.max(1, Math.min(concurrency, encodeCount)));
+        if (thermalStatus >= THERMAL_STATUS_SEVERE) {
+            threadCount /= 4;
+        } else if (thermalStatus >= THERMAL_STATUS_MODERATE || batteryLow) {
+            threadCount /= 2;
+        }
+        return Math.max(1, threadCount);
+    }
+
+    /**
+     * @return why the limit has its current value
+     */
+    public synchronized String getReason() {
+        return reason;
+    }
+
+    public int getMaxConcurrency() {
+        return maxConcurrency;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format(Locale.ROOT, "concurrency %d/%d, %d threads per encode (%s)", concurrency, maxConcurrency, getThreadCount(), reason);
+    }
+
+    /**
+     * @return true if every allowed job is running, so the total speed reflects the limit
+     */
+    private boolean isSaturated(final Signals signals) {
+        return signals.getRunningCount() >= concurrency && signals.getThroughput() > 0;
+    }
+
+    private void decrease(final int newConcurrency, final String decreaseReason) {
+        setConcurrency(newConcurrency, decreaseReason);
+        holdSteps = RECOVERY_STEPS;
+        probeBaseline = -1;
+    }
+
+    private void setConcurrency(final int newConcurrency, final String newReason) {
+        concurrency = Math.max(minConcurrency, Math.min(maxConcurrency, newConcurrency));
+        reason = newReason;
+    }
+
+}
@@ -0,0 +1,165 @@
+package com.example.kitapp.scheduler;
+
+import static android.content.ContentValues.TAG;
+
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.os.BatteryManager;
+import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.PowerManager;
+import android.util.Log;
+
+import com.example.kitapp.telemetry.MetricsRegistry;
+import com.example.kitapp.telemetry.SessionMetrics;
+
+/**
+ * <p>Adjusts the concurrency limit of a {@link JobScheduler} from the state of the device, using
+ * a {@link ConcurrencyController}.
+ *
+ * <p>Every few seconds the governor reads the thermal status, the battery level and the speed of
+ * the running encodes from the {@link MetricsRegistry}, takes one control step and applies the
+ * new limit. Encodes started afterwards should use {@link #getThreadCount()} threads.
+ */
+public class ConcurrencyGovernor {
+
+    public static final long DEFAULT_INTERVAL = 5000;
+
+    /**
+     * Recent samples averaged into the speed of an encode.
+     */
+    private static final int SPEED_SAMPLES = 4;
+
+    private static volatile ConcurrencyGovernor defaultGovernor;
+
+    private final Context context;
+    private final JobScheduler scheduler;
+    private final ConcurrencyController controller;
+    private final long interval;
+    private final Handler handler;
+    private final Runnable step;
+    private boolean started;
+
+    public ConcurrencyGovernor(final Context context, final JobScheduler scheduler, final ConcurrencyController controller, final long interval) {
+        this.context = context.getApplicationContext();
+        this.scheduler = scheduler;
+        this.controller = controller;
+        this.interval = interval;
+        this.handler = new Handler(Looper.getMainLooper());
+        this.step = new Runnable() {
+
+            @Override
+            public void run() {
+                update();
+                handler.postDelayed(this, ConcurrencyGovernor.this.interval);
+            }
+        };
+    }
+
+    /**
+     * @return governor of the shared {@link JobScheduler}, sharing all cores between its workers
+     */
+    public static ConcurrencyGovernor create(final Context context) {
+        final JobScheduler scheduler = JobScheduler.getInstance();
+        return new ConcurrencyGovernor(context, scheduler, new ConcurrencyController(scheduler.getWorkerCount(), Runtime.getRuntime().availableProcessors()), DEFAULT_INTERVAL);
+    }
+
+    /**
+     * @return governor of the shared scheduler, null if adaptive concurrency is not enabled
+     */
+    public static ConcurrencyGovernor getDefault() {
+        return defaultGovernor;
+    }
+
+    public static void setDefault(final ConcurrencyGovernor governor) {
+        defaultGovernor = governor;
+    }
+
+    /**
+     * <p>Applies the controller's limit and starts taking control steps on the main thread.
+     */
+    public synchronized void start() {
+        if (started) {
+            return;
+        }
+        started = true;
+        scheduler.setConcurrencyLimit(controller.getConcurrency());
+        handler.postDelayed(step, interval);
+    }
+
+    /**
+     * <p>Stops taking control steps and lets the scheduler use all of its workers again.
+     */
+    public synchronized void stop() {
+        if (!started) {
+            return;
+        }
+        started = false;
+        handler.removeCallbacks(step);
+        scheduler.setConcurrencyLimit(scheduler.getWorkerCount());
+    }
+
+    /**
+     * @return threads an encode started now should use
+     */
+    public int getThreadCount() {
+        return getThreadCount(1);
+    }
+
+    /**
+     * @param startingCount encodes about to be submitted together, e.g. the segments of one video
+     * @return threads each of them should use, sharing the cores with the jobs already submitted
+     */
+    public int getThreadCount(final int startingCount) {
+        return controller.getThreadCount(scheduler.getRunningCount() + scheduler.getQueuedCount() + startingCount);
+    }
+
+    public ConcurrencyController getController() {
+        return controller;
+    }
+
+    void update() {
+        final Intent batteryStatus = context.registerReceiver(null, new IntentFilter(Intent.ACTION_BATTERY_CHANGED));
+        int batteryLevel = -1;
+        boolean charging = false;
+        if (batteryStatus != null) {
+            final int level = batteryStatus.getIntExtra(BatteryManager.EXTRA_LEVEL, -1);
+            final int scale = batteryStatus.getIntExtra(BatteryManager.EXTRA_SCALE, -1);
+            if (level >= 0 && scale > 0) {
+                batteryLevel = level * 100 / scale;
+            }
+            charging = batteryStatus.getIntExtra(BatteryManager.EXTRA_PLUGGED, 0) != 0;
+        }
+
+        final ConcurrencyController.Signals signals = new ConcurrencyController.Signals(scheduler.getRunningCount(), scheduler.getQueuedCount(),
+                getThroughput(), getThermalStatus(), batteryLevel, charging);
+        if (controller.update(signals)) {
+            scheduler.setConcurrencyLimit(controller.getConcurrency());
+            Log.d(TAG, String.format("Concurrency changed to %s.", controller));
+        }
+    }
+
+    private int getThermalStatus() {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.Q) {
+            return ConcurrencyController.THERMAL_STATUS_NONE;
+        }
+        final PowerManager powerManager = (PowerManager) context.getSystemService(Context.POWER_SERVICE);
+        return (powerManager != null) ? powerManager.getCurrentThermalStatus() : ConcurrencyController.THERMAL_STATUS_NONE;
+    }
+
+    /**
+     * @return sum of the recent speeds of the running sessions
+     */
+    private static double getThroughput() {
+        double throughput = 0;
+        for (SessionMetrics session : MetricsRegistry.getInstance().getSessions()) {
+            if (!session.isFinished()) {
+                throughput += session.getMeanSpeed(session.size() - SPEED_SAMPLES);
+            }
+        }
+        return throughput;
+    }
+
+}
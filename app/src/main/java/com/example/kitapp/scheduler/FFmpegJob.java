@@ -0,0 +1,186 @@
+package com.example.kitapp.scheduler;
+
+import static android.content.ContentValues.TAG;
+
+import android.util.Log;
+
+import com.arthenica.ffmpegkit.FFmpegKit;
+import com.arthenica.ffmpegkit.FFmpegKitConfig;
+import com.arthenica.ffmpegkit.FFmpegSession;
+import com.arthenica.ffmpegkit.FFmpegSessionCompleteCallback;
+import com.arthenica.ffmpegkit.LogCallback;
+import com.arthenica.ffmpegkit.ReturnCode;
+import com.arthenica.ffmpegkit.Statistics;
+import com.arthenica.ffmpegkit.StatisticsCallback;
+import com.arthenica.smartexception.java.Exceptions;
+import com.example.kitapp.telemetry.MetricsRegistry;
+import com.example.kitapp.telemetry.SessionRecord;
+import com.example.kitapp.telemetry.TelemetryStore;
+
+/**
+ * <p>{@link Job} that runs a single FFmpeg session synchronously on a scheduler worker.
+ *
+ * <p>The session is created when the job starts. The session complete callback is invoked on the
+ * worker thread once FFmpeg returns, exactly like
+ * {@link FFmpegKit#executeAsync(String, FFmpegSessionCompleteCallback)} does. A job cancelled
+ * before FFmpeg started still invokes it exactly once, with a session that was never executed and
+ * has no return code, so resources set up for the session can always be released there.
+ *
+ * <p>Statistics of the session are recorded in the {@link MetricsRegistry}, and finished sessions
+ * in the default {@link TelemetryStore}, if one is set, together with the number of jobs running
+ * on the scheduler that ran this one.
+ */
+public class FFmpegJob implements Job {
+    private final String[] arguments;
+    private final FFmpegSessionCompleteCallback completeCallback;
+    private final LogCallback logCallback;
+    private final StatisticsCallback statisticsCallback;
+    private final Object lock = new Object();
+    private boolean started;
+    private volatile FFmpegSession session;
+    private volatile boolean cancelled;
+    private volatile boolean cancelForwarded;
+
+    protected FFmpegJob(final String[] arguments, final FFmpegSessionCompleteCallback completeCallback, final LogCallback logCallback, final StatisticsCallback statisticsCallback) {
+        this.arguments = arguments;
+        this.completeCallback = completeCallback;
+        this.logCallback = logCallback;
+        this.statisticsCallback = statisticsCallback;
+    }
+
+    public static FFmpegJob create(final String command, final FFmpegSessionCompleteCallback completeCallback) {
+        return new FFmpegJob(FFmpegKitConfig.parseArguments(command), completeCallback, null, null);
+    }
+
+    public static FFmpegJob create(final String command, final FFmpegSessionCompleteCallback completeCallback, final LogCallback logCallback, final StatisticsCallback statisticsCallback) {
+        return new FFmpegJob(FFmpegKitConfig.parseArguments(command), completeCallback, logCallback, statisticsCallback);
+    }
+
+    public static FFmpegJob createWithArguments(final String[] arguments, final FFmpegSessionCompleteCallback completeCallback) {
+        return new FFmpegJob(arguments, completeCallback, null, null);
+    }
+
+    public static FFmpegJob createWithArguments(final String[] arguments, final FFmpegSessionCompleteCallback completeCallback, final LogCallback logCallback, final StatisticsCallback statisticsCallback) {
+        return new FFmpegJob(arguments, completeCallback, logCallback, statisticsCallback);
+    }
+
+    @Override
+    public void run() {
+        synchronized (lock) {
+            if (started) {
+
+                // CANCELLED BEFORE IT STARTED, THE CALLBACK HAS BEEN INVOKED ALREADY
+                return;
+            }
+            started = true;
+        }
+
+        final JobScheduler scheduler = JobScheduler.getCurrent();
+        final MetricsRegistry metricsRegistry = MetricsRegistry.getInstance();
+        final FFmpegSession newSession = FFmpegSession.create(arguments, completeCallback, createLogCallback(), createStatisticsCallback(metricsRegistry));
+        session = newSession;
+
+        // CANCEL MAY HAVE ARRIVED BEFORE THE SESSION EXISTED
+        if (cancelled) {
+            notifyComplete(newSession);
+            return;
+        }
+
+        metricsRegistry.startSession(newSession.getSessionId());
+        FFmpegKitConfig.ffmpegExecute(newSession);
+
+        final ReturnCode returnCode = newSession.getReturnCode();
+        metricsRegistry.endSession(newSession.getSessionId(), (returnCode != null) ? returnCode.getValue() : SessionRecord.NO_RETURN_CODE);
+
+        final TelemetryStore telemetryStore = TelemetryStore.getDefault();
+        if (telemetryStore != null) {
+
+            // A JOB RUN OUTSIDE OF A SCHEDULER ONLY COMPETES WITH ITSELF
+            telemetryStore.record(newSession, (scheduler != null) ? scheduler.getRunningCount() : 1);
+        }
+
+        notifyComplete(newSession);
+    }
+
+    @Override
+    public void cancel() {
+        final boolean notStarted;
+        synchronized (lock) {
+            cancelled = true;
+            notStarted = !started;
+            started = true;
+        }
+
+        if (notStarted) {
+            notifyComplete(FFmpegSession.create(arguments, completeCallback, logCallback, statisticsCallback));
+            return;
+        }
+
+        final FFmpegSession currentSession = session;
+        if (currentSession != null) {
+            FFmpegKit.cancel(currentSession.getSessionId());
+        }
+    }
+
+    public String[] getArguments() {
+        return arguments;
+    }
+
+    /**
+     * @return session created for this job, null if the job has not started yet
+     */
+    public FFmpegSession getSession() {
+        return session;
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    /**
+     * <p>FFmpegKit forgets a cancel that arrives after the session was created but before FFmpeg
+     * registered it, so the cancel is sent again from the first callback FFmpeg makes.
+     */
+    private void forwardLateCancel(final long sessionId) {
+        if (cancelled && !cancelForwarded) {
+            cancelForwarded = true;
+            FFmpegKit.cancel(sessionId);
+        }
+    }
+
+    private LogCallback createLogCallback() {
+        return new LogCallback() {
+
+            @Override
+            public void apply(final com.arthenica.ffmpegkit.Log log) {
+                forwardLateCancel(log.getSessionId());
+                if (logCallback != null) {
+                    logCallback.apply(log);
+                }
+            }
+        };
+    }
+
+    private StatisticsCallback createStatisticsCallback(final MetricsRegistry metricsRegistry) {
+        final StatisticsCallback registryCallback = metricsRegistry.createStatisticsCallback(statisticsCallback);
+        return new StatisticsCallback() {
+
+            @Override
+            public void apply(final Statistics statistics) {
+                forwardLateCancel(statistics.getSessionId());
+                registryCallback.apply(statistics);
+            }
+        };
+    }
+
+    private void notifyComplete(final FFmpegSession completedSession) {
+        if (completeCallback != null) {
+            try {
+                completeCallback.apply(completedSession);
+            } catch (final Exception e) {
+                Log.e(TAG, String.format("Exception thrown inside session complete callback.%s", Exceptions.getStackTraceString(e)));
+            }
+        }
+    }
+
+}
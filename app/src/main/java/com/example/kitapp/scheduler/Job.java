@@ -0,0 +1,23 @@
+package com.example.kitapp.scheduler;
+
+/**
+ * <p>Unit of work executed by {@link JobScheduler} on one of its workers.
+ */
+public interface Job {
+
+    /**
+     * <p>Runs the job to completion. Called on a worker thread; must not return before the work
+     * has finished.
+     *
+     * @throws Exception if the job fails
+     */
+    void run() throws Exception;
+
+    /**
+     * <p>Asks a running job to stop as soon as possible. Called from an arbitrary thread, may be
+     * called before {@link #run()} starts. A job cancelled while queued is also told through this
+     * method, {@link #run()} is never called for it.
+     */
+    void cancel();
+
+}
@@ -0,0 +1,12 @@
+package com.example.kitapp.scheduler;
+
+/**
+ * <p>Callback invoked once when a scheduled job reaches {@link JobState#COMPLETED},
+ * {@link JobState#FAILED} or {@link JobState#CANCELLED}.
+ */
+@FunctionalInterface
+public interface JobCompleteCallback {
+
+    void apply(final JobHandle handle);
+
+}
@@ -0,0 +1,794 @@
+package com.example.kitapp.scheduler;
+
+import static android.content.ContentValues.TAG;
+
+import android.content.Context;
+import android.system.ErrnoException;
+import android.system.Os;
+import android.system.OsConstants;
+import android.util.Log;
+
+import com.arthenica.ffmpegkit.FFmpegKitConfig;
+import com.arthenica.ffmpegkit.FFmpegSession;
+import com.arthenica.ffmpegkit.ReturnCode;
+import com.example.kitapp.util.StageMetrics;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p>Runs a set of dependent jobs on a {@link JobScheduler}.
+ *
+ * <p>Stages declare the artifacts they read and write. A stage is submitted as soon as every
+ * artifact it reads is complete, so independent stages run concurrently. Stream artifacts
+ * written by one stage and read by exactly one other stage are passed through an FFmpeg pipe
+ * instead of a file when both stages can start right away: slots for the writer and the reader
+ * are reserved together under the scheduler's current concurrency limit. If they can not be
+ * reserved, the artifact is written to its file and read once the writer completes, since a pipe
+ * end waiting in the queue would block its peer forever.
+ *
+ * <p>A stage that fails or is cancelled cancels the whole graph: stages not submitted yet are
+ * dropped and every submitted stage is cancelled, which cancels its FFmpeg session.
+ */
+public class JobGraph {
+
+    public interface JobFactory {
+
+        /**
+         * <p>Creates the job of a stage once all its inputs are available. Paths of artifacts are
+         * resolved through {@link JobGraph#getPath(String)}.
+         */
+        Job create(final JobGraph graph) throws IOException;
+    }
+
+    public interface PipeFactory {
+        String createPipe() throws IOException;
+
+        /**
+         * <p>Removes the pipe. A stage blocked opening its end of the pipe must be released.
+         */
+        void closePipe(final String pipe);
+    }
+
+    public interface StageCallback {
+
+        /**
+         * @param state {@link JobState#RUNNING} when the stage starts, its final state when it
+         *              ends
+         */
+        void apply(final JobGraph graph, final String stage, final JobState state);
+    }
+
+    public interface CompleteCallback {
+        void apply(final JobGraph graph);
+    }
+
+    private static class Artifact {
+        final String name;
+        final File file;
+        final boolean stream;
+        final List<Stage> consumers;
+        Stage producer;
+        String pipe;
+
+        Artifact(final String name, final File file, final boolean stream) {
+            this.name = name;
+            this.file = file;
+            this.stream = stream;
+            this.consumers = new ArrayList<>();
+        }
+    }
+
+    private static class Stage {
+        final String name;
+        final JobPriority priority;
+        final List<Artifact> inputs;
+        final List<Artifact> outputs;
+        final JobFactory factory;
+        JobState state;
+        boolean submitted;
+        boolean started;
+        JobHandle handle;
+
+        Stage(final String name, final JobPriority priority, final List<Artifact> inputs, final List<Artifact> outputs, final JobFactory factory) {
+            this.name = name;
+            this.priority = priority;
+            this.inputs = inputs;
+            this.outputs = outputs;
+            this.factory = factory;
+            this.state = JobState.QUEUED;
+        }
+    }
+
+    private static class Group {
+        final List<Stage> stages = new ArrayList<>();
+        final List<Artifact> pipes = new ArrayList<>();
+        JobScheduler.Reservation reservation;
+    }
+
+    private final String name;
+    private final JobScheduler scheduler;
+    private final PipeFactory pipeFactory;
+    private final Map<String, Artifact> artifacts;
+    private final Map<String, Stage> stages;
+    private final StageMetrics metrics;
+    private final Object lock = new Object();
+
+    private boolean pipesEnabled;
+    private List<Stage> order;
+    private StageCallback stageCallback;
+    private CompleteCallback completeCallback;
+    private volatile JobState state;
+    private volatile String failedStage;
+    private volatile Throwable failure;
+    private int activeCount;
+    private boolean notified;
+    private boolean pipesClosed;
+
+    /**
+     * @param name        graph name used in logs and metrics
+     * @param scheduler   scheduler running the stages
+     * @param pipeFactory factory creating pipes for stream artifacts, null to always use files
+     */
+    public JobGraph(final String name, final JobScheduler scheduler, final PipeFactory pipeFactory) {
+        this.name = name;
+        this.scheduler = scheduler;
+        this.pipeFactory = pipeFactory;
+        this.artifacts = new LinkedHashMap<>();
+        this.stages = new LinkedHashMap<>();
+        this.metrics = new StageMetrics(name);
+        this.state = JobState.QUEUED;
+        this.pipesEnabled = pipeFactory != null;
+    }
+
+    /**
+     * <p>Creates a graph running on the application wide scheduler and using FFmpeg pipes.
+     */
+    public static JobGraph create(final String name, final Context context) {
+        return new JobGraph(name, JobScheduler.getInstance(), createPipeFactory(context));
+    }
+
+    /**
+     * <p>Declares an artifact always stored in <code>file</code>.
+     */
+    public JobGraph addFile(final String artifact, final File file) {
+        return addArtifact(new Artifact(artifact, file, false));
+    }
+
+    /**
+     * <p>Declares an artifact that is piped from its writer to its reader when possible, and
+     * stored in <code>file</code> otherwise. Jobs writing or reading it must check
+     * {@link #isPipe(String)}, since formats that need seeking can not be used on a pipe.
+     */
+    public JobGraph addStream(final String artifact, final File file) {
+        return addArtifact(new Artifact(artifact, file, true));
+    }
+
+    private JobGraph addArtifact(final Artifact artifact) {
+        synchronized (lock) {
+            requireNotStarted();
+            if (artifacts.containsKey(artifact.name)) {
+                throw new IllegalArgumentException("Artifact " + artifact.name + " is already declared.");
+            }
+            artifacts.put(artifact.name, artifact);
+        }
+        return this;
+    }
+
+    /**
+     * @param stage    stage name, unique in the graph
+     * @param priority priority the stage job is submitted with
+     * @param inputs   artifacts the stage reads, artifacts no stage writes must exist already
+     * @param outputs  artifacts the stage writes, each artifact has at most one writer
+     * @param factory  factory creating the stage job
+     */
+    public JobGraph addStage(final String stage, final JobPriority priority, final String[] inputs, final String[] outputs, final JobFactory factory) {
+        synchronized (lock) {
+            requireNotStarted();
+            if (stages.containsKey(stage)) {
+                throw new IllegalArgumentException("Stage " + stage + " is already declared.");
+            }
+            final Stage newStage = new Stage(stage, priority, getArtifacts(inputs), getArtifacts(outputs), factory);
+            for (Artifact output : newStage.outputs) {
+                if (output.producer != null) {
+                    throw new IllegalArgumentException(String.format("Artifact %s is written by both %s and %s.", output.name, output.producer.name, stage));
+                }
+            }
+            for (Artifact output : newStage.outputs) {
+                output.producer = newStage;
+            }
+            for (Artifact input : newStage.inputs) {
+                input.consumers.add(newStage);
+            }
+            stages.put(stage, newStage);
+        }
+        return this;
+    }
+
+    /**
+     * <p>Allows or forbids pipes. Pipes are allowed by default if the graph has a pipe factory.
+     */
+    public JobGraph setPipesEnabled(final boolean pipesEnabled) {
+        synchronized (lock) {
+            requireNotStarted();
+            this.pipesEnabled = pipesEnabled && pipeFactory != null;
+        }
+        return this;
+    }
+
+    /**
+     * <p>Starts all stages whose inputs are available.
+     *
+     * @param stageCallback    callback invoked when stages start and end, may be null
+     * @param completeCallback callback invoked once when no stage is running any more, may be
+     *                         null
+     * @throws IllegalStateException if the graph has a cycle
+     */
+    public JobGraph start(final StageCallback stageCallback, final CompleteCallback completeCallback) {
+        synchronized (lock) {
+            requireNotStarted();
+            order = sortStages();
+            this.stageCallback = stageCallback;
+            this.completeCallback = completeCallback;
+            state = JobState.RUNNING;
+        }
+
+        Log.d(TAG, String.format("Job graph %s started with stages %s.", name, stages.keySet()));
+
+        if (stages.isEmpty()) {
+            notifyComplete();
+        } else {
+            schedule();
+        }
+        return this;
+    }
+
+    /**
+     * <p>Cancels the graph. Stages not submitted yet never run, submitted stages are cancelled.
+     */
+    public void cancel() {
+        final List<JobHandle> handles;
+        synchronized (lock) {
+            if (state != JobState.RUNNING) {
+                return;
+            }
+            state = JobState.CANCELLED;
+            handles = stopStages();
+        }
+        stop(handles);
+    }
+
+    /**
+     * @return path of <code>artifact</code>, a pipe if it is streamed
+     */
+    public String getPath(final String artifact) {
+        final Artifact resolved = getArtifact(artifact);
+        return (resolved.pipe != null) ? resolved.pipe : resolved.file.getAbsolutePath();
+    }
+
+    public boolean isPipe(final String artifact) {
+        return getArtifact(artifact).pipe != null;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return {@link JobState#QUEUED} before the graph starts, {@link JobState#RUNNING} while
+     * all stages succeed, then {@link JobState#COMPLETED}, {@link JobState#FAILED} or
+     * {@link JobState#CANCELLED}
+     */
+    public JobState getState() {
+        return state;
+    }
+
+    public JobState getStageState(final String stage) {
+        synchronized (lock) {
+            final Stage found = stages.get(stage);
+            if (found == null) {
+                throw new IllegalArgumentException("Stage " + stage + " is not declared.");
+            }
+            return found.state;
+        }
+    }
+
+    /**
+     * @return name of the first stage that failed, null if none failed
+     */
+    public String getFailedStage() {
+        return failedStage;
+    }
+
+    /**
+     * @return exception thrown by the failed stage, null if it did not throw
+     */
+    public Throwable getFailure() {
+        return failure;
+    }
+
+    /**
+     * @return duration and bytes written of each stage that started
+     */
+    public StageMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * <p>Returns the chain of stages that determined when the graph finished: starting from the
+     * stage that ended last, each step goes to the input writer that ended last.
+     *
+     * @return stage names in execution order, empty if no stage finished
+     */
+    public List<String> getCriticalPath() {
+        synchronized (lock) {
+            final List<String> path = new ArrayList<>();
+            Stage stage = latestFinished(stages.values());
+            while (stage != null) {
+                path.add(0, stage.name);
+                final List<Stage> writers = new ArrayList<>();
+                for (Artifact input : stage.inputs) {
+                    if (input.producer != null) {
+                        writers.add(input.producer);
+                    }
+                }
+                stage = latestFinished(writers);
+            }
+            return path;
+        }
+    }
+
+    /**
+     * @return milliseconds from the start of the first stage on the critical path to the end of
+     * the last one
+     */
+    public long getCriticalPathDuration() {
+        final List<String> path = getCriticalPath();
+        if (path.isEmpty()) {
+            return 0;
+        }
+        final StageMetrics.Stage first = metrics.getStage(path.get(0));
+        final StageMetrics.Stage last = metrics.getStage(path.get(path.size() - 1));
+        return TimeUnit.NANOSECONDS.toMillis(last.getEndTime() - first.getStartTime());
+    }
+
+    @Override
+    public String toString() {
+        return String.format(Locale.ROOT, "%s\n  state: %s%s\n  critical path: %s (%d ms)", metrics, state,
+                (failedStage != null) ? ", failed stage " + failedStage : "", getCriticalPath(), getCriticalPathDuration());
+    }
+
+    private void schedule() {
+        final List<Group> groups = new ArrayList<>();
+        synchronized (lock) {
+            if (state != JobState.RUNNING) {
+                return;
+            }
+
+            for (Stage stage : order) {
+                if (!stage.submitted && isReady(stage, null)) {
+                    final Group group = createGroup(stage);
+                    for (Stage member : group.stages) {
+                        member.submitted = true;
+                        activeCount++;
+                    }
+                    groups.add(group);
+                }
+            }
+        }
+
+        for (Group group : groups) {
+            submit(group);
+        }
+    }
+
+    /**
+     * <p>Stages started together: a ready stage and the readers of its pipe candidates that have
+     * every other input, if the scheduler has a free slot for each of them right now. Must be
+     * called holding the lock.
+     */
+    private Group createGroup(final Stage stage) {
+        final Group group = new Group();
+        addToGroup(stage, group);
+        if (group.stages.size() > 1) {
+            group.reservation = scheduler.reserve(group.stages.size());
+            if (group.reservation == null) {
+                Log.d(TAG, String.format("Job graph %s writes %s to files, the scheduler can not start %s together.", name, group.pipes, group.stages.size()));
+                group.stages.subList(1, group.stages.size()).clear();
+                group.pipes.clear();
+            }
+        }
+        return group;
+    }
+
+    private void addToGroup(final Stage stage, final Group group) {
+        group.stages.add(stage);
+        if (!pipesEnabled) {
+            return;
+        }
+        for (Artifact output : stage.outputs) {
+            if (output.stream && output.consumers.size() == 1) {
+                final Stage reader = output.consumers.get(0);
+                if (!reader.submitted && !group.stages.contains(reader) && isReady(reader, output)) {
+                    group.pipes.add(output);
+                    addToGroup(reader, group);
+                }
+            }
+        }
+    }
+
+    /**
+     * @param piped input written by a stage started together with <code>stage</code>, may be null
+     * @return true if every other input written by a stage is complete
+     */
+    private boolean isReady(final Stage stage, final Artifact piped) {
+        for (Artifact input : stage.inputs) {
+            final Stage producer = input.producer;
+            if (input != piped && producer != null && producer.state != JobState.COMPLETED) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void submit(final Group group) {
+        try {
+            for (Artifact artifact : group.pipes) {
+                final String pipe = pipeFactory.createPipe();
+                final boolean closed;
+                synchronized (lock) {
+                    artifact.pipe = pipe;
+                    closed = pipesClosed;
+                }
+                if (closed) {
+
+                    // THE GRAPH STOPPED MEANWHILE, ITS STAGES ARE CANCELLED AS SOON AS THEY ARE SUBMITTED
+                    pipeFactory.closePipe(pipe);
+                }
+            }
+        } catch (final IOException e) {
+            Log.w(TAG, String.format("Creating a pipe for job graph %s failed, writing %s to files.", name, group.pipes), e);
+            submitWriterOnly(group);
+            return;
+        }
+
+        // READERS ARE STARTED BEFORE THEIR WRITERS
+        for (int i = group.stages.size() - 1; i >= 0; i--) {
+            submit(group.stages.get(i), group.reservation);
+        }
+        if (group.reservation != null) {
+            group.reservation.release();
+        }
+    }
+
+    /**
+     * <p>Falls back to files for every pipe of <code>group</code>. Readers go back to waiting for
+     * their writer to complete.
+     */
+    private void submitWriterOnly(final Group group) {
+        final List<String> pipes = new ArrayList<>();
+        synchronized (lock) {
+            for (Artifact artifact : group.pipes) {
+                if (artifact.pipe != null) {
+                    pipes.add(artifact.pipe);
+                    artifact.pipe = null;
+                }
+            }
+            for (Stage reader : group.stages.subList(1, group.stages.size())) {
+                activeCount--;
+                if (state == JobState.RUNNING) {
+                    reader.submitted = false;
+                } else {
+                    reader.state = JobState.CANCELLED;
+                }
+            }
+        }
+        for (String pipe : pipes) {
+            pipeFactory.closePipe(pipe);
+        }
+        group.reservation.release();
+        submit(group.stages.get(0), null);
+    }
+
+    private void submit(final Stage stage, final JobScheduler.Reservation reservation) {
+        final Job job;
+        try {
+            job = stage.factory.create(this);
+        } catch (final IOException | RuntimeException e) {
+            finishStage(stage, JobState.FAILED, e);
+            return;
+        }
+
+        final Job stageJob = new Job() {
+
+            @Override
+            public void run() throws Exception {
+                startStage(stage);
+                job.run();
+            }
+
+            @Override
+            public void cancel() {
+                job.cancel();
+            }
+        };
+        final JobCompleteCallback stageCallback = new JobCompleteCallback() {
+
+            @Override
+            public void apply(final JobHandle completedHandle) {
+                final JobState jobState = completedHandle.getState();
+                if (jobState == JobState.COMPLETED && !isSuccessful(job)) {
+                    finishStage(stage, JobState.FAILED, null);
+                } else {
+                    finishStage(stage, jobState, completedHandle.getFailure());
+                }
+            }
+        };
+        final JobHandle handle = (reservation != null) ? reservation.submit(stageJob, stage.priority, stageCallback) : scheduler.submit(stageJob, stage.priority, stageCallback);
+
+        final boolean cancelled;
+        synchronized (lock) {
+            stage.handle = handle;
+            cancelled = state != JobState.RUNNING && !handle.isDone();
+        }
+        if (cancelled) {
+            handle.cancel();
+        }
+    }
+
+    /**
+     * @return false if <code>job</code> is an FFmpeg job whose session did not succeed
+     */
+    static boolean isSuccessful(final Job job) {
+        if (job instanceof FFmpegJob) {
+            final FFmpegSession session = ((FFmpegJob) job).getSession();
+            return session != null && ReturnCode.isSuccess(session.getReturnCode());
+        }
+        return true;
+    }
+
+    private void startStage(final Stage stage) {
+        metrics.begin(stage.name);
+        synchronized (lock) {
+            stage.started = true;
+            stage.state = JobState.RUNNING;
+        }
+        notifyStage(stage.name, JobState.RUNNING);
+    }
+
+    private void finishStage(final Stage stage, final JobState stageState, final Throwable stageFailure) {
+        final List<File> outputFiles = new ArrayList<>();
+        for (Artifact output : stage.outputs) {
+            if (output.pipe == null) {
+                outputFiles.add(output.file);
+            }
+        }
+
+        List<JobHandle> handles = Collections.emptyList();
+        final boolean complete;
+        synchronized (lock) {
+            if (stage.started) {
+                metrics.end(stage.name, outputFiles.toArray(new File[0]));
+            }
+            stage.state = stageState;
+            activeCount--;
+
+            if (stageState != JobState.COMPLETED && state == JobState.RUNNING) {
+                state = (stageState == JobState.CANCELLED) ? JobState.CANCELLED : JobState.FAILED;
+                failedStage = stage.name;
+                failure = stageFailure;
+                handles = stopStages();
+            } else if (state == JobState.RUNNING && allCompleted()) {
+                state = JobState.COMPLETED;
+            }
+            complete = activeCount == 0 && state != JobState.RUNNING;
+        }
+
+        if (stageState == JobState.FAILED) {
+            Log.w(TAG, String.format("Stage %s of job graph %s failed.", stage.name, name), stageFailure);
+        }
+
+        notifyStage(stage.name, stageState);
+        stop(handles);
+
+        if (complete) {
+            notifyComplete();
+        } else {
+            schedule();
+        }
+    }
+
+    /**
+     * <p>Marks stages not submitted yet as cancelled. Must be called holding the lock.
+     *
+     * @return handles of submitted stages that must be cancelled
+     */
+    private List<JobHandle> stopStages() {
+        final List<JobHandle> handles = new ArrayList<>();
+        for (Stage stage : stages.values()) {
+            if (!stage.submitted) {
+                stage.submitted = true;
+                stage.state = JobState.CANCELLED;
+            } else if (stage.handle != null && !stage.handle.isDone()) {
+                handles.add(stage.handle);
+            }
+        }
+        return handles;
+    }
+
+    private void stop(final List<JobHandle> handles) {
+        for (JobHandle handle : handles) {
+            handle.cancel();
+        }
+
+        // A STAGE MAY BE BLOCKED OPENING A PIPE WHOSE OTHER END WILL NEVER BE OPENED NOW
+        closePipes();
+        if (isIdle()) {
+            notifyComplete();
+        }
+    }
+
+    private boolean isIdle() {
+        synchronized (lock) {
+            return activeCount == 0 && state != JobState.RUNNING;
+        }
+    }
+
+    private void notifyStage(final String stage, final JobState stageState) {
+        if (stageCallback != null) {
+            stageCallback.apply(this, stage, stageState);
+        }
+    }
+
+    private void notifyComplete() {
+        synchronized (lock) {
+            if (notified) {
+                return;
+            }
+            notified = true;
+            if (state == JobState.RUNNING) {
+                state = JobState.COMPLETED;
+            }
+        }
+        closePipes();
+
+        Log.d(TAG, toString());
+
+        if (completeCallback != null) {
+            completeCallback.apply(this);
+        }
+    }
+
+    private void closePipes() {
+        final List<String> pipes = new ArrayList<>();
+        synchronized (lock) {
+            if (pipesClosed) {
+                return;
+            }
+            pipesClosed = true;
+            for (Artifact artifact : artifacts.values()) {
+                if (artifact.pipe != null) {
+                    pipes.add(artifact.pipe);
+                }
+            }
+        }
+        for (String pipe : pipes) {
+            pipeFactory.closePipe(pipe);
+        }
+    }
+
+    private boolean allCompleted() {
+        for (Stage stage : stages.values()) {
+            if (stage.state != JobState.COMPLETED) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private Stage latestFinished(final Iterable<Stage> candidates) {
+        Stage latest = null;
+        long latestEnd = 0;
+        for (Stage stage : candidates) {
+            final StageMetrics.Stage stageMetrics = stage.started ? metrics.getStage(stage.name) : null;
+            if (stageMetrics != null && stageMetrics.isFinished() && (latest == null || stageMetrics.getEndTime() > latestEnd)) {
+                latest = stage;
+                latestEnd = stageMetrics.getEndTime();
+            }
+        }
+        return latest;
+    }
+
+    /**
+     * @return stages with every writer before its readers
+     */
+    private List<Stage> sortStages() {
+        final List<Stage> sorted = new ArrayList<>();
+        final Map<Stage, Integer> marks = new LinkedHashMap<>();
+        for (Stage stage : stages.values()) {
+            visit(stage, marks, sorted);
+        }
+        return sorted;
+    }
+
+    private void visit(final Stage stage, final Map<Stage, Integer> marks, final List<Stage> sorted) {
+        final Integer mark = marks.get(stage);
+        if (mark != null) {
+            if (mark == 1) {
+                throw new IllegalStateException("Job graph " + name + " has a cycle through stage " + stage.name + ".");
+            }
+            return;
+        }
+        marks.put(stage, 1);
+        for (Artifact input : stage.inputs) {
+            if (input.producer != null) {
+                visit(input.producer, marks, sorted);
+            }
+        }
+        marks.put(stage, 2);
+        sorted.add(stage);
+    }
+
+    private List<Artifact> getArtifacts(final String[] names) {
+        final List<Artifact> list = new ArrayList<>();
+        for (String artifact : names) {
+            list.add(getArtifact(artifact));
+        }
+        return list;
+    }
+
+    private Artifact getArtifact(final String artifact) {
+        final Artifact found = artifacts.get(artifact);
+        if (found == null) {
+            throw new IllegalArgumentException("Artifact " + artifact + " is not declared, declared artifacts are " + Arrays.toString(artifacts.keySet().toArray()) + ".");
+        }
+        return found;
+    }
+
+    private void requireNotStarted() {
+        if (state != JobState.QUEUED) {
+            throw new IllegalStateException("Job graph " + name + " has already started.");
+        }
+    }
+
+    static PipeFactory createPipeFactory(final Context context) {
+        return new PipeFactory() {
+
+            @Override
+            public String createPipe() throws IOException {
+                final String pipe = FFmpegKitConfig.registerNewFFmpegPipe(context);
+                if (pipe == null) {
+                    throw new IOException("Creating an FFmpeg pipe failed.");
+                }
+                return pipe;
+            }
+
+            @Override
+            public void closePipe(final String pipe) {
+
+                // NON BLOCKING OPENS RELEASE A WRITER OR A READER WAITING FOR THE OTHER END
+                release(pipe, OsConstants.O_RDONLY | OsConstants.O_NONBLOCK);
+                release(pipe, OsConstants.O_WRONLY | OsConstants.O_NONBLOCK);
+                FFmpegKitConfig.closeFFmpegPipe(pipe);
+            }
+        };
+    }
+
+    private static void release(final String pipe, final int flags) {
+        try {
+            Os.close(Os.open(pipe, flags, 0));
+        } catch (final ErrnoException e) {
+
+            // ENXIO, NOBODY IS WAITING TO READ
+        }
+    }
+
+}
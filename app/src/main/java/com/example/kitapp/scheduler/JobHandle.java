@@ -0,0 +1,103 @@
+package com.example.kitapp.scheduler;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * <p>Handle returned by {@link JobScheduler#submit(Job)}. Identifies a job for its whole
+ * lifecycle and allows it to be cancelled whether it is queued or running.
+ */
+public class JobHandle {
+    private static final AtomicLong jobIdGenerator = new AtomicLong(1);
+
+    private final long id;
+    private final long sequence;
+    private final Job job;
+    private final JobPriority priority;
+    private final JobCompleteCallback completeCallback;
+    private final JobScheduler scheduler;
+    private volatile JobState state;
+    private volatile boolean cancelRequested;
+    private volatile Throwable failure;
+
+    JobHandle(final JobScheduler scheduler, final long sequence, final Job job, final JobPriority priority, final JobCompleteCallback completeCallback) {
+        this.id = jobIdGenerator.getAndIncrement();
+        this.sequence = sequence;
+        this.job = job;
+        this.priority = priority;
+        this.completeCallback = completeCallback;
+        this.scheduler = scheduler;
+        this.state = JobState.QUEUED;
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    public Job getJob() {
+        return job;
+    }
+
+    public JobPriority getPriority() {
+        return priority;
+    }
+
+    public JobState getState() {
+        return state;
+    }
+
+    /**
+     * @return exception thrown by the job if it is in {@link JobState#FAILED} state
+     */
+    public Throwable getFailure() {
+        return failure;
+    }
+
+    public boolean isDone() {
+        final JobState currentState = state;
+        return currentState == JobState.COMPLETED || currentState == JobState.FAILED || currentState == JobState.CANCELLED;
+    }
+
+    public boolean isCancelRequested() {
+        return cancelRequested;
+    }
+
+    /**
+     * <p>Cancels this job. A queued job is removed without ever running, a running job is asked
+     * to stop.
+     *
+     * @return true if the job was still active
+     */
+    public boolean cancel() {
+        return scheduler.cancel(id);
+    }
+
+    long getSequence() {
+        return sequence;
+    }
+
+    JobCompleteCallback getCompleteCallback() {
+        return completeCallback;
+    }
+
+    void setState(final JobState state) {
+        this.state = state;
+    }
+
+    void setFailure(final Throwable failure) {
+        this.failure = failure;
+    }
+
+    void requestCancel() {
+        this.cancelRequested = true;
+    }
+
+    @Override
+    public String toString() {
+        return "JobHandle{" +
+                "id=" + id +
+                ", priority=" + priority +
+                ", state=" + state +
+                '}';
+    }
+
+}
@@ -0,0 +1,11 @@
+package com.example.kitapp.scheduler;
+
+/**
+ * <p>Dispatch priority of a scheduled job. Queued jobs with a higher priority are started first,
+ * jobs with the same priority are started in submission order.
+ */
+public enum JobPriority {
+    HIGH,
+    NORMAL,
+    LOW
+}
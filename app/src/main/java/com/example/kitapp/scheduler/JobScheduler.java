@@ -0,0 +1,392 @@
+package com.example.kitapp.scheduler;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * <p>Bounded priority scheduler for long running jobs such as FFmpeg sessions.
+ *
+ * <p>Submitted jobs are kept in a priority queue and at most {@link #getWorkerCount()} of them
+ * run at the same time, so tapping an encode button many times queues work instead of starting
+ * that many concurrent encodes. The concurrency limit can be lowered below the worker count
+ * while jobs run, for example by a {@link ConcurrencyGovernor} when the device heats up.
+ */
+public class JobScheduler {
+
+    private static final Comparator<JobHandle> DISPATCH_ORDER = new Comparator<JobHandle>() {
+
+        @Override
+        public int compare(final JobHandle first, final JobHandle second) {
+            final int priorityOrder = first.getPriority().compareTo(second.getPriority());
+            if (priorityOrder != 0) {
+                return priorityOrder;
+            }
+            return Long.compare(first.getSequence(), second.getSequence());
+        }
+    };
+
+    /**
+     * <p>Slots held for jobs that must start together, e.g. both ends of a pipe. Jobs submitted
+     * through a reservation start right away in a held slot instead of waiting in the queue.
+     */
+    public class Reservation {
+        private int remaining;
+
+        private Reservation(final int count) {
+            this.remaining = count;
+        }
+
+        /**
+         * <p>Starts <code>job</code> in one of the held slots.
+         *
+         * @throws IllegalStateException if every held slot has been used or released
+         */
+        public JobHandle submit(final Job job, final JobPriority priority, final JobCompleteCallback completeCallback) {
+            final JobHandle handle;
+            synchronized (lock) {
+                if (remaining == 0) {
+                    throw new IllegalStateException("Reservation has no slot left.");
+                }
+                remaining--;
+                reservedCount--;
+                handle = new JobHandle(JobScheduler.this, sequence++, job, priority, completeCallback);
+                handle.setState(JobState.RUNNING);
+                running.put(handle.getId(), handle);
+            }
+            execute(handle);
+            return handle;
+        }
+
+        /**
+         * <p>Gives the slots not used yet back to queued jobs.
+         */
+        public void release() {
+            synchronized (lock) {
+                reservedCount -= remaining;
+                remaining = 0;
+            }
+            dispatch();
+        }
+    }
+
+    /**
+     * Scheduler running the job of the current worker thread.
+     */
+    private static final ThreadLocal<JobScheduler> CURRENT = new ThreadLocal<>();
+
+    private static JobScheduler instance;
+
+    private final Object lock = new Object();
+    private final Executor executor;
+    private final PriorityQueue<JobHandle> queue;
+    private final Map<Long, JobHandle> running;
+    private final int workerCount;
+    private int concurrencyLimit;
+    private int reservedCount;
+    private long sequence;
+
+    /**
+     * @param workerCount maximum number of jobs running at the same time
+     * @param executor    executor used to run jobs, must be able to run at least
+     *                    <code>workerCount</code> tasks concurrently
+     */
+    public JobScheduler(final int workerCount, final Executor executor) {
+        if (workerCount < 1) {
+            throw new IllegalArgumentException("Worker count must be positive: " + workerCount);
+        }
+        this.workerCount = workerCount;
+        this.concurrencyLimit = workerCount;
+        this.executor = executor;
+        this.queue = new PriorityQueue<>(11, DISPATCH_ORDER);
+        this.running = new LinkedHashMap<>();
+    }
+
+    /**
+     * <p>Returns the application wide scheduler, sized to the number of available cores.
+     *
+     * @return shared scheduler instance
+     */
+    public static synchronized JobScheduler getInstance() {
+        if (instance == null) {
+            final int cores = getDefaultWorkerCount();
+            instance = new JobScheduler(cores, createWorkerPool(cores));
+        }
+        return instance;
+    }
+
+    /**
+     * <p>Returns the scheduler that is running the calling job, so a job can look at the load of
+     * the scheduler it was actually submitted to.
+     *
+     * @return scheduler running the job of the calling thread, null outside of a job
+     */
+    static JobScheduler getCurrent() {
+        return CURRENT.get();
+    }
+
+    public static int getDefaultWorkerCount() {
+        return Math.max(1, Runtime.getRuntime().availableProcessors());
+    }
+
+    static ExecutorService createWorkerPool(final int size) {
+        return Executors.newFixedThreadPool(size, new ThreadFactory() {
+            private final AtomicInteger threadNumber = new AtomicInteger(1);
+
+            @Override
+            public Thread newThread(final Runnable runnable) {
+                final Thread thread = new Thread(runnable, "job-worker-" + threadNumber.getAndIncrement());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    public JobHandle submit(final Job job) {
+        return submit(job, JobPriority.NORMAL, null);
+    }
+
+    public JobHandle submit(final Job job, final JobPriority priority) {
+        return submit(job, priority, null);
+    }
+
+    public JobHandle submit(final Job job, final JobPriority priority, final JobCompleteCallback completeCallback) {
+        final JobHandle handle;
+        synchronized (lock) {
+            handle = new JobHandle(this, sequence++, job, priority, completeCallback);
+            queue.add(handle);
+        }
+        dispatch();
+        return handle;
+    }
+
+    /**
+     * <p>Holds <code>count</code> slots if that many are free under the current concurrency
+     * limit. The slots are not given to queued jobs until they are used or released.
+     *
+     * @return reservation, null if not enough slots are free right now
+     */
+    public Reservation reserve(final int count) {
+        synchronized (lock) {
+            if (running.size() + reservedCount + count > concurrencyLimit) {
+                return null;
+            }
+            reservedCount += count;
+            return new Reservation(count);
+        }
+    }
+
+    /**
+     * <p>Cancels the job with the given id. A queued job is removed from the queue and its
+     * {@link Job#cancel()} is called, so it can release what was set up for it.
+     *
+     * @param jobId job id
+     * @return true if the job was queued or running, false if it is unknown or already finished
+     */
+    public boolean cancel(final long jobId) {
+        JobHandle cancelledHandle = null;
+        JobHandle runningHandle = null;
+
+        synchronized (lock) {
+            for (JobHandle handle : queue) {
+                if (handle.getId() == jobId) {
+                    cancelledHandle = handle;
+                    break;
+                }
+            }
+            if (cancelledHandle != null) {
+                queue.remove(cancelledHandle);
+                cancelledHandle.requestCancel();
+                cancelledHandle.setState(JobState.CANCELLED);
+            } else {
+                runningHandle = running.get(jobId);
+                if (runningHandle != null) {
+                    runningHandle.requestCancel();
+                }
+            }
+        }
+
+        if (cancelledHandle != null) {
+            cancelledHandle.getJob().cancel();
+            notifyComplete(cancelledHandle);
+            return true;
+        }
+        if (runningHandle != null) {
+            runningHandle.getJob().cancel();
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * <p>Cancels all queued and running jobs.
+     */
+    public void cancelAll() {
+        final List<JobHandle> cancelledHandles;
+        final List<JobHandle> runningHandles;
+
+        synchronized (lock) {
+            cancelledHandles = new ArrayList<>(queue);
+            queue.clear();
+            for (JobHandle handle : cancelledHandles) {
+                handle.requestCancel();
+                handle.setState(JobState.CANCELLED);
+            }
+            runningHandles = new ArrayList<>(running.values());
+            for (JobHandle handle : runningHandles) {
+                handle.requestCancel();
+            }
+        }
+
+        for (JobHandle handle : runningHandles) {
+            handle.getJob().cancel();
+        }
+        for (JobHandle handle : cancelledHandles) {
+            handle.getJob().cancel();
+            notifyComplete(handle);
+        }
+    }
+
+    /**
+     * @param jobId job id
+     * @return handle of the queued or running job with the given id, null otherwise
+     */
+    public JobHandle getJob(final long jobId) {
+        synchronized (lock) {
+            final JobHandle runningHandle = running.get(jobId);
+            if (runningHandle != null) {
+                return runningHandle;
+            }
+            for (JobHandle handle : queue) {
+                if (handle.getId() == jobId) {
+                    return handle;
+                }
+            }
+            return null;
+        }
+    }
+
+    /**
+     * @return running jobs followed by queued jobs in dispatch order
+     */
+    public List<JobHandle> listJobs() {
+        synchronized (lock) {
+            final List<JobHandle> jobs = new ArrayList<>(running.values());
+            final List<JobHandle> queued = new ArrayList<>(queue);
+            queued.sort(DISPATCH_ORDER);
+            jobs.addAll(queued);
+            return jobs;
+        }
+    }
+
+    public int getWorkerCount() {
+        return workerCount;
+    }
+
+    /**
+     * @return maximum number of jobs started at the same time, at most {@link #getWorkerCount()}
+     */
+    public int getConcurrencyLimit() {
+        synchronized (lock) {
+            return concurrencyLimit;
+        }
+    }
+
+    /**
+     * <p>Changes how many jobs may run at the same time. Lowering the limit does not interrupt
+     * running jobs, queued jobs wait until enough of them finish. Raising it starts queued jobs
+     * right away.
+     *
+     * @param limit new limit, clamped between 1 and {@link #getWorkerCount()}
+     */
+    public void setConcurrencyLimit(final int limit) {
+        synchronized (lock) {
+            concurrencyLimit = Math.max(1, Math.min(workerCount, limit));
+        }
+        dispatch();
+    }
+
+    public int getRunningCount() {
+        synchronized (lock) {
+            return running.size();
+        }
+    }
+
+    public int getQueuedCount() {
+        synchronized (lock) {
+            return queue.size();
+        }
+    }
+
+    private void dispatch() {
+        final List<JobHandle> started = new ArrayList<>();
+
+        synchronized (lock) {
+            while (running.size() + reservedCount < concurrencyLimit && !queue.isEmpty()) {
+                final JobHandle handle = queue.poll();
+                handle.setState(JobState.RUNNING);
+                running.put(handle.getId(), handle);
+                started.add(handle);
+            }
+        }
+
+        for (JobHandle handle : started) {
+            execute(handle);
+        }
+    }
+
+    private void execute(final JobHandle handle) {
+        executor.execute(new Runnable() {
+
+            @Override
+            public void run() {
+                runJob(handle);
+            }
+        });
+    }
+
+    private void runJob(final JobHandle handle) {
+        JobState finalState;
+        try {
+            if (!handle.isCancelRequested()) {
+                CURRENT.set(this);
+                try {
+                    handle.getJob().run();
+                } finally {
+                    CURRENT.remove();
+                }
+            }
+            finalState = handle.isCancelRequested() ? JobState.CANCELLED : JobState.COMPLETED;
+        } catch (final Exception e) {
+            handle.setFailure(e);
+            finalState = handle.isCancelRequested() ? JobState.CANCELLED : JobState.FAILED;
+        }
+
+        synchronized (lock) {
+            running.remove(handle.getId());
+            handle.setState(finalState);
+        }
+
+        try {
+            notifyComplete(handle);
+        } finally {
+            dispatch();
+        }
+    }
+
+    private void notifyComplete(final JobHandle handle) {
+        final JobCompleteCallback completeCallback = handle.getCompleteCallback();
+        if (completeCallback != null) {
+            completeCallback.apply(handle);
+        }
+    }
+
+}
@@ -0,0 +1,12 @@
+package com.example.kitapp.scheduler;
+
+/**
+ * <p>Lifecycle states of a scheduled job.
+ */
+public enum JobState {
+    QUEUED,
+    RUNNING,
+    COMPLETED,
+    FAILED,
+    CANCELLED
+}
@@ -0,0 +1,447 @@
+package com.example.kitapp.telemetry;
+
+import com.arthenica.ffmpegkit.Statistics;
+import com.arthenica.ffmpegkit.StatisticsCallback;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * <p>Live metrics of the FFmpeg sessions in this process: counters, gauges and histograms
+ * aggregated over all sessions, and a {@link SessionMetrics} time series per session.
+ *
+ * <p>Sessions started by {@link com.example.kitapp.scheduler.FFmpegJob} are recorded
+ * automatically. Sessions started in any other way are recorded by calling
+ * {@link #startSession(long)} before they execute, passing their statistics to
+ * {@link #record(Statistics)} and calling {@link #endSession(long, int)} when they end.
+ * Statistics of sessions that are not running are dropped. Only the latest finished sessions are
+ * kept, so memory stays bounded however many sessions run.
+ */
+public class MetricsRegistry {
+
+    public static final String SESSIONS_STARTED = "sessions.started";
+    public static final String SESSIONS_FAILED = "sessions.failed";
+    public static final String SESSIONS_ACTIVE = "sessions.active";
+    public static final String STATISTICS_RECEIVED = "statistics.received";
+    public static final String STATISTICS_STALLS = "statistics.stalls";
+    public static final String STATISTICS_INTERVAL = "statistics.interval";
+    public static final String SESSION_FPS = "session.fps";
+    public static final String SESSION_SPEED = "session.speed";
+
+    /**
+     * FFmpeg sends statistics about every 500 milliseconds, a longer gap means the session
+     * stalled.
+     */
+    public static final long DEFAULT_STALL_THRESHOLD = 2000;
+
+    public static final int DEFAULT_FINISHED_SESSION_LIMIT = 16;
+
+    public static class Counter {
+        private final AtomicLong value = new AtomicLong();
+
+        public void increment() {
+            value.incrementAndGet();
+        }
+
+        public void add(final long delta) {
+            value.addAndGet(delta);
+        }
+
+        public long get() {
+            return value.get();
+        }
+    }
+
+    public static class Gauge {
+        private volatile double value;
+
+        public void set(final double value) {
+            this.value = value;
+        }
+
+        public double get() {
+            return value;
+        }
+    }
+
+    /**
+     * <p>Counts values in fixed buckets. Bucket <code>i</code> counts values up to
+     * <code>bounds[i]</code>, the last bucket counts values above every bound.
+     */
+    public static class Histogram {
+        private final double[] bounds;
+        private final long[] counts;
+        private long count;
+        private double sum;
+        private double max = Double.NEGATIVE_INFINITY;
+
+        Histogram(final double[] bounds) {
+            this.bounds = bounds.clone();
+            Arrays.sort(this.bounds);
+            this.counts = new long[bounds.length + 1];
+        }
+
+        /**
+         * <p>Counts <code>value</code>, NaN is ignored.
+         */
+        public synchronized void record(final double value) {
+            if (Double.isNaN(value)) {
+                return;
+            }
+            int bucket = 0;
+            while (bucket < bounds.length && value > bounds[bucket]) {
+                bucket++;
+            }
+            counts[bucket]++;
+            count++;
+            sum += value;
+            max = Math.max(max, value);
+        }
+
+        public double[] getBounds() {
+            return bounds.clone();
+        }
+
+        public synchronized long getBucketCount(final int bucket) {
+            return counts[bucket];
+        }
+
+        public synchronized long getCount() {
+            return count;
+        }
+
+        public synchronized double getMean() {
+            return (count > 0) ? sum / count : 0;
+        }
+
+        /**
+         * @return upper bound of the bucket holding the <code>percent</code>th percentile, the
+         * largest value recorded if it falls into the last bucket, 0 if nothing was recorded
+         */
+        public synchronized double getPercentile(final int percent) {
+            if (count == 0) {
+                return 0;
+            }
+            final long rank = Math.max(1, (long) Math.ceil(percent / 100.0 * count));
+            long seen = 0;
+            for (int i = 0; i < bounds.length; i++) {
+                seen += counts[i];
+                if (seen >= rank) {
+                    return bounds[i];
+                }
+            }
+            return max;
+        }
+
+        synchronized void reset() {
+            Arrays.fill(counts, 0);
+            count = 0;
+            sum = 0;
+            max = Double.NEGATIVE_INFINITY;
+        }
+
+        synchronized StringBuilder appendJson(final StringBuilder builder) {
+            builder.append("{\"count\":").append(count).append(",\"mean\":").append(formatJsonNumber(getMean()));
+            builder.append(",\"p50\":").append(formatJsonNumber(getPercentile(50))).append(",\"p95\":").append(formatJsonNumber(getPercentile(95)));
+            builder.append(",\"bounds\":[");
+            for (int i = 0; i < bounds.length; i++) {
+                builder.append((i > 0) ? "," : "").append(formatJsonNumber(bounds[i]));
+            }
+            builder.append("],\"buckets\":[");
+            for (int i = 0; i < counts.length; i++) {
+                builder.append((i > 0) ? "," : "").append(counts[i]);
+            }
+            return builder.append("]}");
+        }
+    }
+
+    private static final MetricsRegistry instance = new MetricsRegistry(SessionMetrics.DEFAULT_CAPACITY, DEFAULT_FINISHED_SESSION_LIMIT, DEFAULT_STALL_THRESHOLD);
+
+    private final int sessionCapacity;
+    private final int finishedSessionLimit;
+    private final long stallThreshold;
+    private final Map<String, Counter> counters = new TreeMap<>();
+    private final Map<String, Gauge> gauges = new TreeMap<>();
+    private final Map<String, Histogram> histograms = new TreeMap<>();
+    private final Map<Long, SessionMetrics> activeSessions = new LinkedHashMap<>();
+    private final Deque<SessionMetrics> finishedSessions = new ArrayDeque<>();
+    private final Counter sessionsStarted;
+    private final Counter sessionsFailed;
+    private final Counter statisticsReceived;
+    private final Counter statisticsStalls;
+    private final Gauge sessionsActive;
+    private final Histogram statisticsInterval;
+    private final Histogram sessionFps;
+    private final Histogram sessionSpeed;
+
+    /**
+     * @param sessionCapacity      samples kept per session
+     * @param finishedSessionLimit finished sessions kept
+     * @param stallThreshold       gap between two samples, in milliseconds, counted as a stall
+     */
+    public MetricsRegistry(final int sessionCapacity, final int finishedSessionLimit, final long stallThreshold) {
+        this.sessionCapacity = sessionCapacity;
+        this.finishedSessionLimit = finishedSessionLimit;
+        this.stallThreshold = stallThreshold;
+        this.sessionsStarted = getCounter(SESSIONS_STARTED);
+        this.sessionsFailed = getCounter(SESSIONS_FAILED);
+        this.statisticsReceived = getCounter(STATISTICS_RECEIVED);
+        this.statisticsStalls = getCounter(STATISTICS_STALLS);
+        this.sessionsActive = getGauge(SESSIONS_ACTIVE);
+        this.statisticsInterval = getHistogram(STATISTICS_INTERVAL, 250, 500, 1000, 2000, 5000, 10000);
+        this.sessionFps = getHistogram(SESSION_FPS, 1, 5, 10, 15, 24, 30, 60, 120, 240);
+        this.sessionSpeed = getHistogram(SESSION_SPEED, 0.1, 0.25, 0.5, 1, 2, 4, 8);
+    }
+
+    public static MetricsRegistry getInstance() {
+        return instance;
+    }
+
+    public synchronized Counter getCounter(final String name) {
+        Counter counter = counters.get(name);
+        if (counter == null) {
+            counter = new Counter();
+            counters.put(name, counter);
+        }
+        return counter;
+    }
+
+    public synchronized Gauge getGauge(final String name) {
+        Gauge gauge = gauges.get(name);
+        if (gauge == null) {
+            gauge = new Gauge();
+            gauges.put(name, gauge);
+        }
+        return gauge;
+    }
+
+    /**
+     * @param bounds upper bounds of the buckets, only used when the histogram is created
+     */
+    public synchronized Histogram getHistogram(final String name, final double... bounds) {
+        Histogram histogram = histograms.get(name);
+        if (histogram == null) {
+            histogram = new Histogram(bounds);
+            histograms.put(name, histogram);
+        }
+        return histogram;
+    }
+
+    /**
+     * @return callback recording statistics before passing them on to <code>delegate</code>,
+     * which may be null
+     */
+    public StatisticsCallback createStatisticsCallback(final StatisticsCallback delegate) {
+        return new StatisticsCallback() {
+
+            @Override
+            public void apply(final Statistics statistics) {
+                record(statistics);
+                if (delegate != null) {
+                    delegate.apply(statistics);
+                }
+            }
+        };
+    }
+
+    public void startSession(final long sessionId) {
+        startSession(sessionId, System.currentTimeMillis());
+    }
+
+    public void record(final Statistics statistics) {
+        record(statistics.getSessionId(), System.currentTimeMillis(), statistics.getVideoFps(), (float) statistics.getSpeed(), (float) statistics.getBitrate(), statistics.getSize());
+    }
+
+    /**
+     * @param returnCode FFmpeg return code, {@link SessionRecord#NO_RETURN_CODE} if there is none
+     */
+    public void endSession(final long sessionId, final int returnCode) {
+        endSession(sessionId, System.currentTimeMillis(), returnCode);
+    }
+
+    synchronized SessionMetrics startSession(final long sessionId, final long now) {
+        SessionMetrics session = activeSessions.get(sessionId);
+        if (session == null) {
+            session = new SessionMetrics(sessionId, now, sessionCapacity);
+            activeSessions.put(sessionId, session);
+            sessionsStarted.increment();
+            sessionsActive.set(activeSessions.size());
+        }
+        return session;
+    }
+
+    void record(final long sessionId, final long now, final float fps, final float speed, final float bitrate, final long size) {
+        final SessionMetrics session;
+        final long previousTime;
+        synchronized (this) {
+
+            // LATE STATISTICS OF AN ENDED SESSION MUST NOT START IT AGAIN
+            session = activeSessions.get(sessionId);
+            if (session == null) {
+                return;
+            }
+            previousTime = session.getLastTime();
+        }
+
+        if (session.add(now, fps, speed, bitrate, size, stallThreshold)) {
+            statisticsStalls.increment();
+        }
+        if (previousTime != 0) {
+            statisticsInterval.record(now - previousTime);
+        }
+        statisticsReceived.increment();
+        sessionFps.record(fps);
+        sessionSpeed.record(speed);
+    }
+
+    synchronized void endSession(final long sessionId, final long now, final int returnCode) {
+        final SessionMetrics session = activeSessions.remove(sessionId);
+        if (session == null) {
+            return;
+        }
+        session.finish(now, returnCode);
+        if (returnCode != 0) {
+            sessionsFailed.increment();
+        }
+        sessionsActive.set(activeSessions.size());
+
+        finishedSessions.addLast(session);
+        while (finishedSessions.size() > finishedSessionLimit) {
+            finishedSessions.removeFirst();
+        }
+    }
+
+    /**
+     * @return metrics of a running or recently finished session, null if there are none
+     */
+    public synchronized SessionMetrics getSession(final long sessionId) {
+        final SessionMetrics session = activeSessions.get(sessionId);
+        if (session != null) {
+            return session;
+        }
+        for (SessionMetrics finishedSession : finishedSessions) {
+            if (finishedSession.getSessionId() == sessionId) {
+                return finishedSession;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return finished sessions from oldest to newest, followed by running sessions
+     */
+    public synchronized List<SessionMetrics> getSessions() {
+        final List<SessionMetrics> sessions = new ArrayList<>(finishedSessions);
+        sessions.addAll(activeSessions.values());
+        return sessions;
+    }
+
+    public synchronized String toJson() {
+        final StringBuilder builder = new StringBuilder(1024);
+        builder.append("{\"counters\":{");
+        String separator = "";
+        for (Map.Entry<String, Counter> entry : counters.entrySet()) {
+            builder.append(separator).append(quote(entry.getKey())).append(':').append(entry.getValue().get());
+            separator = ",";
+        }
+        builder.append("},\"gauges\":{");
+        separator = "";
+        for (Map.Entry<String, Gauge> entry : gauges.entrySet()) {
+            builder.append(separator).append(quote(entry.getKey())).append(':').append(formatJsonNumber(entry.getValue().get()));
+            separator = ",";
+        }
+        builder.append("},\"histograms\":{");
+        separator = "";
+        for (Map.Entry<String, Histogram> entry : histograms.entrySet()) {
+            builder.append(separator).append(quote(entry.getKey())).append(':');
+            entry.getValue().appendJson(builder);
+            separator = ",";
+        }
+        builder.append("},\"sessions\":[");
+        separator = "";
+        for (SessionMetrics session : getSessions()) {
+            builder.append(separator);
+            session.appendJson(builder);
+            separator = ",";
+        }
+        return builder.append("]}").toString();
+    }
+
+    /**
+     * <p>Writes {@link #toJson()} to <code>file</code> through a temporary file, so a reader
+     * never sees a partial dump.
+     */
+    public void writeJson(final File file) throws IOException {
+        final File temporaryFile = new File(file.getParentFile(), "." + file.getName() + ".tmp");
+        try {
+            try (FileOutputStream outputStream = new FileOutputStream(temporaryFile)) {
+                outputStream.write(toJson().getBytes(StandardCharsets.UTF_8));
+            }
+            if (!temporaryFile.renameTo(file)) {
+                throw new IOException(String.format("Renaming %s to %s failed.", temporaryFile.getName(), file.getName()));
+            }
+        } finally {
+            temporaryFile.delete();
+        }
+    }
+
+    /**
+     * <p>Resets every metric to zero and forgets all sessions.
+     */
+    public synchronized void clear() {
+        for (Counter counter : counters.values()) {
+            counter.value.set(0);
+        }
+        for (Gauge gauge : gauges.values()) {
+            gauge.set(0);
+        }
+        for (Histogram histogram : histograms.values()) {
+            histogram.reset();
+        }
+        activeSessions.clear();
+        finishedSessions.clear();
+    }
+
+    @Override
+    public synchronized String toString() {
+        final StringBuilder builder = new StringBuilder();
+        builder.append(String.format(Locale.ROOT, "%d sessions started, %d failed, %d running, %d statistics, %d stalls",
+                sessionsStarted.get(), sessionsFailed.get(), activeSessions.size(), statisticsReceived.get(), statisticsStalls.get()));
+        builder.append(String.format(Locale.ROOT, "\nfps p50 %.0f p95 %.0f, speed p50 %.2fx p95 %.2fx, statistics interval p95 %.0f ms",
+                sessionFps.getPercentile(50), sessionFps.getPercentile(95), sessionSpeed.getPercentile(50), sessionSpeed.getPercentile(95), statisticsInterval.getPercentile(95)));
+        for (SessionMetrics session : getSessions()) {
+            builder.append('\n').append(session);
+        }
+        return builder.toString();
+    }
+
+    /**
+     * @return <code>value</code> as a JSON number, <code>null</code> if it is not finite
+     */
+    static String formatJsonNumber(final double value) {
+        if (Double.isNaN(value) || Double.isInfinite(value)) {
+            return "null";
+        }
+        if (value == Math.rint(value) && Math.abs(value) < 1e15) {
+            return Long.toString((long) value);
+        }
+        return String.format(Locale.ROOT, "%.3f", value);
+    }
+
+    private static String quote(final String value) {
+        return '"' + value.replace("\\", "\\\\").replace("\"", "\\\"") + '"';
+    }
+
+}
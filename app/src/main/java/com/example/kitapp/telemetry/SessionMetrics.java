@@ -0,0 +1,248 @@
+package com.example.kitapp.telemetry;
+
+import java.util.Locale;
+
+/**
+ * <p>Time series of the statistics received for one FFmpeg session: frame rate, speed, bitrate
+ * and output size.
+ *
+ * <p>Samples are kept in fixed capacity primitive arrays, so a long session overwrites its
+ * oldest samples instead of growing and recording a sample never allocates.
+ */
+public class SessionMetrics {
+
+    public static final int DEFAULT_CAPACITY = 240;
+
+    private final long sessionId;
+    private final long startTime;
+    private final long[] times;
+    private final float[] fps;
+    private final float[] speed;
+    private final float[] bitrate;
+    private final long[] size;
+    private int head;
+    private int count;
+    private long sampleCount;
+    private int stallCount;
+    private long endTime;
+    private int returnCode = SessionRecord.NO_RETURN_CODE;
+
+    /**
+     * @param startTime wall clock time the session started, in milliseconds since the epoch
+     */
+    public SessionMetrics(final long sessionId, final long startTime, final int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Capacity must be positive: " + capacity);
+        }
+        this.sessionId = sessionId;
+        this.startTime = startTime;
+        this.times = new long[capacity];
+        this.fps = new float[capacity];
+        this.speed = new float[capacity];
+        this.bitrate = new float[capacity];
+        this.size = new long[capacity];
+    }
+
+    public long getSessionId() {
+        return sessionId;
+    }
+
+    public long getStartTime() {
+        return startTime;
+    }
+
+    /**
+     * @return wall clock time the session ended, 0 while it is running
+     */
+    public synchronized long getEndTime() {
+        return endTime;
+    }
+
+    public synchronized boolean isFinished() {
+        return endTime != 0;
+    }
+
+    public synchronized int getReturnCode() {
+        return returnCode;
+    }
+
+    public int getCapacity() {
+        return times.length;
+    }
+
+    /**
+     * @return number of samples held, at most {@link #getCapacity()}
+     */
+    public synchronized int size() {
+        return count;
+    }
+
+    /**
+     * @return number of samples recorded, including overwritten ones
+     */
+    public synchronized long getSampleCount() {
+        return sampleCount;
+    }
+
+    /**
+     * @return number of gaps between samples longer than the stall threshold
+     */
+    public synchronized int getStallCount() {
+        return stallCount;
+    }
+
+    /**
+     * @return time of the latest sample, 0 if there is none
+     */
+    public synchronized long getLastTime() {
+        return (count > 0) ? times[index(count - 1)] : 0;
+    }
+
+    public synchronized long getTime(final int sample) {
+        return times[checkedIndex(sample)];
+    }
+
+    public synchronized float getFps(final int sample) {
+        return fps[checkedIndex(sample)];
+    }
+
+    public synchronized float getSpeed(final int sample) {
+        return speed[checkedIndex(sample)];
+    }
+
+    public synchronized float getBitrate(final int sample) {
+        return bitrate[checkedIndex(sample)];
+    }
+
+    public synchronized long getSize(final int sample) {
+        return size[checkedIndex(sample)];
+    }
+
+    /**
+     * @return mean frame rate of the samples from <code>from</code> to the latest one
+     */
+    public synchronized double getMeanFps(final int from) {
+        return mean(fps, from);
+    }
+
+    /**
+     * @return mean speed of the samples from <code>from</code> to the latest one
+     */
+    public synchronized double getMeanSpeed(final int from) {
+        return mean(speed, from);
+    }
+
+    /**
+     * <p>Compares the frame rate of the later half of the samples to the earlier half. A session
+     * slowed down by thermal throttling or by other sessions ends up well below 1.
+     *
+     * @return ratio of the later to the earlier mean frame rate, 1 with fewer than four samples
+     */
+    public synchronized double getFpsTrend() {
+        if (count < 4) {
+            return 1;
+        }
+        double earlier = 0;
+        final int half = count / 2;
+        for (int i = 0; i < half; i++) {
+            earlier += fps[index(i)];
+        }
+        earlier /= half;
+        return (earlier > 0) ? mean(fps, count - half) / earlier : 1;
+    }
+
+    /**
+     * @return true if the gap to the previous sample was longer than <code>stallThreshold</code>
+     */
+    synchronized boolean add(final long time, final float sampleFps, final float sampleSpeed, final float sampleBitrate, final long sampleSize, final long stallThreshold) {
+        final boolean stalled = (count > 0) && (time - times[index(count - 1)] > stallThreshold);
+        if (stalled) {
+            stallCount++;
+        }
+
+        final int index;
+        if (count == times.length) {
+            index = head;
+            head = (head + 1) % times.length;
+        } else {
+            index = index(count);
+            count++;
+        }
+        times[index] = time;
+        fps[index] = sampleFps;
+        speed[index] = sampleSpeed;
+        bitrate[index] = sampleBitrate;
+        size[index] = sampleSize;
+        sampleCount++;
+        return stalled;
+    }
+
+    synchronized void finish(final long time, final int sessionReturnCode) {
+        endTime = time;
+        returnCode = sessionReturnCode;
+    }
+
+    /**
+     * @param builder builder receiving the session as a JSON object
+     * @return the same builder
+     */
+    public synchronized StringBuilder appendJson(final StringBuilder builder) {
+        builder.append(String.format(Locale.ROOT, "{\"sessionId\":%d,\"startTime\":%d,\"endTime\":%d,\"returnCode\":%d,\"samples\":%d,\"stalls\":%d,\"fpsTrend\":%s",
+                sessionId, startTime, endTime, returnCode, sampleCount, stallCount, MetricsRegistry.formatJsonNumber(getFpsTrend())));
+        builder.append(",\"time\":[");
+        for (int i = 0; i < count; i++) {
+            builder.append((i > 0) ? "," : "").append(times[index(i)]);
+        }
+        appendSeries(builder, "fps", fps);
+        appendSeries(builder, "speed", speed);
+        appendSeries(builder, "bitrate", bitrate);
+        builder.append("],\"size\":[");
+        for (int i = 0; i < count; i++) {
+            builder.append((i > 0) ? "," : "").append(size[index(i)]);
+        }
+        return builder.append("]}");
+    }
+
+    @Override
+    public synchronized String toString() {
+        final int last = count - 1;
+        return String.format(Locale.ROOT, "session %d: %s, %d samples, %.1f fps, %.2fx, %.1f kbps, %d bytes, %d stalls, fps trend %.2f",
+                sessionId, (endTime != 0) ? "rc " + returnCode : "running", sampleCount,
+                (count > 0) ? fps[index(last)] : 0f, (count > 0) ? speed[index(last)] : 0f, (count > 0) ? bitrate[index(last)] : 0f, (count > 0) ? size[index(last)] : 0L,
+                stallCount, getFpsTrend());
+    }
+
+    private void appendSeries(final StringBuilder builder, final String name, final float[] values) {
+        builder.append("],\"").append(name).append("\":[");
+        for (int i = 0; i < count; i++) {
+            builder.append((i > 0) ? "," : "").append(MetricsRegistry.formatJsonNumber(values[index(i)]));
+        }
+    }
+
+    private double mean(final float[] values, final int from) {
+        final int start = Math.max(0, from);
+        if (start >= count) {
+            return 0;
+        }
+        double sum = 0;
+        for (int i = start; i < count; i++) {
+            sum += values[index(i)];
+        }
+        return sum / (count - start);
+    }
+
+    /**
+     * @return array index of the <code>sample</code>th oldest sample held
+     */
+    private int index(final int sample) {
+        return (head + sample) % times.length;
+    }
+
+    private int checkedIndex(final int sample) {
+        if (sample < 0 || sample >= count) {
+            throw new IndexOutOfBoundsException("Sample " + sample + " of " + count);
+        }
+        return index(sample);
+    }
+
+}
@@ -0,0 +1,236 @@
+package com.example.kitapp.telemetry;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.File;
+import java.io.IOException;
+import java.util.Locale;
+
+/**
+ * <p>Telemetry of one finished FFmpeg session: what it ran, how long it took, its last
+ * statistics and how busy the device was when it ended.
+ *
+ * <p>Records are written in a compact binary form by {@link TelemetryStore}. Input and output
+ * paths are left out of the command hash, so sessions running the same workload on different
+ * files share a hash.
+ */
+public class SessionRecord {
+
+    /**
+     * Return code of sessions that ended without one.
+     */
+    public static final int NO_RETURN_CODE = -1;
+
+    private final long endTime;
+    private final long commandHash;
+    private final String codec;
+    private final String preset;
+    private final long inputSize;
+    private final long duration;
+    private final float fps;
+    private final float speed;
+    private final float bitrate;
+    private final long size;
+    private final int returnCode;
+    private final int runningJobs;
+    private final float loadAverage;
+
+    /**
+     * @param endTime     wall clock time the session ended, in milliseconds since the epoch
+     * @param commandHash hash of the arguments without file paths
+     * @param codec       video encoder, <code>copy</code> or <code>none</code>
+     * @param preset      encoder preset or speed setting, <code>default</code> if not set
+     * @param inputSize   size of the local input files in bytes
+     * @param duration    session duration in milliseconds
+     * @param fps         encoding frame rate of the last statistics
+     * @param speed       encoding speed of the last statistics, relative to real time
+     * @param bitrate     output bitrate of the last statistics in kbps
+     * @param size        output size of the last statistics in bytes
+     * @param returnCode  FFmpeg return code, {@link #NO_RETURN_CODE} if there is none
+     * @param runningJobs jobs running on the scheduler when the session ended
+     * @param loadAverage one minute load average of the device, negative if not readable
+     */
+    public SessionRecord(final long endTime, final long commandHash, final String codec, final String preset, final long inputSize, final long duration,
+                         final float fps, final float speed, final float bitrate, final long size, final int returnCode, final int runningJobs, final float loadAverage) {
+        this.endTime = endTime;
+        this.commandHash = commandHash;
+        this.codec = codec;
+        this.preset = preset;
+        this.inputSize = inputSize;
+        this.duration = duration;
+        this.fps = fps;
+        this.speed = speed;
+        this.bitrate = bitrate;
+        this.size = size;
+        this.returnCode = returnCode;
+        this.runningJobs = runningJobs;
+        this.loadAverage = loadAverage;
+    }
+
+    /**
+     * <p>Creates the record of a session that ran <code>arguments</code>; codec, preset, command
+     * hash and input size are taken from the arguments.
+     */
+    public static SessionRecord create(final String[] arguments, final long endTime, final long duration, final float fps, final float speed, final float bitrate,
+                                       final long size, final int returnCode, final int runningJobs, final float loadAverage) {
+        return new SessionRecord(endTime, hashCommand(arguments), getCodec(arguments), getPreset(arguments), getInputSize(arguments), duration,
+                fps, speed, bitrate, size, returnCode, runningJobs, loadAverage);
+    }
+
+    public long getEndTime() {
+        return endTime;
+    }
+
+    public long getCommandHash() {
+        return commandHash;
+    }
+
+    public String getCodec() {
+        return codec;
+    }
+
+    public String getPreset() {
+        return preset;
+    }
+
+    public long getInputSize() {
+        return inputSize;
+    }
+
+    public long getDuration() {
+        return duration;
+    }
+
+    public float getFps() {
+        return fps;
+    }
+
+    public float getSpeed() {
+        return speed;
+    }
+
+    public float getBitrate() {
+        return bitrate;
+    }
+
+    public long getSize() {
+        return size;
+    }
+
+    public int getReturnCode() {
+        return returnCode;
+    }
+
+    public boolean isSuccess() {
+        return returnCode == 0;
+    }
+
+    public int getRunningJobs() {
+        return runningJobs;
+    }
+
+    public float getLoadAverage() {
+        return loadAverage;
+    }
+
+    /**
+     * @return key of the workload rollup this record belongs to
+     */
+    public String getWorkload() {
+        return codec + "/" + preset;
+    }
+
+    @Override
+    public String toString() {
+        return String.format(Locale.ROOT, "SessionRecord{command=%016x, workload=%s, input=%d, duration=%dms, fps=%.1f, speed=%.2fx, bitrate=%.1fkbps, size=%d, rc=%d, jobs=%d, load=%.2f}",
+                commandHash, getWorkload(), inputSize, duration, fps, speed, bitrate, size, returnCode, runningJobs, loadAverage);
+    }
+
+    void write(final DataOutput output) throws IOException {
+        output.writeLong(endTime);
+        output.writeLong(commandHash);
+        output.writeUTF(codec);
+        output.writeUTF(preset);
+        output.writeLong(inputSize);
+        output.writeInt((int) Math.min(Integer.MAX_VALUE, duration));
+        output.writeFloat(fps);
+        output.writeFloat(speed);
+        output.writeFloat(bitrate);
+        output.writeLong(size);
+        output.writeShort(returnCode);
+        output.writeByte(Math.min(Byte.MAX_VALUE, runningJobs));
+        output.writeFloat(loadAverage);
+    }
+
+    static SessionRecord read(final DataInput input) throws IOException {
+        return new SessionRecord(input.readLong(), input.readLong(), input.readUTF(), input.readUTF(), input.readLong(), input.readInt(),
+                input.readFloat(), input.readFloat(), input.readFloat(), input.readLong(), input.readShort(), input.readByte(), input.readFloat());
+    }
+
+    /**
+     * @return 64-bit FNV-1a hash of <code>arguments</code> with input and output paths replaced
+     */
+    static long hashCommand(final String[] arguments) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < arguments.length; i++) {
+            final boolean path = (i > 0 && "-i".equals(arguments[i - 1])) || i == arguments.length - 1;
+            final String argument = path ? "?" : arguments[i];
+            for (int j = 0; j < argument.length(); j++) {
+                hash ^= argument.charAt(j);
+                hash *= 0x100000001b3L;
+            }
+
+            // SEPARATES ARGUMENTS, SO "-c:v" "x" AND "-c:vx" DIFFER
+            hash ^= 0xff;
+            hash *= 0x100000001b3L;
+        }
+        return hash;
+    }
+
+    /**
+     * @return last video encoder in <code>arguments</code>, <code>none</code> if no encoder is set
+     */
+    static String getCodec(final String[] arguments) {
+        final String codec = getLastValue(arguments, "-c:v", "-vcodec", "-codec:v");
+        return (codec != null) ? codec : "none";
+    }
+
+    /**
+     * @return x264 style preset, libvpx or libaom speed of <code>arguments</code>,
+     * <code>default</code> if none is set
+     */
+    static String getPreset(final String[] arguments) {
+        final String preset = getLastValue(arguments, "-preset");
+        if (preset != null) {
+            return preset;
+        }
+        final String cpuUsed = getLastValue(arguments, "-cpu-used");
+        return (cpuUsed != null) ? "cpu-used=" + cpuUsed : "default";
+    }
+
+    static long getInputSize(final String[] arguments) {
+        long inputSize = 0;
+        for (int i = 1; i < arguments.length; i++) {
+            if ("-i".equals(arguments[i - 1])) {
+                final File file = new File(arguments[i]);
+                if (file.isFile()) {
+                    inputSize += file.length();
+                }
+            }
+        }
+        return inputSize;
+    }
+
+    private static String getLastValue(final String[] arguments, final String... options) {
+        String value = null;
+        for (int i = 0; i < arguments.length - 1; i++) {
+            for (String option : options) {
+                if (option.equals(arguments[i])) {
+                    value = arguments[i + 1];
+                }
+            }
+        }
+        return value;
+    }
+
+}
@@ -0,0 +1,348 @@
+package com.example.kitapp.telemetry;
+
+import static android.content.ContentValues.TAG;
+
+import android.content.Context;
+import android.util.Log;
+
+import com.arthenica.ffmpegkit.FFmpegSession;
+import com.arthenica.ffmpegkit.ReturnCode;
+import com.arthenica.ffmpegkit.Statistics;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.zip.CRC32;
+
+/**
+ * <p>Append-only binary log of {@link SessionRecord}s, with p50 and p95 latency rollups per
+ * codec and preset.
+ *
+ * <p>Each record is framed by its length and a CRC32 and written with a single write. Reading
+ * stops at the first frame that is cut short or fails its checksum, so before the first append
+ * the log is truncated to its last intact frame, and records appended after a crash are never
+ * hidden behind the frame the crash tore. When the log grows beyond its maximum size
+ * it becomes the previous generation and a new log is started, so at most twice the maximum
+ * size is kept on disk.
+ */
+public class TelemetryStore {
+
+    public static final long DEFAULT_MAX_SIZE = 512 * 1024;
+
+    public static class Rollup {
+        private final String workload;
+        private final int count;
+        private final int failures;
+        private final long p50Duration;
+        private final long p95Duration;
+        private final double meanFps;
+        private final double meanSpeed;
+
+        Rollup(final String workload, final int count, final int failures, final long p50Duration, final long p95Duration, final double meanFps, final double meanSpeed) {
+            this.workload = workload;
+            this.count = count;
+            this.failures = failures;
+            this.p50Duration = p50Duration;
+            this.p95Duration = p95Duration;
+            this.meanFps = meanFps;
+            this.meanSpeed = meanSpeed;
+        }
+
+        /**
+         * @return codec and preset, see {@link SessionRecord#getWorkload()}
+         */
+        public String getWorkload() {
+            return workload;
+        }
+
+        public int getCount() {
+            return count;
+        }
+
+        public int getFailures() {
+            return failures;
+        }
+
+        /**
+         * @return median duration of successful sessions in milliseconds
+         */
+        public long getP50Duration() {
+            return p50Duration;
+        }
+
+        /**
+         * @return 95th percentile duration of successful sessions in milliseconds
+         */
+        public long getP95Duration() {
+            return p95Duration;
+        }
+
+        public double getMeanFps() {
+            return meanFps;
+        }
+
+        public double getMeanSpeed() {
+            return meanSpeed;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.ROOT, "%s: %d sessions, %d failed, p50 %d ms, p95 %d ms, %.1f fps, %.2fx", workload, count, failures, p50Duration, p95Duration, meanFps, meanSpeed);
+        }
+    }
+
+    private static volatile TelemetryStore defaultStore;
+
+    private final File file;
+    private final File previousFile;
+    private final long maxSize;
+    private final CRC32 crc = new CRC32();
+    private boolean tailChecked;
+
+    public TelemetryStore(final File file, final long maxSize) {
+        this.file = file;
+        this.previousFile = new File(file.getParentFile(), file.getName() + ".1");
+        this.maxSize = maxSize;
+    }
+
+    public static TelemetryStore create(final Context context) {
+        return new TelemetryStore(new File(context.getFilesDir(), "telemetry.bin"), DEFAULT_MAX_SIZE);
+    }
+
+    /**
+     * @return store recording every {@link com.example.kitapp.scheduler.FFmpegJob} session, null if
+     * telemetry is not enabled
+     */
+    public static TelemetryStore getDefault() {
+        return defaultStore;
+    }
+
+    public static void setDefault(final TelemetryStore store) {
+        defaultStore = store;
+    }
+
+    /**
+     * <p>Records a finished session using its last statistics. Failures are logged, never
+     * thrown, since telemetry must not break an encode.
+     *
+     * @param runningJobs jobs running when the session ended
+     */
+    public void record(final FFmpegSession session, final int runningJobs) {
+        try {
+            final Statistics statistics = session.getLastReceivedStatistics();
+            final ReturnCode returnCode = session.getReturnCode();
+            append(SessionRecord.create(session.getArguments(), System.currentTimeMillis(), session.getDuration(),
+                    (statistics != null) ? statistics.getVideoFps() : 0,
+                    (statistics != null) ? (float) statistics.getSpeed() : 0,
+                    (statistics != null) ? (float) statistics.getBitrate() : 0,
+                    (statistics != null) ? statistics.getSize() : 0,
+                    (returnCode != null) ? returnCode.getValue() : SessionRecord.NO_RETURN_CODE,
+                    runningJobs, readLoadAverage()));
+        } catch (final IOException | RuntimeException e) {
+            Log.w(TAG, String.format("Recording telemetry of session %d failed.", session.getSessionId()), e);
+        }
+    }
+
+    public synchronized void append(final SessionRecord record) throws IOException {
+        final ByteArrayOutputStream payload = new ByteArrayOutputStream(96);
+        record.write(new DataOutputStream(payload));
+        final byte[] bytes = payload.toByteArray();
+
+        crc.reset();
+        crc.update(bytes, 0, bytes.length);
+        final ByteArrayOutputStream frame = new ByteArrayOutputStream(bytes.length + 8);
+        final DataOutputStream frameOutput = new DataOutputStream(frame);
+        frameOutput.writeInt(bytes.length);
+        frameOutput.write(bytes);
+        frameOutput.writeInt((int) crc.getValue());
+
+        if (!tailChecked) {
+            truncateTornTail();
+            tailChecked = true;
+        }
+
+        if (file.length() + frame.size() > maxSize) {
+            previousFile.delete();
+            if (!file.renameTo(previousFile)) {
+                Log.w(TAG, String.format("Rotating telemetry log %s failed.", file));
+                file.delete();
+            }
+        }
+
+        try (FileOutputStream output = new FileOutputStream(file, true)) {
+            output.write(frame.toByteArray());
+        } catch (final IOException e) {
+
+            // PART OF THE FRAME MAY HAVE BEEN WRITTEN
+            tailChecked = false;
+            throw e;
+        }
+    }
+
+    /**
+     * @return records of sessions that ended at or after <code>since</code> milliseconds since the
+     * epoch, oldest first
+     */
+    public synchronized List<SessionRecord> query(final long since) {
+        final List<SessionRecord> records = new ArrayList<>();
+        read(previousFile, since, records);
+        read(file, since, records);
+        return records;
+    }
+
+    /**
+     * @return one rollup per codec and preset of the sessions that ended at or after
+     * <code>since</code>, ordered by workload
+     */
+    public List<Rollup> rollup(final long since) {
+        final Map<String, List<SessionRecord>> workloads = new TreeMap<>();
+        for (SessionRecord record : query(since)) {
+            List<SessionRecord> records = workloads.get(record.getWorkload());
+            if (records == null) {
+                records = new ArrayList<>();
+                workloads.put(record.getWorkload(), records);
+            }
+            records.add(record);
+        }
+
+        final List<Rollup> rollups = new ArrayList<>(workloads.size());
+        for (Map.Entry<String, List<SessionRecord>> entry : workloads.entrySet()) {
+            rollups.add(createRollup(entry.getKey(), entry.getValue()));
+        }
+        return rollups;
+    }
+
+    /**
+     * <p>Deletes every record.
+     */
+    public synchronized void clear() {
+        file.delete();
+        previousFile.delete();
+    }
+
+    static Rollup createRollup(final String workload, final List<SessionRecord> records) {
+        final long[] durations = new long[records.size()];
+        int successCount = 0;
+        double fpsSum = 0;
+        double speedSum = 0;
+        for (SessionRecord record : records) {
+
+            // FAILED SESSIONS END EARLY, THEIR DURATION WOULD HIDE SLOW ENCODES
+            if (record.isSuccess()) {
+                durations[successCount++] = record.getDuration();
+                fpsSum += record.getFps();
+                speedSum += record.getSpeed();
+            }
+        }
+
+        final long[] sorted = Arrays.copyOf(durations, successCount);
+        Arrays.sort(sorted);
+        return new Rollup(workload, records.size(), records.size() - successCount, percentile(sorted, 50), percentile(sorted, 95),
+                (successCount > 0) ? fpsSum / successCount : 0, (successCount > 0) ? speedSum / successCount : 0);
+    }
+
+    /**
+     * @return nearest-rank percentile of <code>sorted</code>, 0 if it is empty
+     */
+    static long percentile(final long[] sorted, final int percent) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        final int rank = (int) Math.ceil(percent / 100.0 * sorted.length);
+        return sorted[Math.max(0, rank - 1)];
+    }
+
+    /**
+     * <p>Cuts the log after its last intact frame, so the next frame is appended where reading
+     * can reach it.
+     */
+    private void truncateTornTail() throws IOException {
+        final long validLength = read(file, Long.MAX_VALUE, null);
+        if (validLength < 0 || validLength >= file.length()) {
+            return;
+        }
+        Log.w(TAG, String.format(Locale.ROOT, "Truncating telemetry log %s from %d to %d bytes.", file, file.length(), validLength));
+        try (FileOutputStream output = new FileOutputStream(file, true)) {
+            output.getChannel().truncate(validLength);
+        }
+    }
+
+    /**
+     * @param records receives the records that ended at or after <code>since</code>, null to only
+     *                find the intact frames
+     * @return length of the intact frames at the start of the log, -1 if the log could not be read
+     */
+    private long read(final File logFile, final long since, final List<SessionRecord> records) {
+        if (!logFile.exists()) {
+            return 0;
+        }
+        long validLength = 0;
+        try (DataInputStream input = new DataInputStream(new BufferedInputStream(new FileInputStream(logFile)))) {
+            while (true) {
+                final int length;
+                try {
+                    length = input.readInt();
+                } catch (final EOFException e) {
+                    return validLength;
+                }
+                if (length <= 0 || length > 64 * 1024) {
+                    Log.w(TAG, String.format("Telemetry log %s is corrupt, ignoring the rest of it.", logFile));
+                    return validLength;
+                }
+
+                final byte[] bytes = new byte[length];
+                input.readFully(bytes);
+                crc.reset();
+                crc.update(bytes, 0, length);
+                if (input.readInt() != (int) crc.getValue()) {
+                    Log.w(TAG, String.format("Telemetry record in %s failed its checksum, ignoring the rest of the log.", logFile));
+                    return validLength;
+                }
+                validLength += length + 8;
+
+                if (records != null) {
+                    final SessionRecord record = SessionRecord.read(new DataInputStream(new ByteArrayInputStream(bytes)));
+                    if (record.getEndTime() >= since) {
+                        records.add(record);
+                    }
+                }
+            }
+        } catch (final EOFException e) {
+
+            // THE LAST RECORD WAS CUT SHORT BY A CRASH
+            Log.d(TAG, String.format("Telemetry log %s ends with a partial record.", logFile));
+            return validLength;
+        } catch (final IOException e) {
+            Log.w(TAG, String.format("Reading telemetry log %s failed.", logFile), e);
+            return -1;
+        }
+    }
+
+    /**
+     * @return one minute load average, -1 if <code>/proc/loadavg</code> can not be read
+     */
+    private static float readLoadAverage() {
+        try (BufferedReader reader = new BufferedReader(new FileReader("/proc/loadavg"))) {
+            final String line = reader.readLine();
+            return (line != null) ? Float.parseFloat(line.split(" ")[0]) : -1;
+        } catch (final IOException | NumberFormatException e) {
+            return -1;
+        }
+    }
+
+}
@@ -33,6 +33,7 @@ import android.view.View;
 import android.widget.AdapterView;
 import android.widget.ArrayAdapter;
 import android.widget.Button;
+import android.widget.CheckBox;
 import android.widget.Spinner;
 import android.widget.TextView;
 
@@ -49,14 +50,23 @@ import com.arthenica.ffmpegkit.LogCallback;
 import com.arthenica.ffmpegkit.ReturnCode;
 import com.arthenica.ffmpegkit.SessionState;
 import com.example.kitapp.R;
+import com.example.kitapp.encode.MultiOutputPlanner;
+import com.example.kitapp.scheduler.FFmpegJob;
+import com.example.kitapp.scheduler.JobScheduler;
 import com.example.kitapp.util.DialogUtil;
+import com.example.kitapp.util.LogSink;
 
 import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 
 public class AudioTabFragment extends Fragment implements AdapterView.OnItemSelectedListener {
     private AlertDialog progressDialog;
     private Button encodeButton;
+    private CheckBox multiOutputCheckBox;
     private TextView outputText;
+    private LogSink logSink;
     private String selectedCodec;
 
     public AudioTabFragment() {
@@ -78,13 +88,20 @@ public class AudioTabFragment extends Fragment implements AdapterView.OnItemSele
 
             @Override
             public void onClick(View v) {
-                encodeAudio();
+                if (multiOutputCheckBox != null && multiOutputCheckBox.isChecked()) {
+                    chooseMultiOutputs();
+                } else {
+                    encodeAudio();
+                }
             }
         });
         encodeButton.setEnabled(false);
 
+        multiOutputCheckBox = view.findViewById(R.id.multiOutputCheckBox);
+
         outputText = view.findViewById(R.id.outputText);
         outputText.setMovementMethod(new ScrollingMovementMethod());
+        logSink = new LogSink(outputText);
 
         progressDialog = DialogUtil.createProgressDialog(requireContext(), "Encoding audio");
 
@@ -106,13 +123,7 @@ public class AudioTabFragment extends Fragment implements AdapterView.OnItemSele
 
             @Override
             public void apply(final com.arthenica.ffmpegkit.Log log) {
-                MainActivity.addUIAction(new Runnable() {
-
-                    @Override
-                    public void run() {
-                        appendOutput(log.getMessage());
-                    }
-                });
+                appendOutput(log.getMessage());
             }
         });
     }
@@ -145,15 +156,52 @@ public class AudioTabFragment extends Fragment implements AdapterView.OnItemSele
 
         android.util.Log.d(TAG, String.format("Testing AUDIO encoding with '%s' codec.", audioCodec));
 
-        final String ffmpegCommand = generateAudioEncodeScript();
+        final String[] arguments = generateAudioEncodeArguments();
+
+        submitEncode(arguments);
+    }
+
+    public void chooseMultiOutputs() {
+        DialogUtil.createMultiChoiceDialog(requireContext(), "Audio codecs", getResources().getStringArray(R.array.audio_codec), new DialogUtil.MultiChoiceCallback() {
 
+            @Override
+            public void apply(final List<String> selectedCodecs) {
+                if (selectedCodecs.isEmpty()) {
+                    Popup.show(requireContext(), "Select at least one codec.");
+                } else {
+                    encodeAudioMultiOutput(selectedCodecs);
+                }
+            }
+        }).show();
+    }
+
+    /**
+     * <p>Encodes the sample into every codec with one FFmpeg session, so the sample is read and
+     * decoded once instead of once per codec.
+     */
+    public void encodeAudioMultiOutput(final List<String> audioCodecs) {
+        final List<MultiOutputPlanner.Output> outputs = new ArrayList<>();
+        for (String audioCodec : audioCodecs) {
+            final File audioOutputFile = getAudioOutputFile(audioCodec, true);
+            if (audioOutputFile.exists()) {
+                audioOutputFile.delete();
+            }
+            outputs.add(MultiOutputPlanner.Output.audio(audioOutputFile.getAbsolutePath(), getAudioEncodeOptions(audioCodec)));
+        }
+
+        android.util.Log.d(TAG, String.format("Testing AUDIO encoding with %d codecs: %s.", audioCodecs.size(), audioCodecs));
+
+        submitEncode(MultiOutputPlanner.createArguments(getAudioSampleFile().getAbsolutePath(), outputs));
+    }
+
+    private void submitEncode(final String[] arguments) {
         showProgressDialog();
 
         clearOutput();
 
-        android.util.Log.d(TAG, String.format("FFmpeg process started with arguments: '%s'.", ffmpegCommand));
+        android.util.Log.d(TAG, String.format("FFmpeg process started with arguments: '%s'.", FFmpegKitConfig.argumentsToString(arguments)));
 
-        FFmpegKit.executeAsync(ffmpegCommand, new FFmpegSessionCompleteCallback() {
+        JobScheduler.getInstance().submit(FFmpegJob.createWithArguments(arguments, new FFmpegSessionCompleteCallback() {
 
             @Override
             public void apply(final FFmpegSession session) {
@@ -176,7 +224,7 @@ public class AudioTabFragment extends Fragment implements AdapterView.OnItemSele
                     }
                 });
             }
-        });
+        }, null, null));
     }
 
     public void createAudioSample() {
@@ -202,8 +250,14 @@ public class AudioTabFragment extends Fragment implements AdapterView.OnItemSele
     }
 
     public File getAudioOutputFile() {
-        String audioCodec = selectedCodec;
+        return getAudioOutputFile(selectedCodec, false);
+    }
 
+    /**
+     * @param multiOutput whether the codec name is added to the file name, which keeps outputs of
+     *                    codecs sharing an extension apart
+     */
+    public File getAudioOutputFile(String audioCodec, boolean multiOutput) {
         String extension;
         switch (audioCodec) {
             case "mp2 (twolame)":
@@ -239,7 +293,7 @@ public class AudioTabFragment extends Fragment implements AdapterView.OnItemSele
                 break;
         }
 
-        final String audio = "audio." + extension;
+        final String audio = (multiOutput ? "audio_" + MultiOutputPlanner.toFileNamePart(audioCodec) : "audio") + "." + extension;
         return new File(requireContext().getFilesDir(), audio);
     }
 
@@ -257,11 +311,11 @@ public class AudioTabFragment extends Fragment implements AdapterView.OnItemSele
     }
 
     public void appendOutput(final String logMessage) {
-        outputText.append(logMessage);
+        logSink.append(logMessage);
     }
 
     public void clearOutput() {
-        outputText.setText("");
+        logSink.clear();
     }
 
     protected void showProgressDialog() {
@@ -272,36 +326,39 @@ public class AudioTabFragment extends Fragment implements AdapterView.OnItemSele
         progressDialog.dismiss();
     }
 
-    public String generateAudioEncodeScript() {
-        String audioCodec = selectedCodec;
-        String audioSampleFile = getAudioSampleFile().getAbsolutePath();
-        String audioOutputFile = getAudioOutputFile().getAbsolutePath();
+    public String[] generateAudioEncodeArguments() {
+        final List<String> arguments = new ArrayList<>(Arrays.asList("-hide_banner", "-y", "-i", getAudioSampleFile().getAbsolutePath()));
+        arguments.addAll(Arrays.asList(getAudioEncodeOptions(selectedCodec)));
+        arguments.add(getAudioOutputFile().getAbsolutePath());
+        return arguments.toArray(new String[0]);
+    }
 
+    public String[] getAudioEncodeOptions(String audioCodec) {
         switch (audioCodec) {
             case "mp2 (twolame)":
-                return String.format("-hide_banner -y -i %s -c:a mp2 -b:a 192k %s", audioSampleFile, audioOutputFile);
+                return new String[]{"-c:a", "mp2", "-b:a", "192k"};
             case "mp3 (liblame)":
-                return String.format("-hide_banner -y -i %s -c:a libmp3lame -qscale:a 2 %s", audioSampleFile, audioOutputFile);
+                return new String[]{"-c:a", "libmp3lame", "-qscale:a", "2"};
             case "mp3 (libshine)":
-                return String.format("-hide_banner -y -i %s -c:a libshine -qscale:a 2 %s", audioSampleFile, audioOutputFile);
+                return new String[]{"-c:a", "libshine", "-qscale:a", "2"};
             case "vorbis":
-                return String.format("-hide_banner -y -i %s -c:a libvorbis -b:a 64k %s", audioSampleFile, audioOutputFile);
+                return new String[]{"-c:a", "libvorbis", "-b:a", "64k"};
             case "opus":
-                return String.format("-hide_banner -y -i %s -c:a libopus -b:a 64k -vbr on -compression_level 10 %s", audioSampleFile, audioOutputFile);
+                return new String[]{"-c:a", "libopus", "-b:a", "64k", "-vbr", "on", "-compression_level", "10"};
             case "amr-nb":
-                return String.format("-hide_banner -y -i %s -ar 8000 -ab 12.2k -c:a libopencore_amrnb %s", audioSampleFile, audioOutputFile);
+                return new String[]{"-ar", "8000", "-ab", "12.2k", "-c:a", "libopencore_amrnb"};
             case "amr-wb":
-                return String.format("-hide_banner -y -i %s -ar 8000 -ab 12.2k -c:a libvo_amrwbenc -strict experimental %s", audioSampleFile, audioOutputFile);
+                return new String[]{"-ar", "8000", "-ab", "12.2k", "-c:a", "libvo_amrwbenc", "-strict", "experimental"};
             case "ilbc":
-                return String.format("-hide_banner -y -i %s -c:a ilbc -ar 8000 -b:a 15200 %s", audioSampleFile, audioOutputFile);
+                return new String[]{"-c:a", "ilbc", "-ar", "8000", "-b:a", "15200"};
             case "speex":
-                return String.format("-hide_banner -y -i %s -c:a libspeex -ar 16000 %s", audioSampleFile, audioOutputFile);
+                return new String[]{"-c:a", "libspeex", "-ar", "16000"};
             case "wavpack":
-                return String.format("-hide_banner -y -i %s -c:a wavpack -b:a 64k %s", audioSampleFile, audioOutputFile);
+                return new String[]{"-c:a", "wavpack", "-b:a", "64k"};
             default:
 
                 // soxr
-                return String.format("-hide_banner -y -i %s -af aresample=resampler=soxr -ar 44100 %s", audioSampleFile, audioOutputFile);
+                return new String[]{"-af", "aresample=resampler=soxr", "-ar", "44100"};
         }
     }
 
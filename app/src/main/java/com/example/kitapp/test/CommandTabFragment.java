@@ -14,7 +14,6 @@ import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 import androidx.fragment.app.Fragment;
 
-import com.arthenica.ffmpegkit.FFmpegKit;
 import com.arthenica.ffmpegkit.FFmpegKitConfig;
 import com.arthenica.ffmpegkit.FFmpegSession;
 import com.arthenica.ffmpegkit.FFmpegSessionCompleteCallback;
@@ -25,10 +24,14 @@ import com.arthenica.ffmpegkit.LogRedirectionStrategy;
 import com.arthenica.ffmpegkit.ReturnCode;
 import com.arthenica.ffmpegkit.SessionState;
 import com.example.kitapp.R;
+import com.example.kitapp.scheduler.FFmpegJob;
+import com.example.kitapp.scheduler.JobScheduler;
+import com.example.kitapp.util.LogSink;
 
 public class CommandTabFragment extends Fragment {
     private EditText commandText;
     private TextView outputText;
+    private LogSink logSink;
 
     public CommandTabFragment() {
         super(R.layout.fragment_command_tab);
@@ -60,6 +63,7 @@ public class CommandTabFragment extends Fragment {
 
         outputText = view.findViewById(R.id.outputText);
         outputText.setMovementMethod(new ScrollingMovementMethod());
+        logSink = new LogSink(outputText);
     }
 
     @Override
@@ -83,7 +87,7 @@ public class CommandTabFragment extends Fragment {
 
         Log.d(MainActivity.TAG, String.format("FFmpeg process started with arguments: '%s'", ffmpegCommand));
 
-        FFmpegKit.executeAsync(ffmpegCommand, new FFmpegSessionCompleteCallback() {
+        JobScheduler.getInstance().submit(FFmpegJob.create(ffmpegCommand, new FFmpegSessionCompleteCallback() {
 
             @Override
             public void apply(final FFmpegSession session) {
@@ -106,17 +110,11 @@ public class CommandTabFragment extends Fragment {
 
             @Override
             public void apply(final com.arthenica.ffmpegkit.Log log) {
-                MainActivity.addUIAction(new Runnable() {
-
-                    @Override
-                    public void run() {
-                        appendOutput(log.getMessage());
-                    }
-                });
+                appendOutput(log.getMessage());
 
                 throw new AndroidRuntimeException("I am test exception thrown by the application");
             }
-        }, null);
+        }, null));
     }
 
     public void runFFprobe() {
@@ -135,13 +133,7 @@ public class CommandTabFragment extends Fragment {
                 final SessionState state = session.getState();
                 final ReturnCode returnCode = session.getReturnCode();
 
-                MainActivity.addUIAction(new Runnable() {
-
-                    @Override
-                    public void run() {
-                        appendOutput(session.getOutput());
-                    }
-                });
+                appendOutput(session.getOutput());
 
                 Log.d(MainActivity.TAG, String.format("FFprobe process exited with state %s and rc %s.%s", FFmpegKitConfig.sessionStateToString(state), returnCode, notNull(session.getFailStackTrace(), "\n")));
 
@@ -169,11 +161,11 @@ public class CommandTabFragment extends Fragment {
     }
 
     public void appendOutput(final String logMessage) {
-        outputText.append(logMessage);
+        logSink.append(logMessage);
     }
 
     public void clearOutput() {
-        outputText.setText("");
+        logSink.clear();
     }
 
 }
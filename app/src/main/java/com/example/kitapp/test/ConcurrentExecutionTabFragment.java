@@ -37,7 +37,6 @@ import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 import androidx.fragment.app.Fragment;
 
-import com.arthenica.ffmpegkit.FFmpegKit;
 import com.arthenica.ffmpegkit.FFmpegKitConfig;
 import com.arthenica.ffmpegkit.FFmpegSession;
 import com.arthenica.ffmpegkit.FFmpegSessionCompleteCallback;
@@ -46,17 +45,24 @@ import com.arthenica.ffmpegkit.ReturnCode;
 import com.arthenica.ffmpegkit.SessionState;
 import com.arthenica.smartexception.java.Exceptions;
 import com.example.kitapp.R;
-import com.example.kitapp.util.ResourcesUtil;
+import com.example.kitapp.scheduler.ConcurrencyGovernor;
+import com.example.kitapp.scheduler.FFmpegJob;
+import com.example.kitapp.scheduler.JobHandle;
+import com.example.kitapp.scheduler.JobScheduler;
+import com.example.kitapp.telemetry.MetricsRegistry;
+import com.example.kitapp.util.LogSink;
+import com.example.kitapp.util.ResourceFileCache;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.HashMap;
 import java.util.Locale;
+import java.util.Map;
 
 public class ConcurrentExecutionTabFragment extends Fragment {
     private TextView outputText;
-    private long sessionId1;
-    private long sessionId2;
-    private long sessionId3;
+    private LogSink logSink;
+    private final Map<Integer, JobHandle> jobHandles = new HashMap<>();
 
     public ConcurrentExecutionTabFragment() {
         super(R.layout.fragment_concurrent_tab);
@@ -143,8 +149,20 @@ public class ConcurrentExecutionTabFragment extends Fragment {
             });
         }
 
+        View metricsButton = view.findViewById(R.id.metricsButton);
+        if (metricsButton != null) {
+            metricsButton.setOnClickListener(new View.OnClickListener() {
+
+                @Override
+                public void onClick(View v) {
+                    showMetrics();
+                }
+            });
+        }
+
         outputText = view.findViewById(R.id.outputText);
         outputText.setMovementMethod(new ScrollingMovementMethod());
+        logSink = new LogSink(outputText);
     }
 
     @Override
@@ -162,13 +180,7 @@ public class ConcurrentExecutionTabFragment extends Fragment {
 
             @Override
             public void apply(final com.arthenica.ffmpegkit.Log log) {
-                MainActivity.addUIAction(new Runnable() {
-
-                    @Override
-                    public void run() {
-                        appendOutput(String.format(Locale.getDefault(), "%d -> %s", log.getSessionId(), log.getMessage()));
-                    }
-                });
+                appendOutput(String.format(Locale.getDefault(), "%d -> %s", log.getSessionId(), log.getMessage()));
             }
         });
     }
@@ -183,15 +195,19 @@ public class ConcurrentExecutionTabFragment extends Fragment {
 
             Log.d(TAG, String.format("Testing CONCURRENT EXECUTION for button %d.", buttonNumber));
 
-            ResourcesUtil.resourceToFile(getResources(), R.drawable.machupicchu, image1File);
-            ResourcesUtil.resourceToFile(getResources(), R.drawable.pyramid, image2File);
-            ResourcesUtil.resourceToFile(getResources(), R.drawable.stonehenge, image3File);
+            ResourceFileCache.getInstance(requireContext()).resourceToFile(R.drawable.machupicchu, image1File);
+            ResourceFileCache.getInstance(requireContext()).resourceToFile(R.drawable.pyramid, image2File);
+            ResourceFileCache.getInstance(requireContext()).resourceToFile(R.drawable.stonehenge, image3File);
 
-            final String ffmpegCommand = Video.generateEncodeVideoScript(image1File.getAbsolutePath(), image2File.getAbsolutePath(), image3File.getAbsolutePath(), videoFile.getAbsolutePath(), "mpeg4", "");
+            // CONCURRENT ENCODES SHARE THE CORES, THE GOVERNOR DECIDES HOW MANY EACH GETS
+            final ConcurrencyGovernor governor = ConcurrencyGovernor.getDefault();
+            final String[] threadOptions = (governor != null) ? new String[]{"-threads", String.valueOf(governor.getThreadCount())} : new String[0];
 
-            Log.d(TAG, String.format("FFmpeg process starting for button %d with arguments: '%s'.", buttonNumber, ffmpegCommand));
+            final String[] arguments = Video.createEncodeVideoArguments(new String[]{image1File.getAbsolutePath(), image2File.getAbsolutePath(), image3File.getAbsolutePath()}, videoFile.getAbsolutePath(), "mpeg4", threadOptions);
 
-            final FFmpegSession session = FFmpegKit.executeAsync(ffmpegCommand, new FFmpegSessionCompleteCallback() {
+            Log.d(TAG, String.format("FFmpeg process starting for button %d with arguments: '%s'.", buttonNumber, FFmpegKitConfig.argumentsToString(arguments)));
+
+            final JobHandle jobHandle = JobScheduler.getInstance().submit(FFmpegJob.createWithArguments(arguments, new FFmpegSessionCompleteCallback() {
 
                 @Override
                 public void apply(final FFmpegSession session) {
@@ -204,25 +220,13 @@ public class ConcurrentExecutionTabFragment extends Fragment {
                         Log.d(TAG, String.format("FFmpeg process ended with state %s and rc %s for button %d with sessionId %d.%s", state, returnCode, buttonNumber, session.getSessionId(), notNull(session.getFailStackTrace(), "\n")));
                     }
                 }
-            });
-
-            final long sessionId = session.getSessionId();
+            }));
 
-            Log.d(TAG, String.format("Async FFmpeg process started for button %d with sessionId %d.", buttonNumber, sessionId));
+            Log.d(TAG, String.format("FFmpeg job submitted for button %d with jobId %d.", buttonNumber, jobHandle.getId()));
 
-            switch (buttonNumber) {
-                case 1: {
-                    sessionId1 = sessionId;
-                }
-                break;
-                case 2: {
-                    sessionId2 = sessionId;
-                }
-                break;
-                default: {
-                    sessionId3 = sessionId;
-                    FFmpegKitConfig.setSessionHistorySize(3);
-                }
+            jobHandles.put(buttonNumber, jobHandle);
+            if (buttonNumber == 3) {
+                FFmpegKitConfig.setSessionHistorySize(3);
             }
 
         } catch (IOException e) {
@@ -231,31 +235,36 @@ public class ConcurrentExecutionTabFragment extends Fragment {
         }
 
         MainActivity.listFFmpegSessions();
+        MainActivity.listTelemetry();
     }
 
     public void cancel(final int buttonNumber) {
-        long sessionId = 0;
+        if (buttonNumber == 0) {
+            Log.d(TAG, "Cancelling all FFmpeg jobs.");
+            JobScheduler.getInstance().cancelAll();
+            return;
+        }
 
-        switch (buttonNumber) {
-            case 1: {
-                sessionId = sessionId1;
-            }
-            break;
-            case 2: {
-                sessionId = sessionId2;
-            }
-            break;
-            case 3: {
-                sessionId = sessionId3;
-            }
+        final JobHandle jobHandle = jobHandles.get(buttonNumber);
+        if (jobHandle == null) {
+            Log.d(TAG, String.format("No FFmpeg job submitted for button %d.", buttonNumber));
+            return;
         }
 
-        Log.d(TAG, String.format("Cancelling FFmpeg process for button %d with sessionId %d.", buttonNumber, sessionId));
+        Log.d(TAG, String.format("Cancelling FFmpeg job for button %d with jobId %d in state %s.", buttonNumber, jobHandle.getId(), jobHandle.getState()));
+        jobHandle.cancel();
+    }
+
+    public void showMetrics() {
+        final MetricsRegistry metricsRegistry = MetricsRegistry.getInstance();
+        appendOutput(metricsRegistry.toString());
 
-        if (sessionId == 0) {
-            FFmpegKit.cancel();
-        } else {
-            FFmpegKit.cancel(sessionId);
+        final File metricsFile = new File(requireContext().getFilesDir(), "metrics.json");
+        try {
+            metricsRegistry.writeJson(metricsFile);
+            Log.d(TAG, String.format("Session metrics written to %s.", metricsFile));
+        } catch (IOException e) {
+            Log.e(TAG, String.format("Writing session metrics failed %s.", Exceptions.getStackTraceString(e)));
         }
     }
 
@@ -266,7 +275,7 @@ public class ConcurrentExecutionTabFragment extends Fragment {
     }
 
     public void appendOutput(final String logMessage) {
-        outputText.append(logMessage);
+        logSink.append(logMessage);
     }
 
 }
@@ -22,10 +22,6 @@
 
 package com.example.kitapp.test;
 
-
-
-import static com.example.kitapp.test.MainActivity.notNull;
-
 import android.os.Bundle;
 import android.text.method.ScrollingMovementMethod;
 import android.util.Log;
@@ -39,16 +35,20 @@ import androidx.fragment.app.Fragment;
 
 import com.arthenica.ffmpegkit.Chapter;
 import com.arthenica.ffmpegkit.FFmpegKitConfig;
-import com.arthenica.ffmpegkit.FFprobeKit;
 import com.arthenica.ffmpegkit.MediaInformation;
-import com.arthenica.ffmpegkit.MediaInformationSession;
-import com.arthenica.ffmpegkit.MediaInformationSessionCompleteCallback;
 import com.arthenica.ffmpegkit.StreamInformation;
 import com.example.kitapp.R;
+import com.example.kitapp.probe.MediaInformationCache;
+import com.example.kitapp.probe.MediaScanner;
+import com.example.kitapp.util.LogSink;
 
 import org.json.JSONObject;
 
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Random;
 
 public class HttpsTabFragment extends Fragment {
@@ -68,6 +68,7 @@ public class HttpsTabFragment extends Fragment {
 
     private EditText urlText;
     private TextView outputText;
+    private LogSink logSink;
 
     public HttpsTabFragment() {
         super(R.layout.fragment_https_tab);
@@ -115,8 +116,18 @@ public class HttpsTabFragment extends Fragment {
             }
         });
 
+        View scanAllButton = view.findViewById(R.id.scanAllButton);
+        scanAllButton.setOnClickListener(new View.OnClickListener() {
+
+            @Override
+            public void onClick(View v) {
+                runScan();
+            }
+        });
+
         outputText = view.findViewById(R.id.outputText);
         outputText.setMovementMethod(new ScrollingMovementMethod());
+        logSink = new LogSink(outputText);
     }
 
     @Override
@@ -168,7 +179,41 @@ public class HttpsTabFragment extends Fragment {
         }
 
         // EXECUTE
-        FFprobeKit.getMediaInformationAsync(testUrl, createNewCompleteCallback());
+        MediaInformationCache.getInstance(requireContext()).getMediaInformationAsync(testUrl, createNewCompleteCallback());
+    }
+
+    /**
+     * <p>Probes all urls in the url field in parallel, or all test urls if the field is empty.
+     */
+    public void runScan() {
+        final List<String> inputs = new ArrayList<>();
+        for (String input : urlText.getText().toString().split("[\\s,]+")) {
+            if (!input.isEmpty()) {
+                inputs.add(input);
+            }
+        }
+        if (inputs.isEmpty()) {
+            inputs.addAll(Arrays.asList(HTTPS_TEST_DEFAULT_URL, HTTPS_TEST_RANDOM_URL_1, HTTPS_TEST_RANDOM_URL_2, HTTPS_TEST_RANDOM_URL_3, HTTPS_TEST_FAIL_URL));
+        }
+
+        Log.d(MainActivity.TAG, String.format("Scanning %d inputs.", inputs.size()));
+
+        clearOutput();
+        appendOutput(String.format("Scanning %d inputs\n", inputs.size()));
+
+        MediaScanner.create(requireContext(), inputs, MediaScanner.DEFAULT_CONCURRENCY, new MediaScanner.ResultCallback() {
+
+            @Override
+            public void apply(final MediaScanner.Result result) {
+                appendOutput(result + "\n");
+            }
+        }, new MediaScanner.CompleteCallback() {
+
+            @Override
+            public void apply(final MediaScanner scanner) {
+                appendOutput(scanner + "\n");
+            }
+        }).start();
     }
 
     public void setActive() {
@@ -178,17 +223,11 @@ public class HttpsTabFragment extends Fragment {
     }
 
     public void appendOutput(final String logMessage) {
-        MainActivity.handler.post(new Runnable() {
-
-            @Override
-            public void run() {
-                outputText.append(logMessage);
-            }
-        });
+        logSink.append(logMessage);
     }
 
     public void clearOutput() {
-        outputText.setText("");
+        logSink.clear();
     }
 
     private String getRandomTestUrl() {
@@ -202,22 +241,18 @@ public class HttpsTabFragment extends Fragment {
         }
     }
 
-    private MediaInformationSessionCompleteCallback createNewCompleteCallback() {
-        return new MediaInformationSessionCompleteCallback() {
+    private MediaInformationCache.Callback createNewCompleteCallback() {
+        return new MediaInformationCache.Callback() {
 
             @Override
-            public void apply(MediaInformationSession session) {
+            public void apply(final String uri, final MediaInformation information, final IOException failure) {
 
                 // SYNC THE OUTPUT SO WE CAN IDENTIFY THE FILES
                 synchronized (outputLock) {
-                    final MediaInformation information = session.getMediaInformation();
                     if (information == null) {
                         appendOutput("Get media information failed\n");
-                        appendOutput(String.format("State: %s\n", session.getState()));
-                        appendOutput(String.format("Duration: %s\n", session.getDuration()));
-                        appendOutput(String.format("Return Code: %s\n", session.getReturnCode()));
-                        appendOutput(String.format("Fail stack trace: %s\n", notNull(session.getFailStackTrace(), "\n")));
-                        appendOutput(String.format("Output: %s\n", session.getOutput()));
+                        appendOutput(String.format("Url: %s\n", uri));
+                        appendOutput(String.format("Failure: %s\n", (failure != null) ? failure.getMessage() : null));
                     } else {
                         appendOutput("Media information for " + information.getFilename() + "\n");
 
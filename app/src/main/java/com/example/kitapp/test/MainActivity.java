@@ -28,6 +28,8 @@ import com.arthenica.ffmpegkit.Signal;
 
 import com.arthenica.smartexception.java.Exceptions;
 import com.example.kitapp.R;
+import com.example.kitapp.scheduler.ConcurrencyGovernor;
+import com.example.kitapp.telemetry.TelemetryStore;
 import com.example.kitapp.util.ResourcesUtil;
 
 import java.io.File;
@@ -109,6 +111,22 @@ public class MainActivity extends AppCompatActivity {
 
         FFmpegKitConfig.ignoreSignal(Signal.SIGXCPU);
         FFmpegKitConfig.setLogLevel(Level.AV_LOG_INFO);
+
+        TelemetryStore.setDefault(TelemetryStore.create(this));
+
+        if (ConcurrencyGovernor.getDefault() == null) {
+            ConcurrencyGovernor.setDefault(ConcurrencyGovernor.create(this));
+        }
+        ConcurrencyGovernor.getDefault().start();
+    }
+
+    @Override
+    protected void onDestroy() {
+        final ConcurrencyGovernor governor = ConcurrencyGovernor.getDefault();
+        if (governor != null && isFinishing()) {
+            governor.stop();
+        }
+        super.onDestroy();
     }
 
     public static void listFFmpegSessions() {
@@ -127,6 +145,18 @@ public class MainActivity extends AppCompatActivity {
         Log.d(TAG, "Listed FFmpeg sessions.");
     }
 
+    public static void listTelemetry() {
+        final TelemetryStore telemetryStore = TelemetryStore.getDefault();
+        if (telemetryStore == null) {
+            return;
+        }
+        Log.d(TAG, "Listing session telemetry.");
+        for (TelemetryStore.Rollup rollup : telemetryStore.rollup(0)) {
+            Log.d(TAG, rollup.toString());
+        }
+        Log.d(TAG, "Listed session telemetry.");
+    }
+
     public static void listFFprobeSessions() {
         List<FFprobeSession> ffprobeSessions = FFprobeKit.listFFprobeSessions();
         Log.d(TAG, "Listing FFprobe sessions.");
@@ -43,7 +43,6 @@ import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 import androidx.fragment.app.Fragment;
 
-import com.arthenica.ffmpegkit.FFmpegKit;
 import com.arthenica.ffmpegkit.FFmpegKitConfig;
 import com.arthenica.ffmpegkit.FFmpegSession;
 import com.arthenica.ffmpegkit.FFmpegSessionCompleteCallback;
@@ -51,7 +50,10 @@ import com.arthenica.ffmpegkit.ReturnCode;
 
 import com.arthenica.smartexception.java.Exceptions;
 import com.example.kitapp.R;
-import com.example.kitapp.util.ResourcesUtil;
+import com.example.kitapp.scheduler.FFmpegJob;
+import com.example.kitapp.scheduler.JobPriority;
+import com.example.kitapp.scheduler.JobScheduler;
+import com.example.kitapp.util.ResourceFileCache;
 
 import java.io.File;
 import java.io.IOException;
@@ -143,7 +145,7 @@ public class OtherTabFragment extends Fragment implements AdapterView.OnItemSele
 
         Log.d(TAG, String.format("Creating audio sample with '%s'.", ffmpegCommand));
 
-        FFmpegKit.executeAsync(ffmpegCommand, new FFmpegSessionCompleteCallback() {
+        JobScheduler.getInstance().submit(FFmpegJob.create(ffmpegCommand, new FFmpegSessionCompleteCallback() {
 
             @Override
             public void apply(FFmpegSession session) {
@@ -156,7 +158,7 @@ public class OtherTabFragment extends Fragment implements AdapterView.OnItemSele
 
                     Log.d(TAG, String.format("FFmpeg process started with arguments: '%s'.", chromaprintCommand));
 
-                    FFmpegKit.executeAsync(chromaprintCommand, new FFmpegSessionCompleteCallback() {
+                    JobScheduler.getInstance().submit(FFmpegJob.create(chromaprintCommand, new FFmpegSessionCompleteCallback() {
 
                         @Override
                         public void apply(final FFmpegSession session) {
@@ -176,13 +178,13 @@ public class OtherTabFragment extends Fragment implements AdapterView.OnItemSele
                         }
                     }, log -> MainActivity.addUIAction(() -> {
                         appendOutput(log.getMessage());
-                    }), null);
+                    }), null), JobPriority.HIGH);
 
                 } else {
                     Popup.show(requireContext(), "Creating AUDIO sample failed. Please check logs for the details.");
                 }
             }
-        });
+        }));
     }
 
     protected void testDav1d() {
@@ -192,7 +194,7 @@ public class OtherTabFragment extends Fragment implements AdapterView.OnItemSele
 
         Log.d(TAG, String.format("FFmpeg process started with arguments: '%s'.", ffmpegCommand));
 
-        FFmpegKit.executeAsync(ffmpegCommand, new FFmpegSessionCompleteCallback() {
+        JobScheduler.getInstance().submit(FFmpegJob.create(ffmpegCommand, new FFmpegSessionCompleteCallback() {
 
             @Override
             public void apply(final FFmpegSession session) {
@@ -200,7 +202,7 @@ public class OtherTabFragment extends Fragment implements AdapterView.OnItemSele
             }
         }, log -> MainActivity.addUIAction(() -> {
             appendOutput(log.getMessage());
-        }), null);
+        }), null));
     }
 
     protected void testWebp() {
@@ -208,7 +210,7 @@ public class OtherTabFragment extends Fragment implements AdapterView.OnItemSele
         final File outputFile = new File(requireContext().getFilesDir(), "video.webp");
 
         try {
-            ResourcesUtil.resourceToFile(getResources(), R.drawable.machupicchu, imageFile);
+            ResourceFileCache.getInstance(requireContext()).resourceToFile(R.drawable.machupicchu, imageFile);
 
             Log.d(TAG, "Testing 'webp' codec");
 
@@ -216,7 +218,7 @@ public class OtherTabFragment extends Fragment implements AdapterView.OnItemSele
 
             Log.d(TAG, String.format("FFmpeg process started with arguments: '%s'.", ffmpegCommand));
 
-            FFmpegKit.executeAsync(ffmpegCommand, new FFmpegSessionCompleteCallback() {
+            JobScheduler.getInstance().submit(FFmpegJob.create(ffmpegCommand, new FFmpegSessionCompleteCallback() {
 
                 @Override
                 public void apply(FFmpegSession session) {
@@ -232,7 +234,7 @@ public class OtherTabFragment extends Fragment implements AdapterView.OnItemSele
                 }
             }, log -> MainActivity.addUIAction(() -> {
                 appendOutput(log.getMessage());
-            }), null);
+            }), null));
 
         } catch (IOException e) {
             Log.e(TAG, String.format("Encode webp failed %s.", Exceptions.getStackTraceString(e)));
@@ -246,11 +248,11 @@ public class OtherTabFragment extends Fragment implements AdapterView.OnItemSele
 
         Log.d(TAG, "Testing 'zscale' filter with video file created on the Video tab");
 
-        final String ffmpegCommand = Video.generateZscaleVideoScript(videoFile.getAbsolutePath(), zscaledVideoFile.getAbsolutePath());
+        final String[] arguments = Video.createZscaleVideoArguments(videoFile.getAbsolutePath(), zscaledVideoFile.getAbsolutePath());
 
-        Log.d(TAG, String.format("FFmpeg process started with arguments: '%s'.", ffmpegCommand));
+        Log.d(TAG, String.format("FFmpeg process started with arguments: '%s'.", FFmpegKitConfig.argumentsToString(arguments)));
 
-        FFmpegKit.executeAsync(ffmpegCommand, new FFmpegSessionCompleteCallback() {
+        JobScheduler.getInstance().submit(FFmpegJob.createWithArguments(arguments, new FFmpegSessionCompleteCallback() {
 
             @Override
             public void apply(FFmpegSession session) {
@@ -266,7 +268,7 @@ public class OtherTabFragment extends Fragment implements AdapterView.OnItemSele
             }
         }, log -> MainActivity.addUIAction(() -> {
             appendOutput(log.getMessage());
-        }), null);
+        }), null));
     }
 
     public File getChromaprintSampleFile() {
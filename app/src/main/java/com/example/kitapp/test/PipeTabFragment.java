@@ -30,10 +30,10 @@ import static com.example.kitapp.test.MainActivity.notNull;
 
 import android.media.MediaPlayer;
 import android.net.Uri;
-import android.os.AsyncTask;
 import android.os.Bundle;
 import android.util.Log;
 import android.view.View;
+import android.widget.CheckBox;
 import android.widget.MediaController;
 import android.widget.TextView;
 import android.widget.VideoView;
@@ -43,7 +43,6 @@ import androidx.annotation.Nullable;
 import androidx.appcompat.app.AlertDialog;
 import androidx.fragment.app.Fragment;
 
-import com.arthenica.ffmpegkit.FFmpegKit;
 import com.arthenica.ffmpegkit.FFmpegKitConfig;
 import com.arthenica.ffmpegkit.FFmpegSession;
 import com.arthenica.ffmpegkit.FFmpegSessionCompleteCallback;
@@ -55,18 +54,35 @@ import com.arthenica.ffmpegkit.StatisticsCallback;
 
 import com.arthenica.smartexception.java.Exceptions;
 import com.example.kitapp.R;
-import com.example.kitapp.util.AsyncCatImageTask;
+import com.example.kitapp.encode.Slideshow;
+import com.example.kitapp.encode.SlideshowRenderer;
+import com.example.kitapp.scheduler.FFmpegJob;
+import com.example.kitapp.scheduler.JobHandle;
+import com.example.kitapp.scheduler.JobScheduler;
+import com.example.kitapp.util.BitmapImageDecoder;
 import com.example.kitapp.util.DialogUtil;
-import com.example.kitapp.util.ResourcesUtil;
+import com.example.kitapp.util.PipeFeeder;
+import com.example.kitapp.util.ProgressTracker;
+import com.example.kitapp.util.RawFrameProducer;
+import com.example.kitapp.util.ResourceFileCache;
 
 import java.io.File;
 import java.io.IOException;
-import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
 
 public class PipeTabFragment extends Fragment {
     private VideoView videoView;
+    private CheckBox rawFramesCheckBox;
     private AlertDialog progressDialog;
-    private Statistics statistics;
+    private final ProgressTracker progressTracker = new ProgressTracker();
+    private final Runnable updateProgressAction = new Runnable() {
+
+        @Override
+        public void run() {
+            updateProgressDialog();
+        }
+    };
 
     public PipeTabFragment() {
         super(R.layout.fragment_pipe_tab);
@@ -82,12 +98,17 @@ public class PipeTabFragment extends Fragment {
 
                 @Override
                 public void onClick(View v) {
-                    createVideo();
+                    if (rawFramesCheckBox != null && rawFramesCheckBox.isChecked()) {
+                        createVideoWithRawFrames();
+                    } else {
+                        createVideo();
+                    }
                 }
             });
         }
 
         videoView = view.findViewById(R.id.videoPlayerFrame);
+        rawFramesCheckBox = view.findViewById(R.id.rawFramesCheckBox);
 
         progressDialog = DialogUtil.createProgressDialog(requireContext(), "Creating video");
     }
@@ -117,21 +138,28 @@ public class PipeTabFragment extends Fragment {
 
             @Override
             public void apply(final Statistics newStatistics) {
-                MainActivity.addUIAction(new Runnable() {
-
-                    @Override
-                    public void run() {
-                        PipeTabFragment.this.statistics = newStatistics;
-                        updateProgressDialog();
-                    }
-                });
+                if (progressTracker.update(newStatistics.getTime())) {
+                    MainActivity.addUIAction(updateProgressAction);
+                }
             }
         });
     }
 
-    void startAsyncCatImageProcess(final String imagePath, final String namedPipePath) {
-        AsyncCatImageTask asyncTask = new AsyncCatImageTask();
-        asyncTask.executeOnExecutor(AsyncTask.THREAD_POOL_EXECUTOR, imagePath, namedPipePath);
+    PipeFeeder startPipeFeeder(final String imagePath, final String namedPipePath, final JobHandle jobHandle) {
+        return PipeFeeder.create(new File(imagePath), namedPipePath, new PipeFeeder.CompleteCallback() {
+
+            @Override
+            public void apply(final PipeFeeder feeder) {
+                if (feeder.getFailure() != null) {
+
+                    // FFMPEG CAN NOT PRODUCE A VALID VIDEO WITHOUT THIS INPUT
+                    Log.w(TAG, String.format("Cancelling FFmpeg job %d, feeding %s failed.", jobHandle.getId(), namedPipePath));
+                    jobHandle.cancel();
+                } else if (feeder.isSuccess()) {
+                    Log.d(TAG, String.format("Fed %s into pipe. %s", imagePath, feeder));
+                }
+            }
+        }).start();
     }
 
     public void createVideo() {
@@ -155,17 +183,20 @@ public class PipeTabFragment extends Fragment {
 
             Log.d(TAG, "Testing PIPE with 'mpeg4' codec");
 
-            showProgressDialog();
+            showProgressDialog(Video.SLIDESHOW_DURATION);
+
+            ResourceFileCache.getInstance(requireContext()).resourceToFile(R.drawable.machupicchu, image1File);
+            ResourceFileCache.getInstance(requireContext()).resourceToFile(R.drawable.pyramid, image2File);
+            ResourceFileCache.getInstance(requireContext()).resourceToFile(R.drawable.stonehenge, image3File);
 
-            ResourcesUtil.resourceToFile(getResources(), R.drawable.machupicchu, image1File);
-            ResourcesUtil.resourceToFile(getResources(), R.drawable.pyramid, image2File);
-            ResourcesUtil.resourceToFile(getResources(), R.drawable.stonehenge, image3File);
+            final String[] arguments = Video.createVideoWithPipesArguments(new String[]{pipe1, pipe2, pipe3}, videoFile.getAbsolutePath());
 
-            final String ffmpegCommand = Video.generateCreateVideoWithPipesScript(pipe1, pipe2, pipe3, videoFile.getAbsolutePath());
+            Log.d(TAG, String.format("FFmpeg process started with arguments: '%s'.", FFmpegKitConfig.argumentsToString(arguments)));
 
-            Log.d(TAG, String.format("FFmpeg process started with arguments: '%s'.", ffmpegCommand));
+            final List<PipeFeeder> feeders = new ArrayList<>();
+            final boolean[] sessionComplete = new boolean[1];
 
-            FFmpegKit.executeAsync(ffmpegCommand, new FFmpegSessionCompleteCallback() {
+            final JobHandle jobHandle = JobScheduler.getInstance().submit(FFmpegJob.createWithArguments(arguments, new FFmpegSessionCompleteCallback() {
 
                 @Override
                 public void apply(final FFmpegSession session) {
@@ -176,6 +207,14 @@ public class PipeTabFragment extends Fragment {
 
                     hideProgressDialog();
 
+                    // RELEASE FEEDERS STILL WAITING ON PIPES FFMPEG NEVER OPENED
+                    synchronized (feeders) {
+                        sessionComplete[0] = true;
+                        for (PipeFeeder feeder : feeders) {
+                            feeder.cancel();
+                        }
+                    }
+
                     // CLOSE PIPES
                     FFmpegKitConfig.closeFFmpegPipe(pipe1);
                     FFmpegKitConfig.closeFFmpegPipe(pipe2);
@@ -194,16 +233,130 @@ public class PipeTabFragment extends Fragment {
                         }
                     });
                 }
-            });
+            }));
+
+            // START FEEDERS AFTER INITIATING FFMPEG COMMAND
+            synchronized (feeders) {
+                feeders.add(startPipeFeeder(image1File.getAbsolutePath(), pipe1, jobHandle));
+                feeders.add(startPipeFeeder(image2File.getAbsolutePath(), pipe2, jobHandle));
+                feeders.add(startPipeFeeder(image3File.getAbsolutePath(), pipe3, jobHandle));
+
+                // SESSION MAY HAVE ENDED BEFORE FEEDERS WERE STARTED
+                if (sessionComplete[0]) {
+                    for (PipeFeeder feeder : feeders) {
+                        feeder.cancel();
+                    }
+                }
+            }
+
+        } catch (IOException e) {
+            Log.e(TAG, String.format("Create video failed %s.", Exceptions.getStackTraceString(e)));
+            Popup.show(requireContext(), "Create video failed");
+        }
+    }
+
+    public void createVideoWithRawFrames() {
+        final File videoFile = getVideoFile();
+        final int[] images = {R.drawable.machupicchu, R.drawable.pyramid, R.drawable.stonehenge};
+        final String[] imagePaths = {"machupicchu.jpg", "pyramid.jpg", "stonehenge.jpg"};
 
-            // START ASYNC PROCESSES AFTER INITIATING FFMPEG COMMAND
-            startAsyncCatImageProcess(image1File.getAbsolutePath(), pipe1);
-            startAsyncCatImageProcess(image2File.getAbsolutePath(), pipe2);
-            startAsyncCatImageProcess(image3File.getAbsolutePath(), pipe3);
+        // IF VIDEO IS PLAYING STOP PLAYBACK
+        videoView.stopPlayback();
 
+        if (videoFile.exists()) {
+            videoFile.delete();
+        }
+
+        try {
+            for (int i = 0; i < images.length; i++) {
+                final File imageFile = new File(requireContext().getCacheDir(), imagePaths[i]);
+                ResourceFileCache.getInstance(requireContext()).resourceToFile(images[i], imageFile);
+                imagePaths[i] = imageFile.getAbsolutePath();
+            }
         } catch (IOException e) {
             Log.e(TAG, String.format("Create video failed %s.", Exceptions.getStackTraceString(e)));
             Popup.show(requireContext(), "Create video failed");
+            return;
+        }
+
+        final Slideshow slideshow = Slideshow.create(imagePaths);
+        final String pipe = FFmpegKitConfig.registerNewFFmpegPipe(requireContext());
+
+        Log.d(TAG, "Testing PIPE with raw 'rgba' frames");
+
+        showProgressDialog(slideshow.getDuration());
+
+        final RawFrameProducer producer = RawFrameProducer.create(pipe, slideshow.getWidth(), slideshow.getHeight(), RawFrameProducer.PixelFormat.RGBA, 3, new RawFrameProducer.CompleteCallback() {
+
+            @Override
+            public void apply(final RawFrameProducer producer) {
+                Log.d(TAG, String.format("Raw frame producer finished. %s", producer));
+            }
+        });
+        final BitmapImageDecoder decoder = new BitmapImageDecoder();
+        final SlideshowRenderer renderer = new SlideshowRenderer(slideshow, decoder);
+
+        final String[] arguments = slideshow.createPipeArguments(producer.getInputArguments(slideshow.getFrameRate()), videoFile.getAbsolutePath(), new String[]{"-c:v", "mpeg4"});
+
+        Log.d(TAG, String.format("FFmpeg process started with arguments: '%s'.", FFmpegKitConfig.argumentsToString(arguments)));
+
+        final JobHandle jobHandle = JobScheduler.getInstance().submit(FFmpegJob.createWithArguments(arguments, new FFmpegSessionCompleteCallback() {
+
+            @Override
+            public void apply(final FFmpegSession session) {
+                final ReturnCode returnCode = session.getReturnCode();
+
+                Log.d(TAG, String.format("FFmpeg process exited with state %s and rc %s.%s", session.getState(), returnCode, notNull(session.getFailStackTrace(), "\n")));
+
+                hideProgressDialog();
+
+                // STOP PRODUCING BEFORE CLOSING THE PIPE
+                renderer.cancel();
+                producer.cancel();
+                FFmpegKitConfig.closeFFmpegPipe(pipe);
+
+                MainActivity.addUIAction(new Runnable() {
+
+                    @Override
+                    public void run() {
+                        if (ReturnCode.isSuccess(returnCode)) {
+                            Log.d(TAG, "Create completed successfully; playing video.");
+                            playVideo();
+                        } else {
+                            Popup.show(requireContext(), "Create failed. Please check logs for the details.");
+                        }
+                    }
+                });
+            }
+        }, null, null));
+
+        producer.start();
+        PipeFeeder.getDefaultExecutor().execute(new Runnable() {
+
+            @Override
+            public void run() {
+                try {
+                    renderSlideshow(renderer, producer, jobHandle);
+                } finally {
+                    decoder.release();
+                }
+            }
+        });
+    }
+
+    /**
+     * <p>Renders the slideshow directly into raw frames, so images are decoded one at a time and
+     * frames are never encoded before FFmpeg reads them.
+     */
+    void renderSlideshow(final SlideshowRenderer renderer, final RawFrameProducer producer, final JobHandle jobHandle) {
+        try {
+            renderer.render(producer);
+            Log.d(TAG, String.format("Slideshow rendered. %s", renderer));
+        } catch (final Exception e) {
+            if (!producer.isCancelled()) {
+                Log.e(TAG, String.format("Rendering raw frames failed, cancelling FFmpeg job %d.%s", jobHandle.getId(), Exceptions.getStackTraceString(e)));
+                jobHandle.cancel();
+            }
         }
     }
 
@@ -242,27 +395,16 @@ public class PipeTabFragment extends Fragment {
         Popup.show(requireContext(), getString(R.string.pipe_test_tooltip_text));
     }
 
-    protected void showProgressDialog() {
-
-        // CLEAN STATISTICS
-        statistics = null;
+    protected void showProgressDialog(final long totalDuration) {
+        progressTracker.start(totalDuration);
 
         progressDialog.show();
     }
 
     protected void updateProgressDialog() {
-        if (statistics == null || statistics.getTime() < 0) {
-            return;
-        }
-
-        double timeInMilliseconds = this.statistics.getTime();
-        int totalVideoDuration = 9000;
-
-        String completePercentage = new BigDecimal(timeInMilliseconds).multiply(new BigDecimal(100)).divide(new BigDecimal(totalVideoDuration), 0, BigDecimal.ROUND_HALF_UP).toString();
-
         TextView textView = progressDialog.findViewById(R.id.progressDialogText);
         if (textView != null) {
-            textView.setText(String.format("Creating video: %% %s.", completePercentage));
+            progressTracker.applyTo("Creating video", textView);
         }
     }
 
@@ -29,9 +29,11 @@ import static android.content.ContentValues.TAG;
 import static com.example.kitapp.test.MainActivity.notNull;
 
 import android.content.Intent;
+import android.database.Cursor;
 import android.net.Uri;
 import android.os.Build;
 import android.os.Bundle;
+import android.provider.OpenableColumns;
 import android.text.method.ScrollingMovementMethod;
 import android.util.Log;
 import android.view.View;
@@ -43,13 +45,11 @@ import androidx.annotation.Nullable;
 import androidx.appcompat.app.AlertDialog;
 import androidx.fragment.app.Fragment;
 
-import com.arthenica.ffmpegkit.FFmpegKit;
 import com.arthenica.ffmpegkit.FFmpegKitConfig;
 import com.arthenica.ffmpegkit.FFmpegSession;
 import com.arthenica.ffmpegkit.FFmpegSessionCompleteCallback;
-import com.arthenica.ffmpegkit.FFprobeKit;
-import com.arthenica.ffmpegkit.FFprobeSession;
 import com.arthenica.ffmpegkit.LogCallback;
+import com.arthenica.ffmpegkit.MediaInformation;
 import com.arthenica.ffmpegkit.ReturnCode;
 import com.arthenica.ffmpegkit.SessionState;
 import com.arthenica.ffmpegkit.Statistics;
@@ -58,11 +58,21 @@ import com.example.kitapp.util.DialogUtil;
 
 import com.arthenica.smartexception.java.Exceptions;
 import com.example.kitapp.R;
-import com.example.kitapp.util.ResourcesUtil;
+import com.example.kitapp.encode.StreamingMuxer;
+import com.example.kitapp.probe.MediaInformationCache;
+import com.example.kitapp.scheduler.FFmpegJob;
+import com.example.kitapp.scheduler.JobHandle;
+import com.example.kitapp.scheduler.JobScheduler;
+import com.example.kitapp.util.PipeDrainer;
+import com.example.kitapp.util.ProgressTracker;
+import com.example.kitapp.util.ResourceFileCache;
+
+import org.json.JSONException;
 
 import java.io.File;
+import java.io.FileNotFoundException;
 import java.io.IOException;
-import java.math.BigDecimal;
+import java.io.OutputStream;
 
 public class SafTabFragment extends Fragment {
     private TextView outputText;
@@ -74,7 +84,14 @@ public class SafTabFragment extends Fragment {
     private boolean backFromIntent = false;
 
     private AlertDialog progressDialog;
-    private Statistics statistics;
+    private final ProgressTracker progressTracker = new ProgressTracker();
+    private final Runnable updateProgressAction = new Runnable() {
+
+        @Override
+        public void run() {
+            updateProgressDialog();
+        }
+    };
 
     private Button runFFmpegButton;
     private Button runFFprobeButton;
@@ -148,43 +165,89 @@ public class SafTabFragment extends Fragment {
     private void runFFprobe() {
         clearOutput();
 
-        final String ffprobeCommand = "-hide_banner -print_format json -show_format -show_streams " + FFmpegKitConfig.getSafParameterForRead(getContext(), inUri);
+        final String uri = inUri.toString();
+        inUri = null;
 
-        Log.d(TAG, "Testing FFprobe COMMAND synchronously.");
+        Log.d(TAG, String.format("Testing FFprobe media information of %s.", uri));
 
-        Log.d(TAG, String.format("FFprobe process started with arguments: '%s'", ffprobeCommand));
+        final long startTime = System.nanoTime();
 
-        final FFprobeSession session = FFprobeKit.execute(ffprobeCommand);
+        // REPEATED PROBES OF AN UNCHANGED DOCUMENT ARE SERVED FROM THE CACHE
+        MediaInformationCache.getInstance(requireContext()).getMediaInformationAsync(uri, new MediaInformationCache.Callback() {
 
-        Log.d(TAG, String.format("FFprobe process exited with state %s and rc %s.%s", session.getState(), session.getReturnCode(), notNull(session.getFailStackTrace(), "\n")));
+            @Override
+            public void apply(final String uri, final MediaInformation information, final IOException failure) {
+                final long lookupTime = (System.nanoTime() - startTime) / 1000;
 
-        if (!ReturnCode.isSuccess(session.getReturnCode())) {
-            Popup.show(requireContext(), "Command failed. Please check output for the details.");
-        }
-        inUri = null;
+                MainActivity.addUIAction(new Runnable() {
+
+                    @Override
+                    public void run() {
+                        if (information == null) {
+                            Log.d(TAG, String.format("FFprobe media information lookup failed. %s", (failure != null) ? failure.getMessage() : null));
+                            Popup.show(requireContext(), "Command failed. Please check output for the details.");
+                            return;
+                        }
+
+                        Log.d(TAG, String.format("FFprobe media information lookup completed in %d microseconds.", lookupTime));
+                        try {
+                            appendOutput(information.getAllProperties().toString(2));
+                        } catch (final JSONException e) {
+                            appendOutput(information.getAllProperties().toString());
+                        }
+                    }
+                });
+            }
+        });
     }
 
     private void encodeVideo() {
         final File image1File = new File(requireContext().getCacheDir(), "machupicchu.jpg");
         final File image2File = new File(requireContext().getCacheDir(), "pyramid.jpg");
         final File image3File = new File(requireContext().getCacheDir(), "stonehenge.jpg");
-        final String videoPath = FFmpegKitConfig.getSafParameter(requireContext(), outUri, "rw");
+        final Uri documentUri = outUri;
+        OutputStream outputStream = null;
+        String pipe = null;
 
         try {
-            String selectedCodec = getCodec(videoPath);
-            Log.d(TAG, String.format("Testing VIDEO encoding with '%s' codec", selectedCodec));
+
+            // DOCUMENT STREAMS CAN NOT BE SEEKED, SO THE MUXER IS CHOSEN FOR STREAMING
+            final StreamingMuxer muxer = StreamingMuxer.create(getDisplayName(documentUri));
+            String selectedCodec = getCodec(muxer.getExtension());
+            Log.d(TAG, String.format("Testing VIDEO encoding with '%s' codec into %s", selectedCodec, muxer));
 
             showProgressDialog();
 
-            ResourcesUtil.resourceToFile(getResources(), R.drawable.machupicchu, image1File);
-            ResourcesUtil.resourceToFile(getResources(), R.drawable.pyramid, image2File);
-            ResourcesUtil.resourceToFile(getResources(), R.drawable.stonehenge, image3File);
+            ResourceFileCache.getInstance(requireContext()).resourceToFile(R.drawable.machupicchu, image1File);
+            ResourceFileCache.getInstance(requireContext()).resourceToFile(R.drawable.pyramid, image2File);
+            ResourceFileCache.getInstance(requireContext()).resourceToFile(R.drawable.stonehenge, image3File);
+
+            outputStream = requireContext().getContentResolver().openOutputStream(documentUri, "wt");
+            if (outputStream == null) {
+                throw new FileNotFoundException(String.format("Can not open %s for writing.", documentUri));
+            }
+
+            final String drainedPipe = FFmpegKitConfig.registerNewFFmpegPipe(requireContext());
+            pipe = drainedPipe;
+            final PipeDrainer drainer = PipeDrainer.create(drainedPipe, outputStream, new PipeDrainer.CompleteCallback() {
+
+                @Override
+                public void apply(final PipeDrainer drainer) {
+                    if (drainer.getFailure() != null) {
+
+                        // THE PIPE IS CLOSED, SO FFMPEG FAILS ON ITS NEXT WRITE
+                        Log.w(TAG, String.format("Writing %s failed.", documentUri));
+                    } else {
+                        Log.d(TAG, String.format("Wrote %s. %s", documentUri, drainer));
+                    }
+                }
+            });
 
-            final String ffmpegCommand = Video.generateEncodeVideoScript(image1File.getAbsolutePath(), image2File.getAbsolutePath(), image3File.getAbsolutePath(), videoPath, selectedCodec, getCustomOptions(selectedCodec));
+            final String[] arguments = Video.createEncodeVideoArguments(new String[]{image1File.getAbsolutePath(), image2File.getAbsolutePath(), image3File.getAbsolutePath()}, drainedPipe, selectedCodec, muxer.getOptions(getCustomOptions(selectedCodec)));
 
-            Log.d(TAG, String.format("FFmpeg process started with arguments: '%s'.", ffmpegCommand));
+            Log.d(TAG, String.format("FFmpeg process started with arguments: '%s'.", FFmpegKitConfig.argumentsToString(arguments)));
 
-            FFmpegSession session = FFmpegKit.executeAsync(ffmpegCommand, new FFmpegSessionCompleteCallback() {
+            final JobHandle jobHandle = JobScheduler.getInstance().submit(FFmpegJob.createWithArguments(arguments, new FFmpegSessionCompleteCallback() {
 
                 @Override
                 public void apply(final FFmpegSession session) {
@@ -193,13 +256,25 @@ public class SafTabFragment extends Fragment {
 
                     Log.d(TAG, String.format("FFmpeg process exited with state %s and rc %s.%s", state, returnCode, notNull(session.getFailStackTrace(), "\n")));
 
+                    // THE LAST CHUNKS MAY STILL BE ON THEIR WAY TO THE DOCUMENT
+                    drainer.finishInput();
+                    try {
+                        drainer.await();
+                    } catch (final InterruptedException e) {
+                        drainer.cancel();
+                        Thread.currentThread().interrupt();
+                    }
+                    FFmpegKitConfig.closeFFmpegPipe(drainedPipe);
+
                     hideProgressDialog();
 
+                    final boolean success = ReturnCode.isSuccess(returnCode) && drainer.isSuccess();
+
                     MainActivity.addUIAction(new Runnable() {
 
                         @Override
                         public void run() {
-                            if (ReturnCode.isSuccess(session.getReturnCode())) {
+                            if (success) {
                                 Log.d(TAG, "Encode completed successfully.");
                             } else {
                                 Popup.show(requireContext(), "Encode failed. Please check logs for the details.");
@@ -207,16 +282,50 @@ public class SafTabFragment extends Fragment {
                         }
                     });
                 }
-            });
+            }));
 
-            Log.d(TAG, String.format("Async FFmpeg process started with sessionId %d.", session.getSessionId()));
+            // START DRAINER AFTER INITIATING FFMPEG COMMAND
+            drainer.start();
 
-        } catch (IOException e) {
+            // THE DRAINER AND THE JOB CLOSE THE STREAM AND THE PIPE FROM NOW ON
+            outputStream = null;
+            pipe = null;
+
+            Log.d(TAG, String.format("FFmpeg job submitted with jobId %d.", jobHandle.getId()));
+
+        } catch (Exception e) {
             Log.e(TAG, String.format("Encode video failed %s.", Exceptions.getStackTraceString(e)));
+            if (outputStream != null) {
+                try {
+                    outputStream.close();
+                } catch (IOException closeException) {
+                    Log.w(TAG, String.format("Closing %s failed.%s", documentUri, Exceptions.getStackTraceString(closeException)));
+                }
+            }
+            if (pipe != null) {
+                FFmpegKitConfig.closeFFmpegPipe(pipe);
+            }
+            hideProgressDialog();
             Popup.show(requireContext(), "Encode video failed");
         }
     }
 
+    /**
+     * @return display name of the document, null if the provider does not tell
+     */
+    private String getDisplayName(final Uri uri) {
+        final Cursor cursor = requireContext().getContentResolver().query(uri, new String[]{OpenableColumns.DISPLAY_NAME}, null, null, null);
+        if (cursor == null) {
+            return null;
+        }
+        try {
+            final int nameIndex = cursor.getColumnIndex(OpenableColumns.DISPLAY_NAME);
+            return (cursor.moveToFirst() && nameIndex >= 0) ? cursor.getString(nameIndex) : null;
+        } finally {
+            cursor.close();
+        }
+    }
+
     private void setActive() {
         if (backFromIntent) {
             backFromIntent = false;
@@ -268,18 +377,14 @@ public class SafTabFragment extends Fragment {
         }
     }
 
-    private String getCodec(String videoPath) {
-        String extension = "mp4";
-        int pos = videoPath.lastIndexOf('.');
-        if (pos >= 0)
-            extension = videoPath.substring(pos + 1);
-
+    private String getCodec(String extension) {
         switch (extension) {
             case "webm":
                 return "vp8";
             case "mkv":
                 return "aom";
             case "ogv":
+            case "ogg":
                 return "theora";
             case "mov":
                 return "hap";
@@ -289,24 +394,24 @@ public class SafTabFragment extends Fragment {
         }
     }
 
-    private String getCustomOptions(String videoCodec) {
+    private String[] getCustomOptions(String videoCodec) {
         switch (videoCodec) {
             case "x265":
-                return "-crf 28 -preset fast ";
+                return new String[]{"-crf", "28", "-preset", "fast"};
             case "vp8":
-                return "-b:v 1M -crf 10 ";
+                return new String[]{"-b:v", "1M", "-crf", "10"};
             case "vp9":
-                return "-b:v 2M ";
+                return new String[]{"-b:v", "2M"};
             case "aom":
-                return "-crf 30 -strict experimental ";
+                return new String[]{"-crf", "30", "-strict", "experimental"};
             case "theora":
-                return "-qscale:v 7 ";
+                return new String[]{"-qscale:v", "7"};
             case "hap":
-                return "-format hap_q ";
+                return new String[]{"-format", "hap_q"};
             default:
 
                 // kvazaar, mpeg4, x264, xvid
-                return "-movflags faststart ";
+                return new String[]{"-movflags", "faststart"};
         }
     }
 
@@ -315,39 +420,23 @@ public class SafTabFragment extends Fragment {
 
             @Override
             public void apply(final Statistics newStatistics) {
-                MainActivity.addUIAction(new Runnable() {
-
-                    @Override
-                    public void run() {
-                        statistics = newStatistics;
-                        updateProgressDialog();
-                    }
-                });
+                if (progressTracker.update(newStatistics.getTime())) {
+                    MainActivity.addUIAction(updateProgressAction);
+                }
             }
         });
     }
 
     private void showProgressDialog() {
-
-        // CLEAN STATISTICS
-        statistics = null;
+        progressTracker.start(Video.SLIDESHOW_DURATION);
 
         progressDialog.show();
     }
 
     private void updateProgressDialog() {
-        if (statistics == null || statistics.getTime() < 0) {
-            return;
-        }
-
-        double timeInMilliseconds = this.statistics.getTime();
-        int totalVideoDuration = 9000;
-
-        String completePercentage = new BigDecimal(timeInMilliseconds).multiply(new BigDecimal(100)).divide(new BigDecimal(totalVideoDuration), 0, BigDecimal.ROUND_HALF_UP).toString();
-
         TextView textView = progressDialog.findViewById(R.id.progressDialogText);
         if (textView != null) {
-            textView.setText(String.format("Encoding video: %% %s.", completePercentage));
+            progressTracker.applyTo("Encoding video", textView);
         }
     }
 
@@ -43,12 +43,10 @@ import androidx.annotation.Nullable;
 import androidx.appcompat.app.AlertDialog;
 import androidx.fragment.app.Fragment;
 
-import com.arthenica.ffmpegkit.FFmpegKit;
 import com.arthenica.ffmpegkit.FFmpegKitConfig;
 import com.arthenica.ffmpegkit.FFmpegSession;
 import com.arthenica.ffmpegkit.FFmpegSessionCompleteCallback;
 import com.arthenica.ffmpegkit.LogCallback;
-import com.arthenica.ffmpegkit.ReturnCode;
 import com.arthenica.ffmpegkit.Statistics;
 import com.arthenica.ffmpegkit.StatisticsCallback;
 import com.example.kitapp.util.DialogUtil;
@@ -57,8 +55,18 @@ import com.arthenica.smartexception.java.Exceptions;
 
 import java.io.File;
 import java.io.IOException;
-import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
 import com.example.kitapp.R;
+import com.example.kitapp.scheduler.FFmpegJob;
+import com.example.kitapp.scheduler.Job;
+import com.example.kitapp.scheduler.JobGraph;
+import com.example.kitapp.scheduler.JobPriority;
+import com.example.kitapp.scheduler.JobState;
+import com.example.kitapp.util.ProgressTracker;
+import com.example.kitapp.util.ResourceFileCache;
 import com.example.kitapp.util.ResourcesUtil;
 public class SubtitleTabFragment extends Fragment {
 
@@ -71,9 +79,16 @@ public class SubtitleTabFragment extends Fragment {
     private VideoView videoView;
     private AlertDialog createProgressDialog;
     private AlertDialog burnProgressDialog;
-    private Statistics statistics;
+    private final ProgressTracker progressTracker = new ProgressTracker();
+    private final Runnable updateProgressAction = new Runnable() {
+
+        @Override
+        public void run() {
+            updateProgressDialog();
+        }
+    };
     private State state;
-    private Long sessionId;
+    private JobGraph graph;
 
     public SubtitleTabFragment() {
         super(R.layout.fragment_subtitle_tab);
@@ -122,14 +137,9 @@ public class SubtitleTabFragment extends Fragment {
 
             @Override
             public void apply(final Statistics newStatistics) {
-                MainActivity.addUIAction(new Runnable() {
-
-                    @Override
-                    public void run() {
-                        SubtitleTabFragment.this.statistics = newStatistics;
-                        updateProgressDialog();
-                    }
-                });
+                if (progressTracker.update(newStatistics.getTime())) {
+                    MainActivity.addUIAction(updateProgressAction);
+                }
             }
         });
     }
@@ -150,74 +160,93 @@ public class SubtitleTabFragment extends Fragment {
 
             showCreateProgressDialog();
 
-            ResourcesUtil.resourceToFile(getResources(), R.drawable.machupicchu, image1File);
-            ResourcesUtil.resourceToFile(getResources(), R.drawable.pyramid, image2File);
-            ResourcesUtil.resourceToFile(getResources(), R.drawable.stonehenge, image3File);
+            ResourceFileCache.getInstance(requireContext()).resourceToFile(R.drawable.machupicchu, image1File);
+            ResourceFileCache.getInstance(requireContext()).resourceToFile(R.drawable.pyramid, image2File);
+            ResourceFileCache.getInstance(requireContext()).resourceToFile(R.drawable.stonehenge, image3File);
             ResourcesUtil.rawResourceToFile(getResources(), R.raw.subtitle, getSubtitleFile());
 
-            final String ffmpegCommand = Video.generateEncodeVideoScript(image1File.getAbsolutePath(), image2File.getAbsolutePath(), image3File.getAbsolutePath(), videoFile.getAbsolutePath(), "mpeg4", "");
-
-            Log.d(TAG, String.format("FFmpeg process started with arguments: '%s'.", ffmpegCommand));
+            // THE SLIDESHOW IS STREAMED INTO THE BURN SESSION WHEN BOTH CAN RUN AT THE SAME TIME
+            final JobGraph burnGraph = JobGraph.create("Burn subtitles", requireContext())
+                    .addStream("video", videoFile)
+                    .addFile("subtitles", getSubtitleFile())
+                    .addFile("videoWithSubtitles", videoWithSubtitlesFile)
+                    .addStage("create", JobPriority.NORMAL, new String[0], new String[]{"video"}, new JobGraph.JobFactory() {
+
+                        @Override
+                        public Job create(final JobGraph graph) {
+
+                            // RAW FRAMES IN NUT NEED NEITHER SEEKING NOR A SECOND ENCODE
+                            final String[] imagePaths = {image1File.getAbsolutePath(), image2File.getAbsolutePath(), image3File.getAbsolutePath()};
+                            final String[] arguments = graph.isPipe("video") ?
+                                    Video.createEncodeVideoArguments(imagePaths, graph.getPath("video"), "rawvideo", new String[]{"-f", "nut"}) :
+                                    Video.createEncodeVideoArguments(imagePaths, graph.getPath("video"), "mpeg4", new String[0]);
+                            return createJob(arguments);
+                        }
+                    })
+                    .addStage("burn", JobPriority.HIGH, new String[]{"video", "subtitles"}, new String[]{"videoWithSubtitles"}, new JobGraph.JobFactory() {
+
+                        @Override
+                        public Job create(final JobGraph graph) {
+                            final List<String> arguments = new ArrayList<>(Collections.singletonList("-y"));
+                            if (graph.isPipe("video")) {
+                                arguments.addAll(Arrays.asList("-f", "nut"));
+                            }
+                            arguments.addAll(Arrays.asList("-i", graph.getPath("video"), "-vf", "subtitles=" + graph.getPath("subtitles") + ":force_style='FontName=MyFontName'", "-c:v", "mpeg4", graph.getPath("videoWithSubtitles")));
+                            return createJob(arguments.toArray(new String[0]));
+                        }
+                    });
 
+            graph = burnGraph;
             state = State.CREATING;
 
-            sessionId = FFmpegKit.executeAsync(ffmpegCommand, new FFmpegSessionCompleteCallback() {
+            burnGraph.start(new JobGraph.StageCallback() {
 
                 @Override
-                public void apply(final FFmpegSession session) {
-                    Log.d(TAG, String.format("FFmpeg process exited with state %s and rc %s.%s", session.getState(), session.getReturnCode(), notNull(session.getFailStackTrace(), "\n")));
-
-                    hideCreateProgressDialog();
-
-                    if (ReturnCode.isSuccess(session.getReturnCode())) {
-
+                public void apply(final JobGraph graph, final String stage, final JobState stageState) {
+                    if ("burn".equals(stage) && stageState == JobState.RUNNING) {
                         MainActivity.addUIAction(new Runnable() {
 
                             @Override
                             public void run() {
-
-                                Log.d(TAG, "Create completed successfully; burning subtitles.");
-
-                                String burnSubtitlesCommand = String.format("-y -i %s -vf subtitles=%s:force_style='FontName=MyFontName' -c:v mpeg4 %s", videoFile.getAbsolutePath(), getSubtitleFile().getAbsolutePath(), videoWithSubtitlesFile.getAbsolutePath());
-
-                                showBurnProgressDialog();
-
-                                Log.d(TAG, String.format("FFmpeg process started with arguments: '%s'.", burnSubtitlesCommand));
-
-                                state = State.BURNING;
-
-                                FFmpegKit.executeAsync(burnSubtitlesCommand, new FFmpegSessionCompleteCallback() {
-
-                                    @Override
-                                    public void apply(final FFmpegSession secondSession) {
-
-                                        hideBurnProgressDialog();
-
-                                        MainActivity.addUIAction(new Runnable() {
-
-                                            @Override
-                                            public void run() {
-                                                if (ReturnCode.isSuccess(secondSession.getReturnCode())) {
-                                                    Log.d(TAG, "Burn subtitles completed successfully; playing video.");
-                                                    playVideo();
-                                                } else if (ReturnCode.isCancel(secondSession.getReturnCode())) {
-                                                    Popup.show(requireContext(), "Burn subtitles operation cancelled.");
-                                                    Log.e(TAG, "Burn subtitles operation cancelled");
-                                                } else {
-                                                    Popup.show(requireContext(), "Burn subtitles failed. Please check logs for the details.");
-                                                    Log.d(TAG, String.format("Burn subtitles failed with state %s and rc %s.%s", secondSession.getState(), secondSession.getReturnCode(), notNull(secondSession.getFailStackTrace(), "\n")));
-                                                }
-                                            }
-                                        });
-                                    }
-                                });
+                                if (state == State.CREATING) {
+                                    Log.d(TAG, "Burning subtitles.");
+                                    hideCreateProgressDialog();
+                                    showBurnProgressDialog();
+                                    state = State.BURNING;
+                                }
                             }
                         });
                     }
                 }
-            }).getSessionId();
+            }, new JobGraph.CompleteCallback() {
 
-            Log.d(TAG, String.format("Async FFmpeg process started with sessionId %d.", sessionId));
+                @Override
+                public void apply(final JobGraph completedGraph) {
+                    MainActivity.addUIAction(new Runnable() {
+
+                        @Override
+                        public void run() {
+                            if (state == State.CREATING) {
+                                hideCreateProgressDialog();
+                            } else if (state == State.BURNING) {
+                                hideBurnProgressDialog();
+                            }
+                            state = State.IDLE;
+
+                            if (completedGraph.getState() == JobState.COMPLETED) {
+                                Log.d(TAG, "Burn subtitles completed successfully; playing video.");
+                                playVideo();
+                            } else if (completedGraph.getState() == JobState.CANCELLED) {
+                                Popup.show(requireContext(), "Burn subtitles operation cancelled.");
+                                Log.e(TAG, "Burn subtitles operation cancelled");
+                            } else {
+                                Popup.show(requireContext(), "Burn subtitles failed. Please check logs for the details.");
+                                Log.d(TAG, String.format("Burn subtitles failed in the %s stage.", completedGraph.getFailedStage()));
+                            }
+                        }
+                    });
+                }
+            });
 
         } catch (IOException e) {
             Log.e(TAG, String.format("Burn subtitles failed %s.", Exceptions.getStackTraceString(e)));
@@ -225,6 +254,18 @@ public class SubtitleTabFragment extends Fragment {
         }
     }
 
+    private static Job createJob(final String[] arguments) {
+        Log.d(TAG, String.format("FFmpeg process started with arguments: '%s'.", FFmpegKitConfig.argumentsToString(arguments)));
+
+        return FFmpegJob.createWithArguments(arguments, new FFmpegSessionCompleteCallback() {
+
+            @Override
+            public void apply(final FFmpegSession session) {
+                Log.d(TAG, String.format("FFmpeg process exited with state %s and rc %s.%s", session.getState(), session.getReturnCode(), notNull(session.getFailStackTrace(), "\n")));
+            }
+        });
+    }
+
     protected void playVideo() {
         MediaController mediaController = new MediaController(requireContext());
         mediaController.setAnchorView(videoView);
@@ -269,17 +310,15 @@ public class SubtitleTabFragment extends Fragment {
     }
 
     protected void showCreateProgressDialog() {
-
-        // CLEAN STATISTICS
-        statistics = null;
+        progressTracker.start(Video.SLIDESHOW_DURATION);
 
         createProgressDialog = DialogUtil.createCancellableProgressDialog(requireContext(), "Creating video", new View.OnClickListener() {
 
             @Override
             public void onClick(View v) {
-                if (sessionId != null) {
-                    Log.d(TAG, String.format("Cancelling FFmpeg execution with sessionId %d.", sessionId));
-                    FFmpegKit.cancel(sessionId);
+                if (graph != null) {
+                    Log.d(TAG, String.format("Cancelling job graph %s.", graph.getName()));
+                    graph.cancel();
                 }
             }
         });
@@ -287,24 +326,15 @@ public class SubtitleTabFragment extends Fragment {
     }
 
     protected void updateProgressDialog() {
-        if (statistics == null || statistics.getTime() < 0) {
-            return;
-        }
-
-        double timeInMilliseconds = this.statistics.getTime();
-        int totalVideoDuration = 9000;
-
-        String completePercentage = new BigDecimal(timeInMilliseconds).multiply(new BigDecimal(100)).divide(new BigDecimal(totalVideoDuration), 0, BigDecimal.ROUND_HALF_UP).toString();
-
         if (state == State.CREATING) {
             TextView textView = createProgressDialog.findViewById(R.id.progressDialogText);
             if (textView != null) {
-                textView.setText(String.format("Creating video: %% %s.", completePercentage));
+                progressTracker.applyTo("Creating video", textView);
             }
         } else if (state == State.BURNING) {
             TextView textView = burnProgressDialog.findViewById(R.id.progressDialogText);
             if (textView != null) {
-                textView.setText(String.format("Burning subtitles: %% %s.", completePercentage));
+                progressTracker.applyTo("Burning subtitles", textView);
             }
         }
 
@@ -316,13 +346,16 @@ public class SubtitleTabFragment extends Fragment {
 
     protected void showBurnProgressDialog() {
 
-        // CLEAN STATISTICS
-        statistics = null;
+        // SUBTITLES ARE BURNED INTO THE SLIDESHOW CREATED BEFORE
+        progressTracker.start(Video.SLIDESHOW_DURATION);
 
         burnProgressDialog = DialogUtil.createCancellableProgressDialog(requireContext(), "Burning subtitles", new View.OnClickListener() {
             @Override
             public void onClick(View v) {
-                FFmpegKit.cancel();
+                if (graph != null) {
+                    Log.d(TAG, String.format("Cancelling job graph %s.", graph.getName()));
+                    graph.cancel();
+                }
             }
         });
         burnProgressDialog.show();
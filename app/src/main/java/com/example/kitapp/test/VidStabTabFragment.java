@@ -14,6 +14,7 @@ import android.net.Uri;
 import android.os.Bundle;
 import android.util.Log;
 import android.view.View;
+import android.widget.CheckBox;
 import android.widget.MediaController;
 import android.widget.VideoView;
 
@@ -22,17 +23,21 @@ import androidx.annotation.Nullable;
 import androidx.appcompat.app.AlertDialog;
 import androidx.fragment.app.Fragment;
 
-import com.arthenica.ffmpegkit.FFmpegKit;
 import com.arthenica.ffmpegkit.FFmpegKitConfig;
 import com.arthenica.ffmpegkit.FFmpegSession;
 import com.arthenica.ffmpegkit.FFmpegSessionCompleteCallback;
 import com.arthenica.ffmpegkit.LogCallback;
-import com.arthenica.ffmpegkit.ReturnCode;
 import com.example.kitapp.R;
+import com.example.kitapp.scheduler.FFmpegJob;
+import com.example.kitapp.scheduler.Job;
+import com.example.kitapp.scheduler.JobGraph;
+import com.example.kitapp.scheduler.JobPriority;
+import com.example.kitapp.scheduler.JobScheduler;
+import com.example.kitapp.scheduler.JobState;
 import com.example.kitapp.util.DialogUtil;
 
 import com.arthenica.smartexception.java.Exceptions;
-import com.example.kitapp.util.ResourcesUtil;
+import com.example.kitapp.util.ResourceFileCache;
 
 import java.io.File;
 import java.io.IOException;
@@ -40,6 +45,7 @@ import java.io.IOException;
 public class VidStabTabFragment extends Fragment {
     private VideoView videoView;
     private VideoView stabilizedVideoView;
+    private CheckBox pipelineCheckBox;
     private AlertDialog createProgressDialog;
     private AlertDialog stabilizeProgressDialog;
 
@@ -62,6 +68,7 @@ public class VidStabTabFragment extends Fragment {
 
         videoView = view.findViewById(R.id.videoPlayerFrame);
         stabilizedVideoView = view.findViewById(R.id.stabilizedVideoPlayerFrame);
+        pipelineCheckBox = view.findViewById(R.id.pipelineCheckBox);
 
         createProgressDialog = DialogUtil.createProgressDialog(requireContext(), "Creating video");
         stabilizeProgressDialog = DialogUtil.createProgressDialog(requireContext(), "Stabilizing video");
@@ -115,86 +122,73 @@ public class VidStabTabFragment extends Fragment {
                 stabilizedVideoFile.delete();
             }
 
-            Log.d(TAG, "Testing VID.STAB");
+            final boolean pipeline = pipelineCheckBox.isChecked();
 
-            showCreateProgressDialog();
-
-            ResourcesUtil.resourceToFile(getResources(), R.drawable.machupicchu, image1File);
-            ResourcesUtil.resourceToFile(getResources(), R.drawable.pyramid, image2File);
-            ResourcesUtil.resourceToFile(getResources(), R.drawable.stonehenge, image3File);
+            Log.d(TAG, String.format("Testing VID.STAB%s", pipeline ? " pipeline" : ""));
 
-            final String ffmpegCommand = Video.generateShakingVideoScript(image1File.getAbsolutePath(), image2File.getAbsolutePath(), image3File.getAbsolutePath(), videoFile.getAbsolutePath());
+            showCreateProgressDialog();
 
-            Log.d(TAG, String.format("FFmpeg process started with arguments: '%s'.", ffmpegCommand));
+            ResourceFileCache.getInstance(requireContext()).resourceToFile(R.drawable.machupicchu, image1File);
+            ResourceFileCache.getInstance(requireContext()).resourceToFile(R.drawable.pyramid, image2File);
+            ResourceFileCache.getInstance(requireContext()).resourceToFile(R.drawable.stonehenge, image3File);
 
-            FFmpegKit.executeAsync(ffmpegCommand, new FFmpegSessionCompleteCallback() {
+            final String[] imagePaths = {image1File.getAbsolutePath(), image2File.getAbsolutePath(), image3File.getAbsolutePath()};
 
-                @Override
-                public void apply(final FFmpegSession session) {
-                    Log.d(TAG, String.format("FFmpeg process exited with state %s and rc %s.%s", session.getState(), session.getReturnCode(), notNull(session.getFailStackTrace(), "\n")));
+            // video.mp4 IS PLAYED AFTERWARDS AND THE TRANSFORM NEEDS THE WHOLE trf FILE, SO NOTHING IS PIPED
+            final JobGraph graph = new JobGraph(pipeline ? "VID.STAB pipeline" : "VID.STAB three sessions", JobScheduler.getInstance(), null)
+                    .addFile("video", videoFile)
+                    .addFile("transforms", shakeResultsFile)
+                    .addFile("stabilized", stabilizedVideoFile);
 
-                    hideCreateProgressDialog();
+            if (pipeline) {
 
-                    MainActivity.addUIAction(new Runnable() {
+                // DETECTION READS THE GENERATED FRAMES IN THE CREATE SESSION, video.mp4 IS NOT DECODED FOR IT
+                final String[] createAndDetectArguments = Video.createShakingVideoArguments(imagePaths, videoFile.getAbsolutePath(), shakeResultsFile.getAbsolutePath());
+                graph.addStage("create+detect", JobPriority.NORMAL, new String[0], new String[]{"video", "transforms"}, createStage(createAndDetectArguments));
+            } else {
+                final String[] createArguments = Video.createShakingVideoArguments(imagePaths, videoFile.getAbsolutePath());
+                final String[] analyzeVideoArguments = Video.createVidStabDetectArguments(videoFile.getAbsolutePath(), shakeResultsFile.getAbsolutePath());
+                graph.addStage("create", JobPriority.NORMAL, new String[0], new String[]{"video"}, createStage(createArguments))
+                        .addStage("detect", JobPriority.HIGH, new String[]{"video"}, new String[]{"transforms"}, createStage(analyzeVideoArguments));
+            }
 
-                        @Override
-                        public void run() {
-                            if (ReturnCode.isSuccess(session.getReturnCode())) {
+            final String[] stabilizeVideoArguments = Video.createVidStabTransformArguments(videoFile.getAbsolutePath(), shakeResultsFile.getAbsolutePath(), stabilizedVideoFile.getAbsolutePath());
+            graph.addStage("transform", JobPriority.HIGH, new String[]{"video", "transforms"}, new String[]{"stabilized"}, createStage(stabilizeVideoArguments));
 
-                                Log.d(TAG, "Create completed successfully; stabilizing video.");
+            graph.start(new JobGraph.StageCallback() {
 
-                                final String analyzeVideoCommand = String.format("-y -i %s -vf vidstabdetect=shakiness=10:accuracy=15:result=%s -f null -", videoFile.getAbsolutePath(), shakeResultsFile.getAbsolutePath());
+                @Override
+                public void apply(final JobGraph graph, final String stage, final JobState stageState) {
+                    if (stageState == JobState.RUNNING && ("detect".equals(stage) || "transform".equals(stage))) {
+                        MainActivity.addUIAction(new Runnable() {
 
+                            @Override
+                            public void run() {
+                                hideCreateProgressDialog();
                                 showStabilizeProgressDialog();
+                            }
+                        });
+                    }
+                }
+            }, new JobGraph.CompleteCallback() {
 
-                                Log.d(TAG, String.format("FFmpeg process started with arguments: '%s'.", analyzeVideoCommand));
-
-                                FFmpegKit.executeAsync(analyzeVideoCommand, new FFmpegSessionCompleteCallback() {
-
-                                    @Override
-                                    public void apply(final FFmpegSession secondSession) {
-                                        Log.d(TAG, String.format("FFmpeg process exited with state %s and rc %s.%s", secondSession.getState(), secondSession.getReturnCode(), notNull(secondSession.getFailStackTrace(), "\n")));
-
-                                        if (ReturnCode.isSuccess(secondSession.getReturnCode())) {
-                                            final String stabilizeVideoCommand = String.format("-y -i %s -vf vidstabtransform=smoothing=30:input=%s -c:v mpeg4 %s", videoFile.getAbsolutePath(), shakeResultsFile.getAbsolutePath(), stabilizedVideoFile.getAbsolutePath());
-
-                                            Log.d(TAG, String.format("FFmpeg process started with arguments: '%s'.", stabilizeVideoCommand));
-
-                                            FFmpegKit.executeAsync(stabilizeVideoCommand, new FFmpegSessionCompleteCallback() {
-
-                                                @Override
-                                                public void apply(final FFmpegSession thirdSession) {
-                                                    Log.d(TAG, String.format("FFmpeg process exited with state %s and rc %s.%s", thirdSession.getState(), thirdSession.getReturnCode(), notNull(thirdSession.getFailStackTrace(), "\n")));
-
-                                                    hideStabilizeProgressDialog();
-
-                                                    MainActivity.addUIAction(new Runnable() {
+                @Override
+                public void apply(final JobGraph completedGraph) {
+                    shakeResultsFile.delete();
 
-                                                        @Override
-                                                        public void run() {
-                                                            if (ReturnCode.isSuccess(thirdSession.getReturnCode())) {
-                                                                Log.d(TAG, "Stabilize video completed successfully; playing videos.");
-                                                                playVideo();
-                                                                playStabilizedVideo();
-                                                            } else {
-                                                                Popup.show(requireContext(), "Stabilize video failed. Please check logs for the details.");
-                                                            }
-                                                        }
-                                                    });
-                                                }
-                                            });
+                    MainActivity.addUIAction(new Runnable() {
 
-                                        } else {
-                                            MainActivity.addUIAction(() -> {
-                                                hideStabilizeProgressDialog();
-                                                Popup.show(requireContext(), "Stabilize video failed. Please check logs for the details.");
-                                            });
-                                        }
-                                    }
-                                });
+                        @Override
+                        public void run() {
+                            hideCreateProgressDialog();
+                            hideStabilizeProgressDialog();
 
+                            if (completedGraph.getState() == JobState.COMPLETED) {
+                                Log.d(TAG, "Stabilize video completed successfully; playing videos.");
+                                playVideo();
+                                playStabilizedVideo();
                             } else {
-                                Popup.show(requireContext(), "Create video failed. Please check logs for the details.");
+                                Popup.show(requireContext(), String.format("Stabilize video failed in the %s stage. Please check logs for the details.", completedGraph.getFailedStage()));
                             }
                         }
                     });
@@ -207,6 +201,24 @@ public class VidStabTabFragment extends Fragment {
         }
     }
 
+    private static JobGraph.JobFactory createStage(final String[] arguments) {
+        return new JobGraph.JobFactory() {
+
+            @Override
+            public Job create(final JobGraph graph) {
+                Log.d(TAG, String.format("FFmpeg process started with arguments: '%s'.", FFmpegKitConfig.argumentsToString(arguments)));
+
+                return FFmpegJob.createWithArguments(arguments, new FFmpegSessionCompleteCallback() {
+
+                    @Override
+                    public void apply(final FFmpegSession session) {
+                        Log.d(TAG, String.format("FFmpeg process exited with state %s and rc %s.%s", session.getState(), session.getReturnCode(), notNull(session.getFailStackTrace(), "\n")));
+                    }
+                });
+            }
+        };
+    }
+
     protected void playVideo() {
         MediaController mediaController = new MediaController(requireContext());
         mediaController.setAnchorView(videoView);
@@ -22,86 +22,224 @@
 
 package com.example.kitapp.test;
 
+import com.example.kitapp.encode.CommandCache;
+import com.example.kitapp.encode.FilterGraph;
+import com.example.kitapp.encode.FilterGraph.Filter;
+import com.example.kitapp.encode.FilterGraph.Stream;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Locale;
+import java.util.Map;
 
 /**
- * <p>Generates FFmpeg scripts to create videos from provided images.
+ * <p>Generates FFmpeg arguments to create videos from provided images.
  *
  * @author Taner Sener
  */
 public class Video {
 
-    static String generateCreateVideoWithPipesScript(final String image1Pipe, final String image2Pipe, final String image3Pipe, final String videoFilePath) {
-        return
-                "-hide_banner -y -i \"" + image1Pipe + "\" " +
-                        "-i '" + image2Pipe + "' " +
-                        "-i " + image3Pipe + " " +
-                        "-filter_complex \"" +
-                        "[0:v]loop=loop=-1:size=1:start=0,setpts=PTS-STARTPTS,scale=w=\'if(gte(iw/ih,640/427),min(iw,640),-1)\':h=\'if(gte(iw/ih,640/427),-1,min(ih,427))\',scale=trunc(iw/2)*2:trunc(ih/2)*2,setsar=sar=1/1,split=2[stream1out1][stream1out2];" +
-                        "[1:v]loop=loop=-1:size=1:start=0,setpts=PTS-STARTPTS,scale=w=\'if(gte(iw/ih,640/427),min(iw,640),-1)\':h=\'if(gte(iw/ih,640/427),-1,min(ih,427))\',scale=trunc(iw/2)*2:trunc(ih/2)*2,setsar=sar=1/1,split=2[stream2out1][stream2out2];" +
-                        "[2:v]loop=loop=-1:size=1:start=0,setpts=PTS-STARTPTS,scale=w=\'if(gte(iw/ih,640/427),min(iw,640),-1)\':h=\'if(gte(iw/ih,640/427),-1,min(ih,427))\',scale=trunc(iw/2)*2:trunc(ih/2)*2,setsar=sar=1/1,split=2[stream3out1][stream3out2];" +
-                        "[stream1out1]pad=width=640:height=427:x=(640-iw)/2:y=(427-ih)/2:color=#00000000,trim=duration=3,select=lte(n\\,90)[stream1overlaid];" +
-                        "[stream1out2]pad=width=640:height=427:x=(640-iw)/2:y=(427-ih)/2:color=#00000000,trim=duration=1,select=lte(n\\,30)[stream1ending];" +
-                        "[stream2out1]pad=width=640:height=427:x=(640-iw)/2:y=(427-ih)/2:color=#00000000,trim=duration=2,select=lte(n\\,60)[stream2overlaid];" +
-                        "[stream2out2]pad=width=640:height=427:x=(640-iw)/2:y=(427-ih)/2:color=#00000000,trim=duration=1,select=lte(n\\,30),split=2[stream2starting][stream2ending];" +
-                        "[stream3out1]pad=width=640:height=427:x=(640-iw)/2:y=(427-ih)/2:color=#00000000,trim=duration=2,select=lte(n\\,60)[stream3overlaid];" +
-                        "[stream3out2]pad=width=640:height=427:x=(640-iw)/2:y=(427-ih)/2:color=#00000000,trim=duration=1,select=lte(n\\,30)[stream3starting];" +
-                        "[stream2starting][stream1ending]blend=all_expr=\'if(gte(X,(W/2)*T/1)*lte(X,W-(W/2)*T/1),B,A)\':shortest=1[stream2blended];" +
-                        "[stream3starting][stream2ending]blend=all_expr=\'if(gte(X,(W/2)*T/1)*lte(X,W-(W/2)*T/1),B,A)\':shortest=1[stream3blended];" +
-                        "[stream1overlaid][stream2blended][stream2overlaid][stream3blended][stream3overlaid]concat=n=5:v=1:a=0,scale=w=640:h=424,format=yuv420p[video]\"" +
-                        " -map [video] -fps_mode cfr -c:v mpeg4 -r 30 " + videoFilePath;
+    /**
+     * Length of the three image slideshows created by the tabs, in milliseconds. See
+     * {@link #getSlideshowDuration(int)}.
+     */
+    static final long SLIDESHOW_DURATION = 9000;
+
+    private static final Filter SETPTS = Filter.of("setpts", "PTS-STARTPTS");
+    private static final Filter FIT = Filter.of("scale", "w='if(gte(iw/ih,640/427),min(iw,640),-1)'", "h='if(gte(iw/ih,640/427),-1,min(ih,427))'");
+    private static final Filter EVEN = Filter.of("scale", "trunc(iw/2)*2", "trunc(ih/2)*2");
+    private static final Filter SETSAR = Filter.of("setsar", "sar=1/1");
+    private static final Filter LOOP = Filter.of("loop", "loop=-1", "size=1", "start=0");
+    private static final Filter PAD = Filter.of("pad", "width=640", "height=427", "x=(640-iw)/2", "y=(427-ih)/2", "color=#00000000");
+    private static final Filter TRIM_1 = Filter.of("trim", "duration=1");
+    private static final Filter TRIM_2 = Filter.of("trim", "duration=2");
+    private static final Filter TRIM_3 = Filter.of("trim", "duration=3");
+    private static final Filter SELECT_30 = Filter.of("select", "lte(n\\,30)");
+    private static final Filter SELECT_60 = Filter.of("select", "lte(n\\,60)");
+    private static final Filter SELECT_90 = Filter.of("select", "lte(n\\,90)");
+    private static final Filter BLEND = Filter.of("blend", "all_expr='if(gte(X,(W/2)*T/1)*lte(X,W-(W/2)*T/1),B,A)'", "shortest=1");
+    private static final Filter SHAKE = Filter.of("overlay", "x='2*mod(n,4)'", "y='2*mod(n,2)'");
+    private static final Filter OUTPUT_SCALE = Filter.of("scale", "w=640", "h=424");
+    private static final Filter FPS_30 = Filter.of("fps", "30");
+    private static final Filter NULLSINK = Filter.of("nullsink");
+
+    private static final Filter[] IMAGE_FILTERS = {SETPTS, FIT, EVEN, SETSAR};
+    private static final Filter[] LOOPED_IMAGE_FILTERS = {LOOP, SETPTS, FIT, EVEN, SETSAR};
+
+    private static final CommandCache COMMAND_CACHE = new CommandCache(CommandCache.DEFAULT_CAPACITY);
+
+    /**
+     * @return length of a slideshow of <code>imageCount</code> images in milliseconds; the
+     * first image is shown for 3 seconds, each next one blends in for 1 second and stays for 2
+     */
+    static long getSlideshowDuration(final int imageCount) {
+        return (imageCount < 1) ? 0 : 3000L * imageCount;
+    }
+
+    static String[] createVideoWithPipesArguments(final String[] imagePipes, final String videoFilePath) {
+        return COMMAND_CACHE.get(new CommandCache.Builder() {
+
+            @Override
+            public String[] build() {
+                final List<String> arguments = new ArrayList<>(Arrays.asList("-hide_banner", "-y"));
+                final int[] inputs = addInputs(arguments, imagePipes, false);
+
+                final FilterGraph graph = new FilterGraph();
+                final int output = addSlideshow(graph, inputs, LOOPED_IMAGE_FILTERS, "yuv420p");
+                arguments.addAll(Arrays.asList("-filter_complex", graph.build(), "-map", graph.getOutputLabel(output), "-fps_mode", "cfr", "-c:v", "mpeg4", "-r", "30", videoFilePath));
+                return arguments.toArray(new String[0]);
+            }
+        }, "pipes", imagePipes, videoFilePath);
     }
 
-    static String generateEncodeVideoScript(final String image1Path, final String image2Path, final String image3Path, final String videoFilePath, final String videoCodec, final String customOptions) {
-        return generateEncodeVideoScript(image1Path, image2Path, image3Path, videoFilePath, videoCodec, "yuv420p", customOptions);
+    static String[] createEncodeVideoArguments(final String[] imagePaths, final String videoFilePath, final String videoCodec, final String[] customOptions) {
+        return createEncodeVideoArguments(imagePaths, videoFilePath, videoCodec, "yuv420p", customOptions);
     }
 
-    static String generateEncodeVideoScript(final String image1Path, final String image2Path, final String image3Path, final String videoFilePath, final String videoCodec, final String pixelFormat, final String customOptions) {
-        return
-                "-hide_banner -y -loop 1 -i \"" + image1Path + "\" " +
-                        "-loop 1 -i '" + image2Path + "' " +
-                        "-loop 1 -i \"" + image3Path + "\" " +
-                        "-filter_complex \"" +
-                        "[0:v]setpts=PTS-STARTPTS,scale=w=\'if(gte(iw/ih,640/427),min(iw,640),-1)\':h=\'if(gte(iw/ih,640/427),-1,min(ih,427))\',scale=trunc(iw/2)*2:trunc(ih/2)*2,setsar=sar=1/1,split=2[stream1out1][stream1out2];" +
-                        "[1:v]setpts=PTS-STARTPTS,scale=w=\'if(gte(iw/ih,640/427),min(iw,640),-1)\':h=\'if(gte(iw/ih,640/427),-1,min(ih,427))\',scale=trunc(iw/2)*2:trunc(ih/2)*2,setsar=sar=1/1,split=2[stream2out1][stream2out2];" +
-                        "[2:v]setpts=PTS-STARTPTS,scale=w=\'if(gte(iw/ih,640/427),min(iw,640),-1)\':h=\'if(gte(iw/ih,640/427),-1,min(ih,427))\',scale=trunc(iw/2)*2:trunc(ih/2)*2,setsar=sar=1/1,split=2[stream3out1][stream3out2];" +
-                        "[stream1out1]pad=width=640:height=427:x=(640-iw)/2:y=(427-ih)/2:color=#00000000,trim=duration=3,select=lte(n\\,90)[stream1overlaid];" +
-                        "[stream1out2]pad=width=640:height=427:x=(640-iw)/2:y=(427-ih)/2:color=#00000000,trim=duration=1,select=lte(n\\,30)[stream1ending];" +
-                        "[stream2out1]pad=width=640:height=427:x=(640-iw)/2:y=(427-ih)/2:color=#00000000,trim=duration=2,select=lte(n\\,60)[stream2overlaid];" +
-                        "[stream2out2]pad=width=640:height=427:x=(640-iw)/2:y=(427-ih)/2:color=#00000000,trim=duration=1,select=lte(n\\,30),split=2[stream2starting][stream2ending];" +
-                        "[stream3out1]pad=width=640:height=427:x=(640-iw)/2:y=(427-ih)/2:color=#00000000,trim=duration=2,select=lte(n\\,60)[stream3overlaid];" +
-                        "[stream3out2]pad=width=640:height=427:x=(640-iw)/2:y=(427-ih)/2:color=#00000000,trim=duration=1,select=lte(n\\,30)[stream3starting];" +
-                        "[stream2starting][stream1ending]blend=all_expr=\'if(gte(X,(W/2)*T/1)*lte(X,W-(W/2)*T/1),B,A)\':shortest=1[stream2blended];" +
-                        "[stream3starting][stream2ending]blend=all_expr=\'if(gte(X,(W/2)*T/1)*lte(X,W-(W/2)*T/1),B,A)\':shortest=1[stream3blended];" +
-                        "[stream1overlaid][stream2blended][stream2overlaid][stream3blended][stream3overlaid]concat=n=5:v=1:a=0,scale=w=640:h=424,format=" + pixelFormat + "[video]\"" +
-                        " -map [video] -fps_mode cfr " + customOptions + "-c:v " + videoCodec.toLowerCase(Locale.ENGLISH) + " -r 30 " + videoFilePath;
+    /**
+     * @param customOptions encoder options placed before <code>-c:v</code>
+     */
+    static String[] createEncodeVideoArguments(final String[] imagePaths, final String videoFilePath, final String videoCodec, final String pixelFormat, final String[] customOptions) {
+        return COMMAND_CACHE.get(new CommandCache.Builder() {
+
+            @Override
+            public String[] build() {
+                final List<String> arguments = new ArrayList<>(Arrays.asList("-hide_banner", "-y"));
+                final int[] inputs = addInputs(arguments, imagePaths, true);
+
+                final FilterGraph graph = new FilterGraph();
+                final int output = addSlideshow(graph, inputs, IMAGE_FILTERS, pixelFormat);
+                arguments.addAll(Arrays.asList("-filter_complex", graph.build(), "-map", graph.getOutputLabel(output), "-fps_mode", "cfr"));
+                arguments.addAll(Arrays.asList(customOptions));
+                arguments.addAll(Arrays.asList("-c:v", videoCodec.toLowerCase(Locale.ENGLISH), "-r", "30", videoFilePath));
+                return arguments.toArray(new String[0]);
+            }
+        }, "encode", imagePaths, videoFilePath, videoCodec, pixelFormat, customOptions);
+    }
+
+    static String[] createShakingVideoArguments(final String[] imagePaths, final String videoFilePath) {
+        return createShakingVideoArguments(imagePaths, videoFilePath, null);
+    }
+
+    /**
+     * @param transformsFilePath if not null, the generated frames are also analysed by
+     *                           vidstabdetect in the same session and its transforms are written
+     *                           to this file
+     */
+    static String[] createShakingVideoArguments(final String[] imagePaths, final String videoFilePath, final String transformsFilePath) {
+        return COMMAND_CACHE.get(new CommandCache.Builder() {
+
+            @Override
+            public String[] build() {
+                final List<String> arguments = new ArrayList<>(Arrays.asList("-hide_banner", "-y"));
+                final int[] inputs = addInputs(arguments, imagePaths, true);
+                final int background = inputs.length == 0 ? 0 : max(inputs) + 1;
+                arguments.addAll(Arrays.asList("-f", "lavfi", "-i", "color=black:s=640x427"));
+
+                final FilterGraph graph = new FilterGraph();
+                final List<Stream> segments = new ArrayList<>();
+                for (int input : inputs) {
+                    final Stream image = graph.apply(graph.input(input), IMAGE_FILTERS);
+                    final Stream padded = graph.apply(image, PAD, TRIM_3);
+                    segments.add(graph.apply(Arrays.asList(graph.input(background), padded), SHAKE, TRIM_3));
+                }
+                Stream video = graph.apply(segments, concat(segments.size()), OUTPUT_SCALE, Filter.of("format", "yuv420p"));
+                if (transformsFilePath != null) {
+
+                    // DETECTION MUST SEE THE SAME 30 FPS FRAMES THE TRANSFORM PASS DECODES LATER
+                    video = graph.apply(video, FPS_30);
+                    graph.sink(video, Filter.of(generateVidStabDetectFilter(transformsFilePath)), NULLSINK);
+                }
+                final int output = graph.output(video);
+
+                arguments.addAll(Arrays.asList("-filter_complex", graph.build(), "-map", graph.getOutputLabel(output), "-fps_mode", "cfr", "-c:v", "mpeg4", "-r", "30", videoFilePath));
+                return arguments.toArray(new String[0]);
+            }
+        }, "shaking", imagePaths, videoFilePath, transformsFilePath);
+    }
+
+    static String generateVidStabDetectFilter(final String transformsFilePath) {
+        return "vidstabdetect=shakiness=10:accuracy=15:result=" + transformsFilePath;
+    }
+
+    static String[] createVidStabDetectArguments(final String videoFilePath, final String transformsFilePath) {
+        return new String[]{"-y", "-i", videoFilePath, "-vf", generateVidStabDetectFilter(transformsFilePath), "-f", "null", "-"};
+    }
+
+    static String[] createVidStabTransformArguments(final String videoFilePath, final String transformsFilePath, final String stabilizedVideoFilePath) {
+        return new String[]{"-y", "-i", videoFilePath, "-vf", "vidstabtransform=smoothing=30:input=" + transformsFilePath, "-c:v", "mpeg4", stabilizedVideoFilePath};
+    }
+
+    static String[] createZscaleVideoArguments(final String inputVideoFilePath, final String outputVideoFilePath) {
+        return new String[]{"-y", "-i", inputVideoFilePath,
+                "-vf", "zscale=tin=smpte2084:min=bt2020nc:pin=bt2020:rin=tv:t=smpte2084:m=bt2020nc:p=bt2020:r=tv,zscale=t=linear,tonemap=tonemap=clip,zscale=t=bt709,format=yuv420p",
+                outputVideoFilePath};
+    }
+
+    /**
+     * <p>Adds one input per distinct path.
+     *
+     * @return input index of each path
+     */
+    private static int[] addInputs(final List<String> arguments, final String[] paths, final boolean loop) {
+        final Map<String, Integer> inputIndexes = new LinkedHashMap<>();
+        final int[] inputs = new int[paths.length];
+        for (int i = 0; i < paths.length; i++) {
+            Integer index = inputIndexes.get(paths[i]);
+            if (index == null) {
+                index = inputIndexes.size();
+                inputIndexes.put(paths[i], index);
+                if (loop) {
+                    arguments.addAll(Arrays.asList("-loop", "1"));
+                }
+                arguments.addAll(Arrays.asList("-i", paths[i]));
+            }
+            inputs[i] = index;
+        }
+        return inputs;
+    }
+
+    /**
+     * <p>Adds a slideshow of the given inputs. Images shown more than once are scaled once and
+     * split, and the transition into an image shares its chain with the transition out of it.
+     *
+     * @return output index of the slideshow
+     */
+    private static int addSlideshow(final FilterGraph graph, final int[] inputs, final Filter[] imageFilters, final String pixelFormat) {
+        if (inputs.length == 0) {
+            throw new IllegalArgumentException("At least one image is required.");
+        }
+
+        final List<Stream> segments = new ArrayList<>(2 * inputs.length - 1);
+        Stream previousEnding = null;
+        for (int i = 0; i < inputs.length; i++) {
+            final Stream image = graph.apply(graph.input(inputs[i]), imageFilters);
+            if (i > 0) {
+                final Stream starting = graph.apply(image, PAD, TRIM_1, SELECT_30);
+                segments.add(graph.apply(Arrays.asList(starting, previousEnding), BLEND));
+            }
+            segments.add((i == 0) ? graph.apply(image, PAD, TRIM_3, SELECT_90) : graph.apply(image, PAD, TRIM_2, SELECT_60));
+            if (i < inputs.length - 1) {
+                previousEnding = graph.apply(image, PAD, TRIM_1, SELECT_30);
+            }
+        }
+
+        final Stream video = graph.apply(segments, concat(segments.size()), OUTPUT_SCALE, Filter.of("format", pixelFormat));
+        return graph.output(video);
     }
 
-    static String generateShakingVideoScript(final String image1Path, final String image2Path, final String image3Path, final String videoFilePath) {
-        return
-                "-hide_banner -y -loop 1 -i \"" + image1Path + "\" " +
-                        "-loop 1 -i '" + image2Path + "' " +
-                        "-loop 1 -i " + image3Path + " " +
-                        "-f lavfi -i color=black:s=640x427 " +
-                        "-filter_complex \"" +
-                        "[0:v]setpts=PTS-STARTPTS,scale=w=\'if(gte(iw/ih,640/427),min(iw,640),-1)\':h=\'if(gte(iw/ih,640/427),-1,min(ih,427))\',scale=trunc(iw/2)*2:trunc(ih/2)*2,setsar=sar=1/1[stream1out];" +
-                        "[1:v]setpts=PTS-STARTPTS,scale=w=\'if(gte(iw/ih,640/427),min(iw,640),-1)\':h=\'if(gte(iw/ih,640/427),-1,min(ih,427))\',scale=trunc(iw/2)*2:trunc(ih/2)*2,setsar=sar=1/1[stream2out];" +
-                        "[2:v]setpts=PTS-STARTPTS,scale=w=\'if(gte(iw/ih,640/427),min(iw,640),-1)\':h=\'if(gte(iw/ih,640/427),-1,min(ih,427))\',scale=trunc(iw/2)*2:trunc(ih/2)*2,setsar=sar=1/1[stream3out];" +
-                        "[stream1out]pad=width=640:height=427:x=(640-iw)/2:y=(427-ih)/2:color=#00000000,trim=duration=3[stream1overlaid];" +
-                        "[stream2out]pad=width=640:height=427:x=(640-iw)/2:y=(427-ih)/2:color=#00000000,trim=duration=3[stream2overlaid];" +
-                        "[stream3out]pad=width=640:height=427:x=(640-iw)/2:y=(427-ih)/2:color=#00000000,trim=duration=3[stream3overlaid];" +
-                        "[3:v][stream1overlaid]overlay=x=\'2*mod(n,4)\':y=\'2*mod(n,2)\',trim=duration=3[stream1shaking];" +
-                        "[3:v][stream2overlaid]overlay=x=\'2*mod(n,4)\':y=\'2*mod(n,2)\',trim=duration=3[stream2shaking];" +
-                        "[3:v][stream3overlaid]overlay=x=\'2*mod(n,4)\':y=\'2*mod(n,2)\',trim=duration=3[stream3shaking];" +
-                        "[stream1shaking][stream2shaking][stream3shaking]concat=n=3:v=1:a=0,scale=w=640:h=424,format=yuv420p[video]\"" +
-                        " -map [video] -fps_mode cfr -c:v mpeg4 -r 30 " + videoFilePath;
+    private static Filter concat(final int segmentCount) {
+        return Filter.of("concat", "n=" + segmentCount, "v=1", "a=0");
     }
 
-    static String generateZscaleVideoScript(final String inputVideoFilePath, final String outputVideoFilePath) {
-        return "-y -i " +
-                inputVideoFilePath +
-                " -vf zscale=tin=smpte2084:min=bt2020nc:pin=bt2020:rin=tv:t=smpte2084:m=bt2020nc:p=bt2020:r=tv,zscale=t=linear,tonemap=tonemap=clip,zscale=t=bt709,format=yuv420p " +
-                outputVideoFilePath;
+    private static int max(final int[] values) {
+        int max = Integer.MIN_VALUE;
+        for (int value : values) {
+            max = Math.max(max, value);
+        }
+        return max;
     }
 
 }
@@ -16,6 +16,7 @@ import android.util.Log;
 import android.view.View;
 import android.widget.AdapterView;
 import android.widget.ArrayAdapter;
+import android.widget.CheckBox;
 import android.widget.MediaController;
 import android.widget.Spinner;
 import android.widget.TextView;
@@ -26,29 +27,107 @@ import androidx.annotation.Nullable;
 import androidx.appcompat.app.AlertDialog;
 import androidx.fragment.app.Fragment;
 
-import com.arthenica.ffmpegkit.FFmpegKit;
 import com.arthenica.ffmpegkit.FFmpegKitConfig;
 import com.arthenica.ffmpegkit.FFmpegSession;
 import com.arthenica.ffmpegkit.FFmpegSessionCompleteCallback;
+import com.arthenica.ffmpegkit.FFprobeKit;
 import com.arthenica.ffmpegkit.LogCallback;
+import com.arthenica.ffmpegkit.MediaInformation;
+import com.arthenica.ffmpegkit.MediaInformationSession;
+import com.arthenica.ffmpegkit.MediaInformationSessionCompleteCallback;
 import com.arthenica.ffmpegkit.ReturnCode;
 import com.arthenica.ffmpegkit.Statistics;
 import com.arthenica.ffmpegkit.StatisticsCallback;
 import com.example.kitapp.R;
+import com.example.kitapp.encode.EncodeJournal;
+import com.example.kitapp.encode.EncoderResolver;
+import com.example.kitapp.encode.FFmpegCalibrator;
+import com.example.kitapp.encode.MultiOutputPlanner;
+import com.example.kitapp.encode.ParallelismProfile;
+import com.example.kitapp.encode.PresetTuner;
+import com.example.kitapp.encode.SegmentedEncoder;
+import com.example.kitapp.probe.ContainerHeaderParser;
+import com.example.kitapp.probe.MediaSummary;
+import com.example.kitapp.scheduler.ConcurrencyGovernor;
+import com.example.kitapp.scheduler.FFmpegJob;
+import com.example.kitapp.scheduler.JobCompleteCallback;
+import com.example.kitapp.scheduler.JobHandle;
+import com.example.kitapp.scheduler.JobPriority;
+import com.example.kitapp.scheduler.JobScheduler;
 import com.example.kitapp.util.DialogUtil;
+import com.example.kitapp.util.PipeFeeder;
+import com.example.kitapp.util.ProgressTracker;
 
 import com.arthenica.smartexception.java.Exceptions;
 
 import java.io.File;
-import java.math.BigDecimal;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 
 public class VideoTabFragment extends Fragment implements AdapterView.OnItemSelectedListener {
+
+    // ONE OUTPUT OF A MULTI-OUTPUT ENCODE, A FORMAT KEEPS THE ENCODERS IT CAN FALL BACK TO
+    private static class Rendition {
+        final String codec;
+        final int ladderIndex;
+        final String outputPath;
+        final int width;
+        final int height;
+        final List<EncoderResolver.Encoder> encoders;
+        int encoderIndex;
+
+        Rendition(final String codec, final int ladderIndex, final String outputPath, final int width, final int height, final List<EncoderResolver.Encoder> encoders) {
+            this.codec = codec;
+            this.ladderIndex = ladderIndex;
+            this.outputPath = outputPath;
+            this.width = width;
+            this.height = height;
+            this.encoders = encoders;
+        }
+
+        EncoderResolver.Encoder getEncoder() {
+            return (encoders != null) ? encoders.get(encoderIndex) : null;
+        }
+    }
+
     private VideoView videoView;
+    private CheckBox segmentedCheckBox;
+    private CheckBox multiOutputCheckBox;
+    private CheckBox autoTuneCheckBox;
+    private CheckBox resumableCheckBox;
+    private PresetTuner presetTuner;
+    private EncoderResolver encoderResolver;
+    private TextView encodeTimeText;
     private AlertDialog progressDialog;
     private String selectedCodec;
-    private Statistics statistics;
+    private final ProgressTracker progressTracker = new ProgressTracker();
+    private final Runnable updateProgressAction = new Runnable() {
+        @Override
+        public void run() {
+            updateProgressDialog();
+        }
+    };
+    private long lastSingleEncodeTime;
+    private long lastSegmentedEncodeTime;
+    private int lastSegmentCount;
     private static final int PICK_VIDEO_REQUEST = 1;
 
+    // RENDITIONS OFFERED IN MULTI-OUTPUT MODE, A HEIGHT OF 0 KEEPS THE SOURCE SIZE
+    private static final String[] LADDER_NAMES = {"Source", "720p", "480p", "360p"};
+    private static final int[] LADDER_HEIGHTS = {0, 720, 480, 360};
+    private static final int[] LADDER_MAX_RATES = {0, 2500, 1000, 600};
+
+    // OPTIONS OF CODECS THAT ARE NOT TUNED YET
+    private static final String[] DEFAULT_VIDEO_OPTIONS = {"-crf", "23", "-preset", "medium"};
+
+    // MILLISECONDS OF THE INPUT ENCODED BY EACH CALIBRATION
+    private static final long CALIBRATION_SAMPLE_DURATION = 5000;
+
+    // SECONDS OF THE INPUT ENCODED BETWEEN TWO CHECKPOINTS OF A RESUMABLE ENCODE
+    private static final double CHECKPOINT_SEGMENT_DURATION = 30;
+
     public VideoTabFragment() {
         super(R.layout.fragment_video_tab);
     }
@@ -76,8 +155,15 @@ public class VideoTabFragment extends Fragment implements AdapterView.OnItemSele
         }
 
         videoView = view.findViewById(R.id.videoPlayerFrame);
+        segmentedCheckBox = view.findViewById(R.id.segmentedCheckBox);
+        multiOutputCheckBox = view.findViewById(R.id.multiOutputCheckBox);
+        autoTuneCheckBox = view.findViewById(R.id.autoTuneCheckBox);
+        resumableCheckBox = view.findViewById(R.id.resumableCheckBox);
+        encodeTimeText = view.findViewById(R.id.encodeTimeText);
 
         progressDialog = DialogUtil.createProgressDialog(requireContext(), "Encoding video");
+        presetTuner = PresetTuner.create(requireContext());
+        encoderResolver = EncoderResolver.create(requireContext());
 
         selectedCodec = getResources().getStringArray(R.array.video_codec)[0];
     }
@@ -106,6 +192,14 @@ public class VideoTabFragment extends Fragment implements AdapterView.OnItemSele
         // Get the input video file path from the user's local storage
         //String inputVideoPath = "path_to_user_input_video"; // Replace with the actual path
 
+        // Calibrate the selected codec on this input first if auto-tune is enabled and it was never tuned
+        final String codecName = getSelectedVideoCodec();
+        if (autoTuneCheckBox != null && autoTuneCheckBox.isChecked() && PresetTuner.isTunable(codecName)
+                && presetTuner.getTunedOptions(codecName, PresetTuner.Budget.DEFAULT) == null) {
+            tuneAndEncodeVideo(inputVideoPath, codecName);
+            return;
+        }
+
         // Generate the output video file path based on the selected codec
         String outputVideoPath = getCompressedVideoFilePath();
 
@@ -113,29 +207,49 @@ public class VideoTabFragment extends Fragment implements AdapterView.OnItemSele
             // Stop video playback if it's currently playing
             videoView.stopPlayback();
 
+            // A resumable encode keeps the existing output until all of its segments are encoded
+            if (resumableCheckBox != null && resumableCheckBox.isChecked()) {
+                showProgressDialog(inputVideoPath);
+                encodeVideoSegmented(inputVideoPath, outputVideoPath, true);
+                return;
+            }
+
             // Delete the existing output video file if it exists
             File outputVideoFile = new File(outputVideoPath);
             if (outputVideoFile.exists()) {
                 outputVideoFile.delete();
             }
 
-            // Get the selected video codec and other options
-            final String videoCodec = getSelectedVideoCodec();
-            final String pixelFormat = getPixelFormat();
-            final String customOptions = getCustomOptions();
-
             // Show progress dialog
-            showProgressDialog();
+            showProgressDialog(inputVideoPath);
+
+            if (segmentedCheckBox != null && segmentedCheckBox.isChecked()) {
+                encodeVideoSegmented(inputVideoPath, outputVideoPath, false);
+                return;
+            }
+
+            // Generate the FFmpeg arguments to compress the video
+            final int[] videoSize = getVideoSize(inputVideoPath);
+
+            // A format instead of an encoder tries the hardware encoder first and falls back to the software one
+            if (EncoderResolver.isFormat(selectedCodec)) {
+                encodeVideoWithFallback(inputVideoPath, outputVideoPath, selectedCodec, videoSize, encoderResolver.resolve(selectedCodec, videoSize[0], videoSize[1], getCpuCount()), 0);
+                return;
+            }
+
+            final List<String> arguments = new ArrayList<>(Arrays.asList("-hide_banner", "-y", "-i", inputVideoPath));
+            arguments.addAll(Arrays.asList(getVideoEncodeOptions(selectedCodec, videoSize[0], videoSize[1])));
+            arguments.addAll(Arrays.asList(getAudioEncodeOptions()));
+            arguments.add(outputVideoPath);
 
-            // Generate the FFmpeg command to compress the video
-            final String ffmpegCommand = String.format("ffmpeg -i %s -c:v %s -crf 23 -preset medium -c:a aac -b:a 192k %s",
-                    inputVideoPath, videoCodec, outputVideoPath);
+            final long startTime = System.currentTimeMillis();
 
             // Execute FFmpeg asynchronously
-            final FFmpegSession session = FFmpegKit.executeAsync(ffmpegCommand, new FFmpegSessionCompleteCallback() {
+            final JobHandle jobHandle = JobScheduler.getInstance().submit(FFmpegJob.createWithArguments(arguments.toArray(new String[0]), new FFmpegSessionCompleteCallback() {
                 @Override
                 public void apply(final FFmpegSession session) {
                     final ReturnCode returnCode = session.getReturnCode();
+                    final long wallClockTime = System.currentTimeMillis() - startTime;
 
                     // Hide progress dialog
                     hideProgressDialog();
@@ -146,7 +260,9 @@ public class VideoTabFragment extends Fragment implements AdapterView.OnItemSele
                         public void run() {
                             if (ReturnCode.isSuccess(returnCode)) {
                                 // Compression completed successfully, play the compressed video
-                                Log.d(TAG, String.format("Compression completed successfully in %d milliseconds; playing video.", session.getDuration()));
+                                Log.d(TAG, String.format("Compression completed successfully in %d milliseconds; playing video.", wallClockTime));
+                                lastSingleEncodeTime = wallClockTime;
+                                updateEncodeTimeText();
                                 playVideo(outputVideoPath);
                             } else {
                                 // Compression failed, show an error message
@@ -164,18 +280,14 @@ public class VideoTabFragment extends Fragment implements AdapterView.OnItemSele
             }, new StatisticsCallback() {
                 @Override
                 public void apply(Statistics statistics) {
-                    VideoTabFragment.this.statistics = statistics;
                     // Update progress dialog during compression
-                    MainActivity.addUIAction(new Runnable() {
-                        @Override
-                        public void run() {
-                            updateProgressDialog();
-                        }
-                    });
+                    if (progressTracker.update(statistics.getTime())) {
+                        MainActivity.addUIAction(updateProgressAction);
+                    }
                 }
-            });
+            }));
 
-            Log.d(TAG, String.format("Async FFmpeg process started with sessionId %d.", session.getSessionId()));
+            Log.d(TAG, String.format("FFmpeg job submitted with jobId %d.", jobHandle.getId()));
 
         } catch (Exception e) {
             // Handle exceptions
@@ -184,6 +296,331 @@ public class VideoTabFragment extends Fragment implements AdapterView.OnItemSele
         }
     }
 
+    // Method to encode with the first of the given encoders, retrying with the next one when an encoder fails
+    private void encodeVideoWithFallback(final String inputVideoPath, final String outputVideoPath, final String format, final int[] videoSize,
+                                         final List<EncoderResolver.Encoder> encoders, final int index) {
+        final EncoderResolver.Encoder encoder = encoders.get(index);
+        final List<String> arguments = new ArrayList<>(Arrays.asList("-hide_banner", "-y", "-i", inputVideoPath));
+        arguments.addAll(Arrays.asList(encoder.getOptions()));
+        arguments.addAll(Arrays.asList(getAudioEncodeOptions()));
+        arguments.add(outputVideoPath);
+
+        final long startTime = System.currentTimeMillis();
+
+        final JobHandle jobHandle = JobScheduler.getInstance().submit(FFmpegJob.createWithArguments(arguments.toArray(new String[0]), new FFmpegSessionCompleteCallback() {
+            @Override
+            public void apply(final FFmpegSession session) {
+                final ReturnCode returnCode = session.getReturnCode();
+                final long wallClockTime = System.currentTimeMillis() - startTime;
+
+                // A JOB CANCELLED BEFORE IT STARTED HAS NO RETURN CODE, IT TELLS NOTHING ABOUT THE ENCODER
+                if (ReturnCode.isSuccess(returnCode)) {
+                    encoderResolver.reportSuccess(format, videoSize[0], videoSize[1], encoder);
+                } else if (returnCode != null && !ReturnCode.isCancel(returnCode)) {
+                    encoderResolver.reportFailure(format, videoSize[0], videoSize[1], encoder);
+                    if (index + 1 < encoders.size()) {
+                        Log.d(TAG, String.format("Compression with %s failed with rc %s, retrying with %s.", encoder.getCodecName(), returnCode, encoders.get(index + 1).getCodecName()));
+                        progressTracker.start(progressTracker.getTotalDuration());
+                        encodeVideoWithFallback(inputVideoPath, outputVideoPath, format, videoSize, encoders, index + 1);
+                        return;
+                    }
+                }
+
+                // Hide progress dialog
+                hideProgressDialog();
+
+                // Perform UI actions based on the compression result
+                MainActivity.addUIAction(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (ReturnCode.isSuccess(returnCode)) {
+                            Log.d(TAG, String.format("Compression with %s completed successfully in %d milliseconds; playing video.", encoder.getCodecName(), wallClockTime));
+                            lastSingleEncodeTime = wallClockTime;
+                            updateEncodeTimeText();
+                            playVideo(outputVideoPath);
+                        } else {
+                            Popup.show(requireContext(), "Compression failed. Please check logs for details.");
+                            Log.d(TAG, String.format("Compression with %s failed with state %s and rc %s.%s", encoder.getCodecName(), session.getState(), returnCode, notNull(session.getFailStackTrace(), "\n")));
+                        }
+                    }
+                });
+            }
+        }, new LogCallback() {
+            @Override
+            public void apply(com.arthenica.ffmpegkit.Log log) {
+                Log.d(MainActivity.TAG, log.getMessage());
+            }
+        }, new StatisticsCallback() {
+            @Override
+            public void apply(Statistics statistics) {
+                if (progressTracker.update(statistics.getTime())) {
+                    MainActivity.addUIAction(updateProgressAction);
+                }
+            }
+        }));
+
+        Log.d(TAG, String.format("FFmpeg job submitted with jobId %d, encoding %s with %s.", jobHandle.getId(), format, encoder.getCodecName()));
+    }
+
+    // Method to calibrate the presets of a codec on a sample of the input, then encode it with the chosen preset
+    private void tuneAndEncodeVideo(final String inputVideoPath, final String codecName) {
+        final AlertDialog calibrationDialog = DialogUtil.createProgressDialog(requireContext(), "Calibrating " + codecName);
+        calibrationDialog.show();
+
+        final FFmpegCalibrator calibrator = new FFmpegCalibrator(inputVideoPath, requireContext().getCacheDir(), CALIBRATION_SAMPLE_DURATION);
+        JobScheduler.getInstance().submit(presetTuner.createTuningJob(codecName, PresetTuner.Budget.DEFAULT, calibrator, new PresetTuner.TuningCallback() {
+            @Override
+            public void apply(final String codecName, final PresetTuner.Result chosen, final List<PresetTuner.Result> results) {
+                Log.d(TAG, String.format("Calibrated %d presets of %s, chose %s.", results.size(), codecName, chosen));
+            }
+        }), JobPriority.HIGH, new JobCompleteCallback() {
+            @Override
+            public void apply(final JobHandle handle) {
+                MainActivity.addUIAction(new Runnable() {
+                    @Override
+                    public void run() {
+                        calibrationDialog.dismiss();
+                        if (handle.getFailure() != null) {
+                            Log.d(TAG, String.format("Calibrating %s failed.%s", codecName, Exceptions.getStackTraceString(handle.getFailure())));
+                        }
+
+                        // ENCODES WITH THE DEFAULT OPTIONS IF NO PRESET WAS CHOSEN
+                        if (presetTuner.getTunedOptions(codecName, PresetTuner.Budget.DEFAULT) == null) {
+                            autoTuneCheckBox.setChecked(false);
+                        }
+                        encodeVideo(inputVideoPath);
+                    }
+                });
+            }
+        });
+    }
+
+    // Method to ask which codecs and renditions a multi-output encode should write
+    private void chooseMultiOutputs(final String inputVideoPath) {
+        DialogUtil.createMultiChoiceDialog(requireContext(), "Video codecs", getResources().getStringArray(R.array.video_codec), new DialogUtil.MultiChoiceCallback() {
+            @Override
+            public void apply(final List<String> selectedCodecs) {
+                if (selectedCodecs.isEmpty()) {
+                    Popup.show(requireContext(), "Select at least one codec.");
+                    return;
+                }
+                DialogUtil.createMultiChoiceDialog(requireContext(), "Renditions", LADDER_NAMES, new DialogUtil.MultiChoiceCallback() {
+                    @Override
+                    public void apply(final List<String> selectedRenditions) {
+                        encodeVideoMultiOutput(inputVideoPath, selectedCodecs, selectedRenditions.isEmpty() ? Arrays.asList(LADDER_NAMES[0]) : selectedRenditions);
+                    }
+                }).show();
+            }
+        }).show();
+    }
+
+    // Method to encode every codec and rendition pair with one FFmpeg session, decoding the input once
+    private void encodeVideoMultiOutput(final String inputVideoPath, final List<String> codecs, final List<String> renditions) {
+        final int[] sourceSize = getVideoSize(inputVideoPath);
+        final List<Rendition> outputRenditions = new ArrayList<>();
+        for (String codec : codecs) {
+            for (String rendition : renditions) {
+                final int ladderIndex = Arrays.asList(LADDER_NAMES).indexOf(rendition);
+                final String outputVideoPath = getCompressedVideoFilePath(codec, LADDER_HEIGHTS[ladderIndex]);
+                new File(outputVideoPath).delete();
+
+                final int height = (LADDER_HEIGHTS[ladderIndex] > 0) ? LADDER_HEIGHTS[ladderIndex] : sourceSize[1];
+                final int width = (LADDER_HEIGHTS[ladderIndex] > 0 && sourceSize[1] > 0) ? sourceSize[0] * height / sourceSize[1] : sourceSize[0];
+                outputRenditions.add(new Rendition(codec, ladderIndex, outputVideoPath, width, height,
+                        EncoderResolver.isFormat(codec) ? encoderResolver.resolve(codec, width, height, getCpuCount()) : null));
+            }
+        }
+
+        videoView.stopPlayback();
+        showProgressDialog(inputVideoPath);
+        encodeRenditions(inputVideoPath, outputRenditions);
+    }
+
+    // Method to encode renditions with their current encoders, when the session fails formats retry with their next encoder
+    private void encodeRenditions(final String inputVideoPath, final List<Rendition> renditions) {
+        final List<MultiOutputPlanner.Output> outputs = new ArrayList<>();
+        for (Rendition rendition : renditions) {
+            final EncoderResolver.Encoder encoder = rendition.getEncoder();
+            final List<String> videoOptions = new ArrayList<>(Arrays.asList((encoder != null) ? encoder.getOptions() : getVideoEncodeOptions(rendition.codec, rendition.width, rendition.height)));
+            if (LADDER_MAX_RATES[rendition.ladderIndex] > 0) {
+
+                // CAPS THE QUALITY TARGETED BITRATE OF EACH RUNG
+                videoOptions.addAll(Arrays.asList("-maxrate", LADDER_MAX_RATES[rendition.ladderIndex] + "k", "-bufsize", (2 * LADDER_MAX_RATES[rendition.ladderIndex]) + "k"));
+            }
+            outputs.add(new MultiOutputPlanner.Output(rendition.outputPath, LADDER_HEIGHTS[rendition.ladderIndex], videoOptions.toArray(new String[0]), getAudioEncodeOptions(rendition.codec)));
+        }
+
+        final String[] arguments = MultiOutputPlanner.createArguments(inputVideoPath, outputs);
+        Log.d(TAG, String.format("Encoding %d outputs with arguments: '%s'.", outputs.size(), FFmpegKitConfig.argumentsToString(arguments)));
+
+        final long startTime = System.currentTimeMillis();
+
+        final JobHandle jobHandle = JobScheduler.getInstance().submit(FFmpegJob.createWithArguments(arguments, new FFmpegSessionCompleteCallback() {
+            @Override
+            public void apply(final FFmpegSession session) {
+                final ReturnCode returnCode = session.getReturnCode();
+                final long wallClockTime = System.currentTimeMillis() - startTime;
+
+                if (ReturnCode.isSuccess(returnCode)) {
+
+                    // A RERUN THAT SUCCEEDED WITH THE SOFTWARE ENCODER RECORDS IT FOR THE FORMATS THAT MOVED TO IT
+                    for (Rendition rendition : renditions) {
+                        if (rendition.encoders != null) {
+                            encoderResolver.reportSuccess(rendition.codec, rendition.width, rendition.height, rendition.getEncoder());
+                        }
+                    }
+                } else if (returnCode != null && !ReturnCode.isCancel(returnCode)) {
+
+                    // THE SESSION DOES NOT TELL WHICH OUTPUT FAILED, SO NOTHING IS RECORDED. EVERY FORMAT THAT HAS
+                    // ONE MOVES TO ITS NEXT ENCODER, A FAILURE THAT IS NOT THE HARDWARE ENCODER'S FAILS AGAIN
+                    boolean retrying = false;
+                    for (Rendition rendition : renditions) {
+                        if (rendition.encoders != null && rendition.encoderIndex + 1 < rendition.encoders.size()) {
+                            rendition.encoderIndex++;
+                            retrying = true;
+                        }
+                    }
+                    if (retrying) {
+                        Log.d(TAG, String.format("Multi-output compression failed with rc %s, retrying with the next encoders.", returnCode));
+                        progressTracker.start(progressTracker.getTotalDuration());
+                        encodeRenditions(inputVideoPath, renditions);
+                        return;
+                    }
+                }
+
+                hideProgressDialog();
+
+                MainActivity.addUIAction(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (ReturnCode.isSuccess(returnCode)) {
+                            Log.d(TAG, String.format("Multi-output compression of %d outputs completed successfully in %d milliseconds; playing first output.", outputs.size(), wallClockTime));
+                            Popup.show(requireContext(), String.format("Encoded %d outputs in %d ms.", outputs.size(), wallClockTime));
+                            playVideo(outputs.get(0).getPath());
+                        } else {
+                            Popup.show(requireContext(), "Compression failed. Please check logs for details.");
+                            Log.d(TAG, String.format("Multi-output compression failed with state %s and rc %s.%s", session.getState(), returnCode, notNull(session.getFailStackTrace(), "\n")));
+                        }
+                    }
+                });
+            }
+        }, new LogCallback() {
+            @Override
+            public void apply(com.arthenica.ffmpegkit.Log log) {
+                Log.d(MainActivity.TAG, log.getMessage());
+            }
+        }, new StatisticsCallback() {
+            @Override
+            public void apply(Statistics statistics) {
+                if (progressTracker.update(statistics.getTime())) {
+                    MainActivity.addUIAction(updateProgressAction);
+                }
+            }
+        }));
+
+        Log.d(TAG, String.format("FFmpeg job submitted with jobId %d.", jobHandle.getId()));
+    }
+
+    // Method to encode the video as parallel segments joined by the concat demuxer, resumable encodes record finished segments in a journal
+    private void encodeVideoSegmented(final String inputVideoPath, final String outputVideoPath, final boolean resumable) {
+        final int[] videoSize = getVideoSize(inputVideoPath);
+
+        // SEGMENTS RUN UP TO THE CONCURRENCY LIMIT AT ONCE AND SHARE THE CORES
+        final int segmentCount = JobScheduler.getInstance().getConcurrencyLimit();
+        final List<EncoderResolver.Encoder> encoders = EncoderResolver.isFormat(selectedCodec) ? encoderResolver.resolve(selectedCodec, videoSize[0], videoSize[1], getCpuCount(segmentCount)) : null;
+        encodeVideoSegmented(inputVideoPath, outputVideoPath, resumable, videoSize, encoders, 0);
+    }
+
+    // Method to encode the segments with the given encoder of a format, retrying with the next one when it fails
+    private void encodeVideoSegmented(final String inputVideoPath, final String outputVideoPath, final boolean resumable, final int[] videoSize,
+                                      final List<EncoderResolver.Encoder> encoders, final int index) {
+        final File segmentDirectory = resumable ? getCheckpointDirectory(outputVideoPath) : new File(requireContext().getCacheDir(), "segments");
+        segmentDirectory.mkdirs();
+
+        final EncoderResolver.Encoder videoEncoder = (encoders != null) ? encoders.get(index) : null;
+        final String[] videoOptions = (videoEncoder != null) ? videoEncoder.getOptions() : getVideoEncodeOptions(selectedCodec, videoSize[0], videoSize[1], JobScheduler.getInstance().getConcurrencyLimit());
+        final SegmentedEncoder encoder = new SegmentedEncoder(JobScheduler.getInstance(), segmentDirectory, inputVideoPath, outputVideoPath, videoOptions, getAudioEncodeOptions());
+        if (resumable) {
+            encoder.enableCheckpoints(CHECKPOINT_SEGMENT_DURATION);
+        }
+
+        encoder.start(new SegmentedEncoder.CompleteCallback() {
+            @Override
+            public void apply(final SegmentedEncoder encoder) {
+                if (videoEncoder != null && encoder.isSuccess()) {
+                    encoderResolver.reportSuccess(selectedCodec, videoSize[0], videoSize[1], videoEncoder);
+                } else if (videoEncoder != null && !encoder.isCancelled()) {
+                    encoderResolver.reportFailure(selectedCodec, videoSize[0], videoSize[1], videoEncoder);
+                    if (index + 1 < encoders.size()) {
+                        Log.d(TAG, String.format("Segmented compression with %s failed, retrying with %s. %s", videoEncoder.getCodecName(), encoders.get(index + 1).getCodecName(), encoder.getFailReason()));
+                        progressTracker.start(progressTracker.getTotalDuration());
+                        encodeVideoSegmented(inputVideoPath, outputVideoPath, resumable, videoSize, encoders, index + 1);
+                        return;
+                    }
+                }
+
+                hideProgressDialog();
+
+                MainActivity.addUIAction(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (encoder.isSuccess()) {
+                            Log.d(TAG, String.format("Segmented compression with %d segments, %d of them resumed, completed successfully in %d milliseconds; playing video.", encoder.getSegmentCount(), encoder.getResumedSegmentCount(), encoder.getWallClockTime()));
+                            lastSegmentedEncodeTime = encoder.getWallClockTime();
+                            lastSegmentCount = encoder.getSegmentCount();
+                            updateEncodeTimeText();
+                            playVideo(outputVideoPath);
+                        } else {
+                            Popup.show(requireContext(), resumable ? "Compression stopped. Encode the video again with Resumable checked to continue." : "Compression failed. Please check logs for details.");
+                            Log.d(TAG, String.format("Segmented compression failed. %s", encoder.getFailReason()));
+                        }
+                    }
+                });
+            }
+        }, new StatisticsCallback() {
+            @Override
+            public void apply(Statistics statistics) {
+                // SEGMENTS REPORT THEIR OWN TIMES, PROGRESS IS THE SUM OVER ALL SEGMENTS
+                if (encoder.getTotalDuration() > 0) {
+                    progressTracker.setTotalDuration((long) encoder.getTotalDuration());
+                }
+                if (progressTracker.update(encoder.getEncodedTime())) {
+                    MainActivity.addUIAction(updateProgressAction);
+                }
+            }
+        });
+    }
+
+    // Method to return the directory keeping the segments and journal of a resumable encode
+    private File getCheckpointDirectory(final String outputVideoPath) {
+        return new File(new File(requireContext().getFilesDir(), "checkpoints"), new File(outputVideoPath).getName());
+    }
+
+    // Method to return the inputs of resumable encodes that were interrupted
+    private static List<String> findInterruptedEncodes(final File checkpointDirectory) {
+        final List<String> inputPaths = new ArrayList<>();
+        final File[] directories = checkpointDirectory.listFiles();
+        if (directories != null) {
+            for (File directory : directories) {
+                final String inputPath = EncodeJournal.readInputPath(SegmentedEncoder.getJournalFile(directory));
+                if (inputPath != null) {
+                    inputPaths.add(inputPath);
+                }
+            }
+        }
+        return inputPaths;
+    }
+
+    private void updateEncodeTimeText() {
+        if (encodeTimeText == null) {
+            return;
+        }
+        encodeTimeText.setText(String.format("Single session: %s | Segmented (%d): %s",
+                (lastSingleEncodeTime > 0) ? lastSingleEncodeTime + " ms" : "-",
+                lastSegmentCount,
+                (lastSegmentedEncodeTime > 0) ? lastSegmentedEncodeTime + " ms" : "-"));
+    }
+
     // Method to play the compressed video
     private void playVideo(String videoPath) {
         MediaController mediaController = new MediaController(requireContext());
@@ -211,7 +648,11 @@ public class VideoTabFragment extends Fragment implements AdapterView.OnItemSele
 
     // Method to generate the output video file path based on the selected codec
     private String getCompressedVideoFilePath() {
-        String videoCodec = selectedCodec;
+        return getCompressedVideoFilePath(selectedCodec, -1);
+    }
+
+    // Method to generate the output path of a multi-output rendition, height is -1 for a single output
+    private String getCompressedVideoFilePath(final String videoCodec, final int height) {
 
         // Determine the appropriate file extension based on the selected codec
         final String extension;
@@ -230,30 +671,25 @@ public class VideoTabFragment extends Fragment implements AdapterView.OnItemSele
                 extension = "mov";
                 break;
             default:
-                // mpeg4, x264, h264_mediacodec, hevc_mediacodec, x265, xvid, kvazaar
+                // mpeg4, x264, h264, hevc, h264_mediacodec, hevc_mediacodec, x265, xvid, kvazaar
                 extension = "mp4";
                 break;
         }
 
         // Construct the output video file path
-        final String video = "compressed_video." + extension;
+        String video = "compressed_video";
+        if (height >= 0) {
+            video += "_" + MultiOutputPlanner.toFileNamePart(videoCodec) + ((height > 0) ? "_" + height + "p" : "");
+        }
+        video += "." + extension;
         return new File(requireContext().getFilesDir(), video).getAbsolutePath();
     }
-    public String getPixelFormat() {
-        String videoCodec = selectedCodec;
 
-        final String pixelFormat;
-        if ("x265".equals(videoCodec)) {
-            pixelFormat = "yuv420p10le";
-        } else {
-            pixelFormat = "yuv420p";
-        }
-
-        return pixelFormat;
+    public String getSelectedVideoCodec() {
+        return getVideoCodecName(selectedCodec);
     }
 
-    public String getSelectedVideoCodec() {
-        String videoCodec = selectedCodec;
+    public String getVideoCodecName(String videoCodec) {
 
         // VIDEO CODEC SPINNER HAS BASIC NAMES, FFMPEG NEEDS LONGER AND EXACT CODEC NAMES.
         // APPLYING NECESSARY TRANSFORMATION HERE
@@ -316,7 +752,7 @@ public class VideoTabFragment extends Fragment implements AdapterView.OnItemSele
                 break;
             default:
 
-                // mpeg4, x264, h264_mediacodec, hevc_mediacodec, x265, xvid, kvazaar
+                // mpeg4, x264, h264, hevc, h264_mediacodec, hevc_mediacodec, x265, xvid, kvazaar
                 extension = "mp4";
                 break;
         }
@@ -325,26 +761,95 @@ public class VideoTabFragment extends Fragment implements AdapterView.OnItemSele
         return new File(requireContext().getFilesDir(), video);
     }
 
-    public String getCustomOptions() {
-        String videoCodec = selectedCodec;
+    public String[] getVideoEncodeOptions() {
+        return getVideoEncodeOptions(selectedCodec);
+    }
+
+    public String[] getVideoEncodeOptions(String videoCodec) {
+        return getVideoEncodeOptions(videoCodec, 0, 0);
+    }
+
+    /**
+     * @param width  output width, 0 if not known
+     * @param height output height, 0 if not known
+     */
+    public String[] getVideoEncodeOptions(String videoCodec, int width, int height) {
+        return getVideoEncodeOptions(videoCodec, width, height, 1);
+    }
+
+    /**
+     * @param encodeCount encodes started together with these options, e.g. the segments of a video
+     */
+    private String[] getVideoEncodeOptions(String videoCodec, int width, int height, int encodeCount) {
+        final String codecName = getVideoCodecName(videoCodec);
+
+        // FIRST ENCODER TO TRY, ENCODES OF A FORMAT FALL BACK TO THE NEXT ONES THEMSELVES
+        if (EncoderResolver.isFormat(codecName)) {
+            return encoderResolver.resolve(codecName, width, height, getCpuCount(encodeCount)).get(0).getOptions();
+        }
+
+        final List<String> options = new ArrayList<>(Arrays.asList("-c:v", codecName));
+
+        // PRESETS CHOSEN BY CALIBRATION ON THIS DEVICE ALREADY SET THREADS AND TILES
+        final String[] tunedOptions = (presetTuner != null) ? presetTuner.getTunedOptions(codecName, PresetTuner.Budget.DEFAULT) : null;
+        if (tunedOptions != null) {
+            options.addAll(Arrays.asList(tunedOptions));
+        } else {
+            options.addAll(Arrays.asList(ParallelismProfile.create(codecName, getCpuCount(encodeCount), width, height).appendTo(DEFAULT_VIDEO_OPTIONS)));
+        }
+        return options.toArray(new String[0]);
+    }
+
+    /**
+     * @return cores an encode started now may use
+     */
+    private static int getCpuCount() {
+        return getCpuCount(1);
+    }
+
+    /**
+     * @param encodeCount encodes started together, sharing the cores
+     * @return cores each of them may use
+     */
+    private static int getCpuCount(final int encodeCount) {
+        final ConcurrencyGovernor governor = ConcurrencyGovernor.getDefault();
+        return (governor != null) ? governor.getThreadCount(encodeCount) : Math.max(1, Runtime.getRuntime().availableProcessors() / encodeCount);
+    }
 
+    /**
+     * @return width and height of the first video stream, zeros if the headers can not be read
+     */
+    private static int[] getVideoSize(final String videoPath) {
+        try {
+            final MediaSummary summary = ContainerHeaderParser.parse(new File(videoPath));
+            if (summary != null) {
+                for (MediaSummary.StreamSummary stream : summary.getStreams()) {
+                    if ("video".equals(stream.getType()) && stream.getWidth() > 0 && stream.getHeight() > 0) {
+                        return new int[]{(int) stream.getWidth(), (int) stream.getHeight()};
+                    }
+                }
+            }
+        } catch (final IOException e) {
+            Log.d(TAG, String.format("Reading the video size of %s failed.", videoPath), e);
+        }
+        return new int[]{0, 0};
+    }
+
+    public String[] getAudioEncodeOptions() {
+        return getAudioEncodeOptions(selectedCodec);
+    }
+
+    public String[] getAudioEncodeOptions(String videoCodec) {
+
+        // WEBM AND OGG CONTAINERS DO NOT ACCEPT AAC
         switch (videoCodec) {
-            case "x265":
-                return "-crf 28 -preset fast ";
             case "vp8":
-                return "-b:v 1M -crf 10 ";
             case "vp9":
-                return "-b:v 2M ";
-            case "aom":
-                return "-crf 30 -strict experimental ";
+                return new String[]{"-c:a", "libopus", "-b:a", "128k"};
             case "theora":
-                return "-qscale:v 7 ";
-            case "hap":
-                return "-format hap_q ";
+                return new String[]{"-c:a", "libvorbis", "-b:a", "128k"};
             default:
-
-                // kvazaar, mpeg4, x264, h264_mediacodec, hevc_mediacodec, xvid
-                return "";
+                return new String[]{"-c:a", "aac", "-b:a", "192k"};
         }
     }
 
@@ -352,7 +857,27 @@ public class VideoTabFragment extends Fragment implements AdapterView.OnItemSele
         Log.i(MainActivity.TAG, "Video Tab Activated");
         FFmpegKitConfig.enableLogCallback(null);
         FFmpegKitConfig.enableStatisticsCallback(null);
-        Popup.show(requireContext(), getString(R.string.video_test_tooltip_text));
+
+        // JOURNALS ARE READ FROM STORAGE, SO THEY ARE SEARCHED OUTSIDE THE MAIN THREAD
+        final File checkpointDirectory = new File(requireContext().getFilesDir(), "checkpoints");
+        PipeFeeder.getDefaultExecutor().execute(new Runnable() {
+
+            @Override
+            public void run() {
+                final List<String> interruptedEncodes = findInterruptedEncodes(checkpointDirectory);
+                MainActivity.addUIAction(new Runnable() {
+
+                    @Override
+                    public void run() {
+                        if (interruptedEncodes.isEmpty()) {
+                            Popup.show(requireContext(), getString(R.string.video_test_tooltip_text));
+                        } else {
+                            Popup.show(requireContext(), String.format("Encode of %s was interrupted. Encode it again with Resumable checked to continue.", new File(interruptedEncodes.get(0)).getName()));
+                        }
+                    }
+                });
+            }
+        });
     }
 
     public void onActivityResult(int requestCode, int resultCode, @Nullable Intent data) {
@@ -363,8 +888,12 @@ public class VideoTabFragment extends Fragment implements AdapterView.OnItemSele
             // e.g., display the video path or start video compression
             String selectedVideoPath = getRealPathFromURI(selectedVideoUri);
             if (selectedVideoPath != null) {
-                // Continue with compression and playback
-                encodeVideo(selectedVideoPath);
+                // Continue with compression and playback, multi-output mode takes precedence over segmented mode
+                if (multiOutputCheckBox != null && multiOutputCheckBox.isChecked()) {
+                    chooseMultiOutputs(selectedVideoPath);
+                } else {
+                    encodeVideo(selectedVideoPath);
+                }
             }
         }
     }
@@ -382,27 +911,53 @@ public class VideoTabFragment extends Fragment implements AdapterView.OnItemSele
         return null;
     }
 
-    protected void showProgressDialog() {
+    protected void showProgressDialog(final String inputVideoPath) {
+        // PROGRESS IS SHOWN AS ENCODED TIME UNTIL THE PROBE FINDS THE DURATION
+        progressTracker.start(0);
 
-        // CLEAN STATISTICS
-        statistics = null;
+        // HEADERS OF LOCAL MP4, MATROSKA, WAV AND OGG FILES ARE READ WITHOUT A PROBE SESSION
+        try {
+            final MediaSummary summary = ContainerHeaderParser.parse(new File(inputVideoPath));
+            if (summary != null) {
+                progressTracker.setTotalDuration(Math.round(summary.getDuration() * 1000));
+                progressDialog.show();
+                return;
+            }
+        } catch (final IOException e) {
+            Log.d(TAG, String.format("Reading headers of %s failed, probing it.", inputVideoPath), e);
+        }
+
+        FFprobeKit.getMediaInformationAsync(inputVideoPath, new MediaInformationSessionCompleteCallback() {
+            @Override
+            public void apply(MediaInformationSession session) {
+                final MediaInformation information = session.getMediaInformation();
+                if (information != null) {
+                    progressTracker.setTotalDuration(parseDuration(information.getDuration()));
+                }
+            }
+        });
 
         progressDialog.show();
     }
 
     protected void updateProgressDialog() {
-        if (statistics == null || statistics.getTime() < 0) {
-            return;
-        }
-
-        double timeInMilliseconds = this.statistics.getTime();
-        int totalVideoDuration = 9000;
-
-        String completePercentage = new BigDecimal(timeInMilliseconds).multiply(new BigDecimal(100)).divide(new BigDecimal(totalVideoDuration), 0, BigDecimal.ROUND_HALF_UP).toString();
-
         TextView textView = progressDialog.findViewById(R.id.progressDialogText);
         if (textView != null) {
-            textView.setText(String.format("Encoding video: %% %s.", completePercentage));
+            progressTracker.applyTo("Encoding video", textView);
+        }
+    }
+
+    /**
+     * @return duration in milliseconds, 0 if <code>seconds</code> is not a valid duration
+     */
+    static long parseDuration(final String seconds) {
+        if (seconds == null) {
+            return 0;
+        }
+        try {
+            return Math.round(Double.parseDouble(seconds) * 1000);
+        } catch (final NumberFormatException e) {
+            return 0;
         }
     }
 
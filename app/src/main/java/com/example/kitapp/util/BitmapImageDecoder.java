@@ -0,0 +1,91 @@
+package com.example.kitapp.util;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.graphics.Rect;
+
+import com.example.kitapp.encode.SlideshowRenderer;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * <p>Decodes slideshow images with {@link BitmapFactory}.
+ *
+ * <p>Large photos are subsampled while decoding, so a decoded image is never much larger than
+ * the frame it is drawn into. The frame bitmap is created once and reused for every image.
+ */
+public class BitmapImageDecoder implements SlideshowRenderer.ImageDecoder {
+
+    private final Paint paint = new Paint(Paint.FILTER_BITMAP_FLAG);
+    private final Rect destination = new Rect();
+    private Bitmap frameBitmap;
+    private Canvas canvas;
+
+    @Override
+    public void decode(final String path, final ByteBuffer target, final int width, final int height) throws IOException {
+        final BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        BitmapFactory.decodeFile(path, options);
+        if (options.outWidth <= 0 || options.outHeight <= 0) {
+            throw new IOException("Can not decode image " + path);
+        }
+
+        options.inJustDecodeBounds = false;
+        options.inSampleSize = calculateSampleSize(options.outWidth, options.outHeight, width, height);
+        final Bitmap bitmap = BitmapFactory.decodeFile(path, options);
+        if (bitmap == null) {
+            throw new IOException("Can not decode image " + path);
+        }
+
+        try {
+            if (frameBitmap == null || frameBitmap.getWidth() != width || frameBitmap.getHeight() != height) {
+                release();
+                frameBitmap = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+                canvas = new Canvas(frameBitmap);
+            }
+
+            final float scale = Math.min((float) width / bitmap.getWidth(), (float) height / bitmap.getHeight());
+            final int scaledWidth = Math.round(bitmap.getWidth() * scale);
+            final int scaledHeight = Math.round(bitmap.getHeight() * scale);
+            final int left = (width - scaledWidth) / 2;
+            final int top = (height - scaledHeight) / 2;
+            destination.set(left, top, left + scaledWidth, top + scaledHeight);
+
+            canvas.drawColor(Color.BLACK);
+            canvas.drawBitmap(bitmap, null, destination, paint);
+
+            // ARGB_8888 PIXELS ARE STORED AS RGBA BYTES
+            frameBitmap.copyPixelsToBuffer(target);
+        } finally {
+            bitmap.recycle();
+        }
+    }
+
+    /**
+     * <p>Recycles the frame bitmap.
+     */
+    public void release() {
+        if (frameBitmap != null) {
+            frameBitmap.recycle();
+            frameBitmap = null;
+            canvas = null;
+        }
+    }
+
+    /**
+     * @return largest power of two sample size that keeps the image at least as large as the
+     * frame
+     */
+    static int calculateSampleSize(final int imageWidth, final int imageHeight, final int width, final int height) {
+        int sampleSize = 1;
+        while (imageWidth / (sampleSize * 2) >= width && imageHeight / (sampleSize * 2) >= height) {
+            sampleSize *= 2;
+        }
+        return sampleSize;
+    }
+
+}
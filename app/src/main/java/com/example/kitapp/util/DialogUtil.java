@@ -23,6 +23,7 @@
 package com.example.kitapp.util;
 
 import android.content.Context;
+import android.content.DialogInterface;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.widget.Button;
@@ -32,8 +33,17 @@ import androidx.appcompat.app.AlertDialog;
 
 import com.example.kitapp.R;
 
+import java.util.ArrayList;
+import java.util.List;
+
 public class DialogUtil {
 
+    public interface MultiChoiceCallback {
+
+        void apply(final List<String> selectedItems);
+
+    }
+
     public static AlertDialog createProgressDialog(Context context, final String text) {
         AlertDialog.Builder builder = new AlertDialog.Builder(context);
         LayoutInflater inflater = (LayoutInflater) context.getSystemService(Context.LAYOUT_INFLATER_SERVICE);
@@ -70,4 +80,33 @@ public class DialogUtil {
         return builder.create();
     }
 
+    public static AlertDialog createMultiChoiceDialog(Context context, final String title, final String[] items, final MultiChoiceCallback callback) {
+        final boolean[] checkedItems = new boolean[items.length];
+
+        AlertDialog.Builder builder = new AlertDialog.Builder(context);
+        builder.setTitle(title);
+        builder.setMultiChoiceItems(items, checkedItems, new DialogInterface.OnMultiChoiceClickListener() {
+
+            @Override
+            public void onClick(DialogInterface dialog, int which, boolean isChecked) {
+                checkedItems[which] = isChecked;
+            }
+        });
+        builder.setPositiveButton(android.R.string.ok, new DialogInterface.OnClickListener() {
+
+            @Override
+            public void onClick(DialogInterface dialog, int which) {
+                final List<String> selectedItems = new ArrayList<>();
+                for (int i = 0; i < items.length; i++) {
+                    if (checkedItems[i]) {
+                        selectedItems.add(items[i]);
+                    }
+                }
+                callback.apply(selectedItems);
+            }
+        });
+        builder.setNegativeButton(android.R.string.cancel, null);
+        return builder.create();
+    }
+
 }
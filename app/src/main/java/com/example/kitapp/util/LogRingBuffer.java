@@ -0,0 +1,90 @@
+package com.example.kitapp.util;
+
+/**
+ * <p>Fixed capacity scrollback of log entries. Adding an entry to a full buffer overwrites the
+ * oldest one, so memory stays bounded however long a session logs.
+ *
+ * <p>Not thread safe, {@link LogSink} only uses it on the main thread.
+ */
+public class LogRingBuffer {
+    private final String[] entries;
+    private int head;
+    private int size;
+    private int length;
+    private boolean overwritten;
+
+    public LogRingBuffer(final int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Capacity must be positive: " + capacity);
+        }
+        this.entries = new String[capacity];
+    }
+
+    public void add(final String entry) {
+        final int index = (head + size) % entries.length;
+        if (size == entries.length) {
+            length -= entries[index].length();
+            head = (head + 1) % entries.length;
+            overwritten = true;
+        } else {
+            size++;
+        }
+        entries[index] = entry;
+        length += entry.length();
+    }
+
+    public void clear() {
+        for (int i = 0; i < entries.length; i++) {
+            entries[i] = null;
+        }
+        head = 0;
+        size = 0;
+        length = 0;
+        overwritten = false;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int getCapacity() {
+        return entries.length;
+    }
+
+    /**
+     * @return total number of characters held
+     */
+    public int length() {
+        return length;
+    }
+
+    /**
+     * <p>Returns whether an entry was overwritten since the last call, which means text already
+     * displayed has to be replaced instead of appended to.
+     *
+     * @return true if an entry was overwritten since the last call
+     */
+    public boolean pollOverwritten() {
+        final boolean result = overwritten;
+        overwritten = false;
+        return result;
+    }
+
+    /**
+     * @param builder builder receiving entries from oldest to newest
+     * @return the same builder
+     */
+    public StringBuilder appendTo(final StringBuilder builder) {
+        builder.ensureCapacity(builder.length() + length);
+        for (int i = 0; i < size; i++) {
+            builder.append(entries[(head + i) % entries.length]);
+        }
+        return builder;
+    }
+
+    @Override
+    public String toString() {
+        return appendTo(new StringBuilder()).toString();
+    }
+
+}
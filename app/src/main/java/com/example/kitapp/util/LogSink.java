@@ -0,0 +1,119 @@
+package com.example.kitapp.util;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.view.Choreographer;
+import android.widget.TextView;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * <p>Moves log text from FFmpeg callback threads into a {@link TextView} without flooding the
+ * main looper.
+ *
+ * <p>{@link #append(String)} only adds to a lock free queue. The first append after a flush
+ * schedules a single frame callback, which drains everything queued so far into the view with
+ * one update, so the view changes at most once per frame however many lines arrive. The view
+ * shows the last {@link LogRingBuffer#getCapacity()} entries only.
+ */
+public class LogSink implements Choreographer.FrameCallback {
+
+    public static final int DEFAULT_SCROLLBACK_SIZE = 1000;
+
+    private static final Handler handler = new Handler(Looper.getMainLooper());
+
+    private final TextView textView;
+    private final ConcurrentLinkedQueue<String> pendingEntries;
+    private final AtomicBoolean flushScheduled;
+    private final LogRingBuffer scrollback;
+    private final StringBuilder batch;
+    private final Runnable scheduleFlush;
+
+    public LogSink(final TextView textView) {
+        this(textView, DEFAULT_SCROLLBACK_SIZE);
+    }
+
+    /**
+     * @param textView       view receiving log text
+     * @param scrollbackSize maximum number of entries kept in the view
+     */
+    public LogSink(final TextView textView, final int scrollbackSize) {
+        this.textView = textView;
+        this.pendingEntries = new ConcurrentLinkedQueue<>();
+        this.flushScheduled = new AtomicBoolean(false);
+        this.scrollback = new LogRingBuffer(scrollbackSize);
+        this.batch = new StringBuilder();
+        this.scheduleFlush = new Runnable() {
+
+            @Override
+            public void run() {
+                Choreographer.getInstance().postFrameCallback(LogSink.this);
+            }
+        };
+    }
+
+    /**
+     * <p>Queues text for the view. Safe to call from any thread.
+     *
+     * @param text log text
+     */
+    public void append(final String text) {
+        if (text == null || text.isEmpty()) {
+            return;
+        }
+        pendingEntries.offer(text);
+
+        if (flushScheduled.compareAndSet(false, true)) {
+            if (Looper.myLooper() == Looper.getMainLooper()) {
+                scheduleFlush.run();
+            } else {
+                handler.post(scheduleFlush);
+            }
+        }
+    }
+
+    /**
+     * <p>Drops queued and displayed text. Must be called on the main thread.
+     */
+    public void clear() {
+        pendingEntries.clear();
+        scrollback.clear();
+        textView.setText("");
+    }
+
+    @Override
+    public void doFrame(final long frameTimeNanos) {
+        flush();
+    }
+
+    /**
+     * <p>Moves queued text into the view. Must be called on the main thread.
+     */
+    public void flush() {
+
+        // ENTRIES QUEUED AFTER THIS POINT SCHEDULE ANOTHER FRAME
+        flushScheduled.set(false);
+
+        batch.setLength(0);
+        String entry;
+        while ((entry = pendingEntries.poll()) != null) {
+            scrollback.add(entry);
+            batch.append(entry);
+        }
+
+        if (scrollback.pollOverwritten()) {
+            batch.setLength(0);
+            textView.setText(scrollback.appendTo(batch).toString());
+        } else if (batch.length() > 0) {
+            textView.append(batch.toString());
+        }
+
+        // DO NOT HOLD ON TO LARGE BATCHES
+        if (batch.capacity() > 64 * 1024) {
+            batch.setLength(0);
+            batch.trimToSize();
+        }
+    }
+
+}
@@ -0,0 +1,369 @@
+package com.example.kitapp.util;
+
+import static android.content.ContentValues.TAG;
+
+import android.util.Log;
+
+import com.arthenica.smartexception.java.Exceptions;
+
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Locale;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * <p>Copies what FFmpeg writes into a named pipe created by
+ * {@link com.arthenica.ffmpegkit.FFmpegKitConfig#registerNewFFmpegPipe} to an output stream, e.g.
+ * a document opened through the Storage Access Framework.
+ *
+ * <p>The pipe only holds 64 KB, and content providers are slow at small writes. So the pipe is
+ * read into large chunks, and full chunks are written by a second thread while the next ones are
+ * read. FFmpeg only waits when every chunk is waiting to be written.
+ *
+ * <p>If the output can not be written, the pipe is closed, so FFmpeg fails writing instead of
+ * waiting forever. Failures are reported through {@link CompleteCallback}.
+ */
+public class PipeDrainer implements Runnable {
+
+    public interface CompleteCallback {
+
+        void apply(final PipeDrainer drainer);
+
+    }
+
+    public static final int DEFAULT_CHUNK_SIZE = 256 * 1024;
+    public static final int DEFAULT_CHUNK_COUNT = 4;
+
+    private static final int STATE_CREATED = 0;
+    private static final int STATE_OPENING = 1;
+    private static final int STATE_READING = 2;
+    private static final int STATE_DONE = 3;
+
+    /**
+     * Queued after the last chunk to stop the writer.
+     */
+    private static final ByteBuffer END_OF_STREAM = ByteBuffer.allocate(0);
+
+    private final String pipePath;
+    private final OutputStream outputStream;
+    private final CompleteCallback completeCallback;
+    private final BlockingQueue<ByteBuffer> freeChunks;
+    private final BlockingQueue<ByteBuffer> fullChunks;
+    private final Object lock = new Object();
+    private int state;
+    private FileChannel pipeChannel;
+    private boolean inputFinished;
+    private volatile boolean cancelled;
+    private volatile long bytesWritten;
+    private volatile int writeCount;
+    private volatile long openWaitTime;
+    private volatile long transferTime;
+    private volatile Exception failure;
+
+    PipeDrainer(final String pipePath, final OutputStream outputStream, final int chunkSize, final int chunkCount, final CompleteCallback completeCallback) {
+        this.pipePath = pipePath;
+        this.outputStream = outputStream;
+        this.completeCallback = completeCallback;
+        this.freeChunks = new ArrayBlockingQueue<>(chunkCount);
+        this.fullChunks = new ArrayBlockingQueue<>(chunkCount + 1);
+        for (int i = 0; i < chunkCount; i++) {
+            freeChunks.add(ByteBuffer.allocate(chunkSize));
+        }
+        this.state = STATE_CREATED;
+    }
+
+    /**
+     * @param outputStream closed when draining ends
+     */
+    public static PipeDrainer create(final String pipePath, final OutputStream outputStream, final CompleteCallback completeCallback) {
+        return new PipeDrainer(pipePath, outputStream, DEFAULT_CHUNK_SIZE, DEFAULT_CHUNK_COUNT, completeCallback);
+    }
+
+    /**
+     * <p>Starts draining on the executor of {@link PipeFeeder}.
+     *
+     * @return this drainer
+     */
+    public PipeDrainer start() {
+        PipeFeeder.getDefaultExecutor().execute(this);
+        return this;
+    }
+
+    @Override
+    public void run() {
+        synchronized (lock) {
+            if (cancelled || inputFinished || state != STATE_CREATED) {
+                closeOutput();
+                finish();
+                return;
+            }
+            state = STATE_OPENING;
+        }
+
+        final long openStartTime = System.nanoTime();
+        FileChannel channel = null;
+        final CountDownLatch writerDone = new CountDownLatch(1);
+        boolean writerStarted = false;
+        try {
+            channel = new FileInputStream(pipePath).getChannel();
+
+            synchronized (lock) {
+                openWaitTime = (System.nanoTime() - openStartTime) / 1000000;
+                pipeChannel = channel;
+                state = STATE_READING;
+            }
+
+            final long transferStartTime = System.nanoTime();
+            PipeFeeder.getDefaultExecutor().execute(new Runnable() {
+
+                @Override
+                public void run() {
+                    try {
+                        writeChunks();
+                    } finally {
+                        writerDone.countDown();
+                    }
+                }
+            });
+            writerStarted = true;
+
+            readChunks(channel);
+
+            fullChunks.put(END_OF_STREAM);
+            writerDone.await();
+            transferTime = (System.nanoTime() - transferStartTime) / 1000000;
+        } catch (final IOException e) {
+            if (!cancelled && failure == null) {
+                failure = e;
+                Log.e(TAG, String.format("Draining pipe %s failed.%s", pipePath, Exceptions.getStackTraceString(e)));
+            }
+        } catch (final InterruptedException e) {
+            failure = e;
+            Thread.currentThread().interrupt();
+        } finally {
+            if (writerStarted && writerDone.getCount() > 0) {
+
+                // READING FAILED, LET THE WRITER STOP BEFORE THE OUTPUT IS CLOSED
+                fullChunks.offer(END_OF_STREAM);
+                try {
+                    writerDone.await();
+                } catch (final InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            PipeFeeder.closeQuietly(channel);
+            closeOutput();
+            finish();
+        }
+    }
+
+    /**
+     * <p>Tells the drainer that FFmpeg has exited. A drainer still waiting for FFmpeg to open the
+     * pipe is released, since it will never be opened. A drainer already reading keeps reading
+     * until the end of the stream, so no output is lost.
+     */
+    public void finishInput() {
+        synchronized (lock) {
+            inputFinished = true;
+            if (state != STATE_OPENING) {
+                return;
+            }
+        }
+        releaseWaitingReader(pipePath);
+    }
+
+    /**
+     * <p>Stops draining, discarding what has not been written yet. Like
+     * {@link PipeFeeder#cancel()}, this must be called before the pipe is closed.
+     */
+    public void cancel() {
+        final int currentState;
+        final FileChannel channel;
+        synchronized (lock) {
+            cancelled = true;
+            currentState = state;
+            channel = pipeChannel;
+        }
+
+        if (currentState == STATE_OPENING) {
+            releaseWaitingReader(pipePath);
+        } else if (currentState == STATE_READING) {
+            PipeFeeder.closeQuietly(channel);
+        }
+    }
+
+    /**
+     * <p>Waits until the drainer is done and the output is closed.
+     */
+    public void await() throws InterruptedException {
+        synchronized (lock) {
+            while (state != STATE_DONE) {
+                lock.wait();
+            }
+        }
+    }
+
+    public String getPipePath() {
+        return pipePath;
+    }
+
+    public boolean isDone() {
+        synchronized (lock) {
+            return state == STATE_DONE;
+        }
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    public boolean isSuccess() {
+        return isDone() && !cancelled && failure == null;
+    }
+
+    /**
+     * @return exception that stopped draining, null if draining succeeded or was cancelled
+     */
+    public Exception getFailure() {
+        return failure;
+    }
+
+    public long getBytesWritten() {
+        return bytesWritten;
+    }
+
+    /**
+     * @return number of writes made to the output stream
+     */
+    public int getWriteCount() {
+        return writeCount;
+    }
+
+    /**
+     * @return milliseconds spent waiting for FFmpeg to open the pipe
+     */
+    public long getOpenWaitTime() {
+        return openWaitTime;
+    }
+
+    /**
+     * @return milliseconds spent draining after the pipe was opened
+     */
+    public long getTransferTime() {
+        return transferTime;
+    }
+
+    /**
+     * @return bytes written per second after the pipe was opened
+     */
+    public double getThroughput() {
+        return bytesWritten * 1000.0 / Math.max(1, transferTime);
+    }
+
+    @Override
+    public String toString() {
+        return String.format(Locale.ROOT, "PipeDrainer{pipe=%s, bytes=%d, writes=%d, openWait=%dms, transfer=%dms, throughput=%.2fMB/s}",
+                pipePath, bytesWritten, writeCount, openWaitTime, transferTime, getThroughput() / (1024 * 1024));
+    }
+
+    /**
+     * <p>Fills chunks from the pipe and queues them for the writer. A chunk is only queued before
+     * it is full at the end of the stream.
+     */
+    private void readChunks(final FileChannel channel) throws IOException, InterruptedException {
+        boolean endOfStream = false;
+        while (!endOfStream && !cancelled && failure == null) {
+            final ByteBuffer chunk = freeChunks.take();
+            chunk.clear();
+            while (chunk.hasRemaining()) {
+                if (channel.read(chunk) < 0) {
+                    endOfStream = true;
+                    break;
+                }
+            }
+            chunk.flip();
+            if (chunk.hasRemaining()) {
+                fullChunks.put(chunk);
+            } else {
+                freeChunks.put(chunk);
+            }
+        }
+    }
+
+    /**
+     * <p>Writes queued chunks until {@link #END_OF_STREAM}. After a failure chunks are still taken
+     * and given back, so the reader is never left waiting for a free chunk.
+     */
+    private void writeChunks() {
+        try {
+            ByteBuffer chunk;
+            while ((chunk = fullChunks.take()) != END_OF_STREAM) {
+                try {
+                    if (failure == null && !cancelled) {
+                        outputStream.write(chunk.array(), chunk.arrayOffset() + chunk.position(), chunk.remaining());
+                        bytesWritten += chunk.remaining();
+                        writeCount++;
+                    }
+                } catch (final IOException e) {
+                    failure = e;
+                    Log.e(TAG, String.format("Writing output of pipe %s failed.%s", pipePath, Exceptions.getStackTraceString(e)));
+                } finally {
+
+                    // WHATEVER THE WRITE THREW, THE READER GETS ITS CHUNK BACK
+                    freeChunks.put(chunk);
+                }
+            }
+        } catch (final InterruptedException e) {
+            failure = e;
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void closeOutput() {
+        try {
+            outputStream.close();
+        } catch (final IOException e) {
+            if (failure == null && !cancelled) {
+                failure = e;
+                Log.e(TAG, String.format("Closing output of pipe %s failed.%s", pipePath, Exceptions.getStackTraceString(e)));
+            }
+        }
+    }
+
+    private void finish() {
+        synchronized (lock) {
+            state = STATE_DONE;
+            pipeChannel = null;
+            lock.notifyAll();
+        }
+
+        if (completeCallback != null) {
+            try {
+                completeCallback.apply(this);
+            } catch (final Exception e) {
+                Log.e(TAG, String.format("Exception thrown inside pipe drainer complete callback.%s", Exceptions.getStackTraceString(e)));
+            }
+        }
+    }
+
+    /**
+     * <p>Opening a named pipe for reading blocks until a writer opens it. Briefly opening it for
+     * writing releases a reader that FFmpeg will never write to.
+     *
+     * @param pipePath named pipe path
+     */
+    static void releaseWaitingReader(final String pipePath) {
+        try {
+            new FileOutputStream(pipePath, true).close();
+        } catch (final IOException e) {
+            Log.w(TAG, String.format("Releasing pipe %s failed.%s", pipePath, Exceptions.getStackTraceString(e)));
+        }
+    }
+
+}
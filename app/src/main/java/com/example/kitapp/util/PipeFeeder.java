@@ -0,0 +1,294 @@
+package com.example.kitapp.util;
+
+import static android.content.ContentValues.TAG;
+
+import android.util.Log;
+
+import com.arthenica.smartexception.java.Exceptions;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Locale;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * <p>Streams a file or an in memory buffer into a named pipe created by
+ * {@link com.arthenica.ffmpegkit.FFmpegKitConfig#registerNewFFmpegPipe}, without spawning a
+ * shell.
+ *
+ * <p>Files are copied with {@link FileChannel#transferTo}, buffers with a single channel write
+ * loop, so no intermediate Java copy is made. Opening the pipe blocks until FFmpeg opens it for
+ * reading and writes block while the pipe is full, so the feeder never runs ahead of FFmpeg.
+ *
+ * <p>The pipe is always opened and closed, even if the source can not be read, so FFmpeg sees an
+ * end of stream instead of waiting forever. Failures are reported through
+ * {@link CompleteCallback} so the owner can cancel its session.
+ */
+public class PipeFeeder implements Runnable {
+
+    public interface CompleteCallback {
+
+        void apply(final PipeFeeder feeder);
+
+    }
+
+    private static final int STATE_CREATED = 0;
+    private static final int STATE_OPENING = 1;
+    private static final int STATE_WRITING = 2;
+    private static final int STATE_DONE = 3;
+
+    private static ExecutorService executor;
+
+    private final String pipePath;
+    private final File sourceFile;
+    private final ByteBuffer sourceBuffer;
+    private final CompleteCallback completeCallback;
+    private final Object lock = new Object();
+    private int state;
+    private FileChannel pipeChannel;
+    private volatile boolean cancelled;
+    private volatile long bytesWritten;
+    private volatile long openWaitTime;
+    private volatile long transferTime;
+    private volatile Exception failure;
+
+    protected PipeFeeder(final String pipePath, final File sourceFile, final ByteBuffer sourceBuffer, final CompleteCallback completeCallback) {
+        this.pipePath = pipePath;
+        this.sourceFile = sourceFile;
+        this.sourceBuffer = sourceBuffer;
+        this.completeCallback = completeCallback;
+        this.state = STATE_CREATED;
+    }
+
+    public static PipeFeeder create(final File sourceFile, final String pipePath, final CompleteCallback completeCallback) {
+        return new PipeFeeder(pipePath, sourceFile, null, completeCallback);
+    }
+
+    /**
+     * @param sourceBuffer bytes between position and limit are written, the buffer itself is not
+     *                     modified
+     */
+    public static PipeFeeder create(final ByteBuffer sourceBuffer, final String pipePath, final CompleteCallback completeCallback) {
+        return new PipeFeeder(pipePath, null, sourceBuffer.duplicate(), completeCallback);
+    }
+
+    /**
+     * <p>Returns the executor feeders are started on. Feeders block on pipe I/O, so they run on
+     * their own threads instead of taking scheduler workers from the FFmpeg sessions they feed.
+     *
+     * @return shared feeder executor
+     */
+    public static synchronized Executor getDefaultExecutor() {
+        if (executor == null) {
+            executor = Executors.newCachedThreadPool(new ThreadFactory() {
+                private final AtomicInteger threadNumber = new AtomicInteger(1);
+
+                @Override
+                public Thread newThread(final Runnable runnable) {
+                    final Thread thread = new Thread(runnable, "pipe-feeder-" + threadNumber.getAndIncrement());
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+        return executor;
+    }
+
+    /**
+     * <p>Starts feeding on the default executor.
+     *
+     * @return this feeder
+     */
+    public PipeFeeder start() {
+        getDefaultExecutor().execute(this);
+        return this;
+    }
+
+    @Override
+    public void run() {
+        synchronized (lock) {
+            if (cancelled || state != STATE_CREATED) {
+                finish();
+                return;
+            }
+            state = STATE_OPENING;
+        }
+
+        final long openStartTime = System.nanoTime();
+        FileChannel channel = null;
+        try {
+            channel = new FileOutputStream(pipePath).getChannel();
+
+            synchronized (lock) {
+                openWaitTime = (System.nanoTime() - openStartTime) / 1000000;
+                pipeChannel = channel;
+                state = STATE_WRITING;
+            }
+
+            if (!cancelled) {
+                final long transferStartTime = System.nanoTime();
+                if (sourceFile != null) {
+                    transferFile(channel);
+                } else {
+                    transferBuffer(channel);
+                }
+                transferTime = (System.nanoTime() - transferStartTime) / 1000000;
+            }
+        } catch (final IOException e) {
+            if (!cancelled) {
+                failure = e;
+                Log.e(TAG, String.format("Feeding pipe %s failed.%s", pipePath, Exceptions.getStackTraceString(e)));
+            }
+        } finally {
+            closeQuietly(channel);
+            finish();
+        }
+    }
+
+    /**
+     * <p>Stops feeding. A feeder still waiting for FFmpeg to open the pipe is released by briefly
+     * opening the pipe for reading, so this must be called before the pipe is closed.
+     */
+    public void cancel() {
+        final int currentState;
+        final FileChannel channel;
+        synchronized (lock) {
+            cancelled = true;
+            currentState = state;
+            channel = pipeChannel;
+        }
+
+        if (currentState == STATE_OPENING) {
+            releaseWaitingWriter(pipePath);
+        } else if (currentState == STATE_WRITING) {
+            closeQuietly(channel);
+        }
+    }
+
+    public String getPipePath() {
+        return pipePath;
+    }
+
+    public boolean isDone() {
+        synchronized (lock) {
+            return state == STATE_DONE;
+        }
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    public boolean isSuccess() {
+        return isDone() && !cancelled && failure == null;
+    }
+
+    /**
+     * @return exception that stopped feeding, null if feeding succeeded or was cancelled
+     */
+    public Exception getFailure() {
+        return failure;
+    }
+
+    public long getBytesWritten() {
+        return bytesWritten;
+    }
+
+    /**
+     * @return milliseconds spent waiting for FFmpeg to open the pipe
+     */
+    public long getOpenWaitTime() {
+        return openWaitTime;
+    }
+
+    /**
+     * @return milliseconds spent writing after the pipe was opened
+     */
+    public long getTransferTime() {
+        return transferTime;
+    }
+
+    /**
+     * @return bytes written per second after the pipe was opened
+     */
+    public double getThroughput() {
+        return bytesWritten * 1000.0 / Math.max(1, transferTime);
+    }
+
+    @Override
+    public String toString() {
+        return String.format(Locale.ROOT, "PipeFeeder{pipe=%s, bytes=%d, openWait=%dms, transfer=%dms, throughput=%.2fMB/s}",
+                pipePath, bytesWritten, openWaitTime, transferTime, getThroughput() / (1024 * 1024));
+    }
+
+    private void transferFile(final FileChannel channel) throws IOException {
+        try (FileChannel sourceChannel = new FileInputStream(sourceFile).getChannel()) {
+            final long size = sourceChannel.size();
+            long position = 0;
+            while (position < size && !cancelled) {
+                final long transferred = sourceChannel.transferTo(position, size - position, channel);
+                if (transferred <= 0) {
+                    break;
+                }
+                position += transferred;
+                bytesWritten = position;
+            }
+        }
+    }
+
+    private void transferBuffer(final FileChannel channel) throws IOException {
+        long written = 0;
+        while (sourceBuffer.hasRemaining() && !cancelled) {
+            written += channel.write(sourceBuffer);
+            bytesWritten = written;
+        }
+    }
+
+    private void finish() {
+        synchronized (lock) {
+            state = STATE_DONE;
+            pipeChannel = null;
+        }
+
+        if (completeCallback != null) {
+            try {
+                completeCallback.apply(this);
+            } catch (final Exception e) {
+                Log.e(TAG, String.format("Exception thrown inside pipe feeder complete callback.%s", Exceptions.getStackTraceString(e)));
+            }
+        }
+    }
+
+    /**
+     * <p>Opening a named pipe for writing blocks until a reader opens it. Briefly opening it for
+     * reading releases a writer that FFmpeg will never read from.
+     *
+     * @param pipePath named pipe path
+     */
+    static void releaseWaitingWriter(final String pipePath) {
+        try {
+            new FileInputStream(pipePath).close();
+        } catch (final IOException e) {
+            Log.w(TAG, String.format("Releasing pipe %s failed.%s", pipePath, Exceptions.getStackTraceString(e)));
+        }
+    }
+
+    static void closeQuietly(final FileChannel channel) {
+        if (channel != null) {
+            try {
+                channel.close();
+            } catch (final IOException e) {
+                // IGNORE, PIPE IS BEING TORN DOWN
+            }
+        }
+    }
+
+}
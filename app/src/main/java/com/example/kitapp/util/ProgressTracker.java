@@ -0,0 +1,216 @@
+package com.example.kitapp.util;
+
+import android.widget.TextView;
+
+/**
+ * <p>Turns encoded media time reported by statistics callbacks into a completion percentage,
+ * an encode speed and an estimated remaining time.
+ *
+ * <p>Everything is computed with primitive math and the text is formatted into buffers reused
+ * by every update, so statistics callbacks do not create garbage. {@link #update(double)} also
+ * tells callers when the view is due for a refresh, at most once per update interval.
+ */
+public class ProgressTracker {
+
+    /**
+     * Default minimum time between two view updates, in milliseconds.
+     */
+    public static final long DEFAULT_UPDATE_INTERVAL = 250;
+
+    private final long updateIntervalNanos;
+    private final StringBuilder text;
+    private char[] chars;
+
+    private long totalDuration;
+    private long encodedTime;
+    private long startTime;
+    private long elapsedTime;
+    private long lastPublishTime;
+    private boolean published;
+
+    public ProgressTracker() {
+        this(DEFAULT_UPDATE_INTERVAL);
+    }
+
+    /**
+     * @param updateInterval minimum time between two view updates in milliseconds
+     */
+    public ProgressTracker(final long updateInterval) {
+        this.updateIntervalNanos = updateInterval * 1000000L;
+        this.text = new StringBuilder(64);
+        this.chars = new char[64];
+    }
+
+    /**
+     * <p>Resets the tracker for a new encode.
+     *
+     * @param totalDuration duration of the media being encoded in milliseconds, zero if not
+     *                      known yet
+     */
+    public void start(final long totalDuration) {
+        start(totalDuration, System.nanoTime());
+    }
+
+    synchronized void start(final long totalDuration, final long now) {
+        this.totalDuration = Math.max(0, totalDuration);
+        this.encodedTime = 0;
+        this.startTime = now;
+        this.elapsedTime = 0;
+        this.lastPublishTime = 0;
+        this.published = false;
+    }
+
+    /**
+     * <p>Sets the duration of the media being encoded, for durations found after the encode
+     * started.
+     *
+     * @param totalDuration duration in milliseconds
+     */
+    public synchronized void setTotalDuration(final long totalDuration) {
+        this.totalDuration = Math.max(0, totalDuration);
+    }
+
+    public synchronized long getTotalDuration() {
+        return totalDuration;
+    }
+
+    /**
+     * <p>Records the encoded media time. Safe to call from any thread.
+     *
+     * @param encodedTime encoded media time in milliseconds, as reported by
+     *                    {@link com.arthenica.ffmpegkit.Statistics#getTime()}
+     * @return true if the view should be refreshed
+     */
+    public boolean update(final double encodedTime) {
+        return update(encodedTime, System.nanoTime());
+    }
+
+    synchronized boolean update(final double encodedTime, final long now) {
+        if (encodedTime < 0) {
+            return false;
+        }
+        this.encodedTime = (long) encodedTime;
+        this.elapsedTime = (now - startTime) / 1000000L;
+
+        if (!published || now - lastPublishTime >= updateIntervalNanos || getPercent() == 100) {
+            published = true;
+            lastPublishTime = now;
+            return true;
+        }
+        return false;
+    }
+
+    public synchronized long getEncodedTime() {
+        return encodedTime;
+    }
+
+    /**
+     * @return completed percentage between 0 and 100, -1 if the total duration is not known
+     */
+    public synchronized int getPercent() {
+        if (totalDuration <= 0) {
+            return -1;
+        }
+        return (int) Math.min(100, (encodedTime * 100 + totalDuration / 2) / totalDuration);
+    }
+
+    /**
+     * @return encoded media time per wall clock time since {@link #start(long)}, 0 if not known
+     * yet
+     */
+    public synchronized double getSpeed() {
+        if (elapsedTime <= 0) {
+            return 0;
+        }
+        return (double) encodedTime / elapsedTime;
+    }
+
+    /**
+     * @return estimated remaining time in milliseconds at the current speed, -1 if not known
+     */
+    public synchronized long getEta() {
+        if (totalDuration <= 0 || encodedTime <= 0 || elapsedTime <= 0) {
+            return -1;
+        }
+        final long remaining = Math.max(0, totalDuration - encodedTime);
+        return remaining * elapsedTime / encodedTime;
+    }
+
+    /**
+     * <p>Appends progress text like <code>42% (1.8x, 0:05 left)</code>.
+     *
+     * @param builder builder receiving the text
+     * @return the same builder
+     */
+    public synchronized StringBuilder appendTo(final StringBuilder builder) {
+        final int percent = getPercent();
+        if (percent >= 0) {
+            builder.append(percent).append('%');
+        } else {
+            appendTime(builder, encodedTime);
+        }
+
+        final double speed = getSpeed();
+        if (speed > 0) {
+            builder.append(" (");
+            final long tenths = Math.round(speed * 10);
+            builder.append(tenths / 10).append('.').append(tenths % 10).append('x');
+            final long eta = getEta();
+            if (eta >= 0) {
+                builder.append(", ");
+                appendTime(builder, eta);
+                builder.append(" left");
+            }
+            builder.append(')');
+        }
+        return builder;
+    }
+
+    /**
+     * <p>Shows <code>label: progress.</code> in <code>textView</code>. Must be called on the main
+     * thread.
+     *
+     * @param label    text shown before the progress
+     * @param textView view to update
+     */
+    public synchronized void applyTo(final String label, final TextView textView) {
+        text.setLength(0);
+        text.append(label).append(": ");
+        appendTo(text).append('.');
+
+        final int length = text.length();
+        if (chars.length < length) {
+            chars = new char[length * 2];
+        }
+        text.getChars(0, length, chars, 0);
+
+        // THIS OVERLOAD WRAPS THE ARRAY INSTEAD OF COPYING IT INTO A NEW STRING
+        textView.setText(chars, 0, length);
+    }
+
+    /**
+     * <p>Appends a duration as <code>m:ss</code>, or <code>h:mm:ss</code> from an hour up.
+     */
+    static StringBuilder appendTime(final StringBuilder builder, final long milliseconds) {
+        final long seconds = Math.max(0, milliseconds) / 1000;
+        final long hours = seconds / 3600;
+        final long minutes = (seconds / 60) % 60;
+
+        if (hours > 0) {
+            builder.append(hours).append(':');
+            appendTwoDigits(builder, minutes);
+        } else {
+            builder.append(minutes);
+        }
+        builder.append(':');
+        return appendTwoDigits(builder, seconds % 60);
+    }
+
+    private static StringBuilder appendTwoDigits(final StringBuilder builder, final long value) {
+        if (value < 10) {
+            builder.append('0');
+        }
+        return builder.append(value);
+    }
+
+}
@@ -0,0 +1,376 @@
+package com.example.kitapp.util;
+
+import static android.content.ContentValues.TAG;
+
+import android.util.Log;
+
+import com.arthenica.smartexception.java.Exceptions;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Locale;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * <p>Writes raw video frames into a named pipe that FFmpeg reads as <code>-f rawvideo</code>
+ * input, see {@link #getInputArguments(double)}.
+ *
+ * <p>Frames are direct {@link ByteBuffer}s taken from a fixed pool. A producer thread fills a
+ * frame obtained with {@link #obtainFrame()} and hands it back with {@link #queueFrame(ByteBuffer)},
+ * the writer thread writes it into the pipe and returns it to the pool. Once the pool is
+ * allocated no further allocations are made per frame, and the producer blocks while every
+ * frame is waiting to be written, so it never runs ahead of FFmpeg.
+ */
+public class RawFrameProducer implements Runnable {
+
+    public enum PixelFormat {
+        RGBA("rgba") {
+            @Override
+            public int getFrameSize(final int width, final int height) {
+                return width * height * 4;
+            }
+        },
+        YUV420P("yuv420p") {
+            @Override
+            public int getFrameSize(final int width, final int height) {
+                final int chromaSize = ((width + 1) / 2) * ((height + 1) / 2);
+                return width * height + 2 * chromaSize;
+            }
+        };
+
+        private final String name;
+
+        PixelFormat(final String name) {
+            this.name = name;
+        }
+
+        /**
+         * @return FFmpeg pixel format name
+         */
+        public String getName() {
+            return name;
+        }
+
+        public abstract int getFrameSize(final int width, final int height);
+    }
+
+    public interface CompleteCallback {
+
+        void apply(final RawFrameProducer producer);
+
+    }
+
+    private static final ByteBuffer END_OF_STREAM = ByteBuffer.allocate(0);
+
+    private static final int STATE_CREATED = 0;
+    private static final int STATE_OPENING = 1;
+    private static final int STATE_WRITING = 2;
+    private static final int STATE_DONE = 3;
+
+    private final String pipePath;
+    private final int width;
+    private final int height;
+    private final PixelFormat pixelFormat;
+    private final int frameSize;
+    private final BlockingQueue<ByteBuffer> freeFrames;
+    private final BlockingQueue<ByteBuffer> queuedFrames;
+    private final CompleteCallback completeCallback;
+    private final Object lock = new Object();
+    private int state;
+    private FileChannel pipeChannel;
+    private volatile boolean done;
+    private volatile boolean cancelled;
+    private volatile long framesWritten;
+    private volatile long transferTime;
+    private volatile Exception failure;
+
+    protected RawFrameProducer(final String pipePath, final int width, final int height, final PixelFormat pixelFormat, final int poolSize, final CompleteCallback completeCallback) {
+        if (width < 1 || height < 1) {
+            throw new IllegalArgumentException(String.format(Locale.ROOT, "Invalid frame size %dx%d", width, height));
+        }
+        if (poolSize < 1) {
+            throw new IllegalArgumentException("Pool size must be positive: " + poolSize);
+        }
+        this.pipePath = pipePath;
+        this.width = width;
+        this.height = height;
+        this.pixelFormat = pixelFormat;
+        this.frameSize = pixelFormat.getFrameSize(width, height);
+        this.freeFrames = new ArrayBlockingQueue<>(poolSize);
+        this.queuedFrames = new ArrayBlockingQueue<>(poolSize + 1);
+        this.completeCallback = completeCallback;
+        this.state = STATE_CREATED;
+
+        for (int i = 0; i < poolSize; i++) {
+            freeFrames.add(ByteBuffer.allocateDirect(frameSize));
+        }
+    }
+
+    /**
+     * @param pipePath         pipe registered with
+     *                         {@link com.arthenica.ffmpegkit.FFmpegKitConfig#registerNewFFmpegPipe}
+     * @param width            frame width in pixels
+     * @param height           frame height in pixels
+     * @param pixelFormat      frame pixel format
+     * @param poolSize         number of frame buffers, two or three are enough to keep the pipe
+     *                         busy while the next frame is produced
+     * @param completeCallback invoked on the writer thread when writing ends, may be null
+     * @return new producer, call {@link #start()} to begin writing
+     */
+    public static RawFrameProducer create(final String pipePath, final int width, final int height, final PixelFormat pixelFormat, final int poolSize, final CompleteCallback completeCallback) {
+        return new RawFrameProducer(pipePath, width, height, pixelFormat, poolSize, completeCallback);
+    }
+
+    /**
+     * @param frameRate input frame rate
+     * @return FFmpeg input arguments reading frames of this producer from its pipe
+     */
+    public String[] getInputArguments(final double frameRate) {
+        return new String[]{
+                "-f", "rawvideo",
+                "-pix_fmt", pixelFormat.getName(),
+                "-s", width + "x" + height,
+                "-r", String.format(Locale.ROOT, "%s", frameRate),
+                "-i", pipePath
+        };
+    }
+
+    /**
+     * <p>Starts the writer on the pipe feeder executor.
+     *
+     * @return this producer
+     */
+    public RawFrameProducer start() {
+        PipeFeeder.getDefaultExecutor().execute(this);
+        return this;
+    }
+
+    /**
+     * <p>Takes a free frame from the pool, waiting until the writer returns one if necessary.
+     *
+     * @return cleared frame of {@link #getFrameSize()} bytes
+     * @throws IOException          if writing failed or the producer was cancelled
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public ByteBuffer obtainFrame() throws IOException, InterruptedException {
+        checkActive();
+        final ByteBuffer frame = freeFrames.take();
+        checkActive();
+        frame.clear();
+        return frame;
+    }
+
+    /**
+     * <p>Queues a frame obtained from {@link #obtainFrame()} for writing. The whole frame is
+     * written whatever its position is, so relative puts and bulk copies can be used to fill it.
+     *
+     * @param frame filled frame
+     * @throws IOException          if writing failed or the producer was cancelled
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public void queueFrame(final ByteBuffer frame) throws IOException, InterruptedException {
+        if (frame.capacity() != frameSize || !frame.isDirect()) {
+            throw new IllegalArgumentException("Frame was not obtained from this producer");
+        }
+        checkActive();
+        queuedFrames.put(frame);
+
+        // WRITER MAY HAVE STOPPED WHILE THE FRAME WAS BEING QUEUED
+        if (done) {
+            recycleQueuedFrames();
+        }
+    }
+
+    /**
+     * <p>Signals that no more frames will be queued. The pipe is closed once queued frames are
+     * written.
+     *
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public void endOfStream() throws InterruptedException {
+        queuedFrames.put(END_OF_STREAM);
+    }
+
+    @Override
+    public void run() {
+        synchronized (lock) {
+            if (cancelled || state != STATE_CREATED) {
+                finish();
+                return;
+            }
+            state = STATE_OPENING;
+        }
+
+        FileChannel channel = null;
+        ByteBuffer frame = null;
+        try {
+            channel = new FileOutputStream(pipePath).getChannel();
+
+            synchronized (lock) {
+                pipeChannel = channel;
+                state = STATE_WRITING;
+            }
+
+            final long transferStartTime = System.nanoTime();
+            while (!cancelled) {
+                frame = queuedFrames.take();
+                if (frame == END_OF_STREAM) {
+                    frame = null;
+                    break;
+                }
+
+                frame.clear();
+                while (frame.hasRemaining()) {
+                    channel.write(frame);
+                }
+                freeFrames.put(frame);
+                frame = null;
+                framesWritten++;
+            }
+            transferTime = (System.nanoTime() - transferStartTime) / 1000000;
+        } catch (final IOException | InterruptedException e) {
+            if (!cancelled) {
+                failure = e;
+                Log.e(TAG, String.format("Writing raw frames into pipe %s failed.%s", pipePath, Exceptions.getStackTraceString(e)));
+            }
+        } finally {
+            if (frame != null) {
+                freeFrames.offer(frame);
+            }
+            PipeFeeder.closeQuietly(channel);
+            finish();
+        }
+    }
+
+    /**
+     * <p>Stops writing. Producers waiting for a free frame are released and fail with an
+     * {@link IOException}. Like {@link PipeFeeder#cancel()}, this must be called before the pipe
+     * is closed.
+     */
+    public void cancel() {
+        final int currentState;
+        final FileChannel channel;
+        synchronized (lock) {
+            cancelled = true;
+            currentState = state;
+            channel = pipeChannel;
+        }
+
+        if (currentState == STATE_OPENING) {
+            PipeFeeder.releaseWaitingWriter(pipePath);
+        } else if (currentState == STATE_WRITING) {
+            PipeFeeder.closeQuietly(channel);
+
+            // WAKE UP THE WRITER IF IT IS WAITING FOR A FRAME
+            queuedFrames.offer(END_OF_STREAM);
+        }
+    }
+
+    public String getPipePath() {
+        return pipePath;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public PixelFormat getPixelFormat() {
+        return pixelFormat;
+    }
+
+    /**
+     * @return size of a single frame in bytes
+     */
+    public int getFrameSize() {
+        return frameSize;
+    }
+
+    public boolean isDone() {
+        return done;
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    public boolean isSuccess() {
+        return done && !cancelled && failure == null;
+    }
+
+    /**
+     * @return exception that stopped writing, null if writing succeeded or was cancelled
+     */
+    public Exception getFailure() {
+        return failure;
+    }
+
+    public long getFramesWritten() {
+        return framesWritten;
+    }
+
+    public long getBytesWritten() {
+        return framesWritten * frameSize;
+    }
+
+    /**
+     * @return milliseconds spent writing after the pipe was opened
+     */
+    public long getTransferTime() {
+        return transferTime;
+    }
+
+    @Override
+    public String toString() {
+        return String.format(Locale.ROOT, "RawFrameProducer{pipe=%s, format=%s, size=%dx%d, frames=%d, transfer=%dms}",
+                pipePath, pixelFormat.getName(), width, height, framesWritten, transferTime);
+    }
+
+    private void checkActive() throws IOException {
+        if (cancelled) {
+            throw new IOException("Raw frame producer cancelled");
+        }
+        final Exception currentFailure = failure;
+        if (currentFailure != null) {
+            throw new IOException("Writing raw frames failed", currentFailure);
+        }
+        if (done) {
+            throw new IOException("Raw frame producer is done");
+        }
+    }
+
+    private void recycleQueuedFrames() {
+        ByteBuffer frame;
+        while ((frame = queuedFrames.poll()) != null) {
+            if (frame != END_OF_STREAM) {
+                freeFrames.offer(frame);
+            }
+        }
+    }
+
+    private void finish() {
+        synchronized (lock) {
+            state = STATE_DONE;
+            pipeChannel = null;
+            done = true;
+        }
+
+        // RELEASE PRODUCERS WAITING FOR A FREE FRAME
+        recycleQueuedFrames();
+
+        if (completeCallback != null) {
+            try {
+                completeCallback.apply(this);
+            } catch (final Exception e) {
+                Log.e(TAG, String.format("Exception thrown inside raw frame producer complete callback.%s", Exceptions.getStackTraceString(e)));
+            }
+        }
+    }
+
+}
@@ -0,0 +1,261 @@
+package com.example.kitapp.util;
+
+import static android.content.ContentValues.TAG;
+
+import android.content.Context;
+import android.content.pm.PackageInfo;
+import android.content.pm.PackageManager;
+import android.content.res.Resources;
+import android.util.Log;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.zip.CRC32;
+
+/**
+ * <p>Caches files materialized from application resources, so a resource is only decoded and
+ * written again when the application is updated or the file on disk no longer matches.
+ *
+ * <p>Every materialized file has a <code>.meta</code> file next to it holding the cache key,
+ * which is the resource id and the application version, plus the length and CRC32 of the file.
+ * The checksum is verified once per process, later lookups only compare length and modification
+ * time. Concurrent requests for the same file wait for a single materialization.
+ */
+public class ResourceFileCache {
+
+    public interface Materializer {
+
+        void materialize(final int resourceId, final File file) throws IOException;
+
+    }
+
+    static final String META_SUFFIX = ".meta";
+
+    private static ResourceFileCache instance;
+
+    private final String version;
+    private final Materializer materializer;
+    private final ConcurrentHashMap<String, Entry> validEntries;
+    private final ConcurrentHashMap<String, FutureTask<Entry>> materializations;
+
+    static class Entry {
+        final String key;
+        final long length;
+        final long checksum;
+        final long lastModified;
+
+        Entry(final String key, final long length, final long checksum, final long lastModified) {
+            this.key = key;
+            this.length = length;
+            this.checksum = checksum;
+            this.lastModified = lastModified;
+        }
+
+        boolean matches(final String key, final File file) {
+            return this.key.equals(key) && file.length() == length && file.lastModified() == lastModified;
+        }
+    }
+
+    ResourceFileCache(final String version, final Materializer materializer) {
+        this.version = version;
+        this.materializer = materializer;
+        this.validEntries = new ConcurrentHashMap<>();
+        this.materializations = new ConcurrentHashMap<>();
+    }
+
+    /**
+     * @param context any context, only the application context is kept
+     * @return application wide cache materializing drawables with
+     * {@link ResourcesUtil#resourceToFile(Resources, int, File)}
+     */
+    public static synchronized ResourceFileCache getInstance(final Context context) {
+        if (instance == null) {
+            final Resources resources = context.getApplicationContext().getResources();
+            instance = new ResourceFileCache(getApplicationVersion(context), new Materializer() {
+
+                @Override
+                public void materialize(final int resourceId, final File file) throws IOException {
+                    final long startTime = System.currentTimeMillis();
+                    ResourcesUtil.resourceToFile(resources, resourceId, file);
+                    Log.d(TAG, String.format(Locale.ROOT, "Materialized resource %d into %s in %d milliseconds.", resourceId, file.getName(), System.currentTimeMillis() - startTime));
+                }
+            });
+        }
+        return instance;
+    }
+
+    /**
+     * @param context any context
+     * @return version code and last update time of the installed package, so reinstalling a
+     * development build with the same version code also invalidates cached files
+     */
+    static String getApplicationVersion(final Context context) {
+        try {
+            final PackageInfo packageInfo = context.getPackageManager().getPackageInfo(context.getPackageName(), 0);
+            return packageInfo.versionCode + "-" + packageInfo.lastUpdateTime;
+        } catch (final PackageManager.NameNotFoundException e) {
+            Log.w(TAG, "Package info not found, resource files will be materialized once per process.");
+            return "process-" + System.currentTimeMillis();
+        }
+    }
+
+    /**
+     * <p>Makes sure <code>file</code> holds the given resource, materializing it only if the
+     * cached copy is missing, stale or corrupt.
+     *
+     * @param resourceId resource id
+     * @param file       destination file
+     * @return destination file
+     * @throws IOException if materializing the resource fails
+     */
+    public File resourceToFile(final int resourceId, final File file) throws IOException {
+        final String path = file.getAbsolutePath();
+        final String key = createKey(resourceId);
+
+        while (true) {
+            final Entry entry = validEntries.get(path);
+            if (entry != null && entry.matches(key, file)) {
+                return file;
+            }
+
+            final FutureTask<Entry> task = new FutureTask<>(new Callable<Entry>() {
+
+                @Override
+                public Entry call() throws IOException {
+                    return loadOrMaterialize(resourceId, key, file);
+                }
+            });
+
+            FutureTask<Entry> runningTask = materializations.putIfAbsent(path, task);
+            if (runningTask == null) {
+                runningTask = task;
+                try {
+                    task.run();
+                } finally {
+                    materializations.remove(path, task);
+                }
+            }
+
+            final Entry materializedEntry = await(runningTask);
+
+            // ANOTHER CALLER MAY HAVE MATERIALIZED A DIFFERENT RESOURCE INTO THE SAME FILE
+            if (materializedEntry.key.equals(key)) {
+                return file;
+            }
+        }
+    }
+
+    /**
+     * <p>Forgets the cached copy of <code>file</code>, the next lookup materializes it again.
+     *
+     * @param file destination file
+     */
+    public void invalidate(final File file) {
+        validEntries.remove(file.getAbsolutePath());
+        getMetaFile(file).delete();
+    }
+
+    private Entry loadOrMaterialize(final int resourceId, final String key, final File file) throws IOException {
+        final Entry storedEntry = readMetaFile(file);
+        if (storedEntry != null && storedEntry.key.equals(key) && file.length() == storedEntry.length && checksum(file) == storedEntry.checksum) {
+            final Entry entry = new Entry(key, storedEntry.length, storedEntry.checksum, file.lastModified());
+            validEntries.put(file.getAbsolutePath(), entry);
+            return entry;
+        }
+
+        // A FILE WITHOUT META IS NEVER TRUSTED, EVEN IF MATERIALIZATION FAILS HALFWAY
+        getMetaFile(file).delete();
+        materializer.materialize(resourceId, file);
+
+        final Entry entry = new Entry(key, file.length(), checksum(file), file.lastModified());
+        writeMetaFile(file, entry);
+        validEntries.put(file.getAbsolutePath(), entry);
+        return entry;
+    }
+
+    private String createKey(final int resourceId) {
+        return resourceId + "@" + version;
+    }
+
+    private static Entry await(final FutureTask<Entry> task) throws IOException {
+        boolean interrupted = false;
+        try {
+            while (true) {
+                try {
+                    return task.get();
+                } catch (final InterruptedException e) {
+                    interrupted = true;
+                } catch (final ExecutionException e) {
+                    final Throwable cause = e.getCause();
+                    if (cause instanceof IOException) {
+                        throw (IOException) cause;
+                    }
+                    if (cause instanceof RuntimeException) {
+                        throw (RuntimeException) cause;
+                    }
+                    throw new IOException("Materializing resource failed", cause);
+                }
+            }
+        } finally {
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    static File getMetaFile(final File file) {
+        return new File(file.getPath() + META_SUFFIX);
+    }
+
+    private static Entry readMetaFile(final File file) {
+        final File metaFile = getMetaFile(file);
+        if (!metaFile.exists()) {
+            return null;
+        }
+
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(metaFile), StandardCharsets.UTF_8))) {
+            final String key = reader.readLine();
+            final String length = reader.readLine();
+            final String checksum = reader.readLine();
+            if (key == null || length == null || checksum == null) {
+                return null;
+            }
+            return new Entry(key, Long.parseLong(length), Long.parseLong(checksum), 0);
+        } catch (final IOException | NumberFormatException e) {
+            Log.w(TAG, String.format("Ignoring unreadable resource cache meta file %s.", metaFile.getName()));
+            return null;
+        }
+    }
+
+    private static void writeMetaFile(final File file, final Entry entry) throws IOException {
+        try (Writer writer = new OutputStreamWriter(new FileOutputStream(getMetaFile(file)), StandardCharsets.UTF_8)) {
+            writer.write(entry.key + "\n" + entry.length + "\n" + entry.checksum + "\n");
+        }
+    }
+
+    static long checksum(final File file) throws IOException {
+        final CRC32 crc = new CRC32();
+        try (InputStream inputStream = new FileInputStream(file)) {
+            final byte[] buffer = new byte[8192];
+            int readSize;
+            while ((readSize = inputStream.read(buffer)) > 0) {
+                crc.update(buffer, 0, readSize);
+            }
+        }
+        return crc.getValue();
+    }
+
+}
@@ -2,24 +2,46 @@
 
 package com.example.kitapp.util;
 
-import static android.content.ContentValues.TAG;
-
+import android.content.res.AssetFileDescriptor;
 import android.content.res.Resources;
 import android.graphics.Bitmap;
 import android.graphics.BitmapFactory;
-import android.util.Log;
-
-import com.arthenica.smartexception.java.Exceptions;
 
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 
 
 
 public class ResourcesUtil {
+    static final int BUFFER_SIZE = 256 * 1024;
+
+    private static final ThreadLocal<ByteBuffer> transferBuffer = new ThreadLocal<ByteBuffer>() {
+
+        @Override
+        protected ByteBuffer initialValue() {
+            return ByteBuffer.allocate(BUFFER_SIZE);
+        }
+    };
+
+    /**
+     * <p>Copies the encoded bytes of a resource into <code>file</code> without decoding them.
+     * FFmpeg decodes the image anyway, so there is no reason to inflate it into a bitmap and
+     * compress it again. See {@link #rawResourceToFile(Resources, int, File)} for how the copy is
+     * made.
+     */
     public static void resourceToFile(Resources resources, final int resourceId, final File file) throws IOException {
+        copyResourceToFile(resources, resourceId, file);
+    }
+
+    /**
+     * <p>Decodes a drawable and writes it as a JPEG, for resources that must be re-encoded.
+     */
+    public static void decodeResourceToFile(Resources resources, final int resourceId, final File file) throws IOException {
         Bitmap bitmap = BitmapFactory.decodeResource(resources, resourceId);
 
         if (file.exists()) {
@@ -32,26 +54,154 @@ public class ResourcesUtil {
         outputStream.close();
     }
 
+    /**
+     * <p>Copies a raw resource into <code>file</code>.
+     *
+     * <p>Nothing is written if <code>file</code> already holds the same bytes. Otherwise the
+     * resource is copied into a temporary file next to <code>file</code>, with
+     * {@link FileChannel#transferTo} if it is stored uncompressed in the APK or through a reusable
+     * large buffer if not, and renamed over <code>file</code>, so readers never see a partially
+     * written file.
+     */
     public static void rawResourceToFile(Resources resources, final int resourceId, final File file) throws IOException {
-        final InputStream inputStream = resources.openRawResource(resourceId);
-        if (file.exists()) {
-            file.delete();
+        copyResourceToFile(resources, resourceId, file);
+    }
+
+    private static void copyResourceToFile(final Resources resources, final int resourceId, final File file) throws IOException {
+        AssetFileDescriptor assetFileDescriptor = null;
+        try {
+            assetFileDescriptor = resources.openRawResourceFd(resourceId);
+        } catch (final Resources.NotFoundException e) {
+            // RESOURCE IS COMPRESSED INSIDE THE APK, IT CAN ONLY BE STREAMED
+        }
+
+        if (assetFileDescriptor == null) {
+            if (file.exists()) {
+                try (InputStream inputStream = resources.openRawResource(resourceId)) {
+                    if (contentEquals(inputStream, file)) {
+                        return;
+                    }
+                }
+            }
+            try (InputStream inputStream = resources.openRawResource(resourceId)) {
+                copyAtomically(inputStream, file);
+            }
+            return;
         }
-        final FileOutputStream outputStream = new FileOutputStream(file);
 
+        try (FileInputStream inputStream = assetFileDescriptor.createInputStream()) {
+            final long length = assetFileDescriptor.getLength();
+
+            // LENGTH IS CHECKED FIRST, SO A CHANGED RESOURCE IS USUALLY DETECTED WITHOUT READING IT
+            if (file.exists() && file.length() == length && contentEquals(inputStream, file)) {
+                return;
+            }
+            copyAtomically(inputStream.getChannel(), assetFileDescriptor.getStartOffset(), length, file);
+        }
+    }
+
+    /**
+     * <p>Copies <code>length</code> bytes starting at <code>position</code> of a file channel into
+     * <code>file</code> with {@link FileChannel#transferTo}, through a temporary file.
+     *
+     * @return number of bytes copied
+     */
+    static long copyAtomically(final FileChannel source, final long position, final long length, final File file) throws IOException {
+        final File temporaryFile = createTemporaryFile(file);
         try {
-            final byte[] buffer = new byte[1024];
-            int readSize;
+            long copied = 0;
+            try (FileChannel target = new FileOutputStream(temporaryFile).getChannel()) {
+                while (copied < length) {
+                    final long transferred = source.transferTo(position + copied, length - copied, target);
+                    if (transferred <= 0) {
+                        break;
+                    }
+                    copied += transferred;
+                }
+            }
+            if (copied != length) {
+                throw new IOException(String.format("Copied %d of %d bytes into %s.", copied, length, file.getName()));
+            }
+            rename(temporaryFile, file);
+            return copied;
+        } finally {
+            temporaryFile.delete();
+        }
+    }
 
-            while ((readSize = inputStream.read(buffer)) > 0) {
-                outputStream.write(buffer, 0, readSize);
+    /**
+     * <p>Copies a stream into <code>file</code> through a temporary file, using a large buffer
+     * reused by every copy made on the calling thread.
+     *
+     * @return number of bytes copied
+     */
+    static long copyAtomically(final InputStream inputStream, final File file) throws IOException {
+        final ByteBuffer buffer = transferBuffer.get();
+        final byte[] array = buffer.array();
+        final File temporaryFile = createTemporaryFile(file);
+        try {
+            long copied = 0;
+            try (FileChannel target = new FileOutputStream(temporaryFile).getChannel()) {
+                int readSize;
+                while ((readSize = inputStream.read(array)) >= 0) {
+                    buffer.clear();
+                    buffer.limit(readSize);
+                    while (buffer.hasRemaining()) {
+                        target.write(buffer);
+                    }
+                    copied += readSize;
+                }
             }
-        } catch (final IOException e) {
-            Log.e(TAG, String.format("Saving raw resource failed.%s", Exceptions.getStackTraceString(e)));
+            rename(temporaryFile, file);
+            return copied;
         } finally {
-            inputStream.close();
-            outputStream.flush();
-            outputStream.close();
+            temporaryFile.delete();
+        }
+    }
+
+    /**
+     * @return true if <code>file</code> holds exactly the remaining bytes of
+     * <code>inputStream</code>
+     */
+    static boolean contentEquals(final InputStream inputStream, final File file) throws IOException {
+        try (InputStream fileStream = new FileInputStream(file)) {
+            final byte[] buffer = new byte[8192];
+            final byte[] fileBuffer = new byte[8192];
+            int readSize;
+
+            while ((readSize = readFully(inputStream, buffer)) > 0) {
+                if (readFully(fileStream, fileBuffer) != readSize) {
+                    return false;
+                }
+                for (int i = 0; i < readSize; i++) {
+                    if (buffer[i] != fileBuffer[i]) {
+                        return false;
+                    }
+                }
+            }
+
+            return fileStream.read() < 0;
+        }
+    }
+
+    private static int readFully(final InputStream inputStream, final byte[] buffer) throws IOException {
+        int total = 0;
+        int readSize;
+        while (total < buffer.length && (readSize = inputStream.read(buffer, total, buffer.length - total)) > 0) {
+            total += readSize;
+        }
+        return total;
+    }
+
+    private static File createTemporaryFile(final File file) {
+
+        // THREAD ID KEEPS CONCURRENT COPIES INTO THE SAME FILE APART
+        return new File(file.getAbsoluteFile().getParentFile(), "." + file.getName() + "-" + Thread.currentThread().getId() + ".tmp");
+    }
+
+    private static void rename(final File temporaryFile, final File file) throws IOException {
+        if (!temporaryFile.renameTo(file)) {
+            throw new IOException(String.format("Renaming %s to %s failed.", temporaryFile.getName(), file.getName()));
         }
     }
 }
@@ -0,0 +1,174 @@
+package com.example.kitapp.util;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p>Records how long each stage of a multi session pipeline takes and how many bytes it writes,
+ * so pipeline variants can be compared.
+ */
+public class StageMetrics {
+
+    public static class Stage {
+        private final String name;
+        private final long startTime;
+        private long endTime;
+        private boolean finished;
+        private long bytesWritten;
+
+        Stage(final String name, final long startTime) {
+            this.name = name;
+            this.startTime = startTime;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * @return {@link System#nanoTime()} when the stage started
+         */
+        public long getStartTime() {
+            return startTime;
+        }
+
+        /**
+         * @return {@link System#nanoTime()} when the stage ended, 0 while the stage is running
+         */
+        public long getEndTime() {
+            return endTime;
+        }
+
+        /**
+         * @return stage duration in milliseconds, 0 while the stage is running
+         */
+        public long getDuration() {
+            return finished ? TimeUnit.NANOSECONDS.toMillis(endTime - startTime) : 0;
+        }
+
+        /**
+         * @return total size of the files the stage wrote
+         */
+        public long getBytesWritten() {
+            return bytesWritten;
+        }
+
+        public boolean isFinished() {
+            return finished;
+        }
+    }
+
+    private final String name;
+    private final List<Stage> stages;
+
+    public StageMetrics(final String name) {
+        this.name = name;
+        this.stages = new ArrayList<>();
+    }
+
+    /**
+     * <p>Starts a new stage.
+     */
+    public void begin(final String stage) {
+        begin(stage, System.nanoTime());
+    }
+
+    synchronized void begin(final String stage, final long nowNanos) {
+        stages.add(new Stage(stage, nowNanos));
+    }
+
+    /**
+     * <p>Ends the running stage named <code>stage</code>. Stages may overlap.
+     *
+     * @param outputs files written by the stage, missing files count as empty
+     */
+    public void end(final String stage, final File... outputs) {
+        end(stage, System.nanoTime(), outputs);
+    }
+
+    synchronized void end(final String stage, final long nowNanos, final File... outputs) {
+        final Stage runningStage = findRunning(stage);
+        if (runningStage == null) {
+            throw new IllegalStateException("Stage " + stage + " is not running.");
+        }
+        runningStage.endTime = nowNanos;
+        runningStage.finished = true;
+        for (File output : outputs) {
+            runningStage.bytesWritten += output.length();
+        }
+    }
+
+    /**
+     * @return the last stage named <code>stage</code>, null if there is none
+     */
+    public synchronized Stage getStage(final String stage) {
+        for (int i = stages.size() - 1; i >= 0; i--) {
+            if (stages.get(i).name.equals(stage)) {
+                return stages.get(i);
+            }
+        }
+        return null;
+    }
+
+    public synchronized List<Stage> getStages() {
+        return new ArrayList<>(stages);
+    }
+
+    /**
+     * @return sum of the durations of all finished stages in milliseconds
+     */
+    public synchronized long getTotalDuration() {
+        long totalDuration = 0;
+        for (Stage stage : stages) {
+            totalDuration += stage.getDuration();
+        }
+        return totalDuration;
+    }
+
+    /**
+     * @return milliseconds from the start of the first stage to the end of the last finished
+     * stage, less than {@link #getTotalDuration()} if stages overlapped
+     */
+    public synchronized long getElapsedTime() {
+        long start = Long.MAX_VALUE;
+        long end = Long.MIN_VALUE;
+        for (Stage stage : stages) {
+            if (stage.finished) {
+                start = Math.min(start, stage.startTime);
+                end = Math.max(end, stage.endTime);
+            }
+        }
+        return (end == Long.MIN_VALUE) ? 0 : TimeUnit.NANOSECONDS.toMillis(end - start);
+    }
+
+    public synchronized long getTotalBytesWritten() {
+        long totalBytesWritten = 0;
+        for (Stage stage : stages) {
+            totalBytesWritten += stage.bytesWritten;
+        }
+        return totalBytesWritten;
+    }
+
+    private Stage findRunning(final String stage) {
+        for (Stage runningStage : stages) {
+            if (!runningStage.finished && runningStage.name.equals(stage)) {
+                return runningStage;
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public synchronized String toString() {
+        final StringBuilder builder = new StringBuilder(name).append(':');
+        for (Stage stage : stages) {
+            builder.append(String.format(Locale.ROOT, "\n  %s: %d ms, %d bytes written%s", stage.name, stage.getDuration(), stage.bytesWritten, stage.isFinished() ? "" : " (not finished)"));
+        }
+        builder.append(String.format(Locale.ROOT, "\n  total: %d ms in stages, %d ms elapsed, %d bytes written", getTotalDuration(), getElapsedTime(), getTotalBytesWritten()));
+        return builder.toString();
+    }
+
+}
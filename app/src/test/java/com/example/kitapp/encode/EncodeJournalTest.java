@@ -0,0 +1,166 @@
+package com.example.kitapp.encode;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+
+public class EncodeJournalTest {
+
+    private static final double DELTA = 0.0001;
+
+    private static final List<SegmentPlanner.Segment> PLAN = Arrays.asList(
+            new SegmentPlanner.Segment(0, 0, 30),
+            new SegmentPlanner.Segment(1, 30, 61.5),
+            new SegmentPlanner.Segment(2, 61.5, 90));
+
+    private File directory;
+    private File journalFile;
+
+    @Before
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("encode-journal").toFile();
+        journalFile = new File(directory, "journal.txt");
+    }
+
+    @After
+    public void tearDown() {
+        final File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        directory.delete();
+    }
+
+    private File writeSegment(final int index, final int size) throws IOException {
+        final File file = new File(directory, "segment-" + index + ".mkv");
+        Files.write(file.toPath(), new byte[size]);
+        return file;
+    }
+
+    @Test
+    public void resumesCompletedSegments() throws IOException {
+        final EncodeJournal journal = EncodeJournal.open(journalFile, "abc");
+        assertNull(journal.getSegments());
+
+        journal.writePlan("/videos/in put.mp4", PLAN);
+        final File first = writeSegment(0, 100);
+        final File second = writeSegment(1, 200);
+        journal.markCompleted(PLAN.get(0), first);
+        journal.markCompleted(PLAN.get(1), second);
+
+        final EncodeJournal resumed = EncodeJournal.open(journalFile, "abc");
+
+        assertEquals(3, resumed.getSegments().size());
+        assertEquals(61.5, resumed.getSegments().get(1).getEndTime(), DELTA);
+        assertEquals(2, resumed.getCompletedCount());
+        assertTrue(resumed.isCompleted(PLAN.get(0), first));
+        assertTrue(resumed.isCompleted(PLAN.get(1), second));
+        assertFalse(resumed.isCompleted(PLAN.get(2), new File(directory, "segment-2.mkv")));
+        assertEquals("/videos/in put.mp4", EncodeJournal.readInputPath(journalFile));
+    }
+
+    @Test
+    public void reencodesSegmentsThatChangedOnDisk() throws IOException {
+        final EncodeJournal journal = EncodeJournal.open(journalFile, "abc");
+        journal.writePlan("in.mp4", PLAN);
+        final File first = writeSegment(0, 100);
+        journal.markCompleted(PLAN.get(0), first);
+
+        // THE SEGMENT WAS TRUNCATED AFTER IT WAS RECORDED
+        writeSegment(0, 50);
+
+        assertFalse(EncodeJournal.open(journalFile, "abc").isCompleted(PLAN.get(0), first));
+    }
+
+    @Test
+    public void ignoresLineCutShortByCrash() throws IOException {
+        final EncodeJournal journal = EncodeJournal.open(journalFile, "abc");
+        journal.writePlan("in.mp4", PLAN);
+        journal.markCompleted(PLAN.get(0), writeSegment(0, 100));
+        try (FileOutputStream outputStream = new FileOutputStream(journalFile, true)) {
+            outputStream.write("done 1".getBytes(StandardCharsets.UTF_8));
+        }
+
+        final EncodeJournal resumed = EncodeJournal.open(journalFile, "abc");
+
+        assertEquals(3, resumed.getSegments().size());
+        assertEquals(1, resumed.getCompletedCount());
+    }
+
+    @Test
+    public void discardsJournalOfAnotherEncode() throws IOException {
+        final EncodeJournal journal = EncodeJournal.open(journalFile, "abc");
+        journal.writePlan("in.mp4", PLAN);
+        journal.markCompleted(PLAN.get(0), writeSegment(0, 100));
+
+        final EncodeJournal other = EncodeJournal.open(journalFile, "def");
+
+        assertNull(other.getSegments());
+        assertEquals(0, other.getCompletedCount());
+        assertFalse(journalFile.exists());
+        assertNull(EncodeJournal.readInputPath(journalFile));
+    }
+
+    @Test
+    public void resumesWithOtherThreadOptions() throws IOException {
+        final File input = writeSegment(9, 10);
+        final String[] audioOptions = {"-c:a", "aac"};
+        final EncodeJournal journal = EncodeJournal.open(journalFile, SegmentedEncoder.createFingerprint(input.getAbsolutePath(), "out.mp4",
+                ParallelismProfile.create("libx265", 8, 1920, 1080).appendTo(new String[]{"-c:v", "libx265", "-crf", "28"}), audioOptions, 30));
+        journal.writePlan(input.getAbsolutePath(), PLAN);
+        journal.markCompleted(PLAN.get(0), writeSegment(0, 100));
+
+        // THE DEVICE HEATED UP, SO THE RESUMED ENCODE GETS FEWER THREADS
+        final EncodeJournal resumed = EncodeJournal.open(journalFile, SegmentedEncoder.createFingerprint(input.getAbsolutePath(), "out.mp4",
+                ParallelismProfile.create("libx265", 2, 1920, 1080).appendTo(new String[]{"-c:v", "libx265", "-crf", "28"}), audioOptions, 30));
+
+        assertEquals(3, resumed.getSegments().size());
+        assertEquals(1, resumed.getCompletedCount());
+
+        // THE QUALITY STILL COUNTS
+        assertNull(EncodeJournal.open(journalFile, SegmentedEncoder.createFingerprint(input.getAbsolutePath(), "out.mp4",
+                new String[]{"-c:v", "libx265", "-crf", "23", "-threads", "2"}, audioOptions, 30)).getSegments());
+    }
+
+    @Test
+    public void deletesJournalWhenEncodeEnds() throws IOException {
+        final EncodeJournal journal = EncodeJournal.open(journalFile, "abc");
+        journal.writePlan("in.mp4", PLAN);
+
+        journal.delete();
+
+        assertFalse(journalFile.exists());
+        assertNull(EncodeJournal.open(journalFile, "abc").getSegments());
+    }
+
+    @Test
+    public void fingerprintChangesWithOptions() throws IOException {
+        final File input = writeSegment(9, 10);
+        final String fingerprint = EncodeJournal.createFingerprint(input.getAbsolutePath(), "out.mp4", new String[]{"-crf", "23"});
+
+        assertEquals(fingerprint, EncodeJournal.createFingerprint(input.getAbsolutePath(), "out.mp4", new String[]{"-crf", "23"}));
+        assertNotEquals(fingerprint, EncodeJournal.createFingerprint(input.getAbsolutePath(), "out.mp4", new String[]{"-crf", "24"}));
+        assertNotEquals(fingerprint, EncodeJournal.createFingerprint(input.getAbsolutePath(), "out.mp4", new String[]{"-crf"}, new String[]{"23"}));
+
+        // THE INPUT WAS REPLACED
+        writeSegment(9, 20);
+        assertNotEquals(fingerprint, EncodeJournal.createFingerprint(input.getAbsolutePath(), "out.mp4", new String[]{"-crf", "23"}));
+    }
+
+}
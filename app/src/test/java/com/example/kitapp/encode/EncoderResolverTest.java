@@ -0,0 +1,143 @@
+package com.example.kitapp.encode;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public class EncoderResolverTest {
+
+    /**
+     * Device with hardware encoders for the listed MIME types up to a maximum height.
+     */
+    static class FakeCapabilityProvider implements EncoderResolver.CapabilityProvider {
+        final List<String> mimeTypes;
+        final int maxHeight;
+        final List<String> queries = new ArrayList<>();
+
+        FakeCapabilityProvider(final int maxHeight, final String... mimeTypes) {
+            this.mimeTypes = Arrays.asList(mimeTypes);
+            this.maxHeight = maxHeight;
+        }
+
+        @Override
+        public boolean isHardwareEncoderAvailable(final String mimeType, final int width, final int height) {
+            queries.add(mimeType + " " + width + "x" + height);
+            return mimeTypes.contains(mimeType) && height <= maxHeight;
+        }
+    }
+
+    private File storeFile;
+
+    @Before
+    public void setUp() throws IOException {
+        storeFile = Files.createTempFile("encoder_paths", ".properties").toFile();
+        storeFile.delete();
+    }
+
+    @After
+    public void tearDown() {
+        storeFile.delete();
+    }
+
+    @Test
+    public void prefersHardwareEncoderWhenAdvertised() {
+        final EncoderResolver resolver = new EncoderResolver(new FakeCapabilityProvider(2160, "video/avc", "video/hevc"), storeFile);
+
+        final List<EncoderResolver.Encoder> encoders = resolver.resolve(EncoderResolver.FORMAT_HEVC, 1920, 1080, 8);
+
+        assertEquals(2, encoders.size());
+        assertTrue(encoders.get(0).isHardware());
+        assertEquals("hevc_mediacodec", encoders.get(0).getCodecName());
+        assertEquals(Arrays.asList("-c:v", "hevc_mediacodec", "-b:v", "3732k", "-g", "60"), Arrays.asList(encoders.get(0).getOptions()));
+        assertFalse(encoders.get(1).isHardware());
+        assertEquals("libx265", encoders.get(1).getCodecName());
+        assertEquals(Arrays.asList("-c:v", "libx265", "-crf", "28", "-preset", "medium"), Arrays.asList(encoders.get(1).getOptions()).subList(0, 6));
+    }
+
+    @Test
+    public void usesSoftwareEncoderWithoutHardwareSupport() {
+        final FakeCapabilityProvider provider = new FakeCapabilityProvider(1080, "video/avc");
+        final EncoderResolver resolver = new EncoderResolver(provider, storeFile);
+
+        final List<EncoderResolver.Encoder> hevc = resolver.resolve(EncoderResolver.FORMAT_HEVC, 1280, 720, 4);
+        final List<EncoderResolver.Encoder> large = resolver.resolve(EncoderResolver.FORMAT_H264, 3840, 2160, 4);
+
+        assertEquals(1, hevc.size());
+        assertEquals("libx265", hevc.get(0).getCodecName());
+        assertEquals(1, large.size());
+        assertEquals(Arrays.asList("-c:v", "libx264", "-crf", "23", "-preset", "medium", "-threads", "4"), Arrays.asList(large.get(0).getOptions()));
+        assertEquals(Arrays.asList("video/hevc 1280x720", "video/avc 3840x2160"), provider.queries);
+    }
+
+    @Test
+    public void remembersFailedHardwareEncoderPerSize() {
+        final EncoderResolver resolver = new EncoderResolver(new FakeCapabilityProvider(2160, "video/avc"), storeFile);
+        final EncoderResolver.Encoder hardware = resolver.resolve(EncoderResolver.FORMAT_H264, 1920, 1080, 8).get(0);
+
+        resolver.reportFailure(EncoderResolver.FORMAT_H264, 1920, 1080, hardware);
+
+        // A NEW RESOLVER READS THE REMEMBERED PATH FROM DISK
+        final EncoderResolver reloaded = new EncoderResolver(new FakeCapabilityProvider(2160, "video/avc"), storeFile);
+        final List<EncoderResolver.Encoder> encoders = reloaded.resolve(EncoderResolver.FORMAT_H264, 1920, 1080, 8);
+        assertEquals(1, encoders.size());
+        assertEquals("libx264", encoders.get(0).getCodecName());
+        assertTrue(reloaded.resolve(EncoderResolver.FORMAT_H264, 1280, 720, 8).get(0).isHardware());
+
+        reloaded.clear();
+
+        assertTrue(reloaded.resolve(EncoderResolver.FORMAT_H264, 1920, 1080, 8).get(0).isHardware());
+        assertFalse(storeFile.exists());
+    }
+
+    @Test
+    public void remembersWorkingHardwareEncoderWithoutQueryingAgain() {
+        final FakeCapabilityProvider provider = new FakeCapabilityProvider(2160, "video/avc");
+        final EncoderResolver resolver = new EncoderResolver(provider, storeFile);
+        resolver.reportSuccess(EncoderResolver.FORMAT_H264, 1280, 720, resolver.resolve(EncoderResolver.FORMAT_H264, 1280, 720, 8).get(0));
+
+        final FakeCapabilityProvider reloadedProvider = new FakeCapabilityProvider(0);
+        final List<EncoderResolver.Encoder> encoders = new EncoderResolver(reloadedProvider, storeFile).resolve(EncoderResolver.FORMAT_H264, 1280, 720, 8);
+
+        assertTrue(encoders.get(0).isHardware());
+        assertEquals("libx264", encoders.get(1).getCodecName());
+        assertTrue(reloadedProvider.queries.isEmpty());
+    }
+
+    @Test
+    public void softwareFailureIsNotRemembered() {
+        final EncoderResolver resolver = new EncoderResolver(new FakeCapabilityProvider(0), storeFile);
+        final EncoderResolver.Encoder software = resolver.resolve(EncoderResolver.FORMAT_H264, 0, 0, 8).get(0);
+
+        resolver.reportFailure(EncoderResolver.FORMAT_H264, 0, 0, software);
+
+        assertFalse(storeFile.exists());
+    }
+
+    @Test
+    public void hardwareBitrateFollowsFormatAndSize() {
+        assertEquals(6221, EncoderResolver.getEquivalentBitrate(EncoderResolver.FORMAT_H264, 1920, 1080));
+        assertEquals(6221, EncoderResolver.getEquivalentBitrate(EncoderResolver.FORMAT_H264, 0, 0));
+        assertEquals(1659, EncoderResolver.getEquivalentBitrate(EncoderResolver.FORMAT_HEVC, 1280, 720));
+        assertEquals(500, EncoderResolver.getEquivalentBitrate(EncoderResolver.FORMAT_HEVC, 320, 240));
+    }
+
+    @Test
+    public void recognisesFormats() {
+        assertTrue(EncoderResolver.isFormat("h264"));
+        assertTrue(EncoderResolver.isFormat("hevc"));
+        assertFalse(EncoderResolver.isFormat("h264_mediacodec"));
+        assertFalse(EncoderResolver.isFormat("libx264"));
+    }
+
+}
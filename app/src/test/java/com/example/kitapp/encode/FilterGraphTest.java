@@ -0,0 +1,132 @@
+package com.example.kitapp.encode;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import com.example.kitapp.encode.FilterGraph.Filter;
+import com.example.kitapp.encode.FilterGraph.Stream;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+public class FilterGraphTest {
+
+    private static final Filter SCALE = Filter.of("scale", "-2", "720");
+    private static final Filter FORMAT = Filter.of("format", "yuv420p");
+
+    @Test
+    public void writesLinearFiltersAsOneChain() {
+        final FilterGraph graph = new FilterGraph();
+        final Stream scaled = graph.apply(graph.input(0), SCALE);
+        final int output = graph.output(graph.apply(scaled, FORMAT, Filter.of("fps", "30")));
+
+        assertEquals("[0:v]scale=-2:720,format=yuv420p,fps=30[s2]", graph.build());
+        assertEquals("[s2]", graph.getOutputLabel(output));
+    }
+
+    @Test
+    public void splitsStreamsReadMoreThanOnce() {
+        final FilterGraph graph = new FilterGraph();
+        final Stream scaled = graph.apply(graph.input(0), SCALE);
+        final Stream first = graph.apply(scaled, Filter.of("trim", "duration=1"));
+        final Stream second = graph.apply(scaled, Filter.of("trim", "duration=2"));
+        final int output = graph.output(graph.apply(Arrays.asList(first, second), Filter.of("concat", "n=2")));
+
+        assertEquals("[0:v]scale=-2:720,split=2[s1_0][s1_1];[s1_0]trim=duration=1[s2];[s1_1]trim=duration=2[s3];[s2][s3]concat=n=2[s4]", graph.build());
+        assertEquals("[s4]", graph.getOutputLabel(output));
+    }
+
+    @Test
+    public void sharesIdenticalChains() {
+        final FilterGraph graph = new FilterGraph();
+        final Stream first = graph.apply(graph.input(0), SCALE, FORMAT);
+        final Stream second = graph.apply(graph.input(0), SCALE, FORMAT);
+        final Stream other = graph.apply(graph.input(1), SCALE, FORMAT);
+
+        assertSame(first, second);
+        graph.output(graph.apply(Arrays.asList(first, second, other), Filter.of("hstack", "inputs=3")));
+
+        assertEquals(2 + 1, graph.getChainCount());
+        assertEquals("[0:v]scale=-2:720,format=yuv420p,split=2[s1_0][s1_1];[1:v]scale=-2:720,format=yuv420p[s3];[s1_0][s1_1][s3]hstack=inputs=3[s4]", graph.build());
+    }
+
+    @Test
+    public void readsInputsWithoutSplit() {
+        final FilterGraph graph = new FilterGraph();
+        final Stream background = graph.input(1);
+        final Stream first = graph.apply(Arrays.asList(background, graph.input(0)), Filter.of("overlay"));
+        final Stream second = graph.apply(Arrays.asList(background, graph.apply(graph.input(0), SCALE)), Filter.of("overlay"));
+        graph.output(first);
+        graph.output(second);
+
+        assertEquals("[1:v][0:v]overlay[s2];[0:v]scale=-2:720[s3];[1:v][s3]overlay[s4]", graph.build());
+        assertEquals("[s2]", graph.getOutputLabel(0));
+        assertEquals("[s4]", graph.getOutputLabel(1));
+    }
+
+    @Test
+    public void endsSinksWithoutLabels() {
+        final FilterGraph graph = new FilterGraph();
+        final Stream video = graph.apply(graph.input(0), FORMAT);
+        graph.sink(video, Filter.of("vidstabdetect", "result=t.trf"), Filter.of("nullsink"));
+        final int output = graph.output(video);
+
+        assertEquals("[0:v]format=yuv420p,split=2[s1_0][s1_1];[s1_0]vidstabdetect=result=t.trf,nullsink", graph.build());
+        assertEquals("[s1_1]", graph.getOutputLabel(output));
+    }
+
+    @Test
+    public void buildsLargeGraphsInLinearSize() {
+        final FilterGraph graph = new FilterGraph();
+        final Stream[] scaled = new Stream[1000];
+        for (int i = 0; i < scaled.length; i++) {
+            scaled[i] = graph.apply(graph.input(i), SCALE, FORMAT);
+        }
+        graph.output(graph.apply(Arrays.asList(scaled), Filter.of("concat", "n=" + scaled.length)));
+
+        final String filter = graph.build();
+
+        assertEquals(scaled.length + 1, graph.getChainCount());
+        assertEquals(scaled.length + 1, filter.split(";").length);
+    }
+
+    @Test
+    public void joinsFilterOptions() {
+        assertEquals("nullsink", Filter.of("nullsink").toString());
+        assertEquals("pad=width=640:height=427", Filter.of("pad", "width=640", "height=427").toString());
+        assertEquals(Filter.of("scale", "-2", "720"), SCALE);
+    }
+
+    @Test
+    public void cachesArgumentsByParameters() {
+        final CommandCache cache = new CommandCache(2);
+        final int[] builds = new int[1];
+        final CommandCache.Builder builder = new CommandCache.Builder() {
+
+            @Override
+            public String[] build() {
+                builds[0]++;
+                return new String[]{"-i", "in.mp4", "out.mp4"};
+            }
+        };
+
+        final String[] first = cache.get(builder, "encode", new String[]{"a.jpg", "b.jpg"}, "mpeg4");
+        first[0] = "changed";
+        final String[] second = cache.get(builder, "encode", new String[]{"a.jpg", "b.jpg"}, "mpeg4");
+
+        assertEquals(1, builds[0]);
+        assertArrayEquals(new String[]{"-i", "in.mp4", "out.mp4"}, second);
+        assertEquals(1, cache.getHitCount());
+
+        cache.get(builder, "encode", new String[]{"a.jpg"}, "mpeg4");
+        cache.get(builder, "encode", new String[]{"b.jpg"}, "mpeg4");
+        cache.get(builder, "encode", new String[]{"a.jpg", "b.jpg"}, "mpeg4");
+
+        assertEquals(4, builds[0]);
+        assertEquals(2, cache.size());
+        assertEquals(4, cache.getMissCount());
+    }
+
+}
@@ -0,0 +1,78 @@
+package com.example.kitapp.encode;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+public class MultiOutputPlannerTest {
+
+    private static final String[] X264 = {"-c:v", "libx264", "-crf", "23"};
+    private static final String[] VP9 = {"-c:v", "libvpx-vp9", "-b:v", "2M"};
+    private static final String[] AAC = {"-c:a", "aac"};
+    private static final String[] OPUS = {"-c:a", "libopus"};
+
+    @Test
+    public void splitsVideoIntoScaledBranches() {
+        final String[] arguments = MultiOutputPlanner.createArguments("in.mp4", Arrays.asList(
+                new MultiOutputPlanner.Output("source.mp4", 0, X264, AAC),
+                new MultiOutputPlanner.Output("720.mp4", 720, X264, AAC),
+                new MultiOutputPlanner.Output("480.webm", 480, VP9, OPUS)));
+
+        assertArrayEquals(new String[]{
+                "-hide_banner", "-y", "-i", "in.mp4",
+                "-filter_complex", "[0:v:0]split=3[s0][s1][s2];[s0]null[v0];[s1]scale=-2:720[v1];[s2]scale=-2:480[v2]",
+                "-map", "[v0]", "-c:v", "libx264", "-crf", "23", "-map", "0:a:0?", "-c:a", "aac", "source.mp4",
+                "-map", "[v1]", "-c:v", "libx264", "-crf", "23", "-map", "0:a:0?", "-c:a", "aac", "720.mp4",
+                "-map", "[v2]", "-c:v", "libvpx-vp9", "-b:v", "2M", "-map", "0:a:0?", "-c:a", "libopus", "480.webm"
+        }, arguments);
+    }
+
+    @Test
+    public void mapsSingleUnscaledOutputDirectly() {
+        final String[] arguments = MultiOutputPlanner.createArguments("in.mp4", Collections.singletonList(
+                new MultiOutputPlanner.Output("out.mp4", 0, X264, null)));
+
+        assertArrayEquals(new String[]{
+                "-hide_banner", "-y", "-i", "in.mp4",
+                "-map", "0:v:0", "-c:v", "libx264", "-crf", "23", "-an", "out.mp4"
+        }, arguments);
+    }
+
+    @Test
+    public void scalesSingleOutputWithoutSplit() {
+        assertEquals("[0:v:0]scale=-2:360[v0]", MultiOutputPlanner.createFilterGraph(Collections.singletonList(
+                new MultiOutputPlanner.Output("out.mp4", 360, X264, AAC))));
+    }
+
+    @Test
+    public void encodesAudioOnlyOutputsWithoutFilterGraph() {
+        final String[] arguments = MultiOutputPlanner.createArguments("in.wav", Arrays.asList(
+                MultiOutputPlanner.Output.audio("a.mp3", new String[]{"-c:a", "libmp3lame"}),
+                MultiOutputPlanner.Output.audio("a.wav", new String[]{"-af", "aresample=resampler=soxr", "-ar", "44100"})));
+
+        assertNull(MultiOutputPlanner.createFilterGraph(Arrays.asList(MultiOutputPlanner.Output.audio("a.mp3", AAC))));
+        assertArrayEquals(new String[]{
+                "-hide_banner", "-y", "-i", "in.wav",
+                "-vn", "-map", "0:a:0", "-c:a", "libmp3lame", "a.mp3",
+                "-vn", "-map", "0:a:0", "-af", "aresample=resampler=soxr", "-ar", "44100", "a.wav"
+        }, arguments);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsEmptyOutputs() {
+        MultiOutputPlanner.createArguments("in.mp4", Collections.<MultiOutputPlanner.Output>emptyList());
+    }
+
+    @Test
+    public void createsFileNameParts() {
+        assertEquals("mp3_liblame", MultiOutputPlanner.toFileNamePart("mp3 (liblame)"));
+        assertEquals("amr_nb", MultiOutputPlanner.toFileNamePart("amr-nb"));
+        assertEquals("x264", MultiOutputPlanner.toFileNamePart("x264"));
+    }
+
+}
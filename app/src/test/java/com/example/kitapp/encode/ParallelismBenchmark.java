@@ -0,0 +1,108 @@
+package com.example.kitapp.encode;
+
+import org.junit.Ignore;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * <p>Encodes a generated clip with each supported encoder at three resolutions, once with the
+ * encoder's own threading defaults and once with the options of {@link ParallelismProfile}, and
+ * prints the speedup of the profile.
+ *
+ * <p>Needs an <code>ffmpeg</code> executable on the <code>PATH</code>; encoders it was not built
+ * with are reported as <code>n/a</code>. Takes several minutes, so it is ignored by default.
+ * Remove {@link Ignore} or run {@link #main(String[])} to print the results.
+ */
+@Ignore("Benchmark, run manually")
+public class ParallelismBenchmark {
+
+    private static final String[] CODECS = {"libx264", "libx265", "libvpx-vp9", "libaom-av1"};
+
+    private static final int[][] SIZES = {{640, 360}, {1280, 720}, {1920, 1080}};
+
+    private static final int FRAME_COUNT = 60;
+
+    /**
+     * Rate control options, shared by both runs so only threading differs.
+     */
+    private static String[] getRateOptions(final String codecName) {
+        switch (codecName) {
+            case "libx264":
+                return new String[]{"-crf", "23", "-preset", "medium"};
+            case "libx265":
+                return new String[]{"-crf", "28", "-preset", "fast"};
+            case "libvpx-vp9":
+                return new String[]{"-b:v", "2M", "-deadline", "good", "-cpu-used", "4"};
+            default:
+                return new String[]{"-crf", "30", "-b:v", "0", "-strict", "experimental"};
+        }
+    }
+
+    public static void main(final String[] args) throws Exception {
+        new ParallelismBenchmark().compareProfiles();
+    }
+
+    @Test
+    public void compareProfiles() throws Exception {
+        final int cpuCount = Runtime.getRuntime().availableProcessors();
+        System.out.println(String.format(Locale.ROOT, "%d cores, %d frames per encode", cpuCount, FRAME_COUNT));
+        System.out.println(String.format(Locale.ROOT, "%-12s %10s %14s %14s %9s  %s", "codec", "size", "default(fps)", "profile(fps)", "speedup", "options"));
+
+        for (String codecName : CODECS) {
+            for (int[] size : SIZES) {
+                final ParallelismProfile profile = ParallelismProfile.create(codecName, cpuCount, size[0], size[1]);
+
+                // LIBAOM GETS THE SPEED OF THE PROFILE IN BOTH RUNS, ITS DEFAULT TAKES MINUTES PER FRAME
+                final String[] rateOptions = (profile.getCpuUsed() >= 0) ?
+                        concat(getRateOptions(codecName), "-cpu-used", String.valueOf(profile.getCpuUsed())) : getRateOptions(codecName);
+
+                final double defaultFps = measure(codecName, size, rateOptions);
+                final double profileFps = (defaultFps > 0) ? measure(codecName, size, profile.appendTo(rateOptions)) : -1;
+
+                System.out.println(String.format(Locale.ROOT, "%-12s %10s %14s %14s %9s  %s", codecName, size[0] + "x" + size[1],
+                        format(defaultFps), format(profileFps), (profileFps > 0) ? String.format(Locale.ROOT, "%.2fx", profileFps / defaultFps) : "n/a",
+                        Arrays.toString(profile.getOptions())));
+            }
+        }
+    }
+
+    /**
+     * @return frames encoded per second, -1 if the encode failed
+     */
+    private static double measure(final String codecName, final int[] size, final String[] options) throws InterruptedException {
+        final List<String> command = new ArrayList<>(Arrays.asList("ffmpeg", "-hide_banner", "-loglevel", "error", "-f", "lavfi",
+                "-i", String.format(Locale.ROOT, "testsrc2=size=%dx%d:rate=30", size[0], size[1]), "-frames:v", String.valueOf(FRAME_COUNT), "-c:v", codecName));
+        command.addAll(Arrays.asList(options));
+        command.addAll(Arrays.asList("-f", "null", "-"));
+
+        try {
+            final long startTime = System.nanoTime();
+            final Process process = new ProcessBuilder(command).redirectErrorStream(true).start();
+            while (process.getInputStream().read() != -1) {
+                // DISCARD ERRORS OF ENCODERS THAT ARE NOT AVAILABLE
+            }
+            if (process.waitFor() != 0) {
+                return -1;
+            }
+            return FRAME_COUNT * 1000000000.0 / (System.nanoTime() - startTime);
+        } catch (final IOException e) {
+            return -1;
+        }
+    }
+
+    private static String[] concat(final String[] options, final String... more) {
+        final List<String> all = new ArrayList<>(Arrays.asList(options));
+        all.addAll(Arrays.asList(more));
+        return all.toArray(new String[0]);
+    }
+
+    private static String format(final double fps) {
+        return (fps > 0) ? String.format(Locale.ROOT, "%.1f", fps) : "n/a";
+    }
+
+}
@@ -0,0 +1,63 @@
+package com.example.kitapp.encode;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+public class ParallelismProfileTest {
+
+    @Test
+    public void tilesVp9ByWidthAndCores() {
+        assertArrayEquals(new String[]{"-threads", "8", "-row-mt", "1", "-tile-columns", "2"}, ParallelismProfile.create("libvpx-vp9", 8, 1280, 720).getOptions());
+        assertArrayEquals(new String[]{"-threads", "8", "-row-mt", "1", "-tile-columns", "3"}, ParallelismProfile.create("libvpx-vp9", 8, 3840, 2160).getOptions());
+
+        // TILES CAN NOT BE NARROWER THAN 256 PIXELS
+        assertEquals(0, ParallelismProfile.create("libvpx-vp9", 8, 320, 240).getTileColumns());
+        assertEquals(1, ParallelismProfile.create("libvpx-vp9", 2, 1920, 1080).getTileColumns());
+    }
+
+    @Test
+    public void tilesAomAndSetsSpeedByCores() {
+        final ParallelismProfile profile = ParallelismProfile.create("libaom-av1", 8, 1920, 1080);
+
+        assertArrayEquals(new String[]{"-threads", "8", "-row-mt", "1", "-tile-columns", "2", "-tile-rows", "1", "-cpu-used", "6"}, profile.getOptions());
+        assertEquals(8, ParallelismProfile.create("libaom-av1", 2, 640, 360).getCpuUsed());
+        assertEquals(0, ParallelismProfile.create("libaom-av1", 2, 640, 360).getTileRows());
+    }
+
+    @Test
+    public void limitsX264AndX265ThreadsByRows() {
+        assertArrayEquals(new String[]{"-threads", "8"}, ParallelismProfile.create("libx264", 8, 1920, 1080).getOptions());
+        assertArrayEquals(new String[]{"-threads", "5"}, ParallelismProfile.create("libx264", 8, 256, 160).getOptions());
+        assertArrayEquals(new String[]{"-x265-params", "pools=8:frame-threads=3"}, ParallelismProfile.create("libx265", 8, 1920, 1080).getOptions());
+        assertEquals(1, ParallelismProfile.create("libx265", 8, 256, 144).getFrameThreads());
+    }
+
+    @Test
+    public void capsThreadsAndAssumesFullHdWhenSizeIsUnknown() {
+        final ParallelismProfile profile = ParallelismProfile.create("libvpx-vp9", 64, 0, 0);
+
+        assertEquals(ParallelismProfile.MAX_THREADS, profile.getThreadCount());
+        assertEquals(1920, profile.getWidth());
+        assertEquals(2, profile.getTileColumns());
+    }
+
+    @Test
+    public void leavesOtherEncodersUnchanged() {
+        final String[] defaults = {"-crf", "23"};
+
+        assertEquals(0, ParallelismProfile.create("mpeg4", 8, 1920, 1080).getOptions().length);
+        assertArrayEquals(defaults, ParallelismProfile.create("mpeg4", 8, 1920, 1080).appendTo(defaults));
+        assertArrayEquals(new String[]{"-crf", "23", "-kvazaar-params", "threads=4"}, ParallelismProfile.create("libkvazaar", 4, 1920, 1080).appendTo(defaults));
+    }
+
+    @Test
+    public void removesOnlyParallelismOptions() {
+        final String[] options = ParallelismProfile.create("libaom-av1", 8, 1920, 1080).appendTo(new String[]{"-c:v", "libaom-av1", "-crf", "30"});
+
+        assertArrayEquals(new String[]{"-c:v", "libaom-av1", "-crf", "30"}, ParallelismProfile.removeFrom(options));
+        assertArrayEquals(new String[]{"-preset", "fast"}, ParallelismProfile.removeFrom(new String[]{"-preset", "fast", "-threads", "4"}));
+    }
+
+}
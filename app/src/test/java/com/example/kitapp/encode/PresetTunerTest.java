@@ -0,0 +1,171 @@
+package com.example.kitapp.encode;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public class PresetTunerTest {
+
+    private File directory;
+
+    /**
+     * <p>Pretends faster presets encode faster with a lower quality. Presets listed in
+     * <code>failing</code> can not be encoded.
+     */
+    private static class FakeCalibrator implements PresetTuner.Calibrator {
+        final List<String> calibrated = new ArrayList<>();
+        final List<String> failing;
+
+        FakeCalibrator(final String... failing) {
+            this.failing = Arrays.asList(failing);
+        }
+
+        @Override
+        public PresetTuner.Result calibrate(final String codecName, final PresetTuner.Candidate candidate) throws Exception {
+            calibrated.add(candidate.getName());
+            final String preset = candidate.getOptions()[3];
+            if (failing.contains(preset)) {
+                throw new IOException("Unsupported preset " + preset);
+            }
+
+            final int speed = Arrays.asList("medium", "fast", "faster", "veryfast", "superfast", "ultrafast").indexOf(preset);
+            return new PresetTuner.Result(candidate, 20 + 20 * speed, 1000000 + 200000L * speed, 5000, 0.99 - 0.01 * speed);
+        }
+
+        @Override
+        public void cancel() {
+        }
+    }
+
+    @Before
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("preset-tuner").toFile();
+    }
+
+    @After
+    public void tearDown() {
+        final File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        directory.delete();
+    }
+
+    private static PresetTuner.Result result(final String name, final double fps, final long size, final double ssim) {
+        return new PresetTuner.Result(new PresetTuner.Candidate(name, new String[0]), fps, size, 1000, ssim);
+    }
+
+    @Test
+    public void selectsFastestResultWithinQualityBudget() {
+        final PresetTuner.Result slow = result("slow", 20, 1000, 0.99);
+        final PresetTuner.Result fast = result("fast", 60, 2000, 0.96);
+        final PresetTuner.Result fastest = result("fastest", 120, 3000, 0.90);
+
+        assertSame(fast, PresetTuner.select(Arrays.asList(slow, fast, fastest), PresetTuner.Budget.DEFAULT));
+    }
+
+    @Test
+    public void selectsBestQualityAboveTargetSpeed() {
+        final PresetTuner.Budget budget = new PresetTuner.Budget(PresetTuner.Goal.QUALITY, 0.9, 0, 50);
+        final PresetTuner.Result slow = result("slow", 20, 1000, 0.99);
+        final PresetTuner.Result fast = result("fast", 60, 2000, 0.96);
+        final PresetTuner.Result fastest = result("fastest", 120, 3000, 0.93);
+
+        assertSame(fast, PresetTuner.select(Arrays.asList(slow, fast, fastest), budget));
+
+        // NOTHING REACHES THE TARGET, THE FASTEST ONE IS CLOSEST
+        assertSame(fast, PresetTuner.select(Arrays.asList(slow, fast), new PresetTuner.Budget(PresetTuner.Goal.QUALITY, 0.9, 0, 100)));
+    }
+
+    @Test
+    public void appliesBitrateLimit() {
+        final PresetTuner.Budget budget = new PresetTuner.Budget(PresetTuner.Goal.SPEED, 0.9, 10, 30);
+        final PresetTuner.Result small = result("small", 20, 1000, 0.95);
+        final PresetTuner.Result large = result("large", 60, 2000, 0.96);
+
+        assertEquals(8, small.getBitrate(), 0.001);
+        assertSame(small, PresetTuner.select(Arrays.asList(small, large), budget));
+    }
+
+    @Test
+    public void fallsBackToBestQualityWhenBudgetCanNotBeMet() {
+        final PresetTuner.Result worse = result("worse", 120, 1000, 0.80);
+        final PresetTuner.Result better = result("better", 60, 1000, 0.85);
+
+        assertSame(better, PresetTuner.select(Arrays.asList(worse, better), PresetTuner.Budget.DEFAULT));
+        assertNull(PresetTuner.select(new ArrayList<PresetTuner.Result>(), PresetTuner.Budget.DEFAULT));
+    }
+
+    @Test
+    public void tunesPersistsAndReloadsChoice() throws Exception {
+        final File store = new File(directory, "tuner.properties");
+        final PresetTuner tuner = new PresetTuner(store);
+        final FakeCalibrator calibrator = new FakeCalibrator("superfast");
+        final List<PresetTuner.Result> results = new ArrayList<>();
+
+        assertNull(tuner.getTunedOptions("libx264", PresetTuner.Budget.DEFAULT));
+
+        final PresetTuner.Result chosen = tuner.tune("libx264", PresetTuner.Budget.DEFAULT, calibrator, results);
+
+        // VERYFAST IS THE FASTEST PRESET WITH AN SSIM OF AT LEAST 0.95, SUPERFAST FAILED
+        assertEquals("veryfast", chosen.getCandidate().getOptions()[3]);
+        assertEquals(PresetTuner.getCandidates("libx264", Runtime.getRuntime().availableProcessors()).size(), calibrator.calibrated.size());
+        assertEquals(calibrator.calibrated.size() - results.size(), PresetTuner.getCandidates("libx264", Runtime.getRuntime().availableProcessors()).size() / 6);
+        assertTrue(store.exists());
+
+        final PresetTuner reloaded = new PresetTuner(store);
+        assertArrayEquals(chosen.getCandidate().getOptions(), reloaded.getTunedOptions("libx264", PresetTuner.Budget.DEFAULT));
+        assertNull(reloaded.getTunedOptions("libx264", new PresetTuner.Budget(PresetTuner.Goal.QUALITY, 0.95, 0, 30)));
+        assertNull(reloaded.getTunedOptions("libx265", PresetTuner.Budget.DEFAULT));
+
+        final String[] defaultOptions = {"-crf", "23"};
+        assertSame(defaultOptions, reloaded.getOptions("libx265", PresetTuner.Budget.DEFAULT, defaultOptions));
+
+        reloaded.clear();
+        assertNull(reloaded.getTunedOptions("libx264", PresetTuner.Budget.DEFAULT));
+        assertFalse(store.exists());
+    }
+
+    @Test
+    public void listsCandidatesOfTunedCodecsOnly() {
+        assertEquals(12, PresetTuner.getCandidates("libx264", 8).size());
+        assertEquals(6, PresetTuner.getCandidates("libx264", 1).size());
+        assertEquals(8, PresetTuner.getCandidates("libvpx-vp9", 8).size());
+        assertTrue(PresetTuner.isTunable("libaom-av1"));
+        assertFalse(PresetTuner.isTunable("mpeg4"));
+        assertArrayEquals(new String[]{"-crf", "28", "-preset", "ultrafast", "-threads", "4"}, PresetTuner.getCandidates("libx265", 4).get(0).getOptions());
+    }
+
+    @Test
+    public void parsesSsimOfCalibrationEncode() {
+        assertEquals(0.981234, FFmpegCalibrator.parseSsim("frame=  150 fps=0.0\n[Parsed_ssim_2 @ 0x7b] SSIM Y:0.978 (16.6) U:0.99 (20.1) V:0.99 (20.3) All:0.981234 (17.3)\n"), 0.000001);
+        assertEquals(-1, FFmpegCalibrator.parseSsim("Conversion failed!"), 0);
+        assertEquals(-1, FFmpegCalibrator.parseSsim(null), 0);
+    }
+
+    @Test
+    public void createsCalibrationArguments() {
+        assertArrayEquals(new String[]{"-hide_banner", "-y", "-t", "5.000", "-i", "in.mp4", "-an", "-c:v", "libx264", "-preset", "fast", "-f", "matroska", "out.mkv"},
+                FFmpegCalibrator.createEncodeArguments("in.mp4", "out.mkv", 5000, "libx264", new String[]{"-preset", "fast"}));
+        assertArrayEquals(new String[]{"-hide_banner", "-i", "out.mkv", "-t", "2.500", "-i", "in.mp4",
+                        "-filter_complex", "[0:v]format=yuv420p[s1];[1:v]format=yuv420p[s3];[s1][s3]ssim[s4]", "-map", "[s4]", "-f", "null", "-"},
+                FFmpegCalibrator.createSsimArguments("out.mkv", "in.mp4", 2500));
+    }
+
+}
@@ -0,0 +1,85 @@
+package com.example.kitapp.encode;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+import java.util.List;
+
+public class SegmentPlannerTest {
+
+    private static final double DELTA = 0.0001;
+
+    @Test
+    public void parsesKeyframesAndDuration() {
+        final String output = "0.000000,K_\n"
+                + "0.040000,__\n"
+                + "2.000000,K_\n"
+                + "2.040000,__\n"
+                + "\n"
+                + "4.000000,K_\n"
+                + "N/A,__\n"
+                + "30.000000\n";
+
+        final SegmentPlanner.KeyframeIndex index = SegmentPlanner.parseKeyframes(output);
+
+        assertEquals(30.0, index.getDuration(), DELTA);
+        assertArrayEquals(new double[]{0.0, 2.0, 4.0}, index.getKeyframeTimes(), DELTA);
+    }
+
+    @Test
+    public void usesLastPacketWhenDurationIsMissing() {
+        final SegmentPlanner.KeyframeIndex index = SegmentPlanner.parseKeyframes("0.000000,K_\n7.500000,__\n");
+
+        assertEquals(7.5, index.getDuration(), DELTA);
+    }
+
+    @Test
+    public void cutsOnNextKeyframe() {
+        final SegmentPlanner.KeyframeIndex index = new SegmentPlanner.KeyframeIndex(40.0, keyframesEvery(3.0, 40.0));
+
+        final List<SegmentPlanner.Segment> segments = SegmentPlanner.plan(index, 4);
+
+        assertEquals(4, segments.size());
+        assertEquals(0.0, segments.get(0).getStartTime(), DELTA);
+        assertEquals(12.0, segments.get(1).getStartTime(), DELTA);
+        assertEquals(21.0, segments.get(2).getStartTime(), DELTA);
+        assertEquals(30.0, segments.get(3).getStartTime(), DELTA);
+        assertEquals(40.0, segments.get(3).getEndTime(), DELTA);
+        for (int i = 1; i < segments.size(); i++) {
+            assertEquals(segments.get(i - 1).getEndTime(), segments.get(i).getStartTime(), DELTA);
+            assertEquals(i, segments.get(i).getIndex());
+        }
+    }
+
+    @Test
+    public void shortInputIsNotSplit() {
+        final SegmentPlanner.KeyframeIndex index = new SegmentPlanner.KeyframeIndex(8.0, keyframesEvery(1.0, 8.0));
+
+        final List<SegmentPlanner.Segment> segments = SegmentPlanner.plan(index, 8);
+
+        assertEquals(1, segments.size());
+        assertEquals(8.0, segments.get(0).getDuration(), DELTA);
+    }
+
+    @Test
+    public void sparseKeyframesMergeSegments() {
+        final SegmentPlanner.KeyframeIndex index = new SegmentPlanner.KeyframeIndex(60.0, new double[]{0.0, 31.0});
+
+        final List<SegmentPlanner.Segment> segments = SegmentPlanner.plan(index, 6);
+
+        assertEquals(2, segments.size());
+        assertEquals(31.0, segments.get(1).getStartTime(), DELTA);
+    }
+
+    private static double[] keyframesEvery(final double interval, final double duration) {
+        final int count = (int) Math.ceil(duration / interval);
+        final double[] keyframes = new double[count];
+        for (int i = 0; i < count; i++) {
+            keyframes[i] = i * interval;
+        }
+        return keyframes;
+    }
+
+}
@@ -0,0 +1,181 @@
+package com.example.kitapp.encode;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import com.example.kitapp.util.RawFrameProducer;
+
+import org.junit.Ignore;
+import org.junit.Test;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * <p>Renders slideshows of 10, 100 and 1000 images through {@link SlideshowRenderer} and prints
+ * the time taken and the resident memory of the process after each one. Resident memory should
+ * stay flat while the image count grows.
+ *
+ * <p>When an <code>ffmpeg</code> executable is found on the <code>PATH</code>, frames are written
+ * into a named pipe and encoded with it, otherwise they are written to <code>/dev/null</code> and
+ * only rendering is measured. Images are generated instead of decoded, so decoding is not part
+ * of the results.
+ *
+ * <p>Ignored by default. Remove {@link Ignore} or run {@link #main(String[])} to print the
+ * results.
+ */
+@Ignore("Benchmark, run manually")
+public class SlideshowBenchmark {
+
+    private static final int[] IMAGE_COUNTS = {10, 100, 1000};
+
+    private static final int WIDTH = 320;
+
+    private static final int HEIGHT = 212;
+
+    private static final int FRAME_RATE = 30;
+
+    private static final long SLIDE_DURATION = 200;
+
+    private static final long TRANSITION_DURATION = 100;
+
+    /**
+     * <p>Fills each image with a color derived from its index.
+     */
+    private static final SlideshowRenderer.ImageDecoder GENERATED = new SlideshowRenderer.ImageDecoder() {
+
+        @Override
+        public void decode(final String path, final ByteBuffer target, final int width, final int height) {
+            final int index = Integer.parseInt(path);
+            final int color = (index * 47) << 24 | (index * 91) << 16 | (index * 13) << 8 | 0xff;
+            while (target.hasRemaining()) {
+                target.putInt(color);
+            }
+        }
+    };
+
+    public static void main(final String[] args) throws Exception {
+        new SlideshowBenchmark().renderSlideshows();
+    }
+
+    @Test
+    public void renderSlideshows() throws Exception {
+        final File directory = Files.createTempDirectory("slideshow-benchmark").toFile();
+        final boolean encode = isFFmpegAvailable();
+
+        try {
+            System.out.println(encode ? "Encoding with ffmpeg from PATH" : "ffmpeg not found, writing frames to /dev/null");
+            System.out.println(String.format(Locale.ROOT, "%8s %8s %10s %10s %10s %10s", "images", "frames", "total(ms)", "fps", "rss(KB)", "hwm(KB)"));
+
+            for (int imageCount : IMAGE_COUNTS) {
+                final Slideshow slideshow = createSlideshow(imageCount);
+                final File video = new File(directory, imageCount + ".mp4");
+
+                final long startTime = System.nanoTime();
+                final SlideshowRenderer renderer = encode ? encode(slideshow, directory, video) : render(slideshow, "/dev/null");
+                final long totalTime = (System.nanoTime() - startTime) / 1000000;
+
+                assertEquals(slideshow.getFrameCount(), renderer.getFramesRendered());
+                assertEquals(imageCount, renderer.getImagesDecoded());
+                if (encode) {
+                    assertTrue(video.length() > 0);
+                }
+
+                System.out.println(String.format(Locale.ROOT, "%8d %8d %10d %10.1f %10d %10d", imageCount, renderer.getFramesRendered(), totalTime,
+                        renderer.getFramesRendered() * 1000.0 / Math.max(1, totalTime), readMemoryStatus("VmRSS"), readMemoryStatus("VmHWM")));
+            }
+        } finally {
+            final File[] files = directory.listFiles();
+            if (files != null) {
+                for (File file : files) {
+                    file.delete();
+                }
+            }
+            directory.delete();
+        }
+    }
+
+    private static Slideshow createSlideshow(final int imageCount) {
+        final List<Slideshow.Slide> slides = new ArrayList<>(imageCount);
+        for (int i = 0; i < imageCount; i++) {
+            slides.add(new Slideshow.Slide(String.valueOf(i), SLIDE_DURATION));
+        }
+        return new Slideshow(slides, WIDTH, HEIGHT, FRAME_RATE, TRANSITION_DURATION);
+    }
+
+    private static SlideshowRenderer render(final Slideshow slideshow, final String path) throws Exception {
+        final RawFrameProducer producer = RawFrameProducer.create(path, WIDTH, HEIGHT, RawFrameProducer.PixelFormat.RGBA, 4, null);
+        final SlideshowRenderer renderer = new SlideshowRenderer(slideshow, GENERATED);
+        final Thread writer = new Thread(producer);
+        writer.start();
+        try {
+            renderer.render(producer);
+        } finally {
+            writer.join();
+        }
+        assertTrue(producer.isSuccess());
+        return renderer;
+    }
+
+    private static SlideshowRenderer encode(final Slideshow slideshow, final File directory, final File video) throws Exception {
+        final File pipe = new File(directory, "frames.pipe");
+        pipe.delete();
+        assertEquals(0, new ProcessBuilder("mkfifo", pipe.getAbsolutePath()).start().waitFor());
+
+        final RawFrameProducer inputDescription = RawFrameProducer.create(pipe.getAbsolutePath(), WIDTH, HEIGHT, RawFrameProducer.PixelFormat.RGBA, 1, null);
+        final List<String> command = new ArrayList<>(Arrays.asList("ffmpeg", "-loglevel", "error"));
+        command.addAll(Arrays.asList(slideshow.createPipeArguments(inputDescription.getInputArguments(FRAME_RATE), video.getAbsolutePath(),
+                new String[]{"-c:v", "mpeg4", "-q:v", "5"})));
+        final Process ffmpeg = new ProcessBuilder(command).inheritIO().start();
+
+        try {
+            final SlideshowRenderer renderer = render(slideshow, pipe.getAbsolutePath());
+            assertEquals(0, ffmpeg.waitFor());
+            return renderer;
+        } finally {
+            ffmpeg.destroy();
+            pipe.delete();
+        }
+    }
+
+    private static boolean isFFmpegAvailable() {
+        try {
+            final Process process = new ProcessBuilder("ffmpeg", "-version").redirectErrorStream(true).start();
+            while (process.getInputStream().read() != -1) {
+                // DISCARD VERSION OUTPUT
+            }
+            return process.waitFor() == 0;
+        } catch (final IOException | InterruptedException e) {
+            return false;
+        }
+    }
+
+    /**
+     * @return value in KB of <code>field</code> in <code>/proc/self/status</code>, -1 if it can
+     * not be read
+     */
+    private static long readMemoryStatus(final String field) {
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream("/proc/self/status"), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.startsWith(field + ":")) {
+                    return Long.parseLong(line.substring(field.length() + 1).replace("kB", "").trim());
+                }
+            }
+        } catch (final IOException | NumberFormatException e) {
+            return -1;
+        }
+        return -1;
+    }
+
+}
@@ -0,0 +1,191 @@
+package com.example.kitapp.encode;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import com.example.kitapp.util.RawFrameProducer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public class SlideshowTest {
+
+    private File directory;
+
+    /**
+     * <p>Fills each image with a single byte value taken from its path.
+     */
+    private static class SolidImageDecoder implements SlideshowRenderer.ImageDecoder {
+        final List<String> decoded = new ArrayList<>();
+
+        @Override
+        public void decode(final String path, final ByteBuffer target, final int width, final int height) {
+            decoded.add(path);
+            final byte value = Byte.parseByte(path);
+            while (target.hasRemaining()) {
+                target.put(value);
+            }
+        }
+    }
+
+    @Before
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("slideshow").toFile();
+    }
+
+    @After
+    public void tearDown() {
+        final File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        directory.delete();
+    }
+
+    private static List<Slideshow.Slide> slides(final long... durations) {
+        final List<Slideshow.Slide> slides = new ArrayList<>();
+        for (int i = 0; i < durations.length; i++) {
+            slides.add(new Slideshow.Slide(String.valueOf(i + 1), durations[i]));
+        }
+        return slides;
+    }
+
+    private byte[] render(final Slideshow slideshow, final SlideshowRenderer renderer) throws Exception {
+        final File output = new File(directory, "frames.rgba");
+        final RawFrameProducer producer = RawFrameProducer.create(output.getAbsolutePath(), slideshow.getWidth(), slideshow.getHeight(), RawFrameProducer.PixelFormat.RGBA, 2, null);
+        final Thread writer = new Thread(producer);
+        writer.start();
+        try {
+            renderer.render(producer);
+        } catch (final IOException e) {
+            producer.cancel();
+            throw e;
+        } finally {
+            writer.join(5000);
+        }
+        assertTrue(producer.isSuccess());
+        return Files.readAllBytes(output.toPath());
+    }
+
+    @Test
+    public void calculatesDurationOfTabSlideshow() {
+        final Slideshow slideshow = Slideshow.create("a.jpg", "b.jpg", "c.jpg");
+
+        assertEquals(9000, slideshow.getDuration());
+        assertEquals(270, slideshow.getFrameCount());
+        assertEquals(640, slideshow.getWidth());
+        assertEquals(424, slideshow.getHeight());
+    }
+
+    @Test
+    public void rendersHoldsAndTransitions() throws Exception {
+
+        // 4 FRAMES PER SECOND, 8 PIXELS WIDE: 2 FRAMES OF IMAGE 1, 2 TRANSITION FRAMES, 1 FRAME OF IMAGE 2
+        final Slideshow slideshow = new Slideshow(slides(500, 250), 8, 2, 4, 500);
+        final SolidImageDecoder decoder = new SolidImageDecoder();
+        final SlideshowRenderer renderer = new SlideshowRenderer(slideshow, decoder);
+
+        final byte[] frames = render(slideshow, renderer);
+
+        final int frameSize = 8 * 2 * 4;
+        assertEquals(5, slideshow.getFrameCount());
+        assertEquals(5 * frameSize, frames.length);
+        assertEquals(5, renderer.getFramesRendered());
+        assertEquals(Arrays.asList("1", "2"), decoder.decoded);
+
+        assertEquals("11111111", row(frames, 0, frameSize));
+        assertEquals("11111111", row(frames, 1, frameSize));
+        assertEquals("11111111", row(frames, 2, frameSize));
+
+        // HALF WAY, TWO COLUMNS OF THE NEXT IMAGE ON EACH SIDE
+        assertEquals("22111122", row(frames, 3, frameSize));
+        assertEquals("22222222", row(frames, 4, frameSize));
+    }
+
+    @Test
+    public void decodesEachImageOnceWithTwoBuffers() throws Exception {
+        final long[] durations = new long[50];
+        Arrays.fill(durations, 100);
+        final Slideshow slideshow = new Slideshow(slides(durations), 4, 2, 10, 100);
+        final SolidImageDecoder decoder = new SolidImageDecoder();
+        final SlideshowRenderer renderer = new SlideshowRenderer(slideshow, decoder);
+
+        final byte[] frames = render(slideshow, renderer);
+
+        assertEquals(50, decoder.decoded.size());
+        assertEquals(99, slideshow.getFrameCount());
+        assertEquals(99 * 4 * 2 * 4, frames.length);
+        assertEquals(50, frames[frames.length - 1]);
+    }
+
+    @Test
+    public void stopsWhenCancelled() throws Exception {
+        final Slideshow slideshow = new Slideshow(slides(1000, 1000), 4, 2, 10, 0);
+        final SolidImageDecoder decoder = new SolidImageDecoder();
+        final SlideshowRenderer renderer = new SlideshowRenderer(slideshow, decoder);
+        renderer.cancel();
+
+        try {
+            render(slideshow, renderer);
+            fail("Cancelled renderer rendered frames");
+        } catch (final IOException e) {
+            assertEquals(0, renderer.getFramesRendered());
+            assertTrue(decoder.decoded.isEmpty());
+        }
+    }
+
+    @Test
+    public void writesConcatList() throws IOException {
+        final List<Slideshow.Slide> slides = new ArrayList<>(Arrays.asList(new Slideshow.Slide("/images/a.jpg", 3000), new Slideshow.Slide("/images/it's.jpg", 2000)));
+        final Slideshow slideshow = new Slideshow(slides, 640, 424, 30, 1000);
+        final File list = new File(directory, "slideshow.ffconcat");
+
+        slideshow.writeConcatList(list);
+
+        assertEquals("ffconcat version 1.0\n" +
+                "file '/images/a.jpg'\nduration 4.000\n" +
+                "file '/images/it'\\''s.jpg'\nduration 2.000\n" +
+                "file '/images/it'\\''s.jpg'\n", new String(Files.readAllBytes(list.toPath()), StandardCharsets.UTF_8));
+        assertEquals(6000, slideshow.getDuration());
+    }
+
+    @Test
+    public void createsConcatArguments() {
+        final Slideshow slideshow = new Slideshow(slides(1000), 640, 424, 30, 0);
+
+        assertArrayEquals(new String[]{"-hide_banner", "-y", "-f", "concat", "-safe", "0", "-i", "list.ffconcat",
+                "-filter_complex", "[0:v]scale=640:424:force_original_aspect_ratio=decrease,pad=640:424:(ow-iw)/2:(oh-ih)/2:color=black,setsar=1,fps=30,format=yuv420p[s1]",
+                "-map", "[s1]", "-fps_mode", "cfr", "-c:v", "mpeg4", "-r", "30", "out.mp4"}, slideshow.createConcatArguments("list.ffconcat", "out.mp4", new String[]{"-c:v", "mpeg4"}));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsOddSizes() {
+        new Slideshow(slides(1000), 641, 424, 30, 0);
+    }
+
+    /**
+     * @return first byte of each pixel of the first row of frame <code>index</code>
+     */
+    private static String row(final byte[] frames, final int index, final int frameSize) {
+        final StringBuilder row = new StringBuilder();
+        for (int x = 0; x < 8; x++) {
+            row.append(frames[index * frameSize + x * 4]);
+        }
+        return row.toString();
+    }
+
+}
@@ -0,0 +1,47 @@
+package com.example.kitapp.encode;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+public class StreamingMuxerTest {
+
+    @Test
+    public void fragmentsMp4AndDropsFaststart() {
+        final StreamingMuxer muxer = StreamingMuxer.create("video.mp4");
+
+        assertTrue(muxer.isFragmented());
+        assertEquals(Arrays.asList("-f", "mp4", "-movflags", StreamingMuxer.FRAGMENTED_MOVFLAGS, "-b:v", "2M"),
+                Arrays.asList(muxer.getOptions(new String[]{"-movflags", "faststart", "-b:v", "2M"})));
+    }
+
+    @Test
+    public void fragmentsMov() {
+        final StreamingMuxer muxer = StreamingMuxer.create("Clip.MOV");
+
+        assertEquals("mov", muxer.getExtension());
+        assertEquals(Arrays.asList("-f", "mov", "-movflags", StreamingMuxer.FRAGMENTED_MOVFLAGS, "-format", "hap_q"),
+                Arrays.asList(muxer.getOptions(new String[]{"-format", "hap_q"})));
+    }
+
+    @Test
+    public void namesStreamableFormats() {
+        assertEquals("matroska", StreamingMuxer.create("video.mkv").getFormat());
+        assertEquals("webm", StreamingMuxer.create("video.webm").getFormat());
+        assertEquals("ogg", StreamingMuxer.create("video.ogv").getFormat());
+        assertFalse(StreamingMuxer.create("video.mkv").isFragmented());
+        assertEquals(Arrays.asList("-f", "webm", "-crf", "10"), Arrays.asList(StreamingMuxer.create("video.webm").getOptions(new String[]{"-f", "mp4", "-crf", "10"})));
+    }
+
+    @Test
+    public void unknownExtensionIsWrittenAsFragmentedMp4() {
+        assertEquals("mp4", StreamingMuxer.create("video").getExtension());
+        assertEquals("mp4", StreamingMuxer.create(null).getFormat());
+        assertTrue(StreamingMuxer.create("video.avi").isFragmented());
+    }
+
+}
@@ -0,0 +1,241 @@
+package com.example.kitapp.probe;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+public class ContainerHeaderParserTest {
+
+    private File directory;
+
+    @Before
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("container-header-parser").toFile();
+    }
+
+    @After
+    public void tearDown() {
+        final File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        directory.delete();
+    }
+
+    private File write(final String name, final byte[] content) throws IOException {
+        final File file = new File(directory, name);
+        Files.write(file.toPath(), content);
+        return file;
+    }
+
+    private static byte[] concat(final byte[]... parts) {
+        final ByteArrayOutputStream output = new ByteArrayOutputStream();
+        for (byte[] part : parts) {
+            output.write(part, 0, part.length);
+        }
+        return output.toByteArray();
+    }
+
+    private static byte[] ascii(final String value) {
+        return value.getBytes(StandardCharsets.ISO_8859_1);
+    }
+
+    private static byte[] box(final String type, final byte[]... children) {
+        final byte[] body = concat(children);
+        return concat(ByteBuffer.allocate(8).putInt(8 + body.length).put(ascii(type)).array(), body);
+    }
+
+    private static byte[] mvhd(final int timescale, final int duration) {
+        return box("mvhd", ByteBuffer.allocate(100).putInt(0).putInt(0).putInt(0).putInt(timescale).putInt(duration).array());
+    }
+
+    private static byte[] trak(final String handler, final String sampleEntry, final int width, final int height) {
+        final ByteBuffer tkhd = ByteBuffer.allocate(84);
+        tkhd.putInt(76, width << 16).putInt(80, height << 16);
+        final byte[] hdlr = box("hdlr", ByteBuffer.allocate(24).putInt(0).putInt(0).put(ascii(handler)).array());
+        final byte[] stsd = box("stsd", ByteBuffer.allocate(16).putInt(0).putInt(1).putInt(8).put(ascii(sampleEntry)).array());
+        return box("trak", box("tkhd", tkhd.array()), box("mdia", hdlr, box("minf", box("stbl", stsd))));
+    }
+
+    private static byte[] mp4(final boolean moovFirst) {
+        final byte[] ftyp = box("ftyp", ascii("isom"), new byte[4], ascii("isomiso2avc1mp41"));
+        final byte[] moov = box("moov", mvhd(1000, 9000), trak("vide", "avc1", 640, 360), trak("soun", "mp4a", 0, 0));
+        final byte[] mdat = box("mdat", new byte[4096]);
+        return moovFirst ? concat(ftyp, moov, mdat) : concat(ftyp, mdat, moov);
+    }
+
+    private static byte[] element(final int id, final byte[]... children) {
+        final byte[] body = concat(children);
+        final byte[] idBytes = ByteBuffer.allocate(4).putInt(id).array();
+        int idStart = 0;
+        while (idBytes[idStart] == 0) {
+            idStart++;
+        }
+
+        // SIZES ARE ALWAYS WRITTEN AS 4 BYTE VARIABLE LENGTH INTEGERS
+        return concat(Arrays.copyOfRange(idBytes, idStart, 4), ByteBuffer.allocate(4).putInt(0x10000000 | body.length).array(), body);
+    }
+
+    private static byte[] unsigned(final int id, final int value) {
+        return element(id, ByteBuffer.allocate(4).putInt(value).array());
+    }
+
+    private static byte[] matroska(final String docType, final boolean withDuration) {
+        final byte[] ebml = element(0x1A45DFA3, element(0x4282, ascii(docType)));
+        final byte[] info = element(0x1549A966, unsigned(0x2AD7B1, 1000000), withDuration ? element(0x4489, ByteBuffer.allocate(8).putDouble(12500).array()) : new byte[0]);
+        final byte[] tracks = element(0x1654AE6B,
+                element(0xAE, unsigned(0xD7, 1), unsigned(0x83, 1), element(0x86, ascii("V_VP9")), element(0xE0, unsigned(0xB0, 1280), unsigned(0xBA, 720))),
+                element(0xAE, unsigned(0xD7, 2), unsigned(0x83, 2), element(0x86, ascii("A_OPUS"))));
+        final byte[] chapters = element(0x1043A770, element(0x45B9, element(0xB6, unsigned(0x73C4, 1)), element(0xB6, unsigned(0x73C4, 2))));
+        final byte[] seekHead = element(0x114D9B74, new byte[32]);
+        final byte[] cluster = element(0x1F43B675, new byte[2048]);
+        return concat(ebml, element(0x18538067, seekHead, info, tracks, chapters, cluster));
+    }
+
+    private static byte[] wav(final int sampleRate, final int channels, final int bits, final int dataSize) {
+        final int blockAlign = channels * bits / 8;
+        final ByteBuffer header = ByteBuffer.allocate(12 + 8 + 4 + 8 + 16 + 8).order(ByteOrder.LITTLE_ENDIAN);
+        header.put(ascii("RIFF")).putInt(4 + 8 + 4 + 8 + 16 + 8 + dataSize).put(ascii("WAVE"));
+
+        // AN ODD SIZED LIST CHUNK BEFORE fmt CHECKS PADDING
+        header.put(ascii("LIST")).putInt(3).put(new byte[]{'a', 'b', 'c', 0});
+        header.put(ascii("fmt ")).putInt(16).putShort((short) 1).putShort((short) channels).putInt(sampleRate).putInt(sampleRate * blockAlign).putShort((short) blockAlign).putShort((short) bits);
+        header.put(ascii("data")).putInt(dataSize);
+        return concat(header.array(), new byte[dataSize]);
+    }
+
+    private static byte[] oggPage(final int flags, final long granule, final int serial, final byte[] packet) {
+        final ByteBuffer page = ByteBuffer.allocate(27 + 1 + packet.length).order(ByteOrder.LITTLE_ENDIAN);
+        page.put(ascii("OggS")).put((byte) 0).put((byte) flags).putLong(granule).putInt(serial).putInt(0).putInt(0).put((byte) 1).put((byte) packet.length).put(packet);
+        return page.array();
+    }
+
+    private static byte[] opusHead(final int preSkip) {
+        return ByteBuffer.allocate(19).order(ByteOrder.LITTLE_ENDIAN).put(ascii("OpusHead")).put((byte) 1).put((byte) 2).putShort((short) preSkip).putInt(44100).array();
+    }
+
+    private static byte[] theoraHeader(final int width, final int height) {
+        final byte[] header = new byte[42];
+        System.arraycopy(ascii("\u0080theora"), 0, header, 0, 7);
+        header[14] = (byte) (width >> 16);
+        header[15] = (byte) (width >> 8);
+        header[16] = (byte) width;
+        header[17] = (byte) (height >> 16);
+        header[18] = (byte) (height >> 8);
+        header[19] = (byte) height;
+        return header;
+    }
+
+    @Test
+    public void parsesMp4WithMoovFirst() throws IOException {
+        final File file = write("a.mp4", mp4(true));
+
+        final MediaSummary summary = ContainerHeaderParser.parse(file);
+
+        assertNotNull(summary);
+        assertEquals(ContainerHeaderParser.FORMAT_MP4, summary.getFormat());
+        assertEquals(9.0, summary.getDuration(), 0.0001);
+        assertEquals((long) (file.length() * 8 / 9.0), summary.getBitrate());
+        assertEquals(2, summary.getStreams().size());
+        assertEquals("video:h264 640x360", summary.getStreams().get(0).toString());
+        assertEquals("audio:aac", summary.getStreams().get(1).toString());
+    }
+
+    @Test
+    public void parsesMp4WithMoovLast() throws IOException {
+        final MediaSummary summary = ContainerHeaderParser.parse(write("b.mp4", mp4(false)));
+
+        assertNotNull(summary);
+        assertEquals(9.0, summary.getDuration(), 0.0001);
+        assertEquals(2, summary.getStreams().size());
+    }
+
+    @Test
+    public void parsesWebm() throws IOException {
+        final MediaSummary summary = ContainerHeaderParser.parse(write("a.webm", matroska("webm", true)));
+
+        assertNotNull(summary);
+        assertEquals(ContainerHeaderParser.FORMAT_MATROSKA, summary.getFormat());
+        assertEquals(12.5, summary.getDuration(), 0.0001);
+        assertEquals("video:vp9 1280x720", summary.getStreams().get(0).toString());
+        assertEquals("audio:opus", summary.getStreams().get(1).toString());
+        assertEquals(2, summary.getChapterCount());
+    }
+
+    @Test
+    public void leavesMatroskaWithoutDurationToFFprobe() throws IOException {
+        assertNull(ContainerHeaderParser.parse(write("live.mkv", matroska("matroska", false))));
+        assertNull(ContainerHeaderParser.parse(write("other.mkv", matroska("other", true))));
+    }
+
+    @Test
+    public void parsesWav() throws IOException {
+        final MediaSummary summary = ContainerHeaderParser.parse(write("a.wav", wav(8000, 2, 16, 8000 * 4 * 2)));
+
+        assertNotNull(summary);
+        assertEquals(ContainerHeaderParser.FORMAT_WAV, summary.getFormat());
+        assertEquals(2.0, summary.getDuration(), 0.0001);
+        assertEquals("audio:pcm_s16le", summary.getStreams().get(0).toString());
+    }
+
+    @Test
+    public void parsesOggFromFirstAndLastPages() throws IOException {
+        final byte[] file = concat(
+                oggPage(0x02, 0, 1, theoraHeader(320, 240)),
+                oggPage(0x02, 0, 2, opusHead(312)),
+                oggPage(0x00, 0, 2, new byte[64]),
+                oggPage(0x00, 48000 + 312, 2, new byte[64]),
+                oggPage(0x00, 1234567, 1, new byte[64]),
+                oggPage(0x04, 3 * 48000 + 312, 2, new byte[64]),
+                oggPage(0x04, 999999, 1, new byte[64]));
+
+        final MediaSummary summary = ContainerHeaderParser.parse(write("a.ogg", file));
+
+        assertNotNull(summary);
+        assertEquals(ContainerHeaderParser.FORMAT_OGG, summary.getFormat());
+        assertEquals(3.0, summary.getDuration(), 0.0001);
+        assertEquals("video:theora 320x240", summary.getStreams().get(0).toString());
+        assertEquals("audio:opus", summary.getStreams().get(1).toString());
+    }
+
+    @Test
+    public void leavesUnknownAndBrokenFilesToFFprobe() throws IOException {
+        assertNull(ContainerHeaderParser.parse(write("a.mp3", concat(ascii("ID3"), new byte[64]))));
+        assertNull(ContainerHeaderParser.parse(write("tiny.mp4", new byte[4])));
+
+        final byte[] truncated = mp4(true);
+        assertNull(ContainerHeaderParser.parse(write("truncated.mp4", Arrays.copyOf(truncated, 200))));
+
+        final byte[] truncatedWebm = matroska("webm", true);
+        assertNull(ContainerHeaderParser.parse(write("truncated.webm", Arrays.copyOf(truncatedWebm, 60))));
+
+        final byte[] truncatedWav = wav(8000, 1, 8, 100);
+        assertNull(ContainerHeaderParser.parse(write("truncated.wav", Arrays.copyOf(truncatedWav, 40))));
+    }
+
+    @Test
+    public void readsVariableLengthIntegers() {
+        assertEquals(1, ContainerHeaderParser.vintLength((byte) 0x81));
+        assertEquals(4, ContainerHeaderParser.vintLength((byte) 0x10));
+        assertEquals(9, ContainerHeaderParser.vintLength((byte) 0x00));
+        assertEquals(5, ContainerHeaderParser.readVint(ByteBuffer.wrap(new byte[]{(byte) 0x85}), 0, 1));
+        assertEquals(0x1234, ContainerHeaderParser.readVint(ByteBuffer.wrap(new byte[]{0x52, 0x34}), 0, 2));
+        assertEquals(-1, ContainerHeaderParser.readVint(ByteBuffer.wrap(new byte[]{0x01, -1, -1, -1, -1, -1, -1, -1}), 0, 8));
+    }
+
+}
@@ -0,0 +1,277 @@
+package com.example.kitapp.probe;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class MediaInformationCacheTest {
+
+    private File directory;
+    private CountingProber prober;
+    private FakeValidator validator;
+
+    private static class CountingProber implements MediaInformationCache.Prober {
+        final AtomicInteger probes = new AtomicInteger();
+        volatile CountDownLatch gate;
+        volatile IOException failure;
+
+        @Override
+        public String probe(final String uri) throws IOException {
+            final int probe = probes.incrementAndGet();
+            if (gate != null) {
+                try {
+                    gate.await(5, TimeUnit.SECONDS);
+                } catch (final InterruptedException e) {
+                    throw new IOException(e);
+                }
+            }
+            if (failure != null) {
+                throw failure;
+            }
+            return "{\"format\":{\"filename\":\"" + uri + "\",\"probe\":" + probe + "}}";
+        }
+    }
+
+    private static class FakeValidator implements MediaInformationCache.Validator {
+        final ConcurrentHashMap<String, String> validators = new ConcurrentHashMap<>();
+        final AtomicInteger validations = new AtomicInteger();
+        volatile long freshness;
+
+        @Override
+        public String validate(final String uri) {
+            validations.incrementAndGet();
+            return validators.get(uri);
+        }
+
+        @Override
+        public long getFreshness(final String uri) {
+            return freshness;
+        }
+    }
+
+    @Before
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("media-information-cache").toFile();
+        prober = new CountingProber();
+        validator = new FakeValidator();
+    }
+
+    @After
+    public void tearDown() {
+        final File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        directory.delete();
+    }
+
+    private MediaInformationCache createCache(final int memoryCapacity, final int diskCapacity) {
+        return new MediaInformationCache(directory, memoryCapacity, diskCapacity, prober, validator);
+    }
+
+    @Test
+    public void probesOnceWhileValidatorIsUnchanged() throws IOException {
+        final MediaInformationCache cache = createCache(8, 8);
+        validator.validators.put("/a.mp4", "file:10:1");
+
+        final String first = cache.getProperties("/a.mp4");
+        final String second = cache.getProperties("/a.mp4");
+
+        assertEquals(first, second);
+        assertEquals(1, prober.probes.get());
+        assertEquals(1, cache.getMemoryHitCount());
+        assertEquals(2, validator.validations.get());
+    }
+
+    @Test
+    public void probesAgainWhenValidatorChanges() throws IOException {
+        final MediaInformationCache cache = createCache(8, 8);
+        validator.validators.put("/a.mp4", "file:10:1");
+        cache.getProperties("/a.mp4");
+
+        validator.validators.put("/a.mp4", "file:20:2");
+
+        assertTrue(cache.getProperties("/a.mp4").contains("\"probe\":2"));
+        assertEquals(2, cache.getProbeCount());
+    }
+
+    @Test
+    public void skipsValidationWhileFresh() throws IOException {
+        final MediaInformationCache cache = createCache(8, 8);
+        validator.freshness = 60000;
+        validator.validators.put("https://host/a.mp4", "etag:\"1\"");
+
+        for (int i = 0; i < 5; i++) {
+            cache.getProperties("https://host/a.mp4");
+        }
+
+        assertEquals(1, validator.validations.get());
+        assertEquals(1, prober.probes.get());
+        assertEquals(4, cache.getMemoryHitCount());
+    }
+
+    @Test
+    public void diskTierSurvivesRestart() throws IOException {
+        validator.validators.put("/a.mp4", "file:10:1");
+        final String properties = createCache(8, 8).getProperties("/a.mp4");
+
+        final MediaInformationCache restartedCache = createCache(8, 8);
+
+        assertEquals(properties, restartedCache.getProperties("/a.mp4"));
+        assertEquals(1, prober.probes.get());
+        assertEquals(1, restartedCache.getDiskHitCount());
+        assertEquals(0, restartedCache.getProbeCount());
+    }
+
+    @Test
+    public void evictsLeastRecentlyUsedEntriesFromMemory() throws IOException {
+        final MediaInformationCache cache = createCache(2, 8);
+        validator.validators.put("/a.mp4", "a");
+        validator.validators.put("/b.mp4", "b");
+        validator.validators.put("/c.mp4", "c");
+
+        cache.getProperties("/a.mp4");
+        cache.getProperties("/b.mp4");
+        cache.getProperties("/a.mp4");
+        cache.getProperties("/c.mp4");
+
+        // B WAS THE LEAST RECENTLY USED ENTRY, IT IS ONLY ON DISK NOW
+        cache.getProperties("/b.mp4");
+        cache.getProperties("/c.mp4");
+
+        assertEquals(3, cache.getProbeCount());
+        assertEquals(1, cache.getDiskHitCount());
+        assertEquals(2, cache.getMemoryHitCount());
+    }
+
+    @Test
+    public void trimsDiskTier() throws IOException {
+        final MediaInformationCache cache = createCache(8, 2);
+        for (int i = 0; i < 5; i++) {
+            validator.validators.put("/" + i + ".mp4", "v");
+            cache.getProperties("/" + i + ".mp4");
+        }
+
+        int entryFiles = 0;
+        for (File file : directory.listFiles()) {
+            if (file.getName().endsWith(MediaInformationCache.ENTRY_SUFFIX)) {
+                entryFiles++;
+            }
+        }
+        assertEquals(2, entryFiles);
+    }
+
+    @Test
+    public void mergesConcurrentLookups() throws Exception {
+        final MediaInformationCache cache = createCache(8, 8);
+        validator.validators.put("/a.mp4", "file:10:1");
+        prober.gate = new CountDownLatch(1);
+
+        final ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            final List<Future<String>> results = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                results.add(executor.submit(new Callable<String>() {
+
+                    @Override
+                    public String call() throws IOException {
+                        return cache.getProperties("/a.mp4");
+                    }
+                }));
+            }
+
+            Thread.sleep(100);
+            prober.gate.countDown();
+
+            final String expected = results.get(0).get(5, TimeUnit.SECONDS);
+            for (Future<String> result : results) {
+                assertEquals(expected, result.get(5, TimeUnit.SECONDS));
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        assertEquals(1, prober.probes.get());
+    }
+
+    @Test
+    public void doesNotCacheFailures() throws IOException {
+        final MediaInformationCache cache = createCache(8, 8);
+        validator.validators.put("/a.mp4", "file:10:1");
+        prober.failure = new IOException("probe failed");
+
+        try {
+            cache.getProperties("/a.mp4");
+            fail("Failure expected");
+        } catch (final IOException e) {
+            assertEquals("probe failed", e.getMessage());
+        }
+
+        prober.failure = null;
+
+        assertTrue(cache.getProperties("/a.mp4").contains("\"probe\":2"));
+    }
+
+    @Test
+    public void usesEntriesWithoutValidatorWhileRecent() throws IOException {
+        final MediaInformationCache cache = createCache(8, 8);
+
+        cache.getProperties("rtsp://host/stream");
+        cache.getProperties("rtsp://host/stream");
+
+        assertEquals(1, prober.probes.get());
+    }
+
+    @Test
+    public void ignoresCorruptDiskEntries() throws IOException {
+        validator.validators.put("/a.mp4", "file:10:1");
+        final MediaInformationCache cache = createCache(8, 8);
+        Files.write(cache.getEntryFile("/a.mp4").toPath(), "/a.mp4\nfile:10:1\nnot-a-number\n".getBytes(StandardCharsets.UTF_8));
+
+        assertTrue(cache.getProperties("/a.mp4").contains("\"probe\":1"));
+        assertEquals(0, cache.getDiskHitCount());
+    }
+
+    @Test
+    public void invalidateForgetsBothTiers() throws IOException {
+        final MediaInformationCache cache = createCache(8, 8);
+        validator.validators.put("/a.mp4", "file:10:1");
+        cache.getProperties("/a.mp4");
+
+        cache.invalidate("/a.mp4");
+        cache.getProperties("/a.mp4");
+
+        assertEquals(2, prober.probes.get());
+    }
+
+    @Test
+    public void recognizesUriKinds() {
+        assertTrue(MediaInformationCache.isRemote("HTTPS://host/a.mp4"));
+        assertTrue(MediaInformationCache.isContent("content://media/external/video/1"));
+        assertEquals(new File("/data/a.mp4"), MediaInformationCache.toFile("file:///data/a.mp4"));
+        assertEquals(new File("/data/a.mp4"), MediaInformationCache.toFile("/data/a.mp4"));
+        assertEquals(null, MediaInformationCache.toFile("saf:12.mp4"));
+    }
+
+}
@@ -0,0 +1,327 @@
+package com.example.kitapp.probe;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class MediaScannerTest {
+
+    private File directory;
+    private HttpServer server;
+    private ExecutorService executor;
+    private StandInProber prober;
+    private final List<MediaScanner.Result> results = new CopyOnWriteArrayList<>();
+
+    /**
+     * <p>Reads "format duration bitrate" headers from files or the stand-in server and tracks
+     * how many probes run at once.
+     */
+    private static class StandInProber implements MediaScanner.Prober {
+        final AtomicInteger running = new AtomicInteger();
+        final AtomicInteger maxRunning = new AtomicInteger();
+        volatile long delay;
+
+        @Override
+        public MediaSummary probe(final String uri) throws IOException {
+            final int nowRunning = running.incrementAndGet();
+            int max;
+            while (nowRunning > (max = maxRunning.get()) && !maxRunning.compareAndSet(max, nowRunning)) {
+            }
+            try {
+                if (delay > 0) {
+                    Thread.sleep(delay);
+                }
+                final String[] header = read(uri).trim().split(" ");
+                final List<MediaSummary.StreamSummary> streams = Collections.singletonList(new MediaSummary.StreamSummary(0, "video", "h264", 640, 360));
+                return new MediaSummary(header[0], MediaSummary.parseDouble(header[1]), Long.parseLong(header[2]), streams, 0);
+            } catch (final InterruptedException e) {
+                throw new IOException(e);
+            } finally {
+                running.decrementAndGet();
+            }
+        }
+
+        private static String read(final String uri) throws IOException {
+            if (MediaInformationCache.isRemote(uri)) {
+                final HttpURLConnection connection = (HttpURLConnection) new URL(uri).openConnection();
+                try {
+                    if (connection.getResponseCode() != HttpURLConnection.HTTP_OK) {
+                        throw new IOException("Server returned " + connection.getResponseCode() + " for " + uri);
+                    }
+                    return readAll(connection.getInputStream());
+                } finally {
+                    connection.disconnect();
+                }
+            }
+            final File file = MediaInformationCache.toFile(uri);
+            if (file == null || !file.isFile()) {
+                throw new FileNotFoundException(uri);
+            }
+            return new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+        }
+
+        private static String readAll(final InputStream inputStream) throws IOException {
+            try (InputStream input = inputStream) {
+                final ByteArrayOutputStream output = new ByteArrayOutputStream();
+                final byte[] buffer = new byte[1024];
+                int read;
+                while ((read = input.read(buffer)) != -1) {
+                    output.write(buffer, 0, read);
+                }
+                return new String(output.toByteArray(), StandardCharsets.UTF_8);
+            }
+        }
+    }
+
+    @Before
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("media-scanner").toFile();
+        executor = Executors.newCachedThreadPool();
+        prober = new StandInProber();
+
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/", new HttpHandler() {
+
+            @Override
+            public void handle(final HttpExchange exchange) throws IOException {
+                final String path = exchange.getRequestURI().getPath();
+                if (path.startsWith("/missing")) {
+                    exchange.sendResponseHeaders(404, -1);
+                } else {
+                    final byte[] body = "mp4 12.5 800000".getBytes(StandardCharsets.UTF_8);
+                    exchange.sendResponseHeaders(200, body.length);
+                    try (OutputStream output = exchange.getResponseBody()) {
+                        output.write(body);
+                    }
+                }
+                exchange.close();
+            }
+        });
+        server.setExecutor(executor);
+        server.start();
+    }
+
+    @After
+    public void tearDown() {
+        server.stop(0);
+        executor.shutdownNow();
+        delete(directory);
+    }
+
+    private static void delete(final File file) {
+        final File[] files = file.listFiles();
+        if (files != null) {
+            for (File child : files) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+
+    private String url(final String path) {
+        return "http://127.0.0.1:" + server.getAddress().getPort() + path;
+    }
+
+    private File writeFile(final File parent, final String name, final String content) throws IOException {
+        parent.mkdirs();
+        final File file = new File(parent, name);
+        Files.write(file.toPath(), content.getBytes(StandardCharsets.UTF_8));
+        return file;
+    }
+
+    private MediaScanner scan(final List<String> inputs, final int concurrency) throws InterruptedException {
+        final MediaScanner scanner = new MediaScanner(inputs, concurrency, prober, executor, new MediaScanner.ResultCallback() {
+
+            @Override
+            public void apply(final MediaScanner.Result result) {
+                results.add(result);
+            }
+        }, null).start();
+        assertTrue(scanner.await(10, TimeUnit.SECONDS));
+        return scanner;
+    }
+
+    @Test
+    public void scansLocalFilesAndUrls() throws Exception {
+        final File file = writeFile(directory, "a.mkv", "matroska 3.0 1200000");
+
+        final MediaScanner scanner = scan(Arrays.asList(file.getAbsolutePath(), url("/b.mp4"), "file://" + file.getAbsolutePath()), 2);
+
+        assertEquals(3, scanner.getSucceededCount());
+        assertEquals(0, scanner.getFailedCount());
+        assertEquals(3, results.size());
+        for (MediaScanner.Result result : results) {
+            final MediaSummary summary = result.getSummary();
+            if (result.getUri().startsWith("http")) {
+                assertEquals("mp4", summary.getFormat());
+                assertEquals(12.5, summary.getDuration(), 0.0001);
+                assertEquals(800000, summary.getBitrate());
+            } else {
+                assertEquals("matroska", summary.getFormat());
+                assertEquals(1200000, summary.getBitrate());
+            }
+        }
+    }
+
+    @Test
+    public void neverExceedsConcurrency() throws Exception {
+        prober.delay = 20;
+        final List<String> inputs = new ArrayList<>();
+        for (int i = 0; i < 24; i++) {
+            inputs.add(url("/" + i + ".mp4"));
+        }
+
+        final MediaScanner scanner = scan(inputs, 3);
+
+        assertEquals(24, scanner.getSucceededCount());
+        assertEquals(3, prober.maxRunning.get());
+        assertTrue(scanner.getThroughput() > 0);
+        assertTrue(scanner.getTotalProbeTime() >= 24 * 20);
+
+        // EVERY INPUT IS REPORTED EXACTLY ONCE
+        final Set<Integer> indexes = new HashSet<>();
+        for (MediaScanner.Result result : results) {
+            assertTrue(indexes.add(result.getIndex()));
+            assertEquals(inputs.get(result.getIndex()), result.getUri());
+        }
+        assertEquals(24, indexes.size());
+    }
+
+    @Test
+    public void streamsResultsBeforeCompletion() throws Exception {
+        final CountDownLatch firstResult = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final MediaScanner scanner = new MediaScanner(Arrays.asList(url("/a.mp4"), url("/b.mp4")), 1, prober, executor, new MediaScanner.ResultCallback() {
+
+            @Override
+            public void apply(final MediaScanner.Result result) {
+                firstResult.countDown();
+                try {
+                    release.await(5, TimeUnit.SECONDS);
+                } catch (final InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }, null).start();
+
+        assertTrue(firstResult.await(5, TimeUnit.SECONDS));
+        assertFalse(scanner.isComplete());
+        assertEquals(1, scanner.getScannedCount());
+
+        release.countDown();
+        assertTrue(scanner.await(5, TimeUnit.SECONDS));
+        assertEquals(2, scanner.getScannedCount());
+    }
+
+    @Test
+    public void reportsFailuresAndContinues() throws Exception {
+        final MediaScanner scanner = scan(Arrays.asList(url("/missing.mp4"), new File(directory, "none.mp4").getAbsolutePath(), url("/c.mp4")), 2);
+
+        assertEquals(1, scanner.getSucceededCount());
+        assertEquals(2, scanner.getFailedCount());
+        for (MediaScanner.Result result : results) {
+            if (result.getUri().endsWith("/c.mp4")) {
+                assertTrue(result.isSuccess());
+            } else {
+                assertFalse(result.isSuccess());
+                assertTrue(result.getFailure() != null);
+            }
+        }
+    }
+
+    @Test
+    public void expandsDirectoriesAndPlaylists() throws Exception {
+        final File media = new File(directory, "media");
+        final File first = writeFile(media, "1.mp4", "mp4 1 1000");
+        final File second = writeFile(new File(media, "nested"), "2.mp4", "mp4 2 2000");
+        final File playlist = writeFile(directory, "list.m3u8", "#EXTM3U\n#EXTINF:12,Remote\n" + url("/remote.mp4") + "\n\nmedia/1.mp4\n");
+
+        final List<String> uris = MediaScanner.expandInputs(Arrays.asList(media.getAbsolutePath(), playlist.getAbsolutePath(), "https://host/x.mp4"));
+
+        assertEquals(Arrays.asList(first.getAbsolutePath(), second.getAbsolutePath(), url("/remote.mp4"), first.getAbsolutePath(), "https://host/x.mp4"), uris);
+
+        final MediaScanner scanner = scan(Arrays.asList(media.getAbsolutePath(), playlist.getAbsolutePath()), 4);
+        assertEquals(4, scanner.getSucceededCount());
+        assertEquals(4, scanner.getUris().size());
+    }
+
+    @Test
+    public void completesEmptyScans() throws Exception {
+        final MediaScanner scanner = scan(Collections.singletonList(new File(directory, "empty").getAbsolutePath() + "/"), 4);
+
+        assertEquals(1, scanner.getFailedCount());
+        assertTrue(scanner.isComplete());
+
+        assertTrue(new File(directory, "empty").mkdir());
+        final MediaScanner emptyScanner = scan(Collections.singletonList(new File(directory, "empty").getAbsolutePath()), 4);
+        assertEquals(0, emptyScanner.getScannedCount());
+        assertTrue(emptyScanner.isComplete());
+    }
+
+    @Test
+    public void cancelStopsHandingOutInputs() throws Exception {
+        prober.delay = 50;
+        final List<String> inputs = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            inputs.add(url("/" + i + ".mp4"));
+        }
+        final MediaScanner scanner = new MediaScanner(inputs, 2, prober, executor, new MediaScanner.ResultCallback() {
+
+            @Override
+            public void apply(final MediaScanner.Result result) {
+                results.add(result);
+            }
+        }, null).start();
+
+        Thread.sleep(80);
+        scanner.cancel();
+
+        assertTrue(scanner.await(5, TimeUnit.SECONDS));
+        assertTrue(scanner.isCancelled());
+        assertTrue(scanner.getScannedCount() < 20);
+        assertEquals(scanner.getScannedCount(), results.size());
+    }
+
+    @Test
+    public void parsesPlaylistEntries() {
+        final File base = new File("/sdcard/Music");
+
+        assertEquals(Arrays.asList("/sdcard/Music/a.mp3", "/abs/b.mp3", "https://host/c.mp3"), MediaScanner.parsePlaylist(Arrays.asList(
+                "\uFEFF#EXTM3U", "#EXTINF:1,A", "a.mp3", "  /abs/b.mp3  ", "", "https://host/c.mp3"), base));
+        assertTrue(MediaScanner.isPlaylist("List.M3U8"));
+        assertFalse(MediaScanner.isPlaylist("list.mp4"));
+    }
+
+}
@@ -0,0 +1,182 @@
+package com.example.kitapp.scheduler;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class ConcurrencyControllerTest {
+
+    private static ConcurrencyController.Signals busy(final ConcurrencyController controller, final double throughput, final int thermalStatus) {
+        return new ConcurrencyController.Signals(controller.getConcurrency(), 10, throughput, thermalStatus, 80, false);
+    }
+
+    @Test
+    public void startsAtMaximumAndKeepsItWhileDeviceIsFine() {
+        final ConcurrencyController controller = new ConcurrencyController(4, 8);
+        assertEquals(4, controller.getConcurrency());
+
+        for (int step = 0; step < 10; step++) {
+            assertFalse(controller.update(busy(controller, 1, ConcurrencyController.THERMAL_STATUS_NONE)));
+            assertFalse(controller.update(new ConcurrencyController.Signals(0, 0, 0, ConcurrencyController.THERMAL_STATUS_LIGHT, 80, false)));
+        }
+        assertEquals(4, controller.getConcurrency());
+    }
+
+    @Test
+    public void loneEncodeGetsAllCores() {
+        final ConcurrencyController controller = new ConcurrencyController(8, 8);
+
+        assertEquals(8, controller.getThreadCount());
+        assertEquals(8, controller.getThreadCount(1));
+        assertEquals(4, controller.getThreadCount(2));
+        assertEquals(1, controller.getThreadCount(20));
+
+        // THE LAST STEP SAW ONE RUNNING AND ONE WAITING ENCODE
+        controller.update(new ConcurrencyController.Signals(1, 1, 1, ConcurrencyController.THERMAL_STATUS_NONE, 80, false));
+        assertEquals(4, controller.getThreadCount());
+        assertTrue(controller.toString(), controller.toString().contains("4 threads per encode"));
+    }
+
+    @Test
+    public void sharesCoresOnlyBetweenEncodesTheLimitLetsRun() {
+        final ConcurrencyController controller = new ConcurrencyController(4, 8);
+        controller.update(busy(controller, 4, ConcurrencyController.THERMAL_STATUS_SEVERE));
+
+        assertEquals(1, controller.getConcurrency());
+        assertEquals(2, controller.getThreadCount(10));
+    }
+
+    @Test
+    public void halvesOnModerateThermalStatusAndHoldsWhileRecovering() {
+        final ConcurrencyController controller = new ConcurrencyController(4, 8);
+
+        assertTrue(controller.update(busy(controller, 4, ConcurrencyController.THERMAL_STATUS_MODERATE)));
+        assertEquals(2, controller.getConcurrency());
+        assertEquals(2, controller.getThreadCount());
+
+        for (int step = 0; step < ConcurrencyController.RECOVERY_STEPS; step++) {
+            assertFalse(controller.update(busy(controller, 2, ConcurrencyController.THERMAL_STATUS_MODERATE)));
+        }
+        assertTrue(controller.update(busy(controller, 2, ConcurrencyController.THERMAL_STATUS_MODERATE)));
+        assertEquals(1, controller.getConcurrency());
+
+        // A LIGHT STATUS STOPS INCREASES WITHOUT DECREASING
+        for (int step = 0; step < 10; step++) {
+            assertFalse(controller.update(busy(controller, 1, ConcurrencyController.THERMAL_STATUS_LIGHT)));
+        }
+        for (int step = 2; step <= 4; step++) {
+            assertTrue(controller.update(busy(controller, step - 1, ConcurrencyController.THERMAL_STATUS_NONE)));
+            assertEquals(step, controller.getConcurrency());
+        }
+        assertEquals("device recovered", controller.getReason());
+    }
+
+    @Test
+    public void dropsToMinimumOnSevereThermalStatus() {
+        final ConcurrencyController controller = new ConcurrencyController(4, 8);
+
+        assertTrue(controller.update(busy(controller, 4, ConcurrencyController.THERMAL_STATUS_SEVERE)));
+
+        assertEquals(1, controller.getConcurrency());
+        assertEquals(2, controller.getThreadCount());
+        assertEquals("severe thermal status", controller.getReason());
+    }
+
+    @Test
+    public void lowBatteryCountsOnlyWhenNotCharging() {
+        final ConcurrencyController controller = new ConcurrencyController(4, 8);
+
+        assertFalse(controller.update(new ConcurrencyController.Signals(4, 10, 4, ConcurrencyController.THERMAL_STATUS_NONE, 15, true)));
+        assertEquals(4, controller.getConcurrency());
+
+        assertTrue(controller.update(new ConcurrencyController.Signals(4, 10, 4, ConcurrencyController.THERMAL_STATUS_NONE, 15, false)));
+        assertEquals(2, controller.getConcurrency());
+        assertEquals("low battery", controller.getReason());
+
+        assertTrue(controller.update(new ConcurrencyController.Signals(2, 10, 2, ConcurrencyController.THERMAL_STATUS_NONE, 5, false)));
+        assertEquals(1, controller.getConcurrency());
+        assertEquals("critical battery", controller.getReason());
+    }
+
+    @Test
+    public void neverBacksOffOnSpeedAlone() {
+        final ConcurrencyController controller = new ConcurrencyController(4, 8);
+
+        // THE SPEED DROPS TO A TENTH AT THE SAME LIMIT
+        assertFalse(controller.update(busy(controller, 4, ConcurrencyController.THERMAL_STATUS_NONE)));
+        assertFalse(controller.update(busy(controller, 0.4, ConcurrencyController.THERMAL_STATUS_NONE)));
+
+        assertEquals(4, controller.getConcurrency());
+    }
+
+    @Test
+    public void stopsRecoveringWhenIncreaseGivesNoGain() {
+        final ConcurrencyController controller = new ConcurrencyController(4, 8);
+        controller.update(busy(controller, 4, ConcurrencyController.THERMAL_STATUS_SEVERE));
+        for (int step = 0; step < ConcurrencyController.RECOVERY_STEPS; step++) {
+            assertFalse(controller.update(busy(controller, 1, ConcurrencyController.THERMAL_STATUS_NONE)));
+        }
+
+        // TWO ENCODES SATURATE THE DEVICE
+        assertTrue(controller.update(busy(controller, 1, ConcurrencyController.THERMAL_STATUS_NONE)));
+        assertTrue(controller.update(busy(controller, 2, ConcurrencyController.THERMAL_STATUS_NONE)));
+        assertFalse(controller.update(busy(controller, 2, ConcurrencyController.THERMAL_STATUS_NONE)));
+
+        assertEquals(3, controller.getConcurrency());
+        assertEquals("no gain from the last increase", controller.getReason());
+
+        for (int step = 1; step < ConcurrencyController.PROBE_HOLD_STEPS; step++) {
+            assertFalse(controller.update(busy(controller, 2, ConcurrencyController.THERMAL_STATUS_NONE)));
+        }
+
+        // THE CEILING EXPIRES, THEN THE LIMIT IS RAISED AGAIN
+        assertFalse(controller.update(busy(controller, 2, ConcurrencyController.THERMAL_STATUS_NONE)));
+        assertTrue(controller.update(busy(controller, 2, ConcurrencyController.THERMAL_STATUS_NONE)));
+        assertEquals(4, controller.getConcurrency());
+    }
+
+    @Test
+    public void ignoresSpeedWhileLimitIsNotUsed() {
+        final ConcurrencyController controller = new ConcurrencyController(4, 8);
+        controller.update(busy(controller, 4, ConcurrencyController.THERMAL_STATUS_SEVERE));
+        for (int step = 0; step < ConcurrencyController.RECOVERY_STEPS; step++) {
+            controller.update(busy(controller, 1, ConcurrencyController.THERMAL_STATUS_NONE));
+        }
+        assertTrue(controller.update(busy(controller, 1, ConcurrencyController.THERMAL_STATUS_NONE)));
+        assertEquals(2, controller.getConcurrency());
+
+        // ONLY ONE OF TWO ALLOWED ENCODES RUNS, SO NO GAIN IS EXPECTED
+        assertTrue(controller.update(new ConcurrencyController.Signals(1, 10, 1, ConcurrencyController.THERMAL_STATUS_NONE, 80, false)));
+        assertEquals(3, controller.getConcurrency());
+    }
+
+    /**
+     * Device that heats up while more than two encodes run and cools down otherwise.
+     */
+    @Test
+    public void sustainsThroughputWithoutSevereThermalStatus() {
+        final ConcurrencyController controller = new ConcurrencyController(4, 8);
+        int heat = 0;
+        int concurrencySum = 0;
+        final int steps = 300;
+        for (int step = 0; step < steps; step++) {
+            final int thermalStatus = (heat >= 30) ? ConcurrencyController.THERMAL_STATUS_SEVERE : (heat >= 15) ? ConcurrencyController.THERMAL_STATUS_MODERATE :
+                    (heat >= 8) ? ConcurrencyController.THERMAL_STATUS_LIGHT : ConcurrencyController.THERMAL_STATUS_NONE;
+            assertTrue("Step " + step + " reached severe thermal status", thermalStatus < ConcurrencyController.THERMAL_STATUS_SEVERE);
+
+            controller.update(busy(controller, controller.getConcurrency(), thermalStatus));
+            concurrencySum += controller.getConcurrency();
+            heat = Math.max(0, heat + controller.getConcurrency() - 2);
+        }
+
+        assertTrue("Mean concurrency " + (double) concurrencySum / steps, concurrencySum >= 1.5 * steps);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsZeroConcurrency() {
+        new ConcurrencyController(0, 8);
+    }
+
+}
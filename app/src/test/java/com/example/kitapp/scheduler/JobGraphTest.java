@@ -0,0 +1,424 @@
+package com.example.kitapp.scheduler;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class JobGraphTest {
+
+    private static final String[] NONE = new String[0];
+
+    private ExecutorService executor;
+    private List<String> events;
+    private CountDownLatch completeLatch;
+    private AtomicInteger completeCount;
+    private JobGraph.StageCallback stageCallback;
+    private JobGraph.CompleteCallback completeCallback;
+
+    /**
+     * <p>Job that records when it runs, optionally waits for a latch and fails.
+     */
+    private class RecordingJob implements Job {
+        final String name;
+        final CountDownLatch gate;
+        final long sleep;
+        final Exception failure;
+        volatile boolean cancelled;
+
+        RecordingJob(final String name, final CountDownLatch gate, final long sleep, final Exception failure) {
+            this.name = name;
+            this.gate = gate;
+            this.sleep = sleep;
+            this.failure = failure;
+        }
+
+        @Override
+        public void run() throws Exception {
+            events.add("run " + name);
+            if (gate != null && !gate.await(5, TimeUnit.SECONDS)) {
+                throw new IllegalStateException("Gate of " + name + " was not opened.");
+            }
+            if (sleep > 0) {
+                Thread.sleep(sleep);
+            }
+            if (cancelled) {
+                throw new InterruptedException(name + " cancelled");
+            }
+            if (failure != null) {
+                throw failure;
+            }
+            events.add("done " + name);
+        }
+
+        @Override
+        public void cancel() {
+            cancelled = true;
+            events.add("cancel " + name);
+        }
+    }
+
+    private static class FakePipeFactory implements JobGraph.PipeFactory {
+        final List<String> created = Collections.synchronizedList(new ArrayList<String>());
+        final List<String> closed = Collections.synchronizedList(new ArrayList<String>());
+
+        @Override
+        public String createPipe() {
+            final String pipe = "/pipes/fk_pipe_" + (created.size() + 1);
+            created.add(pipe);
+            return pipe;
+        }
+
+        @Override
+        public void closePipe(final String pipe) {
+            closed.add(pipe);
+        }
+    }
+
+    @Before
+    public void setUp() {
+        executor = Executors.newCachedThreadPool();
+        events = Collections.synchronizedList(new ArrayList<String>());
+        completeLatch = new CountDownLatch(1);
+        completeCount = new AtomicInteger();
+        stageCallback = new JobGraph.StageCallback() {
+
+            @Override
+            public void apply(final JobGraph graph, final String stage, final JobState state) {
+                events.add(stage + " " + state);
+            }
+        };
+        completeCallback = new JobGraph.CompleteCallback() {
+
+            @Override
+            public void apply(final JobGraph graph) {
+                completeCount.incrementAndGet();
+                completeLatch.countDown();
+            }
+        };
+    }
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    private JobGraph.JobFactory factory(final Job job) {
+        return new JobGraph.JobFactory() {
+
+            @Override
+            public Job create(final JobGraph graph) {
+                return job;
+            }
+        };
+    }
+
+    private void awaitComplete() throws InterruptedException {
+        assertTrue(completeLatch.await(5, TimeUnit.SECONDS));
+        Thread.sleep(20);
+        assertEquals(1, completeCount.get());
+    }
+
+    @Test
+    public void runsIndependentStagesConcurrently() throws Exception {
+        final CountDownLatch bothRunning = new CountDownLatch(2);
+        final Job first = new RecordingJob("a", null, 15, null) {
+
+            @Override
+            public void run() throws Exception {
+                bothRunning.countDown();
+                assertTrue(bothRunning.await(5, TimeUnit.SECONDS));
+                super.run();
+            }
+        };
+        final Job second = new RecordingJob("b", null, 30, null) {
+
+            @Override
+            public void run() throws Exception {
+                bothRunning.countDown();
+                assertTrue(bothRunning.await(5, TimeUnit.SECONDS));
+                super.run();
+            }
+        };
+
+        final JobGraph graph = new JobGraph("test", new JobScheduler(2, executor), null)
+                .addFile("a.out", new File("a.out"))
+                .addFile("b.out", new File("b.out"))
+                .addFile("c.out", new File("c.out"))
+                .addStage("a", JobPriority.NORMAL, NONE, new String[]{"a.out"}, factory(first))
+                .addStage("b", JobPriority.NORMAL, NONE, new String[]{"b.out"}, factory(second))
+                .addStage("c", JobPriority.NORMAL, new String[]{"a.out", "b.out"}, new String[]{"c.out"}, factory(new RecordingJob("c", null, 0, null)))
+                .start(stageCallback, completeCallback);
+
+        awaitComplete();
+
+        assertEquals(JobState.COMPLETED, graph.getState());
+        assertTrue(events.indexOf("run c") > events.indexOf("done a"));
+        assertTrue(events.indexOf("run c") > events.indexOf("done b"));
+
+        // B SLEPT LONGER, SO IT DETERMINED WHEN C COULD START
+        assertEquals(Arrays.asList("b", "c"), graph.getCriticalPath());
+        assertEquals(3, graph.getMetrics().getStages().size());
+        assertTrue(graph.getMetrics().getElapsedTime() < graph.getMetrics().getTotalDuration());
+    }
+
+    @Test
+    public void streamsThroughPipeWithReaderSubmittedFirst() throws Exception {
+        final FakePipeFactory pipeFactory = new FakePipeFactory();
+        final CountDownLatch readerRunning = new CountDownLatch(1);
+        final List<String> paths = Collections.synchronizedList(new ArrayList<String>());
+
+        final JobGraph graph = new JobGraph("test", new JobScheduler(2, executor), pipeFactory)
+                .addStream("video", new File("/files/video.mp4"))
+                .addFile("burned", new File("/files/burned.mp4"))
+                .addStage("create", JobPriority.NORMAL, NONE, new String[]{"video"}, new JobGraph.JobFactory() {
+
+                    @Override
+                    public Job create(final JobGraph graph) {
+                        paths.add("create " + graph.getPath("video"));
+
+                        // THE WRITER ONLY FINISHES WHILE THE READER RUNS, AS WITH A REAL PIPE
+                        return new RecordingJob("create", readerRunning, 0, null);
+                    }
+                })
+                .addStage("burn", JobPriority.NORMAL, new String[]{"video"}, new String[]{"burned"}, new JobGraph.JobFactory() {
+
+                    @Override
+                    public Job create(final JobGraph graph) {
+                        paths.add("burn " + graph.getPath("video") + " " + graph.isPipe("video"));
+                        return new RecordingJob("burn", null, 0, null) {
+
+                            @Override
+                            public void run() throws Exception {
+                                readerRunning.countDown();
+                                super.run();
+                            }
+                        };
+                    }
+                })
+                .start(stageCallback, completeCallback);
+
+        awaitComplete();
+
+        assertEquals(JobState.COMPLETED, graph.getState());
+        assertEquals(Arrays.asList("burn /pipes/fk_pipe_1 true", "create /pipes/fk_pipe_1"), paths);
+        assertEquals(Collections.singletonList("/pipes/fk_pipe_1"), pipeFactory.closed);
+    }
+
+    @Test
+    public void usesFilesWithSingleWorker() throws Exception {
+        final FakePipeFactory pipeFactory = new FakePipeFactory();
+        final JobGraph graph = new JobGraph("test", new JobScheduler(1, executor), pipeFactory)
+                .addStream("video", new File("/files/video.mp4"))
+                .addStage("create", JobPriority.NORMAL, NONE, new String[]{"video"}, factory(new RecordingJob("create", null, 0, null)))
+                .addStage("burn", JobPriority.NORMAL, new String[]{"video"}, NONE, factory(new RecordingJob("burn", null, 0, null)))
+                .start(stageCallback, completeCallback);
+
+        awaitComplete();
+
+        assertFalse(graph.isPipe("video"));
+        assertEquals(new File("/files/video.mp4").getAbsolutePath(), graph.getPath("video"));
+        assertTrue(pipeFactory.created.isEmpty());
+        assertTrue(events.indexOf("run burn") > events.indexOf("done create"));
+    }
+
+    @Test
+    public void usesFilesAtConcurrencyLimitOne() throws Exception {
+        final FakePipeFactory pipeFactory = new FakePipeFactory();
+        final JobScheduler scheduler = new JobScheduler(4, executor);
+        scheduler.setConcurrencyLimit(1);
+
+        // A HIGH PRIORITY READER WAITING ON A PIPE WOULD OTHERWISE TAKE THE ONLY SLOT
+        final JobGraph graph = new JobGraph("test", scheduler, pipeFactory)
+                .addStream("video", new File("/files/video.mp4"))
+                .addStage("create", JobPriority.NORMAL, NONE, new String[]{"video"}, factory(new RecordingJob("create", null, 0, null)))
+                .addStage("burn", JobPriority.HIGH, new String[]{"video"}, NONE, factory(new RecordingJob("burn", null, 0, null)))
+                .start(stageCallback, completeCallback);
+
+        awaitComplete();
+
+        assertEquals(JobState.COMPLETED, graph.getState());
+        assertFalse(graph.isPipe("video"));
+        assertTrue(pipeFactory.created.isEmpty());
+        assertTrue(events.indexOf("run burn") > events.indexOf("done create"));
+    }
+
+    @Test
+    public void usesFilesWhileOtherJobsHoldTheSlots() throws Exception {
+        final FakePipeFactory pipeFactory = new FakePipeFactory();
+        final JobScheduler scheduler = new JobScheduler(2, executor);
+        final CountDownLatch otherJobGate = new CountDownLatch(1);
+        final CountDownLatch otherJobRunning = new CountDownLatch(1);
+        scheduler.submit(new RecordingJob("other", otherJobGate, 0, null) {
+
+            @Override
+            public void run() throws Exception {
+                otherJobRunning.countDown();
+                super.run();
+            }
+        });
+        assertTrue(otherJobRunning.await(5, TimeUnit.SECONDS));
+
+        final JobGraph graph = new JobGraph("test", scheduler, pipeFactory)
+                .addStream("video", new File("/files/video.mp4"))
+                .addStage("create", JobPriority.NORMAL, NONE, new String[]{"video"}, factory(new RecordingJob("create", null, 0, null)))
+                .addStage("burn", JobPriority.HIGH, new String[]{"video"}, NONE, factory(new RecordingJob("burn", null, 0, null)))
+                .start(stageCallback, completeCallback);
+
+        awaitComplete();
+        otherJobGate.countDown();
+
+        assertEquals(JobState.COMPLETED, graph.getState());
+        assertFalse(graph.isPipe("video"));
+        assertTrue(pipeFactory.created.isEmpty());
+    }
+
+    @Test
+    public void fallsBackToFilesWhenPipeCanNotBeCreated() throws Exception {
+        final JobGraph.PipeFactory pipeFactory = new JobGraph.PipeFactory() {
+
+            @Override
+            public String createPipe() throws IOException {
+                throw new IOException("too many open files");
+            }
+
+            @Override
+            public void closePipe(final String pipe) {
+            }
+        };
+
+        final JobGraph graph = new JobGraph("test", new JobScheduler(2, executor), pipeFactory)
+                .addStream("video", new File("/files/video.mp4"))
+                .addStage("create", JobPriority.NORMAL, NONE, new String[]{"video"}, factory(new RecordingJob("create", null, 0, null)))
+                .addStage("burn", JobPriority.NORMAL, new String[]{"video"}, NONE, factory(new RecordingJob("burn", null, 0, null)))
+                .start(stageCallback, completeCallback);
+
+        awaitComplete();
+
+        assertEquals(JobState.COMPLETED, graph.getState());
+        assertFalse(graph.isPipe("video"));
+        assertTrue(events.indexOf("run burn") > events.indexOf("done create"));
+    }
+
+    @Test
+    public void failureCancelsLiveAndPendingStages() throws Exception {
+        final CountDownLatch slowStarted = new CountDownLatch(1);
+        final RecordingJob slow = new RecordingJob("slow", null, 0, null) {
+
+            @Override
+            public void run() throws Exception {
+                slowStarted.countDown();
+                while (!cancelled) {
+                    Thread.sleep(5);
+                }
+                throw new InterruptedException("slow cancelled");
+            }
+        };
+        final RecordingJob failing = new RecordingJob("fail", slowStarted, 0, new IOException("encode failed"));
+        final RecordingJob dependant = new RecordingJob("after", null, 0, null);
+
+        final JobGraph graph = new JobGraph("test", new JobScheduler(2, executor), null)
+                .addFile("x", new File("x"))
+                .addStage("slow", JobPriority.NORMAL, NONE, NONE, factory(slow))
+                .addStage("fail", JobPriority.NORMAL, NONE, new String[]{"x"}, factory(failing))
+                .addStage("after", JobPriority.NORMAL, new String[]{"x"}, NONE, factory(dependant))
+                .start(stageCallback, completeCallback);
+
+        awaitComplete();
+
+        assertEquals(JobState.FAILED, graph.getState());
+        assertEquals("fail", graph.getFailedStage());
+        assertEquals("encode failed", graph.getFailure().getMessage());
+        assertTrue(slow.cancelled);
+        assertEquals(JobState.CANCELLED, graph.getStageState("slow"));
+        assertEquals(JobState.CANCELLED, graph.getStageState("after"));
+        assertFalse(events.contains("run after"));
+    }
+
+    @Test
+    public void cancelStopsEveryLiveJob() throws Exception {
+        final CountDownLatch running = new CountDownLatch(2);
+        final List<RecordingJob> jobs = new ArrayList<>();
+        final JobGraph graph = new JobGraph("test", new JobScheduler(3, executor), null);
+        for (String name : Arrays.asList("a", "b")) {
+            final RecordingJob job = new RecordingJob(name, null, 0, null) {
+
+                @Override
+                public void run() throws Exception {
+                    running.countDown();
+                    while (!cancelled) {
+                        Thread.sleep(5);
+                    }
+                }
+            };
+            jobs.add(job);
+            graph.addStage(name, JobPriority.NORMAL, NONE, NONE, factory(job));
+        }
+        graph.start(stageCallback, completeCallback);
+
+        assertTrue(running.await(5, TimeUnit.SECONDS));
+        graph.cancel();
+
+        awaitComplete();
+
+        assertEquals(JobState.CANCELLED, graph.getState());
+        assertNull(graph.getFailedStage());
+        for (RecordingJob job : jobs) {
+            assertTrue(job.cancelled);
+        }
+    }
+
+    @Test
+    public void factoryFailureFailsGraph() throws Exception {
+        final JobGraph graph = new JobGraph("test", new JobScheduler(2, executor), null)
+                .addStage("broken", JobPriority.NORMAL, NONE, NONE, new JobGraph.JobFactory() {
+
+                    @Override
+                    public Job create(final JobGraph graph) throws IOException {
+                        throw new IOException("no input");
+                    }
+                })
+                .start(stageCallback, completeCallback);
+
+        awaitComplete();
+
+        assertEquals(JobState.FAILED, graph.getState());
+        assertEquals("broken", graph.getFailedStage());
+        assertTrue(graph.getCriticalPath().isEmpty());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void rejectsCycles() throws IOException {
+        new JobGraph("test", new JobScheduler(2, executor), null)
+                .addFile("x", new File("x"))
+                .addFile("y", new File("y"))
+                .addStage("a", JobPriority.NORMAL, new String[]{"y"}, new String[]{"x"}, factory(new RecordingJob("a", null, 0, null)))
+                .addStage("b", JobPriority.NORMAL, new String[]{"x"}, new String[]{"y"}, factory(new RecordingJob("b", null, 0, null)))
+                .start(null, null);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsSecondWriter() {
+        new JobGraph("test", new JobScheduler(2, executor), null)
+                .addFile("x", new File("x"))
+                .addStage("a", JobPriority.NORMAL, NONE, new String[]{"x"}, factory(new RecordingJob("a", null, 0, null)))
+                .addStage("b", JobPriority.NORMAL, NONE, new String[]{"x"}, factory(new RecordingJob("b", null, 0, null)));
+    }
+
+}
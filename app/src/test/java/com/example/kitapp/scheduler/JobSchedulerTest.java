@@ -0,0 +1,326 @@
+package com.example.kitapp.scheduler;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.Executor;
+
+public class JobSchedulerTest {
+
+    /**
+     * Executor that only records tasks, tests decide when a worker actually runs.
+     */
+    static class FakeExecutor implements Executor {
+        final Queue<Runnable> tasks = new ArrayDeque<>();
+
+        @Override
+        public void execute(final Runnable command) {
+            tasks.add(command);
+        }
+
+        void runNext() {
+            tasks.remove().run();
+        }
+
+        void runAll() {
+            while (!tasks.isEmpty()) {
+                runNext();
+            }
+        }
+    }
+
+    static class FakeJob implements Job {
+        final String name;
+        final List<String> log;
+        boolean cancelled;
+        Exception failure;
+
+        FakeJob(final String name, final List<String> log) {
+            this.name = name;
+            this.log = log;
+        }
+
+        @Override
+        public void run() throws Exception {
+            log.add(name);
+            if (failure != null) {
+                throw failure;
+            }
+        }
+
+        @Override
+        public void cancel() {
+            cancelled = true;
+        }
+    }
+
+    private FakeExecutor executor;
+    private List<String> runLog;
+    private List<JobHandle> completed;
+    private JobCompleteCallback completeCallback;
+
+    @Before
+    public void setUp() {
+        executor = new FakeExecutor();
+        runLog = new ArrayList<>();
+        completed = Collections.synchronizedList(new ArrayList<JobHandle>());
+        completeCallback = new JobCompleteCallback() {
+
+            @Override
+            public void apply(final JobHandle handle) {
+                completed.add(handle);
+            }
+        };
+    }
+
+    @Test
+    public void neverRunsMoreJobsThanWorkers() {
+        final JobScheduler scheduler = new JobScheduler(2, executor);
+
+        final List<JobHandle> handles = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            handles.add(scheduler.submit(new FakeJob("job" + i, runLog)));
+        }
+
+        assertEquals(2, executor.tasks.size());
+        assertEquals(2, scheduler.getRunningCount());
+        assertEquals(8, scheduler.getQueuedCount());
+        assertEquals(JobState.RUNNING, handles.get(0).getState());
+        assertEquals(JobState.QUEUED, handles.get(2).getState());
+
+        executor.runNext();
+
+        assertEquals(JobState.COMPLETED, handles.get(0).getState());
+        assertEquals(JobState.RUNNING, handles.get(2).getState());
+        assertEquals(2, executor.tasks.size());
+        assertEquals(2, scheduler.getRunningCount());
+
+        executor.runAll();
+
+        assertEquals(10, runLog.size());
+        assertEquals(0, scheduler.getRunningCount());
+        assertEquals(0, scheduler.getQueuedCount());
+    }
+
+    @Test
+    public void concurrencyLimitChangesWithoutInterruptingJobs() {
+        final JobScheduler scheduler = new JobScheduler(4, executor);
+        for (int i = 0; i < 8; i++) {
+            scheduler.submit(new FakeJob("job" + i, runLog));
+        }
+        assertEquals(4, scheduler.getRunningCount());
+
+        scheduler.setConcurrencyLimit(2);
+
+        assertEquals(2, scheduler.getConcurrencyLimit());
+        assertEquals(4, scheduler.getRunningCount());
+
+        executor.runNext();
+        executor.runNext();
+
+        // RUNNING JOBS ABOVE THE LIMIT FINISH BEFORE QUEUED ONES START
+        assertEquals(2, scheduler.getRunningCount());
+        assertEquals(2, executor.tasks.size());
+
+        executor.runNext();
+
+        assertEquals(2, scheduler.getRunningCount());
+        assertEquals(3, scheduler.getQueuedCount());
+
+        scheduler.setConcurrencyLimit(10);
+
+        assertEquals(4, scheduler.getConcurrencyLimit());
+        assertEquals(4, scheduler.getRunningCount());
+        assertEquals(1, scheduler.getQueuedCount());
+
+        scheduler.setConcurrencyLimit(0);
+
+        assertEquals(1, scheduler.getConcurrencyLimit());
+    }
+
+    @Test
+    public void dispatchesByPriorityThenSubmissionOrder() {
+        final JobScheduler scheduler = new JobScheduler(1, executor);
+
+        scheduler.submit(new FakeJob("first", runLog));
+        scheduler.submit(new FakeJob("low", runLog), JobPriority.LOW);
+        scheduler.submit(new FakeJob("normal1", runLog), JobPriority.NORMAL);
+        scheduler.submit(new FakeJob("high", runLog), JobPriority.HIGH);
+        scheduler.submit(new FakeJob("normal2", runLog), JobPriority.NORMAL);
+
+        executor.runAll();
+
+        assertEquals(Arrays.asList("first", "high", "normal1", "normal2", "low"), runLog);
+    }
+
+    @Test
+    public void cancellingQueuedJobRemovesItWithoutRunningAndTellsIt() {
+        final JobScheduler scheduler = new JobScheduler(1, executor);
+
+        scheduler.submit(new FakeJob("running", runLog));
+        final FakeJob queuedJob = new FakeJob("queued", runLog);
+        final JobHandle queued = scheduler.submit(queuedJob, JobPriority.NORMAL, completeCallback);
+
+        assertTrue(queued.cancel());
+
+        assertEquals(JobState.CANCELLED, queued.getState());
+        assertEquals(Collections.singletonList(queued), completed);
+        assertTrue(queuedJob.cancelled);
+        assertEquals(0, scheduler.getQueuedCount());
+
+        executor.runAll();
+
+        assertEquals(Collections.singletonList("running"), runLog);
+        assertFalse(queued.cancel());
+    }
+
+    @Test
+    public void reservedSlotsStartJobsTogetherAndHoldBackQueuedJobs() {
+        final JobScheduler scheduler = new JobScheduler(3, executor);
+        scheduler.submit(new FakeJob("running", runLog));
+
+        final JobScheduler.Reservation reservation = scheduler.reserve(2);
+        assertNull(scheduler.reserve(1));
+
+        final JobHandle queued = scheduler.submit(new FakeJob("queued", runLog));
+        assertEquals(JobState.QUEUED, queued.getState());
+
+        final JobHandle reader = reservation.submit(new FakeJob("reader", runLog), JobPriority.LOW, completeCallback);
+        assertEquals(JobState.RUNNING, reader.getState());
+        assertEquals(2, scheduler.getRunningCount());
+
+        // THE UNUSED SLOT GOES TO THE QUEUE ONCE RELEASED
+        reservation.release();
+        assertEquals(JobState.RUNNING, queued.getState());
+        assertEquals(3, scheduler.getRunningCount());
+
+        executor.runAll();
+        assertEquals(Arrays.asList("running", "reader", "queued"), runLog);
+        assertEquals(Collections.singletonList(reader), completed);
+    }
+
+    @Test
+    public void reservationRespectsConcurrencyLimit() {
+        final JobScheduler scheduler = new JobScheduler(4, executor);
+        scheduler.setConcurrencyLimit(1);
+
+        assertNull(scheduler.reserve(2));
+        assertTrue(scheduler.reserve(1) != null);
+    }
+
+    @Test
+    public void jobsSeeTheSchedulerRunningThem() {
+        final JobScheduler scheduler = new JobScheduler(2, executor);
+        final List<JobScheduler> seen = new ArrayList<>();
+        final Job job = new FakeJob("job", runLog) {
+
+            @Override
+            public void run() throws Exception {
+                seen.add(JobScheduler.getCurrent());
+            }
+        };
+
+        scheduler.submit(job);
+        executor.runAll();
+
+        assertEquals(1, seen.size());
+        assertSame(scheduler, seen.get(0));
+        assertNull(JobScheduler.getCurrent());
+    }
+
+    @Test
+    public void cancellingRunningJobForwardsToJob() {
+        final JobScheduler scheduler = new JobScheduler(1, executor);
+
+        final FakeJob job = new FakeJob("running", runLog);
+        final JobHandle handle = scheduler.submit(job, JobPriority.NORMAL, completeCallback);
+
+        assertTrue(scheduler.cancel(handle.getId()));
+        assertTrue(job.cancelled);
+        assertEquals(JobState.RUNNING, handle.getState());
+
+        executor.runAll();
+
+        assertEquals(JobState.CANCELLED, handle.getState());
+        assertEquals(Collections.singletonList(handle), completed);
+    }
+
+    @Test
+    public void failedJobReportsFailureAndFreesWorker() {
+        final JobScheduler scheduler = new JobScheduler(1, executor);
+
+        final FakeJob failingJob = new FakeJob("failing", runLog);
+        failingJob.failure = new IllegalStateException("boom");
+        final JobHandle failing = scheduler.submit(failingJob, JobPriority.NORMAL, completeCallback);
+        final JobHandle next = scheduler.submit(new FakeJob("next", runLog), JobPriority.NORMAL, completeCallback);
+
+        executor.runAll();
+
+        assertEquals(JobState.FAILED, failing.getState());
+        assertSame(failingJob.failure, failing.getFailure());
+        assertEquals(JobState.COMPLETED, next.getState());
+        assertNull(next.getFailure());
+        assertEquals(Arrays.asList(failing, next), completed);
+    }
+
+    @Test
+    public void cancelAllCancelsQueuedAndRunningJobs() {
+        final JobScheduler scheduler = new JobScheduler(2, executor);
+
+        final List<FakeJob> jobs = new ArrayList<>();
+        final List<JobHandle> handles = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            final FakeJob job = new FakeJob("job" + i, runLog);
+            jobs.add(job);
+            handles.add(scheduler.submit(job, JobPriority.NORMAL, completeCallback));
+        }
+
+        scheduler.cancelAll();
+
+        assertTrue(jobs.get(0).cancelled);
+        assertTrue(jobs.get(1).cancelled);
+        assertTrue(jobs.get(4).cancelled);
+        assertEquals(3, completed.size());
+        assertEquals(0, scheduler.getQueuedCount());
+
+        executor.runAll();
+
+        for (JobHandle handle : handles) {
+            assertEquals(JobState.CANCELLED, handle.getState());
+        }
+        assertEquals(5, completed.size());
+        assertTrue(runLog.isEmpty());
+    }
+
+    @Test
+    public void listsRunningThenQueuedJobs() {
+        final JobScheduler scheduler = new JobScheduler(1, executor);
+
+        final JobHandle running = scheduler.submit(new FakeJob("running", runLog));
+        final JobHandle low = scheduler.submit(new FakeJob("low", runLog), JobPriority.LOW);
+        final JobHandle high = scheduler.submit(new FakeJob("high", runLog), JobPriority.HIGH);
+
+        assertEquals(Arrays.asList(running, high, low), scheduler.listJobs());
+        assertSame(low, scheduler.getJob(low.getId()));
+        assertNull(scheduler.getJob(-1));
+        assertFalse(scheduler.cancel(-1));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsZeroWorkers() {
+        new JobScheduler(0, executor);
+    }
+
+}
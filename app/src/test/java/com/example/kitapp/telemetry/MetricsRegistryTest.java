@@ -0,0 +1,162 @@
+package com.example.kitapp.telemetry;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+public class MetricsRegistryTest {
+
+    private static final double DELTA = 0.0001;
+
+    @Test
+    public void recordsSessionTimeSeries() {
+        final MetricsRegistry registry = new MetricsRegistry(4, 2, 2000);
+        registry.startSession(7, 1000);
+        for (int i = 1; i <= 6; i++) {
+            registry.record(7, 1000 + i * 500, i * 10, i, 1000 + i, i * 100);
+        }
+
+        final SessionMetrics session = registry.getSession(7);
+
+        assertEquals(4, session.size());
+        assertEquals(6, session.getSampleCount());
+        assertEquals(2500, session.getTime(0));
+        assertEquals(30, session.getFps(0), DELTA);
+        assertEquals(60, session.getFps(3), DELTA);
+        assertEquals(6, session.getSpeed(3), DELTA);
+        assertEquals(1006, session.getBitrate(3), DELTA);
+        assertEquals(600, session.getSize(3));
+        assertEquals(55, session.getMeanFps(2), DELTA);
+        assertEquals(1, registry.getGauge(MetricsRegistry.SESSIONS_ACTIVE).get(), DELTA);
+        assertEquals(6, registry.getCounter(MetricsRegistry.STATISTICS_RECEIVED).get());
+        assertEquals(5, registry.getHistogram(MetricsRegistry.STATISTICS_INTERVAL).getCount());
+    }
+
+    @Test
+    public void countsStallsAndThrottling() {
+        final MetricsRegistry registry = new MetricsRegistry(16, 2, 2000);
+        registry.startSession(1, 1000);
+        registry.record(1, 1000, 60, 2, 1000, 100);
+        registry.record(1, 1500, 60, 2, 1000, 200);
+        registry.record(1, 6000, 20, 0.5f, 1000, 300);
+        registry.record(1, 6500, 20, 0.5f, 1000, 400);
+
+        final SessionMetrics session = registry.getSession(1);
+
+        assertEquals(1, session.getStallCount());
+        assertEquals(1, registry.getCounter(MetricsRegistry.STATISTICS_STALLS).get());
+        assertEquals(1.0 / 3, session.getFpsTrend(), DELTA);
+        assertEquals(1, registry.getCounter(MetricsRegistry.SESSIONS_STARTED).get());
+    }
+
+    @Test
+    public void keepsLatestFinishedSessions() {
+        final MetricsRegistry registry = new MetricsRegistry(4, 2, 2000);
+        for (long sessionId = 1; sessionId <= 3; sessionId++) {
+            registry.startSession(sessionId, 1000);
+            registry.record(sessionId, 1500, 30, 1, 1000, 100);
+            registry.endSession(sessionId, 2000, (sessionId == 3) ? 1 : 0);
+        }
+        registry.startSession(4, 3000);
+
+        assertNull(registry.getSession(1));
+        assertTrue(registry.getSession(3).isFinished());
+        assertEquals(1, registry.getSession(3).getReturnCode());
+        assertFalse(registry.getSession(4).isFinished());
+        assertEquals(3, registry.getSessions().size());
+        assertEquals(4, registry.getSessions().get(2).getSessionId());
+        assertEquals(1, registry.getCounter(MetricsRegistry.SESSIONS_FAILED).get());
+        assertEquals(1, registry.getGauge(MetricsRegistry.SESSIONS_ACTIVE).get(), DELTA);
+
+        registry.clear();
+
+        assertEquals(0, registry.getSessions().size());
+        assertEquals(0, registry.getCounter(MetricsRegistry.SESSIONS_STARTED).get());
+    }
+
+    @Test
+    public void dropsStatisticsOfSessionsNotRunning() {
+        final MetricsRegistry registry = new MetricsRegistry(4, 1, 2000);
+        registry.startSession(1, 1000);
+        registry.record(1, 1500, 30, 1, 1000, 100);
+        registry.endSession(1, 2000, 0);
+        registry.startSession(2, 2000);
+        registry.endSession(2, 2500, 0);
+
+        registry.record(1, 3000, 30, 1, 1000, 200);
+        registry.record(3, 3000, 30, 1, 1000, 100);
+
+        assertNull(registry.getSession(1));
+        assertNull(registry.getSession(3));
+        assertEquals(1, registry.getSessions().size());
+        assertEquals(2, registry.getCounter(MetricsRegistry.SESSIONS_STARTED).get());
+        assertEquals(1, registry.getCounter(MetricsRegistry.STATISTICS_RECEIVED).get());
+        assertEquals(0, registry.getGauge(MetricsRegistry.SESSIONS_ACTIVE).get(), DELTA);
+    }
+
+    @Test
+    public void histogramPercentilesUseBucketBounds() {
+        final MetricsRegistry registry = new MetricsRegistry(4, 2, 2000);
+        final MetricsRegistry.Histogram histogram = registry.getHistogram("latency", 10, 100, 1000);
+        assertSame(histogram, registry.getHistogram("latency"));
+        assertEquals(0, histogram.getPercentile(50), DELTA);
+
+        for (int i = 0; i < 18; i++) {
+            histogram.record(50);
+        }
+        histogram.record(500);
+        histogram.record(5000);
+
+        assertEquals(20, histogram.getCount());
+        assertEquals(18, histogram.getBucketCount(1));
+        assertEquals(1, histogram.getBucketCount(3));
+        assertEquals(100, histogram.getPercentile(50), DELTA);
+        assertEquals(100, histogram.getPercentile(90), DELTA);
+        assertEquals(1000, histogram.getPercentile(95), DELTA);
+        assertEquals(5000, histogram.getPercentile(100), DELTA);
+        assertEquals(320, histogram.getMean(), DELTA);
+    }
+
+    @Test
+    public void dumpsJson() throws IOException {
+        final MetricsRegistry registry = new MetricsRegistry(4, 2, 2000);
+        registry.getCounter("custom \"count\"").add(3);
+        registry.startSession(5, 1000);
+        registry.record(5, 1000, 29.97f, Float.NaN, 1500, 100);
+        registry.record(5, 1500, 30, 1.5f, 1500, 200);
+
+        final String json = registry.toJson();
+
+        assertTrue(json, json.startsWith("{\"counters\":{\"custom \\\"count\\\"\":3,"));
+        assertTrue(json, json.contains("\"sessions.active\":1"));
+        assertTrue(json, json.contains("\"fps\":[29.970,30]"));
+        assertTrue(json, json.contains("\"speed\":[null,1.500]"));
+        assertTrue(json, json.contains("\"size\":[100,200]"));
+        assertTrue(json, json.endsWith("]}]}"));
+
+        final File file = Files.createTempFile("metrics", ".json").toFile();
+        try {
+            registry.writeJson(file);
+            assertEquals(json, new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8));
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void formatsJsonNumbers() {
+        assertEquals("12", MetricsRegistry.formatJsonNumber(12));
+        assertEquals("0.250", MetricsRegistry.formatJsonNumber(0.25));
+        assertEquals("null", MetricsRegistry.formatJsonNumber(Double.POSITIVE_INFINITY));
+    }
+
+}
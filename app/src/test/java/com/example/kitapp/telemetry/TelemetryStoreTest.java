@@ -0,0 +1,189 @@
+package com.example.kitapp.telemetry;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.util.List;
+
+public class TelemetryStoreTest {
+
+    private static final double DELTA = 0.0001;
+
+    private File directory;
+    private File file;
+
+    @Before
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("telemetry").toFile();
+        file = new File(directory, "telemetry.bin");
+    }
+
+    @After
+    public void tearDown() {
+        final File[] files = directory.listFiles();
+        if (files != null) {
+            for (File child : files) {
+                child.delete();
+            }
+        }
+        directory.delete();
+    }
+
+    private static SessionRecord createRecord(final long endTime, final String preset, final long duration, final int returnCode) {
+        return SessionRecord.create(new String[]{"-i", "in.mp4", "-c:v", "libx264", "-preset", preset, "out.mp4"},
+                endTime, duration, 30, 1.5f, 2000, 1024, returnCode, 2, 1.25f);
+    }
+
+    @Test
+    public void readsAppendedRecords() throws IOException {
+        final TelemetryStore store = new TelemetryStore(file, TelemetryStore.DEFAULT_MAX_SIZE);
+        store.append(createRecord(1000, "fast", 1500, 0));
+        store.append(createRecord(2000, "slow", 2500, 255));
+
+        final List<SessionRecord> records = new TelemetryStore(file, TelemetryStore.DEFAULT_MAX_SIZE).query(0);
+
+        assertEquals(2, records.size());
+        final SessionRecord record = records.get(1);
+        assertEquals(2000, record.getEndTime());
+        assertEquals("libx264", record.getCodec());
+        assertEquals("slow", record.getPreset());
+        assertEquals(2500, record.getDuration());
+        assertEquals(30, record.getFps(), DELTA);
+        assertEquals(1.5, record.getSpeed(), DELTA);
+        assertEquals(2000, record.getBitrate(), DELTA);
+        assertEquals(1024, record.getSize());
+        assertEquals(255, record.getReturnCode());
+        assertEquals(2, record.getRunningJobs());
+        assertEquals(1.25, record.getLoadAverage(), DELTA);
+        assertEquals(1, store.query(1500).size());
+    }
+
+    @Test
+    public void ignoresRecordCutShortByCrash() throws IOException {
+        final TelemetryStore store = new TelemetryStore(file, TelemetryStore.DEFAULT_MAX_SIZE);
+        store.append(createRecord(1000, "fast", 1500, 0));
+        store.append(createRecord(2000, "fast", 1500, 0));
+        try (RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw")) {
+            randomAccessFile.setLength(randomAccessFile.length() - 3);
+        }
+
+        assertEquals(1, store.query(0).size());
+    }
+
+    @Test
+    public void appendsAfterRecordCutShortByCrash() throws IOException {
+        new TelemetryStore(file, TelemetryStore.DEFAULT_MAX_SIZE).append(createRecord(1000, "fast", 1500, 0));
+        final long intactLength = file.length();
+        try (FileOutputStream outputStream = new FileOutputStream(file, true)) {
+            outputStream.write(new byte[]{0, 0, 0, 90, 1, 2, 3});
+        }
+
+        // THE PROCESS WAS KILLED, THE NEXT ONE KEEPS APPENDING
+        final TelemetryStore store = new TelemetryStore(file, TelemetryStore.DEFAULT_MAX_SIZE);
+        store.append(createRecord(2000, "fast", 1500, 0));
+        store.append(createRecord(3000, "fast", 1500, 0));
+
+        final List<SessionRecord> records = store.query(0);
+        assertEquals(3, records.size());
+        assertEquals(3000, records.get(2).getEndTime());
+        assertEquals(3 * intactLength, file.length());
+    }
+
+    @Test
+    public void ignoresRecordWithBadChecksum() throws IOException {
+        final TelemetryStore store = new TelemetryStore(file, TelemetryStore.DEFAULT_MAX_SIZE);
+        store.append(createRecord(1000, "fast", 1500, 0));
+        final long firstLength = file.length();
+        store.append(createRecord(2000, "fast", 1500, 0));
+        try (RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw")) {
+            randomAccessFile.seek(firstLength + 6);
+            randomAccessFile.write(0x7f);
+        }
+        try (FileOutputStream outputStream = new FileOutputStream(file, true)) {
+            outputStream.write(new byte[]{0, 0});
+        }
+
+        assertEquals(1, store.query(0).size());
+    }
+
+    @Test
+    public void rotatesWhenFull() throws IOException {
+        final TelemetryStore store = new TelemetryStore(file, 400);
+        for (int i = 0; i < 20; i++) {
+            store.append(createRecord(i, "fast", 1000, 0));
+        }
+
+        final List<SessionRecord> records = store.query(0);
+
+        assertTrue(file.length() <= 400);
+        assertTrue(records.size() < 20);
+        assertEquals(19, records.get(records.size() - 1).getEndTime());
+        for (int i = 1; i < records.size(); i++) {
+            assertEquals(records.get(i - 1).getEndTime() + 1, records.get(i).getEndTime());
+        }
+
+        store.clear();
+        assertEquals(0, store.query(0).size());
+    }
+
+    @Test
+    public void rollsUpPercentilesByWorkload() throws IOException {
+        final TelemetryStore store = new TelemetryStore(file, TelemetryStore.DEFAULT_MAX_SIZE);
+        for (int i = 1; i <= 20; i++) {
+            store.append(createRecord(i, "fast", i * 100, 0));
+        }
+        store.append(createRecord(21, "fast", 10, 1));
+        store.append(createRecord(22, "slow", 5000, 0));
+
+        final List<TelemetryStore.Rollup> rollups = store.rollup(0);
+
+        assertEquals(2, rollups.size());
+        final TelemetryStore.Rollup fast = rollups.get(0);
+        assertEquals("libx264/fast", fast.getWorkload());
+        assertEquals(21, fast.getCount());
+        assertEquals(1, fast.getFailures());
+        assertEquals(1000, fast.getP50Duration());
+        assertEquals(1900, fast.getP95Duration());
+        assertEquals(30, fast.getMeanFps(), DELTA);
+        assertEquals(1.5, fast.getMeanSpeed(), DELTA);
+
+        final TelemetryStore.Rollup slow = rollups.get(1);
+        assertEquals("libx264/slow", slow.getWorkload());
+        assertEquals(5000, slow.getP50Duration());
+        assertEquals(5000, slow.getP95Duration());
+    }
+
+    @Test
+    public void percentileOfEmptyListIsZero() {
+        assertEquals(0, TelemetryStore.percentile(new long[0], 95));
+        assertEquals(7, TelemetryStore.percentile(new long[]{7}, 50));
+    }
+
+    @Test
+    public void commandHashIgnoresPaths() {
+        final long hash = SessionRecord.hashCommand(new String[]{"-i", "a.mp4", "-c:v", "libx264", "a.mkv"});
+
+        assertEquals(hash, SessionRecord.hashCommand(new String[]{"-i", "b.mp4", "-c:v", "libx264", "b.mkv"}));
+        assertNotEquals(hash, SessionRecord.hashCommand(new String[]{"-i", "a.mp4", "-c:v", "libx265", "a.mkv"}));
+        assertNotEquals(hash, SessionRecord.hashCommand(new String[]{"-i", "a.mp4", "-c:vlibx264", "a.mkv"}));
+    }
+
+    @Test
+    public void parsesCodecAndPreset() {
+        assertEquals("libvpx-vp9", SessionRecord.getCodec(new String[]{"-c:v", "libx264", "-vcodec", "libvpx-vp9", "out.webm"}));
+        assertEquals("none", SessionRecord.getCodec(new String[]{"-i", "in.mp4", "out.wav"}));
+        assertEquals("cpu-used=8", SessionRecord.getPreset(new String[]{"-c:v", "libaom-av1", "-cpu-used", "8", "out.mkv"}));
+        assertEquals("default", SessionRecord.getPreset(new String[]{"-c:v", "mpeg4", "out.mp4"}));
+    }
+
+}
@@ -0,0 +1,68 @@
+package com.example.kitapp.test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+public class VideoTest {
+
+    @Test
+    public void encodesThreeImageSlideshow() {
+        final String[] arguments = Video.createEncodeVideoArguments(new String[]{"1.jpg", "2.jpg", "3.jpg"}, "out.mp4", "MPEG4", new String[]{"-movflags", "faststart"});
+
+        assertArrayEquals(new String[]{"-hide_banner", "-y", "-loop", "1", "-i", "1.jpg", "-loop", "1", "-i", "2.jpg", "-loop", "1", "-i", "3.jpg"}, Arrays.copyOf(arguments, 14));
+        assertEquals("-filter_complex", arguments[14]);
+        assertArrayEquals(new String[]{"-map", "[s14]", "-fps_mode", "cfr", "-movflags", "faststart", "-c:v", "mpeg4", "-r", "30", "out.mp4"}, Arrays.copyOfRange(arguments, 16, arguments.length));
+
+        final String filter = arguments[15];
+        assertTrue(filter, filter.startsWith("[0:v]setpts=PTS-STARTPTS,scale=w='if(gte(iw/ih,640/427),min(iw,640),-1)':h='if(gte(iw/ih,640/427),-1,min(ih,427))',scale=trunc(iw/2)*2:trunc(ih/2)*2,setsar=sar=1/1,split=2[s1_0][s1_1];"));
+        assertTrue(filter, filter.contains("[s1_0]pad=width=640:height=427:x=(640-iw)/2:y=(427-ih)/2:color=#00000000,trim=duration=3,select=lte(n\\,90)[s2]"));
+
+        // THE TRANSITION INTO THE SECOND IMAGE AND THE ONE OUT OF IT SHARE A CHAIN
+        assertTrue(filter, filter.contains(";[s5_0]pad=width=640:height=427:x=(640-iw)/2:y=(427-ih)/2:color=#00000000,trim=duration=1,select=lte(n\\,30),split=2[s6_0][s6_1];[s6_0][s3]blend="));
+        assertTrue(filter, filter.contains(";[s11][s6_1]blend="));
+        assertTrue(filter, filter.endsWith("concat=n=5:v=1:a=0,scale=w=640:h=424,format=yuv420p[s14]"));
+        assertEquals(12, filter.split(";").length);
+    }
+
+    @Test
+    public void readsRepeatedImagesOnce() {
+        final String[] arguments = Video.createEncodeVideoArguments(new String[]{"1.jpg", "2.jpg", "1.jpg"}, "out.mp4", "mpeg4", new String[0]);
+
+        assertEquals("-filter_complex", arguments[10]);
+        assertTrue(arguments[11], arguments[11].startsWith("[0:v]setpts=PTS-STARTPTS,") && arguments[11].contains(",split=3[s1_0][s1_1][s1_2];"));
+        assertTrue(arguments[11], arguments[11].endsWith("concat=n=5:v=1:a=0,scale=w=640:h=424,format=yuv420p[s11]"));
+    }
+
+    @Test
+    public void cachesArgumentsByParameters() {
+        final String[] images = {"a.jpg", "b.jpg", "c.jpg"};
+        final String[] first = Video.createShakingVideoArguments(images, "shaking.mp4", "t.trf");
+        final String[] second = Video.createShakingVideoArguments(images.clone(), "shaking.mp4", "t.trf");
+
+        assertArrayEquals(first, second);
+        assertTrue(first[first.length - 10].endsWith("[s4][s8][s12]concat=n=3:v=1:a=0,scale=w=640:h=424,format=yuv420p,fps=30,split=2[s14_0][s14_1];[s14_0]vidstabdetect=shakiness=10:accuracy=15:result=t.trf,nullsink"));
+        assertEquals("[s14_1]", first[first.length - 8]);
+    }
+
+    @Test
+    public void encodesHundredsOfImages() {
+        final String[] images = new String[500];
+        for (int i = 0; i < images.length; i++) {
+            images[i] = i + ".jpg";
+        }
+
+        final String[] arguments = Video.createEncodeVideoArguments(images, "out.mp4", "mpeg4", new String[0]);
+        final String filter = arguments[4 * images.length + 3];
+
+        // THREE CHAINS PER IMAGE, A BLEND PER TRANSITION AND THE CONCAT
+        assertEquals(3 * images.length + (images.length - 1) + 1, filter.split(";").length);
+        assertTrue(filter.contains("]concat=n=999:v=1:a=0,"));
+        assertEquals(1500, Video.getSlideshowDuration(images.length) / 1000);
+    }
+
+}
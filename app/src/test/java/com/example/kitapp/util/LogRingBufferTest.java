@@ -0,0 +1,67 @@
+package com.example.kitapp.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class LogRingBufferTest {
+
+    @Test
+    public void keepsEntriesInOrderUntilFull() {
+        final LogRingBuffer buffer = new LogRingBuffer(3);
+
+        buffer.add("a");
+        buffer.add("bb");
+
+        assertEquals("abb", buffer.toString());
+        assertEquals(2, buffer.size());
+        assertEquals(3, buffer.length());
+        assertFalse(buffer.pollOverwritten());
+    }
+
+    @Test
+    public void overwritesOldestEntriesWhenFull() {
+        final LogRingBuffer buffer = new LogRingBuffer(3);
+
+        for (int i = 0; i < 10; i++) {
+            buffer.add(i + "\n");
+        }
+
+        assertEquals("7\n8\n9\n", buffer.toString());
+        assertEquals(3, buffer.size());
+        assertEquals(6, buffer.length());
+        assertTrue(buffer.pollOverwritten());
+        assertFalse(buffer.pollOverwritten());
+
+        buffer.add("10\n");
+
+        assertEquals("8\n9\n10\n", buffer.toString());
+        assertEquals(7, buffer.length());
+        assertTrue(buffer.pollOverwritten());
+    }
+
+    @Test
+    public void clearResetsBuffer() {
+        final LogRingBuffer buffer = new LogRingBuffer(2);
+        buffer.add("a");
+        buffer.add("b");
+        buffer.add("c");
+
+        buffer.clear();
+
+        assertEquals("", buffer.toString());
+        assertEquals(0, buffer.length());
+        assertFalse(buffer.pollOverwritten());
+
+        buffer.add("d");
+        assertEquals("d", buffer.toString());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsZeroCapacity() {
+        new LogRingBuffer(0);
+    }
+
+}
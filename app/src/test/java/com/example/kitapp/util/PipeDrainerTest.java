@@ -0,0 +1,197 @@
+package com.example.kitapp.util;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+public class PipeDrainerTest {
+
+    /**
+     * Output stream recording the size of every write.
+     */
+    static class RecordingOutputStream extends ByteArrayOutputStream {
+        final List<Integer> writeSizes = new ArrayList<>();
+        boolean closed;
+
+        @Override
+        public synchronized void write(final byte[] bytes, final int offset, final int length) {
+            writeSizes.add(length);
+            super.write(bytes, offset, length);
+        }
+
+        @Override
+        public void close() {
+            closed = true;
+        }
+    }
+
+    private File directory;
+    private List<PipeDrainer> completed;
+    private PipeDrainer.CompleteCallback completeCallback;
+
+    @Before
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("pipe-drainer").toFile();
+        completed = new ArrayList<>();
+        completeCallback = new PipeDrainer.CompleteCallback() {
+
+            @Override
+            public void apply(final PipeDrainer drainer) {
+                completed.add(drainer);
+            }
+        };
+    }
+
+    @After
+    public void tearDown() {
+        final File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        directory.delete();
+    }
+
+    @Test
+    public void drainsPipeInFullChunks() throws IOException, InterruptedException {
+        final byte[] content = createContent(10 * 64 * 1024 + 17);
+        final File source = createPipe(content);
+        final RecordingOutputStream outputStream = new RecordingOutputStream();
+
+        final PipeDrainer drainer = new PipeDrainer(source.getAbsolutePath(), outputStream, 64 * 1024, 3, completeCallback);
+        drainer.run();
+        drainer.await();
+
+        assertTrue(drainer.isSuccess());
+        assertEquals(content.length, drainer.getBytesWritten());
+        assertEquals(11, drainer.getWriteCount());
+        assertArrayEquals(content, outputStream.toByteArray());
+        for (int i = 0; i < 10; i++) {
+            assertEquals(64 * 1024, (int) outputStream.writeSizes.get(i));
+        }
+        assertEquals(17, (int) outputStream.writeSizes.get(10));
+        assertTrue(outputStream.closed);
+        assertEquals(1, completed.size());
+        assertSame(drainer, completed.get(0));
+    }
+
+    @Test
+    public void emptyPipeWritesNothing() throws IOException {
+        final RecordingOutputStream outputStream = new RecordingOutputStream();
+
+        final PipeDrainer drainer = new PipeDrainer(createPipe(new byte[0]).getAbsolutePath(), outputStream, 1024, 2, completeCallback);
+        drainer.run();
+
+        assertTrue(drainer.isSuccess());
+        assertEquals(0, drainer.getWriteCount());
+        assertTrue(outputStream.closed);
+    }
+
+    @Test
+    public void failedOutputReportsFailure() throws IOException {
+        final File source = createPipe(createContent(16 * 1024));
+        final OutputStream outputStream = new OutputStream() {
+            int writes;
+
+            @Override
+            public void write(final int b) throws IOException {
+                throw new IOException("Not supported");
+            }
+
+            @Override
+            public void write(final byte[] bytes, final int offset, final int length) throws IOException {
+                if (++writes > 2) {
+                    throw new IOException("No space left on device");
+                }
+            }
+        };
+
+        final PipeDrainer drainer = new PipeDrainer(source.getAbsolutePath(), outputStream, 1024, 2, completeCallback);
+        drainer.run();
+
+        assertTrue(drainer.isDone());
+        assertFalse(drainer.isSuccess());
+        assertEquals("No space left on device", drainer.getFailure().getMessage());
+        assertEquals(2048, drainer.getBytesWritten());
+        assertEquals(1, completed.size());
+    }
+
+    @Test
+    public void missingPipeReportsFailureAndClosesOutput() {
+        final RecordingOutputStream outputStream = new RecordingOutputStream();
+
+        final PipeDrainer drainer = PipeDrainer.create(new File(directory, "missing").getAbsolutePath(), outputStream, completeCallback);
+        drainer.run();
+
+        assertTrue(drainer.isDone());
+        assertNotNull(drainer.getFailure());
+        assertTrue(outputStream.closed);
+        assertEquals(1, completed.size());
+    }
+
+    @Test
+    public void finishedInputNeverOpensPipe() {
+        final File pipe = new File(directory, "pipe");
+        final RecordingOutputStream outputStream = new RecordingOutputStream();
+
+        final PipeDrainer drainer = PipeDrainer.create(pipe.getAbsolutePath(), outputStream, completeCallback);
+        drainer.finishInput();
+        drainer.run();
+
+        assertTrue(drainer.isSuccess());
+        assertEquals(0, drainer.getWriteCount());
+        assertFalse(pipe.exists());
+        assertTrue(outputStream.closed);
+    }
+
+    @Test
+    public void cancelledDrainerNeverOpensPipe() {
+        final File pipe = new File(directory, "pipe");
+
+        final PipeDrainer drainer = PipeDrainer.create(pipe.getAbsolutePath(), new RecordingOutputStream(), completeCallback);
+        drainer.cancel();
+        drainer.run();
+
+        assertTrue(drainer.isDone());
+        assertTrue(drainer.isCancelled());
+        assertFalse(drainer.isSuccess());
+        assertNull(drainer.getFailure());
+        assertFalse(pipe.exists());
+        assertEquals(1, completed.size());
+    }
+
+    private File createPipe(final byte[] content) throws IOException {
+        final File pipe = new File(directory, "pipe");
+        try (FileOutputStream outputStream = new FileOutputStream(pipe)) {
+            outputStream.write(content);
+        }
+        return pipe;
+    }
+
+    private static byte[] createContent(final int size) {
+        final byte[] content = new byte[size];
+        for (int i = 0; i < size; i++) {
+            content[i] = (byte) (i * 31);
+        }
+        return content;
+    }
+
+}
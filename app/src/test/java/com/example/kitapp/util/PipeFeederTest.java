@@ -0,0 +1,129 @@
+package com.example.kitapp.util;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+public class PipeFeederTest {
+
+    private File directory;
+    private List<PipeFeeder> completed;
+    private PipeFeeder.CompleteCallback completeCallback;
+
+    @Before
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("pipe-feeder").toFile();
+        completed = new ArrayList<>();
+        completeCallback = new PipeFeeder.CompleteCallback() {
+
+            @Override
+            public void apply(final PipeFeeder feeder) {
+                completed.add(feeder);
+            }
+        };
+    }
+
+    @After
+    public void tearDown() {
+        final File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        directory.delete();
+    }
+
+    @Test
+    public void feedsFileIntoTarget() throws IOException {
+        final byte[] content = createContent(3 * 1024 * 1024 + 17);
+        final File source = new File(directory, "source.jpg");
+        try (FileOutputStream outputStream = new FileOutputStream(source)) {
+            outputStream.write(content);
+        }
+        final File target = new File(directory, "pipe");
+
+        final PipeFeeder feeder = PipeFeeder.create(source, target.getAbsolutePath(), completeCallback);
+        feeder.run();
+
+        assertTrue(feeder.isSuccess());
+        assertEquals(content.length, feeder.getBytesWritten());
+        assertTrue(feeder.getThroughput() > 0);
+        assertArrayEquals(content, Files.readAllBytes(target.toPath()));
+        assertEquals(1, completed.size());
+        assertSame(feeder, completed.get(0));
+    }
+
+    @Test
+    public void feedsBufferWithoutConsumingIt() throws IOException {
+        final ByteBuffer buffer = ByteBuffer.allocateDirect(4096);
+        buffer.put(createContent(4096));
+        buffer.flip();
+        buffer.position(96);
+        final File target = new File(directory, "pipe");
+
+        final PipeFeeder feeder = PipeFeeder.create(buffer, target.getAbsolutePath(), completeCallback);
+        feeder.run();
+
+        assertTrue(feeder.isSuccess());
+        assertEquals(4000, feeder.getBytesWritten());
+        assertEquals(4000, target.length());
+        assertEquals(96, buffer.position());
+    }
+
+    @Test
+    public void missingSourceReportsFailureAndClosesPipe() {
+        final File target = new File(directory, "pipe");
+
+        final PipeFeeder feeder = PipeFeeder.create(new File(directory, "missing.jpg"), target.getAbsolutePath(), completeCallback);
+        feeder.run();
+
+        assertTrue(feeder.isDone());
+        assertFalse(feeder.isSuccess());
+        assertNotNull(feeder.getFailure());
+        assertTrue(target.exists());
+        assertEquals(0, target.length());
+        assertEquals(1, completed.size());
+    }
+
+    @Test
+    public void cancelledFeederNeverOpensPipe() {
+        final File target = new File(directory, "pipe");
+
+        final PipeFeeder feeder = PipeFeeder.create(ByteBuffer.wrap(createContent(16)), target.getAbsolutePath(), completeCallback);
+        feeder.cancel();
+        feeder.run();
+
+        assertTrue(feeder.isDone());
+        assertTrue(feeder.isCancelled());
+        assertFalse(feeder.isSuccess());
+        assertNull(feeder.getFailure());
+        assertFalse(target.exists());
+        assertEquals(1, completed.size());
+    }
+
+    private static byte[] createContent(final int size) {
+        final byte[] content = new byte[size];
+        for (int i = 0; i < size; i++) {
+            content[i] = (byte) (i * 31);
+        }
+        return content;
+    }
+
+}
@@ -0,0 +1,101 @@
+package com.example.kitapp.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class ProgressTrackerTest {
+
+    private static final long MS = 1000000L;
+
+    @Test
+    public void computesPercentSpeedAndEta() {
+        final ProgressTracker tracker = new ProgressTracker(250);
+        tracker.start(60000, 0);
+
+        assertTrue(tracker.update(15000, 10000 * MS));
+
+        assertEquals(25, tracker.getPercent());
+        assertEquals(1.5, tracker.getSpeed(), 0.0001);
+        assertEquals(30000, tracker.getEta());
+        assertEquals("25% (1.5x, 0:30 left)", tracker.appendTo(new StringBuilder()).toString());
+    }
+
+    @Test
+    public void roundsAndClampsPercent() {
+        final ProgressTracker tracker = new ProgressTracker(0);
+        tracker.start(9000, 0);
+
+        tracker.update(4455, MS);
+        assertEquals(50, tracker.getPercent());
+
+        tracker.update(9040, 2 * MS);
+        assertEquals(100, tracker.getPercent());
+        assertEquals(0, tracker.getEta());
+    }
+
+    @Test
+    public void showsEncodedTimeWhileDurationIsUnknown() {
+        final ProgressTracker tracker = new ProgressTracker(250);
+        tracker.start(0, 0);
+
+        assertEquals("0:00", tracker.appendTo(new StringBuilder()).toString());
+
+        tracker.update(65000, 20000 * MS);
+
+        assertEquals(-1, tracker.getPercent());
+        assertEquals(-1, tracker.getEta());
+        assertEquals("1:05 (3.3x)", tracker.appendTo(new StringBuilder()).toString());
+
+        tracker.setTotalDuration(130000);
+        assertEquals(50, tracker.getPercent());
+        assertEquals(20000, tracker.getEta());
+    }
+
+    @Test
+    public void throttlesUpdates() {
+        final ProgressTracker tracker = new ProgressTracker(250);
+        tracker.start(10000, 0);
+
+        assertTrue(tracker.update(100, 10 * MS));
+        assertFalse(tracker.update(200, 100 * MS));
+        assertFalse(tracker.update(300, 259 * MS));
+        assertTrue(tracker.update(400, 260 * MS));
+        assertFalse(tracker.update(500, 300 * MS));
+
+        // REACHING THE END IS ALWAYS SHOWN
+        assertTrue(tracker.update(10000, 310 * MS));
+    }
+
+    @Test
+    public void ignoresNegativeTimes() {
+        final ProgressTracker tracker = new ProgressTracker(250);
+        tracker.start(10000, 0);
+
+        assertFalse(tracker.update(-1, MS));
+        assertEquals(0, tracker.getEncodedTime());
+    }
+
+    @Test
+    public void startResetsProgress() {
+        final ProgressTracker tracker = new ProgressTracker(250);
+        tracker.start(10000, 0);
+        tracker.update(5000, 1000 * MS);
+
+        tracker.start(20000, 2000 * MS);
+
+        assertEquals(0, tracker.getPercent());
+        assertEquals(0, tracker.getSpeed(), 0);
+        assertTrue(tracker.update(1000, 2001 * MS));
+    }
+
+    @Test
+    public void formatsTimes() {
+        assertEquals("0:09", ProgressTracker.appendTime(new StringBuilder(), 9999).toString());
+        assertEquals("12:00", ProgressTracker.appendTime(new StringBuilder(), 720000).toString());
+        assertEquals("1:01:05", ProgressTracker.appendTime(new StringBuilder(), 3665000).toString());
+    }
+
+}
@@ -0,0 +1,123 @@
+package com.example.kitapp.util;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Set;
+
+public class RawFrameProducerTest {
+
+    private File pipeFile;
+
+    @Before
+    public void setUp() throws IOException {
+        pipeFile = File.createTempFile("raw-frames", ".rgba");
+    }
+
+    @After
+    public void tearDown() {
+        pipeFile.delete();
+    }
+
+    @Test
+    public void calculatesFrameSizes() {
+        assertEquals(640 * 424 * 4, RawFrameProducer.PixelFormat.RGBA.getFrameSize(640, 424));
+        assertEquals(640 * 424 * 3 / 2, RawFrameProducer.PixelFormat.YUV420P.getFrameSize(640, 424));
+        assertEquals(3 * 3 + 2 * 2 * 2, RawFrameProducer.PixelFormat.YUV420P.getFrameSize(3, 3));
+    }
+
+    @Test
+    public void createsRawVideoInputArguments() {
+        final RawFrameProducer producer = RawFrameProducer.create("/pipe", 320, 240, RawFrameProducer.PixelFormat.YUV420P, 2, null);
+
+        assertArrayEquals(new String[]{"-f", "rawvideo", "-pix_fmt", "yuv420p", "-s", "320x240", "-r", "25.0", "-i", "/pipe"},
+                producer.getInputArguments(25));
+    }
+
+    @Test
+    public void writesFramesInOrderReusingPool() throws Exception {
+        final int frameCount = 20;
+        final RawFrameProducer producer = RawFrameProducer.create(pipeFile.getAbsolutePath(), 4, 2, RawFrameProducer.PixelFormat.RGBA, 3, null);
+        final Thread writer = new Thread(producer);
+        writer.start();
+
+        final Set<ByteBuffer> usedFrames = Collections.newSetFromMap(new IdentityHashMap<ByteBuffer, Boolean>());
+        for (int i = 0; i < frameCount; i++) {
+            final ByteBuffer frame = producer.obtainFrame();
+            usedFrames.add(frame);
+            while (frame.hasRemaining()) {
+                frame.put((byte) i);
+            }
+            producer.queueFrame(frame);
+        }
+        producer.endOfStream();
+        writer.join(5000);
+
+        assertTrue(producer.isSuccess());
+        assertEquals(frameCount, producer.getFramesWritten());
+        assertTrue(usedFrames.size() <= 3);
+
+        final byte[] written = Files.readAllBytes(pipeFile.toPath());
+        assertEquals(frameCount * producer.getFrameSize(), written.length);
+        for (int i = 0; i < written.length; i++) {
+            assertEquals(i / producer.getFrameSize(), written[i]);
+        }
+    }
+
+    @Test
+    public void cancelReleasesWaitingProducer() throws Exception {
+        final RawFrameProducer producer = RawFrameProducer.create(pipeFile.getAbsolutePath(), 2, 2, RawFrameProducer.PixelFormat.RGBA, 1, null);
+
+        final ByteBuffer frame = producer.obtainFrame();
+        producer.queueFrame(frame);
+
+        final Thread canceller = new Thread(new Runnable() {
+
+            @Override
+            public void run() {
+                try {
+                    Thread.sleep(100);
+                } catch (final InterruptedException e) {
+                    return;
+                }
+                producer.cancel();
+                producer.run();
+            }
+        });
+        canceller.start();
+
+        try {
+            producer.obtainFrame();
+            fail("Cancelled producer returned a frame");
+        } catch (final IOException e) {
+            // EXPECTED
+        }
+        canceller.join(5000);
+
+        assertTrue(producer.isDone());
+        assertTrue(producer.isCancelled());
+        assertFalse(producer.isSuccess());
+        assertEquals(0, producer.getFramesWritten());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsForeignFrames() throws Exception {
+        final RawFrameProducer producer = RawFrameProducer.create(pipeFile.getAbsolutePath(), 2, 2, RawFrameProducer.PixelFormat.RGBA, 1, null);
+
+        producer.queueFrame(ByteBuffer.allocate(16));
+    }
+
+}
@@ -0,0 +1,170 @@
+package com.example.kitapp.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Ignore;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * <p>Compares the old 1 KB buffer copy of {@link ResourcesUtil#rawResourceToFile} with the
+ * current stream and file channel copies, for inputs from 1 KB to 50 MB. The unchanged column
+ * is the cost of a call that finds the target already up to date.
+ *
+ * <p>Takes around a minute, so it is ignored by default. Remove {@link Ignore} or run
+ * {@link #main(String[])} to print the results.
+ */
+@Ignore("Benchmark, run manually")
+public class ResourceCopyBenchmark {
+
+    private static final int[] SIZES = {1024, 16 * 1024, 256 * 1024, 1024 * 1024, 10 * 1024 * 1024, 50 * 1024 * 1024};
+
+    /**
+     * Every size is copied until this many bytes are written, but at least a few times.
+     */
+    private static final long BYTES_PER_SIZE = 256L * 1024 * 1024;
+
+    private static final int MIN_ITERATIONS = 5;
+
+    private interface CopyPath {
+
+        void copy(final File source, final File target) throws IOException;
+
+    }
+
+    private static final CopyPath LEGACY = new CopyPath() {
+
+        @Override
+        public void copy(final File source, final File target) throws IOException {
+            final InputStream inputStream = new FileInputStream(source);
+            if (target.exists()) {
+                target.delete();
+            }
+            final FileOutputStream outputStream = new FileOutputStream(target);
+
+            try {
+                final byte[] buffer = new byte[1024];
+                int readSize;
+
+                while ((readSize = inputStream.read(buffer)) > 0) {
+                    outputStream.write(buffer, 0, readSize);
+                }
+            } finally {
+                inputStream.close();
+                outputStream.flush();
+                outputStream.close();
+            }
+        }
+    };
+
+    private static final CopyPath STREAM = new CopyPath() {
+
+        @Override
+        public void copy(final File source, final File target) throws IOException {
+            try (InputStream inputStream = new FileInputStream(source)) {
+                ResourcesUtil.copyAtomically(inputStream, target);
+            }
+        }
+    };
+
+    private static final CopyPath CHANNEL = new CopyPath() {
+
+        @Override
+        public void copy(final File source, final File target) throws IOException {
+            try (FileChannel channel = new FileInputStream(source).getChannel()) {
+                ResourcesUtil.copyAtomically(channel, 0, channel.size(), target);
+            }
+        }
+    };
+
+    /**
+     * Time spent when the target already holds the resource and nothing is written.
+     */
+    private static final CopyPath UNCHANGED = new CopyPath() {
+
+        @Override
+        public void copy(final File source, final File target) throws IOException {
+            try (InputStream inputStream = new FileInputStream(source)) {
+                assertTrue(ResourcesUtil.contentEquals(inputStream, target));
+            }
+        }
+    };
+
+    public static void main(final String[] args) throws IOException {
+        new ResourceCopyBenchmark().compareCopyPaths();
+    }
+
+    @Test
+    public void compareCopyPaths() throws IOException {
+        final File directory = Files.createTempDirectory("copy-benchmark").toFile();
+        final File source = new File(directory, "source.bin");
+        final File target = new File(directory, "target.bin");
+
+        try {
+            System.out.println(String.format(Locale.ROOT, "%10s %12s %12s %12s %14s %9s %9s", "size", "legacy(ms)", "stream(ms)", "channel(ms)", "unchanged(ms)", "stream x", "channel x"));
+
+            for (int size : SIZES) {
+                writeRandomFile(source, size);
+                final int iterations = (int) Math.max(MIN_ITERATIONS, BYTES_PER_SIZE / size);
+
+                final double legacy = measure(LEGACY, source, target, iterations);
+                final double stream = measure(STREAM, source, target, iterations);
+                final double channel = measure(CHANNEL, source, target, iterations);
+                final double unchanged = measure(UNCHANGED, source, target, iterations);
+
+                System.out.println(String.format(Locale.ROOT, "%10s %12.3f %12.3f %12.3f %14.3f %9.2f %9.2f",
+                        formatSize(size), legacy, stream, channel, unchanged, legacy / stream, legacy / channel));
+            }
+        } finally {
+            final File[] files = directory.listFiles();
+            if (files != null) {
+                for (File file : files) {
+                    file.delete();
+                }
+            }
+            directory.delete();
+        }
+    }
+
+    /**
+     * @return average milliseconds per copy
+     */
+    private static double measure(final CopyPath path, final File source, final File target, final int iterations) throws IOException {
+
+        // WARM UP
+        for (int i = 0; i < Math.min(iterations, MIN_ITERATIONS); i++) {
+            path.copy(source, target);
+        }
+        assertEquals(source.length(), target.length());
+
+        final long startTime = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            path.copy(source, target);
+        }
+        return (System.nanoTime() - startTime) / 1000000.0 / iterations;
+    }
+
+    private static void writeRandomFile(final File file, final int size) throws IOException {
+        final byte[] content = new byte[size];
+        new Random(size).nextBytes(content);
+        Files.write(file.toPath(), content);
+    }
+
+    private static String formatSize(final int size) {
+        if (size >= 1024 * 1024) {
+            return (size / (1024 * 1024)) + " MB";
+        }
+        return (size / 1024) + " KB";
+    }
+
+}
@@ -0,0 +1,188 @@
+package com.example.kitapp.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class ResourceFileCacheTest {
+
+    /**
+     * Writes the resource id repeatedly, counting materializations.
+     */
+    static class CountingMaterializer implements ResourceFileCache.Materializer {
+        final AtomicInteger count = new AtomicInteger();
+        CountDownLatch gate;
+        IOException failure;
+
+        @Override
+        public void materialize(final int resourceId, final File file) throws IOException {
+            count.incrementAndGet();
+            if (gate != null) {
+                try {
+                    gate.await(5, TimeUnit.SECONDS);
+                } catch (final InterruptedException e) {
+                    throw new IOException(e);
+                }
+            }
+            if (failure != null) {
+                throw failure;
+            }
+            try (FileOutputStream outputStream = new FileOutputStream(file)) {
+                for (int i = 0; i < 1000; i++) {
+                    outputStream.write(resourceId + i);
+                }
+            }
+        }
+    }
+
+    private File directory;
+    private File file;
+    private CountingMaterializer materializer;
+
+    @Before
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("resource-cache").toFile();
+        file = new File(directory, "image.jpg");
+        materializer = new CountingMaterializer();
+    }
+
+    @After
+    public void tearDown() {
+        final File[] files = directory.listFiles();
+        if (files != null) {
+            for (File child : files) {
+                child.delete();
+            }
+        }
+        directory.delete();
+    }
+
+    @Test
+    public void materializesOnlyOnce() throws IOException {
+        final ResourceFileCache cache = new ResourceFileCache("1", materializer);
+
+        cache.resourceToFile(7, file);
+        cache.resourceToFile(7, file);
+
+        assertEquals(1, materializer.count.get());
+        assertTrue(ResourceFileCache.getMetaFile(file).exists());
+
+        // A NEW PROCESS TRUSTS THE FILE AFTER VERIFYING ITS CHECKSUM
+        new ResourceFileCache("1", materializer).resourceToFile(7, file);
+
+        assertEquals(1, materializer.count.get());
+    }
+
+    @Test
+    public void newVersionOrResourceMaterializesAgain() throws IOException {
+        new ResourceFileCache("1", materializer).resourceToFile(7, file);
+        new ResourceFileCache("2", materializer).resourceToFile(7, file);
+
+        assertEquals(2, materializer.count.get());
+
+        final ResourceFileCache cache = new ResourceFileCache("2", materializer);
+        cache.resourceToFile(8, file);
+        cache.resourceToFile(7, file);
+
+        assertEquals(4, materializer.count.get());
+    }
+
+    @Test
+    public void corruptFileIsMaterializedAgain() throws IOException {
+        new ResourceFileCache("1", materializer).resourceToFile(7, file);
+
+        try (RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw")) {
+            randomAccessFile.seek(10);
+            randomAccessFile.write(0);
+        }
+        final long corruptChecksum = ResourceFileCache.checksum(file);
+
+        new ResourceFileCache("1", materializer).resourceToFile(7, file);
+
+        assertEquals(2, materializer.count.get());
+        assertFalse(corruptChecksum == ResourceFileCache.checksum(file));
+    }
+
+    @Test
+    public void deletedFileIsMaterializedAgain() throws IOException {
+        final ResourceFileCache cache = new ResourceFileCache("1", materializer);
+
+        cache.resourceToFile(7, file);
+        file.delete();
+        cache.resourceToFile(7, file);
+
+        assertEquals(2, materializer.count.get());
+        assertTrue(file.exists());
+    }
+
+    @Test
+    public void failedMaterializationIsNotCached() throws IOException {
+        final ResourceFileCache cache = new ResourceFileCache("1", materializer);
+        materializer.failure = new IOException("decode failed");
+
+        try {
+            cache.resourceToFile(7, file);
+            fail("Materialization failure was not reported");
+        } catch (final IOException e) {
+            assertEquals("decode failed", e.getMessage());
+        }
+        assertFalse(ResourceFileCache.getMetaFile(file).exists());
+
+        materializer.failure = null;
+        cache.resourceToFile(7, file);
+
+        assertEquals(2, materializer.count.get());
+    }
+
+    @Test
+    public void concurrentCallersShareOneMaterialization() throws Exception {
+        final ResourceFileCache cache = new ResourceFileCache("1", materializer);
+        materializer.gate = new CountDownLatch(1);
+
+        final List<Thread> threads = new ArrayList<>();
+        final List<Throwable> failures = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            final Thread thread = new Thread(new Runnable() {
+
+                @Override
+                public void run() {
+                    try {
+                        cache.resourceToFile(7, file);
+                    } catch (final Throwable t) {
+                        synchronized (failures) {
+                            failures.add(t);
+                        }
+                    }
+                }
+            });
+            threads.add(thread);
+            thread.start();
+        }
+
+        Thread.sleep(200);
+        materializer.gate.countDown();
+        for (Thread thread : threads) {
+            thread.join(5000);
+        }
+
+        assertTrue(failures.isEmpty());
+        assertEquals(1, materializer.count.get());
+    }
+
+}
@@ -0,0 +1,107 @@
+package com.example.kitapp.util;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+public class ResourcesUtilTest {
+
+    private File directory;
+    private byte[] content;
+
+    @Before
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("resources-util").toFile();
+        content = new byte[200 * 1024 + 3];
+        for (int i = 0; i < content.length; i++) {
+            content[i] = (byte) (i * 7);
+        }
+    }
+
+    @After
+    public void tearDown() {
+        final File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        directory.delete();
+    }
+
+    @Test
+    public void copiesRangeOfFileChannel() throws IOException {
+        // RESOURCES STORED IN AN APK ARE A RANGE OF THE APK FILE
+        final File apk = new File(directory, "app.apk");
+        Files.write(apk.toPath(), content);
+        final File target = new File(directory, "image.jpg");
+
+        final long copied;
+        try (FileChannel source = new FileInputStream(apk).getChannel()) {
+            copied = ResourcesUtil.copyAtomically(source, 1000, 150 * 1024, target);
+        }
+
+        assertEquals(150 * 1024, copied);
+        assertArrayEquals(Arrays.copyOfRange(content, 1000, 1000 + 150 * 1024), Files.readAllBytes(target.toPath()));
+    }
+
+    @Test
+    public void copiesStream() throws IOException {
+        final File target = new File(directory, "image.jpg");
+
+        Files.write(target.toPath(), new byte[]{1, 2, 3});
+
+        final long copied = ResourcesUtil.copyAtomically(new ByteArrayInputStream(content), target);
+
+        assertEquals(content.length, copied);
+        assertArrayEquals(content, Files.readAllBytes(target.toPath()));
+        assertArrayEquals(new String[]{"image.jpg"}, directory.list());
+    }
+
+    @Test
+    public void shortRangeLeavesTargetUntouched() throws IOException {
+        final File apk = new File(directory, "app.apk");
+        Files.write(apk.toPath(), content);
+        final File target = new File(directory, "image.jpg");
+        Files.write(target.toPath(), new byte[]{1, 2, 3});
+
+        try (FileChannel source = new FileInputStream(apk).getChannel()) {
+            ResourcesUtil.copyAtomically(source, content.length - 10, 20, target);
+            fail("Short copy was not reported");
+        } catch (final IOException e) {
+            // EXPECTED
+        }
+
+        assertArrayEquals(new byte[]{1, 2, 3}, Files.readAllBytes(target.toPath()));
+        assertEquals(2, directory.list().length);
+    }
+
+    @Test
+    public void detectsIdenticalContent() throws IOException {
+        final File target = new File(directory, "image.jpg");
+        Files.write(target.toPath(), content);
+
+        assertTrue(ResourcesUtil.contentEquals(new ByteArrayInputStream(content), target));
+
+        final byte[] changed = content.clone();
+        changed[changed.length - 1]++;
+        assertFalse(ResourcesUtil.contentEquals(new ByteArrayInputStream(changed), target));
+        assertFalse(ResourcesUtil.contentEquals(new ByteArrayInputStream(Arrays.copyOf(content, content.length - 1)), target));
+        assertFalse(ResourcesUtil.contentEquals(new ByteArrayInputStream(Arrays.copyOf(content, content.length + 1)), target));
+    }
+
+}
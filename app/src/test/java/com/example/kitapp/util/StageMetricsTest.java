@@ -0,0 +1,79 @@
+package com.example.kitapp.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.List;
+
+public class StageMetricsTest {
+
+    private static final long MS = 1000000L;
+
+    @Test
+    public void recordsDurationAndBytesPerStage() throws IOException {
+        final File first = File.createTempFile("stage", ".mp4");
+        final File second = File.createTempFile("stage", ".trf");
+        try {
+            Files.write(first.toPath(), new byte[1000]);
+            Files.write(second.toPath(), new byte[24]);
+
+            final StageMetrics metrics = new StageMetrics("test");
+            metrics.begin("create+detect", 0);
+            metrics.end("create+detect", 120 * MS, first, second);
+            metrics.begin("transform", 130 * MS);
+            metrics.end("transform", 200 * MS, new File(first.getParentFile(), "missing.mp4"));
+
+            final List<StageMetrics.Stage> stages = metrics.getStages();
+            assertEquals(2, stages.size());
+            assertEquals("create+detect", stages.get(0).getName());
+            assertEquals(120, stages.get(0).getDuration());
+            assertEquals(1024, stages.get(0).getBytesWritten());
+            assertEquals(70, stages.get(1).getDuration());
+            assertEquals(0, stages.get(1).getBytesWritten());
+
+            assertEquals(190, metrics.getTotalDuration());
+            assertEquals(1024, metrics.getTotalBytesWritten());
+            assertEquals("test:\n  create+detect: 120 ms, 1024 bytes written\n  transform: 70 ms, 0 bytes written\n  total: 190 ms in stages, 200 ms elapsed, 1024 bytes written", metrics.toString());
+        } finally {
+            first.delete();
+            second.delete();
+        }
+    }
+
+    @Test
+    public void reportsRunningStages() {
+        final StageMetrics metrics = new StageMetrics("test");
+        metrics.begin("create", 0);
+
+        assertFalse(metrics.getStages().get(0).isFinished());
+        assertEquals(0, metrics.getTotalDuration());
+        assertTrue(metrics.toString().contains("create: 0 ms, 0 bytes written (not finished)"));
+    }
+
+    @Test
+    public void endsOverlappingStagesByName() {
+        final StageMetrics metrics = new StageMetrics("test");
+        metrics.begin("create", 0);
+        metrics.begin("burn", 10 * MS);
+        metrics.end("create", 50 * MS);
+        metrics.end("burn", 60 * MS);
+
+        assertEquals(50, metrics.getStage("create").getDuration());
+        assertEquals(50, metrics.getStage("burn").getDuration());
+        assertEquals(10 * MS, metrics.getStage("burn").getStartTime());
+        assertEquals(100, metrics.getTotalDuration());
+        assertEquals(60, metrics.getElapsedTime());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void rejectsEndWithoutStage() {
+        new StageMetrics("test").end("create", 0);
+    }
+
+}